@@ -95,6 +95,8 @@ tasks.register<Test>("integTest") {
   testClassesDirs = sourceSets.getByName("integTest").output.classesDirs
   classpath = sourceSets.getByName("integTest").runtimeClasspath
   outputs.upToDateWhen { false }
+  // -DrecordGoldens=true records the app.yaml files staged by appcfg as native staging goldens
+  System.getProperty("recordGoldens")?.let { systemProperty("recordGoldens", it) }
 }
 /* TESTING */
 
@@ -146,6 +146,21 @@ public class AppEngineStandardPluginIntegrationTest {
     AssertConnection.assertUnreachable("http://localhost:8080", 8000);
   }
 
+  @Test
+  public void testQuickstart() {
+    GradleRunner.create()
+        .withProjectDir(testProjectDir.getRoot())
+        .withPluginClasspath()
+        .withArguments("appengineQuickstart")
+        .build();
+
+    // the names QuickstartTask and the native staging expect appcfg to generate
+    File quickstartDirectory =
+        new File(testProjectDir.getRoot(), "build/" + AppEngineStandardPlugin.QUICKSTART_DIR_NAME);
+    Assert.assertTrue(new File(quickstartDirectory, "quickstart-web.xml").isFile());
+    Assert.assertTrue(new File(quickstartDirectory, "min-quickstart-web.xml").isFile());
+  }
+
   @Test
   public void testDeploy()
       throws CloudSdkNotFoundException, IOException, ProcessHandlerException,
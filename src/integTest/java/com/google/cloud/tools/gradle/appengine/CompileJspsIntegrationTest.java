@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine;
+
+import com.google.cloud.tools.gradle.appengine.standard.AppEngineStandardPlugin;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Compile JSPs with the Jasper of the downloaded App Engine SDK. */
+public class CompileJspsIntegrationTest {
+
+  @Rule public TemporaryFolder testProjectDir = new TemporaryFolder();
+
+  private File compiledJsps;
+
+  /** Setup CompileJspsIntegrationTest. */
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.copyDirectory(
+        new File("src/integTest/resources/projects/standard-project-java8"),
+        testProjectDir.getRoot());
+    File webapp = new File(testProjectDir.getRoot(), "src/main/webapp");
+    write(
+        new File(webapp, "index.jsp"),
+        "<%@ taglib prefix=\"t\" tagdir=\"/WEB-INF/tags\" %>\n<t:hello name=\"JSP\"/>\n");
+    write(
+        new File(webapp, "WEB-INF/tags/hello.tag"),
+        "<%@ attribute name=\"name\" required=\"true\" %>\nHello ${name}!\n");
+    compiledJsps =
+        new File(
+            testProjectDir.getRoot(), "build/" + AppEngineStandardPlugin.COMPILED_JSPS_DIR_NAME);
+  }
+
+  @Test
+  public void testCompileJsps() throws IOException {
+    compileJsps();
+
+    Assert.assertTrue(new File(compiledJsps, "classes/org/apache/jsp/index_jsp.class").isFile());
+    Assert.assertFalse(new File(compiledJsps, "classes/org/apache/jsp/index_jsp.java").exists());
+    Assert.assertTrue(new File(compiledJsps, "classes/org/apache/jsp/tag/web").isDirectory());
+    Assert.assertEquals(
+        "org.apache.jsp.index_jsp",
+        FileUtils.readFileToString(
+            new File(compiledJsps, "servlets/index.jsp"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testCompileJsps_fromCache() throws IOException {
+    compileJsps();
+
+    // without its output the task is not incremental, every JSP is compiled again
+    FileUtils.deleteDirectory(compiledJsps);
+    BuildResult buildResult = compileJsps();
+
+    Assert.assertThat(
+        buildResult.getOutput(), CoreMatchers.containsString("Restored 1 JSPs from the cache"));
+    Assert.assertTrue(new File(compiledJsps, "classes/org/apache/jsp/index_jsp.class").isFile());
+    Assert.assertTrue(new File(compiledJsps, "classes/org/apache/jsp/tag/web").isDirectory());
+  }
+
+  @Test
+  public void testCompileJsps_classpathChanged() throws IOException {
+    compileJsps();
+
+    // the classes of the app are part of the cache key
+    write(
+        new File(testProjectDir.getRoot(), "src/main/java/Other.java"), "public class Other {}\n");
+    BuildResult buildResult = compileJsps();
+
+    Assert.assertThat(
+        buildResult.getOutput(), CoreMatchers.containsString("Compiled 1 JSPs on 1 workers"));
+    Assert.assertTrue(new File(compiledJsps, "classes/org/apache/jsp/index_jsp.class").isFile());
+  }
+
+  private BuildResult compileJsps() {
+    return GradleRunner.create()
+        .withProjectDir(testProjectDir.getRoot())
+        .withPluginClasspath()
+        .withArguments(AppEngineStandardPlugin.COMPILE_JSPS_TASK_NAME, "--info")
+        .build();
+  }
+
+  private static void write(File file, String content) throws IOException {
+    FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine;
+
+import com.google.cloud.tools.gradle.appengine.standard.AppEngineStandardPlugin;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check the golden app.yaml files of the native staging unit tests against the ones appcfg stages
+ * for the same apps. Run with {@code -DrecordGoldens=true} to record appcfg's app.yaml files as the
+ * new goldens.
+ */
+public class NativeStandardStagingIntegrationTest {
+
+  private static final String GOLDENS = "src/test/resources/projects/NativeStandardStagingTest";
+
+  @Rule public TemporaryFolder testProjectDir = new TemporaryFolder();
+
+  @Test
+  public void testStage_simple() throws IOException {
+    File webapp = createProject("simple");
+    write(new File(webapp, "index.html"), "hello");
+    write(new File(webapp, "css/site.css"), "body {}");
+
+    assertAppYaml("simple");
+  }
+
+  @Test
+  public void testStage_configured() throws IOException {
+    File webapp = createProject("configured");
+    write(new File(webapp, "home.html"), "home");
+    write(new File(webapp, "static/app.js"), "app");
+    write(new File(webapp, "static/private/key.txt"), "key");
+
+    assertAppYaml("configured");
+  }
+
+  private File createProject(String name) throws IOException {
+    write(
+        testProjectDir.newFile("build.gradle"),
+        "plugins {\n"
+            + "  id 'java'\n"
+            + "  id 'war'\n"
+            + "  id 'com.google.cloud.tools.appengine'\n"
+            + "}\n");
+    File webapp = new File(testProjectDir.getRoot(), "src/main/webapp");
+    FileUtils.copyDirectory(new File(GOLDENS, name), new File(webapp, "WEB-INF"));
+    return webapp;
+  }
+
+  /** Stage the project with appcfg and compare its app.yaml with the golden one. */
+  private void assertAppYaml(String name) throws IOException {
+    GradleRunner.create()
+        .withProjectDir(testProjectDir.getRoot())
+        .withPluginClasspath()
+        .withArguments("appengineStage", "--stacktrace")
+        .build();
+
+    File staged =
+        new File(
+            testProjectDir.getRoot(),
+            "build/" + AppEngineStandardPlugin.STAGED_APP_DIR_NAME + "/app.yaml");
+    File golden = new File(GOLDENS, name + "-app.yaml");
+    if (Boolean.getBoolean("recordGoldens")) {
+      FileUtils.copyFile(staged, golden);
+    }
+    Assert.assertEquals(
+        golden + " differs from the app.yaml staged by appcfg",
+        FileUtils.readFileToString(golden, StandardCharsets.UTF_8),
+        FileUtils.readFileToString(staged, StandardCharsets.UTF_8));
+  }
+
+  private static void write(File file, String content) throws IOException {
+    FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.appyaml;
+
+import com.google.cloud.tools.gradle.appengine.util.io.FileLinker;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.file.FileTree;
+
+/**
+ * Stage an app.yaml based app in the layout of {@code AppYamlProjectStaging}, but in place: files
+ * that are already staged are left alone, the others are hard linked from their source (or copied
+ * where links can't be made) and staged files without a source anymore are deleted. Restaging a
+ * large artifact or large extra files directories costs a few file system lookups when they didn't
+ * change. A hard link is the same file as its source, editing it in place edits the source: only
+ * app.yaml is always copied.
+ *
+ * <p>Only the layouts of flex apps and of java11+ standard apps deployed from a jar are known
+ * here, {@link #plan} returns null for the others and they are staged by {@code
+ * AppYamlProjectStaging}, which also reports invalid configurations.
+ */
+class NativeAppYamlStaging {
+
+  private static final String APP_YAML = "app.yaml";
+  private static final Pattern RUNTIME = Pattern.compile("^runtime:\\s*['\"]?([\\w-]+)");
+  private static final Pattern ENV = Pattern.compile("^env:\\s*['\"]?([\\w-]+)");
+  private static final Pattern JAVA_RUNTIME = Pattern.compile("java\\d+");
+
+  private final Path appEngineDirectory;
+  private final Path artifact;
+  private final Path stagingDirectory;
+  private Path dockerDirectory;
+  // the staged extra files by path, null if a directory is missing
+  private Map<String, Path> extraFiles = Collections.emptyMap();
+
+  NativeAppYamlStaging(Path appEngineDirectory, Path artifact, Path stagingDirectory) {
+    this.appEngineDirectory = appEngineDirectory;
+    this.artifact = artifact;
+    this.stagingDirectory = stagingDirectory;
+  }
+
+  /** The engine for the configuration of {@code stage}. */
+  static NativeAppYamlStaging of(StageAppYamlExtension stage) {
+    NativeAppYamlStaging staging =
+        new NativeAppYamlStaging(
+            stage.getAppEngineDirectory().toPath(),
+            stage.getArtifact().toPath(),
+            stage.getStagingDirectory().toPath());
+    if (stage.getDockerDirectory() != null) {
+      staging.dockerDirectory(stage.getDockerDirectory().toPath());
+    }
+    if (stage.getExtraFilesDirectories() != null) {
+      Map<String, Path> extraFiles = new LinkedHashMap<>();
+      for (File directory : stage.getExtraFilesDirectories()) {
+        if (!directory.isDirectory()) {
+          // AppYamlProjectStaging reports it
+          extraFiles = null;
+          break;
+        }
+      }
+      if (extraFiles != null) {
+        for (FileTree tree : stage.getExtraFiles()) {
+          Map<String, Path> files = extraFiles;
+          tree.visit(
+              details -> {
+                if (!details.isDirectory()) {
+                  files.put(details.getRelativePath().getPathString(), details.getFile().toPath());
+                }
+              });
+        }
+      }
+      staging.extraFiles(extraFiles);
+    }
+    return staging;
+  }
+
+  NativeAppYamlStaging dockerDirectory(Path dockerDirectory) {
+    this.dockerDirectory = dockerDirectory;
+    return this;
+  }
+
+  /** The extra files to stage by path, later ones override earlier ones with the same path. */
+  NativeAppYamlStaging extraFiles(Map<String, Path> extraFiles) {
+    this.extraFiles = extraFiles;
+    return this;
+  }
+
+  /**
+   * The content of the staging directory: the source of each staged file, by path relative to the
+   * staging directory. Later sources override earlier ones, like the successive copies of {@code
+   * AppYamlProjectStaging}. Null if the app is not one whose layout is known here.
+   */
+  Map<String, Path> plan() throws IOException {
+    Path appYaml = appEngineDirectory.resolve("app.yaml");
+    if (!Files.isRegularFile(appYaml) || !Files.isRegularFile(artifact) || extraFiles == null) {
+      return null;
+    }
+    String runtime = null;
+    String env = null;
+    for (String line : Files.readAllLines(appYaml, StandardCharsets.UTF_8)) {
+      Matcher runtimeMatcher = RUNTIME.matcher(line);
+      Matcher envMatcher = ENV.matcher(line);
+      if (runtimeMatcher.find()) {
+        runtime = runtimeMatcher.group(1);
+      } else if (envMatcher.find()) {
+        env = envMatcher.group(1);
+      }
+    }
+
+    Map<String, Path> plan = new LinkedHashMap<>();
+    boolean flexible = "flex".equals(env) || "flexible".equals(env);
+    if (flexible && "custom".equals(runtime)) {
+      if (dockerDirectory == null || !Files.isRegularFile(dockerDirectory.resolve("Dockerfile"))) {
+        return null;
+      }
+      addDirectory(plan, dockerDirectory);
+    } else if (!flexible
+        && !(runtime != null
+            && JAVA_RUNTIME.matcher(runtime).matches()
+            && !runtime.equals("java8")
+            && artifact.getFileName().toString().endsWith(".jar"))) {
+      return null;
+    }
+    plan.putAll(extraFiles);
+    plan.put(APP_YAML, appYaml);
+    plan.put(artifact.getFileName().toString(), artifact);
+    if (!flexible) {
+      addJarClasspath(plan);
+    }
+    return plan;
+  }
+
+  /**
+   * Bring the staging directory in line with {@code plan}, linking or copying only the files that
+   * are not staged yet or changed.
+   */
+  Stats stage(Map<String, Path> plan, FileLinker linker) throws IOException {
+    Stats stats = new Stats();
+    Path root = stagingDirectory.toAbsolutePath().normalize();
+    Files.createDirectories(root);
+    for (Map.Entry<String, Path> file : plan.entrySet()) {
+      Path target = root.resolve(file.getKey());
+      // app.yaml is tiny and the file tools are the most likely to edit, never share it
+      boolean copied = file.getKey().equals(APP_YAML);
+      if (FileLinker.isUpToDate(target, file.getValue())
+          && !(copied && Files.isSameFile(target, file.getValue()))) {
+        stats.unchanged++;
+      } else if (copied) {
+        linker.copy(target, file.getValue());
+        stats.staged++;
+      } else {
+        linker.linkOrCopy(target, file.getValue());
+        stats.staged++;
+      }
+    }
+
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(root)) {
+      // deepest first, so directories are emptied before they are looked at
+      paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      if (path.equals(root)) {
+        continue;
+      }
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> children = Files.list(path)) {
+          if (!children.findAny().isPresent()) {
+            Files.delete(path);
+          }
+        }
+      } else if (!plan.containsKey(relativePath(root, path))) {
+        Files.delete(path);
+        stats.deleted++;
+      }
+    }
+    return stats;
+  }
+
+  private static void addDirectory(Map<String, Path> plan, Path directory) throws IOException {
+    try (Stream<Path> walk = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) walk.filter(Files::isRegularFile).sorted()::iterator) {
+        plan.put(relativePath(directory, file), file);
+      }
+    }
+  }
+
+  /** The jars of the Class-Path of the artifact's manifest, relative to the artifact. */
+  private void addJarClasspath(Map<String, Path> plan) throws IOException {
+    Manifest manifest;
+    try (JarFile jar = new JarFile(artifact.toFile())) {
+      manifest = jar.getManifest();
+    }
+    String classpath =
+        manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+    if (classpath == null) {
+      return;
+    }
+    Path artifactDirectory = artifact.toAbsolutePath().getParent();
+    for (String entry : classpath.trim().split("\\s+")) {
+      Path relative;
+      try {
+        relative = Paths.get(entry).normalize();
+      } catch (InvalidPathException ex) {
+        continue;
+      }
+      // only what can be staged next to the artifact, like AppYamlProjectStaging
+      if (entry.isEmpty() || relative.isAbsolute() || relative.startsWith("..")) {
+        continue;
+      }
+      Path jar = artifactDirectory.resolve(relative);
+      if (Files.isRegularFile(jar)) {
+        plan.put(relative.toString().replace(File.separatorChar, '/'), jar);
+      }
+    }
+  }
+
+  private static String relativePath(Path root, Path file) {
+    return root.relativize(file).toString().replace(File.separatorChar, '/');
+  }
+
+  /** Counts of what a stage did. */
+  @VisibleForTesting
+  static class Stats {
+    int staged;
+    int unchanged;
+    int deleted;
+  }
+}
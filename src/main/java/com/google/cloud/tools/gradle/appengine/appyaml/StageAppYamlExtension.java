@@ -22,14 +22,21 @@ import com.google.cloud.tools.gradle.appengine.util.NullSafe;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileTree;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 
 /** Extension element to define Stage configurations for app.yaml base projects. */
 public class StageAppYamlExtension {
@@ -41,6 +48,10 @@ public class StageAppYamlExtension {
   private File artifact;
   private File stagingDirectory;
   private List<File> extraFilesDirectories;
+  private List<String> extraFilesIncludes;
+  private List<String> extraFilesExcludes;
+  private List<String> extraFilesIgnored;
+  private Boolean nativeStaging;
 
   public StageAppYamlExtension(Project project) {
     this.project = project;
@@ -83,18 +94,53 @@ public class StageAppYamlExtension {
     this.stagingDirectory = project.file(stagingDirectory);
   }
 
-  /** This method is purely for incremental build calculations. */
+  /**
+   * This method is purely for incremental build calculations: one flat collection of the selected
+   * extra files, fingerprinted by their path in their directory so that moving the project doesn't
+   * restage, without the ignored files.
+   */
   @Optional
   @InputFiles
+  @PathSensitive(PathSensitivity.RELATIVE)
+  @IgnoreEmptyDirectories
   public FileCollection getExtraFilesDirectoriesAsInputFiles() {
     if (extraFilesDirectories == null) {
       return null;
     }
-    FileCollection files = project.files();
+    List<FileTree> trees = new ArrayList<>();
     for (File directory : extraFilesDirectories) {
-      files = files.plus(project.fileTree(directory));
+      ConfigurableFileTree tree = selectExtraFiles(directory);
+      if (extraFilesIgnored != null) {
+        tree.exclude(extraFilesIgnored);
+      }
+      trees.add(tree);
     }
-    return files;
+    return project.files(trees);
+  }
+
+  /** The files staged from each of the extra files directories, in order. */
+  @Internal("covered by getExtraFilesDirectoriesAsInputFiles")
+  public List<FileTree> getExtraFiles() {
+    if (extraFilesDirectories == null) {
+      return null;
+    }
+    return extraFilesDirectories.stream().map(this::selectExtraFiles).collect(Collectors.toList());
+  }
+
+  private ConfigurableFileTree selectExtraFiles(File directory) {
+    ConfigurableFileTree tree = project.fileTree(directory);
+    if (extraFilesIncludes != null) {
+      tree.include(extraFilesIncludes);
+    }
+    if (extraFilesExcludes != null) {
+      tree.exclude(extraFilesExcludes);
+    }
+    return tree;
+  }
+
+  /** Check if only some of the files of the extra files directories are staged. */
+  boolean hasExtraFilesPatterns() {
+    return extraFilesIncludes != null || extraFilesExcludes != null;
   }
 
   @Internal("covered by getExtraFilesDirectoriesAsInputFiles")
@@ -106,11 +152,65 @@ public class StageAppYamlExtension {
     this.extraFilesDirectories = new ArrayList<>(project.files(extraFilesDirectories).getFiles());
   }
 
+  /** Patterns of the files to stage from the extra files directories, all of them by default. */
+  @Input
+  @Optional
+  public List<String> getExtraFilesIncludes() {
+    return extraFilesIncludes;
+  }
+
+  public void setExtraFilesIncludes(List<String> extraFilesIncludes) {
+    this.extraFilesIncludes = extraFilesIncludes;
+  }
+
+  /** Patterns of the files not to stage from the extra files directories. */
+  @Input
+  @Optional
+  public List<String> getExtraFilesExcludes() {
+    return extraFilesExcludes;
+  }
+
+  public void setExtraFilesExcludes(List<String> extraFilesExcludes) {
+    this.extraFilesExcludes = extraFilesExcludes;
+  }
+
+  /**
+   * Patterns of extra files that are staged, but whose changes don't make the stage out of date
+   * (logs, editor files...).
+   */
+  @Input
+  @Optional
+  public List<String> getExtraFilesIgnored() {
+    return extraFilesIgnored;
+  }
+
+  public void setExtraFilesIgnored(List<String> extraFilesIgnored) {
+    this.extraFilesIgnored = extraFilesIgnored;
+  }
+
+  /**
+   * Stage in place, hard linking the files that changed instead of copying everything into an
+   * emptied staging directory.
+   */
+  @Input
+  @Optional
+  public Boolean getNativeStaging() {
+    return nativeStaging;
+  }
+
+  public void setNativeStaging(Boolean nativeStaging) {
+    this.nativeStaging = nativeStaging;
+  }
+
   AppYamlProjectStageConfiguration toAppYamlProjectStageConfiguration() {
     return AppYamlProjectStageConfiguration.builder(
             appEngineDirectory.toPath(), artifact.toPath(), stagingDirectory.toPath())
         .dockerDirectory(NullSafe.convert(dockerDirectory, File::toPath))
-        .extraFilesDirectories(NullSafe.convert(extraFilesDirectories, File::toPath))
+        // with patterns, the task stages the selected extra files itself
+        .extraFilesDirectories(
+            hasExtraFilesPatterns()
+                ? null
+                : NullSafe.convert(extraFilesDirectories, File::toPath))
         .build();
   }
 }
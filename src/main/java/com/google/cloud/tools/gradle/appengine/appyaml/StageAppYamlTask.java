@@ -19,7 +19,14 @@ package com.google.cloud.tools.gradle.appengine.appyaml;
 
 import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.operations.AppYamlProjectStaging;
+import com.google.cloud.tools.gradle.appengine.core.BuildMetrics;
+import com.google.cloud.tools.gradle.appengine.util.io.FileLinker;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileTree;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.TaskAction;
 
@@ -39,11 +46,49 @@ public class StageAppYamlTask extends DefaultTask {
 
   /** Task entrypoint : Stage the app.yaml based application. */
   @TaskAction
-  public void stageAction() throws AppEngineException {
-    getProject().delete(appYamlExtension.getStagingDirectory());
-    getProject().mkdir(appYamlExtension.getStagingDirectory().getAbsolutePath());
+  public void stageAction() throws AppEngineException, IOException {
+    BuildMetrics.TaskMetrics metrics = BuildMetrics.of(this);
+    if (Boolean.TRUE.equals(appYamlExtension.getNativeStaging())) {
+      NativeAppYamlStaging nativeStaging = NativeAppYamlStaging.of(appYamlExtension);
+      Map<String, Path> plan = nativeStaging.plan();
+      if (plan != null) {
+        FileLinker linker = new FileLinker(getLogger(), true);
+        NativeAppYamlStaging.Stats stats;
+        try (BuildMetrics.Phase ignored = metrics.startPhase("stage")) {
+          stats = nativeStaging.stage(plan, linker);
+        }
+        getLogger()
+            .info(
+                "Staged {} files ({} links, {} copies), {} unchanged, {} deleted",
+                stats.staged,
+                linker.getLinks(),
+                linker.getCopies(),
+                stats.unchanged,
+                stats.deleted);
+        metrics.recordBytesStaged(appYamlExtension.getStagingDirectory());
+        return;
+      }
+      getLogger()
+          .lifecycle("Staging with AppYamlProjectStaging, the layout of this app is not known");
+    }
 
-    AppYamlProjectStaging staging = new AppYamlProjectStaging();
-    staging.stageArchive(appYamlExtension.toAppYamlProjectStageConfiguration());
+    try (BuildMetrics.Phase ignored = metrics.startPhase("clean")) {
+      getProject().delete(appYamlExtension.getStagingDirectory());
+      getProject().mkdir(appYamlExtension.getStagingDirectory().getAbsolutePath());
+    }
+
+    try (BuildMetrics.Phase ignored = metrics.startPhase("stage")) {
+      if (appYamlExtension.hasExtraFilesPatterns()) {
+        // AppYamlProjectStaging copies whole directories, copy the selected files first like it
+        // does, its other copies go over them
+        File stagingDirectory = appYamlExtension.getStagingDirectory();
+        for (FileTree extraFiles : appYamlExtension.getExtraFiles()) {
+          getProject().copy(copySpec -> copySpec.from(extraFiles).into(stagingDirectory));
+        }
+      }
+      AppYamlProjectStaging staging = new AppYamlProjectStaging();
+      staging.stageArchive(appYamlExtension.toAppYamlProjectStageConfiguration());
+    }
+    metrics.recordBytesStaged(appYamlExtension.getStagingDirectory());
   }
 }
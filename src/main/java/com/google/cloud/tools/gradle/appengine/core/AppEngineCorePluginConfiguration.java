@@ -22,6 +22,7 @@ import com.google.cloud.tools.managedcloudsdk.BadCloudSdkVersionException;
 import com.google.cloud.tools.managedcloudsdk.ManagedCloudSdk;
 import com.google.cloud.tools.managedcloudsdk.UnsupportedOsException;
 import com.google.cloud.tools.managedcloudsdk.components.SdkComponent;
+import java.io.File;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.util.GradleVersion;
@@ -32,7 +33,7 @@ import org.gradle.util.GradleVersion;
  */
 public class AppEngineCorePluginConfiguration {
 
-  public static final GradleVersion GRADLE_MIN_VERSION = GradleVersion.version("3.4.1");
+  public static final GradleVersion GRADLE_MIN_VERSION = GradleVersion.version("6.8");
 
   public static final String LOGIN_TASK_NAME = "appengineCloudSdkLogin";
   public static final String DEPLOY_TASK_NAME = "appengineDeploy";
@@ -45,6 +46,7 @@ public class AppEngineCorePluginConfiguration {
   public static final String SHOW_CONFIG_TASK_NAME = "appengineShowConfiguration";
   public static final String DOWNLOAD_CLOUD_SDK_TASK_NAME = "downloadCloudSdk";
   public static final String CHECK_CLOUD_SDK_TASK_NAME = "checkCloudSdk";
+  public static final String PERF_REPORT_TASK_NAME = "appenginePerfReport";
 
   public static final String APPENGINE_EXTENSION = "appengine";
 
@@ -82,6 +84,7 @@ public class AppEngineCorePluginConfiguration {
     createDeployQueueTask();
     createDeployAllTask();
     createShowConfigurationTask();
+    createPerfReportTask();
   }
 
   private void configureFactories() {
@@ -335,6 +338,30 @@ public class AppEngineCorePluginConfiguration {
             });
   }
 
+  private void createPerfReportTask() {
+    // start timing tasks before the build executes them
+    BuildMetrics.forBuild(project.getGradle());
+    project
+        .getTasks()
+        .create(
+            PERF_REPORT_TASK_NAME,
+            PerfReportTask.class,
+            perfReportTask -> {
+              perfReportTask.setGroup(taskGroup);
+              perfReportTask.setDescription(
+                  "Report the timings of App Engine tasks and flag regressions");
+              perfReportTask.setReportDirectory(
+                  new File(project.getBuildDir(), "reports/appengine-perf"));
+
+              // report on the other App Engine tasks of the build, when they run
+              perfReportTask.mustRunAfter(
+                  project
+                      .getTasks()
+                      .matching(
+                          task -> task != perfReportTask && BuildMetrics.isAppEngineTask(task)));
+            });
+  }
+
   private void checkGradleVersion() {
     if (GRADLE_MIN_VERSION.compareTo(GradleVersion.current()) > 0) {
       throw new GradleException(
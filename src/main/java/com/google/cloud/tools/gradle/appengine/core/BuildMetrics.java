@@ -0,0 +1,208 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.gradle.api.Task;
+import org.gradle.api.execution.TaskExecutionListener;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.tasks.TaskState;
+
+/**
+ * Build scoped collector of timings for App Engine tasks: the duration of each task, named phases
+ * inside a task, the wall and cpu time of the processes it started and the bytes it staged.
+ */
+public class BuildMetrics {
+
+  private static final Map<Gradle, BuildMetrics> buildMetrics = new HashMap<>();
+  private static final String PLUGIN_PACKAGE = "com.google.cloud.tools.gradle.appengine";
+
+  private final Map<String, TaskMetrics> tasks = new LinkedHashMap<>();
+
+  @VisibleForTesting
+  BuildMetrics() {}
+
+  /** Returns the metrics of the build {@code gradle} belongs to, creating them on first use. */
+  public static BuildMetrics forBuild(Gradle gradle) {
+    synchronized (buildMetrics) {
+      BuildMetrics metrics = buildMetrics.get(gradle);
+      if (metrics == null) {
+        BuildMetrics newMetrics = new BuildMetrics();
+        gradle.getTaskGraph().addTaskExecutionListener(newMetrics.new TaskTimer());
+        gradle.buildFinished(
+            buildResult -> {
+              synchronized (buildMetrics) {
+                buildMetrics.remove(gradle);
+              }
+            });
+        buildMetrics.put(gradle, newMetrics);
+        metrics = newMetrics;
+      }
+      return metrics;
+    }
+  }
+
+  /** Returns the metrics of {@code task} in the current build. */
+  public static TaskMetrics of(Task task) {
+    return forBuild(task.getProject().getGradle()).forTask(task);
+  }
+
+  /** Returns the metrics of {@code task}, creating them on first use. */
+  public TaskMetrics forTask(Task task) {
+    return forTask(task.getPath());
+  }
+
+  @VisibleForTesting
+  synchronized TaskMetrics forTask(String taskPath) {
+    return tasks.computeIfAbsent(taskPath, TaskMetrics::new);
+  }
+
+  /** Metrics of all tasks that ran so far, in execution order. */
+  public synchronized List<TaskMetrics> getTaskMetrics() {
+    return ImmutableList.copyOf(tasks.values());
+  }
+
+  static boolean isAppEngineTask(Task task) {
+    return task.getClass().getName().startsWith(PLUGIN_PACKAGE);
+  }
+
+  /** Times every task contributed by the plugin. */
+  private class TaskTimer implements TaskExecutionListener {
+    private final Map<Task, Long> startTimes = new HashMap<>();
+
+    @Override
+    public synchronized void beforeExecute(Task task) {
+      if (isAppEngineTask(task)) {
+        startTimes.put(task, System.currentTimeMillis());
+      }
+    }
+
+    @Override
+    public synchronized void afterExecute(Task task, TaskState state) {
+      Long startTime = startTimes.remove(task);
+      if (startTime != null && state.getDidWork()) {
+        forTask(task)
+            .recordDuration(System.currentTimeMillis() - startTime, state.getFailure() != null);
+      }
+    }
+  }
+
+  /** Metrics of a single task, this is also the serialized form kept in the report history. */
+  public static class TaskMetrics {
+    private String path;
+    private long durationMillis;
+    private boolean failed;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private int processCount;
+    private long processWallMillis;
+    private long processCpuMillis;
+    private long bytesStaged;
+
+    private TaskMetrics(String path) {
+      this.path = path;
+    }
+
+    // used when reading the report history
+    private TaskMetrics() {}
+
+    /** Start timing the phase {@code name}, the phase ends when the returned value is closed. */
+    public Phase startPhase(String name) {
+      long start = System.currentTimeMillis();
+      return () -> recordPhase(name, System.currentTimeMillis() - start);
+    }
+
+    synchronized void recordDuration(long millis, boolean failed) {
+      this.durationMillis = millis;
+      this.failed = failed;
+    }
+
+    synchronized void recordPhase(String name, long millis) {
+      phases.merge(name, millis, Long::sum);
+    }
+
+    synchronized void recordProcess(long wallMillis, long cpuMillis) {
+      processCount++;
+      processWallMillis += wallMillis;
+      processCpuMillis += cpuMillis;
+    }
+
+    /** Add the size of all files under {@code directory} to the bytes staged by the task. */
+    public void recordBytesStaged(File directory) {
+      if (!directory.isDirectory()) {
+        return;
+      }
+      try (Stream<Path> files = Files.walk(directory.toPath())) {
+        long bytes =
+            files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        synchronized (this) {
+          bytesStaged += bytes;
+        }
+      } catch (IOException ex) {
+        // metrics are best effort, never fail the build over them
+      }
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public long getDurationMillis() {
+      return durationMillis;
+    }
+
+    public boolean isFailed() {
+      return failed;
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+      return new LinkedHashMap<>(phases);
+    }
+
+    public int getProcessCount() {
+      return processCount;
+    }
+
+    public long getProcessWallMillis() {
+      return processWallMillis;
+    }
+
+    public long getProcessCpuMillis() {
+      return processCpuMillis;
+    }
+
+    public long getBytesStaged() {
+      return bytesStaged;
+    }
+  }
+
+  /** A timed phase of a task. */
+  public interface Phase extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
@@ -32,6 +32,9 @@ public class CloudSdkLoginTask extends GcloudTask {
   /** Login by delegating to gcloud auth login. */
   @TaskAction
   public void login() throws AppEngineException {
-    gcloud.newAuth(CloudSdkOperations.getDefaultHandler(getLogger())).login();
+    // the interactive login flow is not bound by the process timeout
+    gcloud
+        .newAuth(CloudSdkOperations.track(this, CloudSdkOperations.getDefaultHandler(getLogger())))
+        .login();
   }
 }
@@ -27,6 +27,9 @@ import com.google.cloud.tools.appengine.operations.cloudsdk.process.NonZeroExcep
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
 import com.google.cloud.tools.gradle.appengine.util.NullSafe;
 import java.io.File;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.invocation.Gradle;
 import org.gradle.api.logging.Logger;
 
 /** Cloud Sdk Operations with all common configuration. */
@@ -88,4 +91,43 @@ public class CloudSdkOperations {
         .setExitListener(new NonZeroExceptionExitListener())
         .build();
   }
+
+  /**
+   * Create and return a new default configured process handler for {@code task}, tracked by the
+   * build's {@link ProcessRegistry} and bounded by the {@code tools.processTimeout} setting.
+   */
+  public static ProcessHandler getDefaultHandler(Task task) {
+    return track(task, getDefaultHandler(task.getLogger()))
+        .setTimeout(getProcessTimeout(task.getProject()));
+  }
+
+  /**
+   * Wrap {@code processHandler} so the process it handles is tracked by the build, and its run time
+   * is recorded in the metrics of {@code task}.
+   */
+  public static TrackedProcessHandler track(Task task, ProcessHandler processHandler) {
+    Gradle gradle = task.getProject().getGradle();
+    TrackedProcessHandler trackedHandler =
+        new TrackedProcessHandler(ProcessRegistry.forBuild(gradle), task.getPath(), processHandler)
+            .setTaskMetrics(BuildMetrics.of(task));
+    ToolsExtension tools = getTools(task.getProject());
+    if (tools != null && tools.getTraceFile() != null) {
+      trackedHandler.setTrace(ProcessTracer.forBuild(gradle), tools.getTraceFile());
+    }
+    return trackedHandler;
+  }
+
+  private static Integer getProcessTimeout(Project project) {
+    ToolsExtension tools = getTools(project);
+    return tools == null ? null : tools.getProcessTimeout();
+  }
+
+  private static ToolsExtension getTools(Project project) {
+    Object appengine =
+        project.getExtensions().findByName(AppEngineCorePluginConfiguration.APPENGINE_EXTENSION);
+    if (appengine instanceof AppEngineCoreExtensionProperties) {
+      return ((AppEngineCoreExtensionProperties) appengine).getTools();
+    }
+    return null;
+  }
 }
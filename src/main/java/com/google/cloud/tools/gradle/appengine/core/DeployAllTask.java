@@ -68,7 +68,7 @@ public class DeployAllTask extends GcloudTask {
     }
 
     // Deploy
-    Deployment deploy = gcloud.newDeployment(CloudSdkOperations.getDefaultHandler(getLogger()));
+    Deployment deploy = gcloud.newDeployment(CloudSdkOperations.getDefaultHandler(this));
 
     DeployConfiguration deployConfig = deployExtension.toDeployConfiguration(deployables);
     deploy.deploy(deployConfig);
@@ -39,7 +39,7 @@ public class DeployCronTask extends GcloudTask {
   @TaskAction
   public void deployAction() throws AppEngineException {
     gcloud
-        .newDeployment(CloudSdkOperations.getDefaultHandler(getLogger()))
+        .newDeployment(CloudSdkOperations.getDefaultHandler(this))
         .deployCron(deployExtension.toDeployProjectConfigurationConfiguration());
   }
 }
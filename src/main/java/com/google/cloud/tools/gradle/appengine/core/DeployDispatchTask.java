@@ -40,7 +40,7 @@ public class DeployDispatchTask extends GcloudTask {
   @TaskAction
   public void deployAction() throws AppEngineException {
     gcloud
-        .newDeployment(CloudSdkOperations.getDefaultHandler(getLogger()))
+        .newDeployment(CloudSdkOperations.getDefaultHandler(this))
         .deployDispatch(deployExtension.toDeployProjectConfigurationConfiguration());
   }
 }
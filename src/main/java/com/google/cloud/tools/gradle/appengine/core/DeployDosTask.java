@@ -39,7 +39,7 @@ public class DeployDosTask extends GcloudTask {
   @TaskAction
   public void deployAction() throws AppEngineException {
     gcloud
-        .newDeployment(CloudSdkOperations.getDefaultHandler(getLogger()))
+        .newDeployment(CloudSdkOperations.getDefaultHandler(this))
         .deployDos(deployExtension.toDeployProjectConfigurationConfiguration());
   }
 }
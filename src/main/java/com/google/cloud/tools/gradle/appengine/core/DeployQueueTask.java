@@ -39,7 +39,7 @@ public class DeployQueueTask extends GcloudTask {
   @TaskAction
   public void deployAction() throws AppEngineException {
     gcloud
-        .newDeployment(CloudSdkOperations.getDefaultHandler(getLogger()))
+        .newDeployment(CloudSdkOperations.getDefaultHandler(this))
         .deployQueue(deployExtension.toDeployProjectConfigurationConfiguration());
   }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.cloud.tools.gradle.appengine.core.BuildMetrics.TaskMetrics;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.escape.Escaper;
+import com.google.common.html.HtmlEscapers;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Report the timings of the App Engine tasks that ran in this build, keep them in a history of
+ * previous runs and flag the tasks and phases that got slower than usual.
+ */
+public class PerfReportTask extends DefaultTask {
+
+  // differences below this are noise, whatever the relative change
+  private static final long MIN_REGRESSION_MILLIS = 500;
+
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+  private File reportDirectory;
+  private int historySize = 20;
+  private double regressionThreshold = 0.25;
+  private boolean historyInGradleUserHome;
+
+  public PerfReportTask() {
+    // force it to always run (required since we use OutputDirectory)
+    this.getOutputs().upToDateWhen(task -> false);
+  }
+
+  @OutputDirectory
+  public File getReportDirectory() {
+    return reportDirectory;
+  }
+
+  public void setReportDirectory(Object reportDirectory) {
+    this.reportDirectory = getProject().file(reportDirectory);
+  }
+
+  /** Number of previous runs to keep and compare against. */
+  @Input
+  public int getHistorySize() {
+    return historySize;
+  }
+
+  public void setHistorySize(int historySize) {
+    this.historySize = historySize;
+  }
+
+  /** Relative slowdown against the median of previous runs reported as a regression. */
+  @Input
+  public double getRegressionThreshold() {
+    return regressionThreshold;
+  }
+
+  public void setRegressionThreshold(double regressionThreshold) {
+    this.regressionThreshold = regressionThreshold;
+  }
+
+  /** Keep the history in the Gradle user home, so it survives {@code clean}. */
+  @Input
+  public boolean getHistoryInGradleUserHome() {
+    return historyInGradleUserHome;
+  }
+
+  public void setHistoryInGradleUserHome(boolean historyInGradleUserHome) {
+    this.historyInGradleUserHome = historyInGradleUserHome;
+  }
+
+  @Internal
+  File getHistoryFile() {
+    if (historyInGradleUserHome) {
+      String projectKey =
+          (getProject().getRootProject().getName() + getProject().getPath()).replace(':', '_');
+      return new File(
+          getProject().getGradle().getGradleUserHomeDir(),
+          "appengine-perf/" + projectKey + "/history.json");
+    }
+    return new File(getProject().getBuildDir(), "appengine-perf/history.json");
+  }
+
+  /** Task entrypoint : write the report and update the history. */
+  @TaskAction
+  public void reportAction() throws IOException {
+    List<TaskMetrics> tasks =
+        BuildMetrics.forBuild(getProject().getGradle()).getTaskMetrics().stream()
+            .filter(metrics -> !metrics.getPath().equals(getPath()))
+            .collect(Collectors.toList());
+
+    File historyFile = getHistoryFile();
+    History history = readHistory(historyFile);
+    Run run = new Run(Instant.now().toString(), tasks);
+    List<Regression> regressions = findRegressions(run, history.runs, regressionThreshold);
+    int previousRuns = history.runs.size();
+
+    if (!tasks.isEmpty()) {
+      history.runs.add(run);
+      while (history.runs.size() > Math.max(historySize, 1)) {
+        history.runs.remove(0);
+      }
+      Files.createDirectories(historyFile.getParentFile().toPath());
+      try (Writer writer = Files.newBufferedWriter(historyFile.toPath(), StandardCharsets.UTF_8)) {
+        GSON.toJson(history, writer);
+      }
+    }
+
+    Report report = new Report(run, regressions, previousRuns);
+    File jsonReport = new File(reportDirectory, "report.json");
+    try (Writer writer = Files.newBufferedWriter(jsonReport.toPath(), StandardCharsets.UTF_8)) {
+      GSON.toJson(report, writer);
+    }
+    File htmlReport = new File(reportDirectory, "report.html");
+    Files.write(htmlReport.toPath(), renderHtml(report).getBytes(StandardCharsets.UTF_8));
+
+    if (tasks.isEmpty()) {
+      getLogger().lifecycle("No App Engine tasks ran in this build, nothing to report.");
+    }
+    for (Regression regression : regressions) {
+      getLogger().warn("Performance regression: " + regression);
+    }
+    getLogger().lifecycle("App Engine performance report written to : " + htmlReport);
+  }
+
+  private History readHistory(File historyFile) {
+    if (!historyFile.isFile()) {
+      return new History();
+    }
+    try (Reader reader = Files.newBufferedReader(historyFile.toPath(), StandardCharsets.UTF_8)) {
+      History history = GSON.fromJson(reader, History.class);
+      return history == null || history.runs == null ? new History() : history;
+    } catch (IOException | JsonParseException ex) {
+      getLogger().warn("Ignoring unreadable performance history " + historyFile, ex);
+      return new History();
+    }
+  }
+
+  /**
+   * Compare each metric of {@code current} to its median over {@code previous} runs, and return
+   * those that got slower by more than {@code threshold} (0.25 = 25%).
+   */
+  @VisibleForTesting
+  static List<Regression> findRegressions(Run current, List<Run> previous, double threshold) {
+    List<Regression> regressions = new ArrayList<>();
+    for (TaskMetrics task : current.tasks) {
+      if (task.isFailed()) {
+        continue;
+      }
+      for (Map.Entry<String, Long> metric : timings(task).entrySet()) {
+        List<Long> baseline = new ArrayList<>();
+        for (Run run : previous) {
+          for (TaskMetrics previousTask : run.tasks) {
+            if (previousTask.getPath().equals(task.getPath()) && !previousTask.isFailed()) {
+              Long value = timings(previousTask).get(metric.getKey());
+              if (value != null) {
+                baseline.add(value);
+              }
+            }
+          }
+        }
+        if (baseline.isEmpty()) {
+          continue;
+        }
+        long median = median(baseline);
+        long value = metric.getValue();
+        if (value - median >= MIN_REGRESSION_MILLIS && value > median * (1 + threshold)) {
+          regressions.add(new Regression(task.getPath(), metric.getKey(), median, value));
+        }
+      }
+    }
+    return regressions;
+  }
+
+  private static Map<String, Long> timings(TaskMetrics task) {
+    Map<String, Long> timings = new LinkedHashMap<>();
+    timings.put("duration", task.getDurationMillis());
+    task.getPhases().forEach((phase, millis) -> timings.put("phase " + phase, millis));
+    if (task.getProcessCount() > 0) {
+      timings.put("process wall time", task.getProcessWallMillis());
+      timings.put("process cpu time", task.getProcessCpuMillis());
+    }
+    return timings;
+  }
+
+  private static long median(List<Long> values) {
+    List<Long> sorted = values.stream().sorted().collect(Collectors.toList());
+    int middle = sorted.size() / 2;
+    return sorted.size() % 2 == 1
+        ? sorted.get(middle)
+        : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+  }
+
+  @VisibleForTesting
+  static String renderHtml(Report report) {
+    Escaper html = HtmlEscapers.htmlEscaper();
+    StringBuilder result = new StringBuilder();
+    result
+        .append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n")
+        .append("<title>App Engine performance report</title>\n")
+        .append("<style>table{border-collapse:collapse}td,th{border:1px solid #ccc;")
+        .append("padding:4px 8px;text-align:right}td:first-child{text-align:left}")
+        .append(".regression{background:#fdd}</style>\n</head>\n<body>\n")
+        .append("<h1>App Engine performance report</h1>\n")
+        .append("<p>")
+        .append(html.escape(report.run.startTime))
+        .append(", compared with ")
+        .append(report.previousRuns)
+        .append(" previous runs.</p>\n");
+
+    result.append("<h2>Regressions</h2>\n");
+    if (report.regressions.isEmpty()) {
+      result.append("<p>None.</p>\n");
+    } else {
+      result.append("<table>\n<tr><th>Task</th><th>Metric</th><th>Median (ms)</th>");
+      result.append("<th>This run (ms)</th></tr>\n");
+      for (Regression regression : report.regressions) {
+        result
+            .append("<tr class=\"regression\"><td>")
+            .append(html.escape(regression.task))
+            .append("</td><td>")
+            .append(html.escape(regression.metric))
+            .append("</td><td>")
+            .append(regression.baselineMillis)
+            .append("</td><td>")
+            .append(regression.currentMillis)
+            .append("</td></tr>\n");
+      }
+      result.append("</table>\n");
+    }
+
+    result.append("<h2>Tasks</h2>\n<table>\n<tr><th>Task</th><th>Duration (ms)</th>");
+    result.append("<th>Phases (ms)</th><th>Processes</th><th>Process wall (ms)</th>");
+    result.append("<th>Process cpu (ms)</th><th>Bytes staged</th></tr>\n");
+    for (TaskMetrics task : report.run.tasks) {
+      String phases =
+          task.getPhases().entrySet().stream()
+              .map(phase -> phase.getKey() + ": " + phase.getValue())
+              .collect(Collectors.joining(", "));
+      result
+          .append("<tr><td>")
+          .append(html.escape(task.getPath()))
+          .append(task.isFailed() ? " (failed)" : "")
+          .append("</td><td>")
+          .append(task.getDurationMillis())
+          .append("</td><td>")
+          .append(html.escape(phases))
+          .append("</td><td>")
+          .append(task.getProcessCount())
+          .append("</td><td>")
+          .append(task.getProcessWallMillis())
+          .append("</td><td>")
+          .append(task.getProcessCpuMillis())
+          .append("</td><td>")
+          .append(task.getBytesStaged())
+          .append("</td></tr>\n");
+    }
+    result.append("</table>\n</body>\n</html>\n");
+    return result.toString();
+  }
+
+  /** History of previous runs, as stored on disk. */
+  private static class History {
+    private List<Run> runs = new ArrayList<>();
+  }
+
+  /** The metrics of one build. */
+  @VisibleForTesting
+  static class Run {
+    private final String startTime;
+    private final List<TaskMetrics> tasks;
+
+    Run(String startTime, List<TaskMetrics> tasks) {
+      this.startTime = startTime;
+      this.tasks = tasks;
+    }
+  }
+
+  /** A metric that got slower than its median over previous runs. */
+  @VisibleForTesting
+  static class Regression {
+    private final String task;
+    private final String metric;
+    private final long baselineMillis;
+    private final long currentMillis;
+
+    Regression(String task, String metric, long baselineMillis, long currentMillis) {
+      this.task = task;
+      this.metric = metric;
+      this.baselineMillis = baselineMillis;
+      this.currentMillis = currentMillis;
+    }
+
+    @Override
+    public String toString() {
+      return task + " " + metric + " took " + currentMillis + "ms, median is " + baselineMillis
+          + "ms";
+    }
+  }
+
+  /** Content of the json report. */
+  @VisibleForTesting
+  static class Report {
+    private final Run run;
+    private final List<Regression> regressions;
+    // the runs of the history the regressions were looked for in
+    private final int previousRuns;
+
+    Report(Run run, List<Regression> regressions, int previousRuns) {
+      this.run = run;
+      this.regressions = regressions;
+      this.previousRuns = previousRuns;
+    }
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build scoped registry of every process the plugin starts (gcloud, appcfg and the dev server).
+ * Processes are killed along with their children when the build finishes, failed or cancelled, or
+ * when the daemon exits, and the threads, streams and listeners attached to them are released, so
+ * nothing piles up in a long lived daemon.
+ */
+public abstract class ProcessRegistry
+    implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+  static final String SERVICE_NAME = "appengineProcesses";
+
+  private final Logger logger = Logging.getLogger(ProcessRegistry.class);
+  private final ThreadGroup threadGroup;
+  private final ExecutorService executor;
+  private final Set<TrackedProcess> processes = ConcurrentHashMap.newKeySet();
+  private final Thread shutdownHook;
+  private volatile boolean closed;
+
+  /** Created by Gradle on first use in a build, and closed when the build finishes. */
+  public ProcessRegistry() {
+    // threads created by process handlers inherit the group of the thread they are created on, so
+    // running handlers on this group's threads lets us count everything they start.
+    threadGroup = new ThreadGroup("appengine-processes");
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable -> {
+          Thread thread =
+              new Thread(
+                  threadGroup, runnable, "appengine-process-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        };
+    executor = Executors.newCachedThreadPool(threadFactory);
+    shutdownHook = new Thread(this::destroyAttached, "appengine-process-shutdown");
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /** Returns the registry of the build {@code gradle} belongs to, creating it on first use. */
+  public static ProcessRegistry forBuild(Gradle gradle) {
+    return gradle
+        .getSharedServices()
+        .registerIfAbsent(SERVICE_NAME, ProcessRegistry.class, spec -> {})
+        .get();
+  }
+
+  /** Number of processes started by the plugin in this build that are still alive. */
+  public int getLiveProcessCount() {
+    return (int) processes.stream().filter(tracked -> tracked.process.isAlive()).count();
+  }
+
+  /** Estimated number of live threads reading process output or waiting on processes. */
+  public int getLiveThreadCount() {
+    return threadGroup.activeCount();
+  }
+
+  /** Descriptions of the processes that are still alive, for diagnostics. */
+  public List<String> getLiveProcessDescriptions() {
+    return processes.stream()
+        .filter(tracked -> tracked.process.isAlive())
+        .map(TrackedProcess::toString)
+        .collect(Collectors.toList());
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Start tracking {@code process}, {@code resources} are closed once it is released. The process
+   * is asked to stop and given {@code stopGraceMillis} to exit on its own before it is killed.
+   */
+  TrackedProcess register(
+      String description, Process process, List<Closeable> resources, long stopGraceMillis) {
+    TrackedProcess tracked = new TrackedProcess(description, process, resources, stopGraceMillis);
+    processes.add(tracked);
+    if (closed) {
+      // the build finished while this process was being launched
+      destroyTree(process, stopGraceMillis);
+    }
+    return tracked;
+  }
+
+  /** Run {@code action} on a registry thread, so the threads it starts are accounted for. */
+  Future<Void> submit(Callable<Void> action) {
+    return executor.submit(action);
+  }
+
+  /** Kill the process if it is still running, then close its streams and resources. */
+  void release(TrackedProcess tracked) {
+    closeQuietly(tracked.process.getOutputStream());
+    if (tracked.process.isAlive()) {
+      destroyTree(tracked.process, tracked.stopGraceMillis);
+      // unblock the threads still reading output of the killed process
+      closeQuietly(tracked.process.getInputStream());
+      closeQuietly(tracked.process.getErrorStream());
+    }
+    // output of a process that exited on its own is drained and closed by the jdk, leave it to
+    // the reader threads so the last lines are not lost.
+    tracked.resources.forEach(ProcessRegistry::closeQuietly);
+    processes.remove(tracked);
+  }
+
+  /**
+   * Leave a process running beyond the build (like the background dev server), it is released
+   * when it exits on its own.
+   */
+  void detach(TrackedProcess tracked) {
+    tracked.detached = true;
+    Thread watcher =
+        new Thread(
+            threadGroup,
+            () -> {
+              try {
+                tracked.process.waitFor();
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              release(tracked);
+            },
+            "appengine-process-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /** Release everything still attached at the end of the build. */
+  @Override
+  public void close() {
+    closed = true;
+    for (TrackedProcess tracked : ImmutableList.copyOf(processes)) {
+      if (!tracked.detached) {
+        if (tracked.process.isAlive()) {
+          logger.warn("Killing process still running at the end of the build: " + tracked);
+        }
+        release(tracked);
+      }
+    }
+    executor.shutdownNow();
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException ex) {
+      // the jvm is already shutting down and the hook takes care of the rest
+    }
+    logger.info(
+        "App Engine processes still running: "
+            + getLiveProcessCount()
+            + ", threads: "
+            + getLiveThreadCount());
+  }
+
+  private void destroyAttached() {
+    processes.stream()
+        .filter(tracked -> !tracked.detached)
+        .forEach(tracked -> destroyTree(tracked.process, tracked.stopGraceMillis));
+  }
+
+  /**
+   * Kill a process and, on java 9 and above, all of its descendants: gcloud is a shell script that
+   * forks python, and the dev server forks another jvm.
+   */
+  public static void destroyTree(Process process) {
+    destroyTree(process, 0);
+  }
+
+  /**
+   * {@link #destroyTree(Process)}, after asking the process and its descendants to stop and giving
+   * them {@code graceMillis} to exit: a JVM only runs its shutdown hooks, and dumps its flight
+   * recording, when it is not killed.
+   */
+  public static void destroyTree(Process process, long graceMillis) {
+    if (graceMillis > 0 && process.isAlive()) {
+      stopTree(process, graceMillis);
+    }
+    try {
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      Object handle = Process.class.getMethod("toHandle").invoke(process);
+      Method destroyForcibly = processHandle.getMethod("destroyForcibly");
+      List<?> descendants =
+          ((Stream<?>) processHandle.getMethod("descendants").invoke(handle))
+              .collect(Collectors.toList());
+      for (Object descendant : descendants) {
+        destroyForcibly.invoke(descendant);
+      }
+    } catch (ReflectiveOperationException ex) {
+      // java 8 has no process tree api, only the direct child can be killed
+    }
+    if (process.isAlive()) {
+      process.destroyForcibly();
+    }
+    try {
+      process.waitFor(5, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Ask {@code process} and its descendants to stop, and wait up to {@code graceMillis}. */
+  private static void stopTree(Process process, long graceMillis) {
+    long deadline = System.currentTimeMillis() + graceMillis;
+    List<?> descendants = new ArrayList<>();
+    Method isAlive = null;
+    try {
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      Object handle = Process.class.getMethod("toHandle").invoke(process);
+      Method destroy = processHandle.getMethod("destroy");
+      isAlive = processHandle.getMethod("isAlive");
+      descendants =
+          ((Stream<?>) processHandle.getMethod("descendants").invoke(handle))
+              .collect(Collectors.toList());
+      // the deepest first, the dev server jvm before the launcher that would kill it
+      for (int i = descendants.size() - 1; i >= 0; i--) {
+        destroy.invoke(descendants.get(i));
+      }
+    } catch (ReflectiveOperationException ex) {
+      // java 8 has no process tree api, only the direct child is asked to stop
+    }
+    process.destroy();
+    try {
+      process.waitFor(graceMillis, TimeUnit.MILLISECONDS);
+      for (Object descendant : descendants) {
+        while (isAlive != null
+            && (Boolean) isAlive.invoke(descendant)
+            && System.currentTimeMillis() < deadline) {
+          Thread.sleep(100);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ReflectiveOperationException ex) {
+      // the descendants left are killed
+    }
+  }
+
+  /**
+   * Cpu time used so far by a process and its live descendants, or 0 when it cannot be determined
+   * (java 8, or a process that already exited).
+   */
+  @VisibleForTesting
+  static long measureCpuMillis(Process process) {
+    try {
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      Class<?> processInfo = Class.forName("java.lang.ProcessHandle$Info");
+      Method info = processHandle.getMethod("info");
+      Method totalCpuDuration = processInfo.getMethod("totalCpuDuration");
+      Object handle = Process.class.getMethod("toHandle").invoke(process);
+      List<Object> handles = new ArrayList<>();
+      handles.add(handle);
+      ((Stream<?>) processHandle.getMethod("descendants").invoke(handle)).forEach(handles::add);
+      long cpuMillis = 0;
+      for (Object each : handles) {
+        Optional<?> cpuDuration = (Optional<?>) totalCpuDuration.invoke(info.invoke(each));
+        cpuMillis += cpuDuration.map(duration -> ((Duration) duration).toMillis()).orElse(0L);
+      }
+      return cpuMillis;
+    } catch (ReflectiveOperationException ex) {
+      return 0;
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException ex) {
+      // nothing left to do with a stream we are throwing away
+    }
+  }
+
+  /** A process started by the plugin and the resources tied to its lifetime. */
+  static class TrackedProcess {
+    private final String description;
+    private final Process process;
+    private final List<Closeable> resources;
+    private final long stopGraceMillis;
+    private final long startTime = System.currentTimeMillis();
+    private volatile boolean detached;
+    private volatile long cpuMillis;
+
+    private TrackedProcess(
+        String description, Process process, List<Closeable> resources, long stopGraceMillis) {
+      this.description = description;
+      this.process = process;
+      this.resources = new ArrayList<>(resources);
+      this.stopGraceMillis = stopGraceMillis;
+    }
+
+    /** Sample the cpu time of the process, the last sample taken before it exits is kept. */
+    void sampleCpuTime() {
+      if (process.isAlive()) {
+        cpuMillis = Math.max(cpuMillis, measureCpuMillis(process));
+      }
+    }
+
+    long getCpuMillis() {
+      return cpuMillis;
+    }
+
+    @Override
+    public String toString() {
+      return description
+          + " (running for "
+          + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startTime)
+          + "s"
+          + (detached ? ", detached" : "")
+          + ")";
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Build scoped collector of trace spans for the processes started by the plugin. Each build is
+ * appended as one line of OTLP/JSON (the format of the OpenTelemetry collector file exporter) to
+ * the configured {@code tools.traceFile}, with a root span for the build and a child span per
+ * process.
+ */
+public class ProcessTracer {
+
+  private static final Map<Gradle, ProcessTracer> tracers = new HashMap<>();
+  private static final SecureRandom random = new SecureRandom();
+
+  // flags whose value must not end up in a trace, like --access-token-file=...
+  private static final Pattern SECRET_FLAG =
+      Pattern.compile(
+          "--?[\\w-]*(token|password|passwd|secret|key|credential)[\\w-]*",
+          Pattern.CASE_INSENSITIVE);
+  // name=value pairs inside the value of other flags, like --jvm_flag=-Dapi.password=...
+  private static final Pattern SECRET_PAIR =
+      Pattern.compile(
+          "(^|[=\\s,;])([\\w.-]*(token|password|passwd|secret|key|credential)[\\w.-]*=)[^\\s,;]*",
+          Pattern.CASE_INSENSITIVE);
+  private static final String REDACTED = "<redacted>";
+
+  private static final int STATUS_OK = 1;
+  private static final int STATUS_ERROR = 2;
+  private static final int SPAN_KIND_INTERNAL = 1;
+  private static final int SPAN_KIND_CLIENT = 3;
+
+  private final String traceId = randomHex(16);
+  private final String rootSpanId = randomHex(8);
+  private final String rootSpanName;
+  private final List<Span> spans = new ArrayList<>();
+
+  @VisibleForTesting
+  ProcessTracer(String rootSpanName) {
+    this.rootSpanName = rootSpanName;
+  }
+
+  /** Returns the tracer of the build {@code gradle} belongs to, creating it on first use. */
+  public static ProcessTracer forBuild(Gradle gradle) {
+    synchronized (tracers) {
+      ProcessTracer tracer = tracers.get(gradle);
+      if (tracer == null) {
+        String tasks = String.join(" ", gradle.getStartParameter().getTaskNames());
+        ProcessTracer newTracer = new ProcessTracer("gradle " + tasks);
+        gradle.buildFinished(
+            buildResult -> {
+              synchronized (tracers) {
+                tracers.remove(gradle);
+              }
+              newTracer.export(buildResult.getFailure() == null);
+            });
+        tracers.put(gradle, newTracer);
+        tracer = newTracer;
+      }
+      return tracer;
+    }
+  }
+
+  /** Start the span of a process started by {@code task}, to be exported to {@code traceFile}. */
+  public Span startSpan(File traceFile, String task, Process process) {
+    Span span = new Span(traceFile, task, commandLine(process));
+    synchronized (spans) {
+      spans.add(span);
+    }
+    return span;
+  }
+
+  /** Append the spans of this build to their trace files. */
+  @VisibleForTesting
+  void export(boolean buildSucceeded) {
+    Map<File, List<Span>> spansByFile = new LinkedHashMap<>();
+    synchronized (spans) {
+      for (Span span : spans) {
+        spansByFile.computeIfAbsent(span.traceFile, file -> new ArrayList<>()).add(span);
+      }
+    }
+    long endTime = now();
+    spansByFile.forEach(
+        (traceFile, fileSpans) -> {
+          try {
+            Files.createDirectories(traceFile.getAbsoluteFile().getParentFile().toPath());
+            try (Writer writer =
+                Files.newBufferedWriter(
+                    traceFile.toPath(),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+              writer.write(new Gson().toJson(toOtlp(fileSpans, endTime, buildSucceeded)));
+              writer.write('\n');
+            }
+          } catch (IOException ex) {
+            // tracing is best effort, never fail the build over it
+            Logging.getLogger(ProcessTracer.class).warn("Failed to write trace " + traceFile, ex);
+          }
+        });
+  }
+
+  @VisibleForTesting
+  JsonObject toOtlp(List<Span> fileSpans, long endTime, boolean buildSucceeded) {
+    JsonArray otlpSpans = new JsonArray();
+    long startTime = endTime;
+    for (Span span : fileSpans) {
+      startTime = Math.min(startTime, span.startTime);
+      otlpSpans.add(span.toOtlp());
+    }
+    JsonObject root = new JsonObject();
+    root.addProperty("traceId", traceId);
+    root.addProperty("spanId", rootSpanId);
+    root.addProperty("name", rootSpanName);
+    root.addProperty("kind", SPAN_KIND_INTERNAL);
+    root.addProperty("startTimeUnixNano", Long.toString(startTime));
+    root.addProperty("endTimeUnixNano", Long.toString(endTime));
+    root.add("attributes", new JsonArray());
+    root.add("status", status(buildSucceeded));
+    otlpSpans.add(root);
+
+    JsonObject scope = new JsonObject();
+    scope.addProperty("name", "com.google.cloud.tools.gradle.appengine");
+    String version = getClass().getPackage().getImplementationVersion();
+    if (version != null) {
+      scope.addProperty("version", version);
+    }
+    JsonObject scopeSpans = new JsonObject();
+    scopeSpans.add("scope", scope);
+    scopeSpans.add("spans", otlpSpans);
+    JsonArray scopeSpansList = new JsonArray();
+    scopeSpansList.add(scopeSpans);
+
+    JsonArray resourceAttributes = new JsonArray();
+    resourceAttributes.add(attribute("service.name", "appengine-gradle-plugin"));
+    JsonObject resource = new JsonObject();
+    resource.add("attributes", resourceAttributes);
+    JsonObject resourceSpans = new JsonObject();
+    resourceSpans.add("resource", resource);
+    resourceSpans.add("scopeSpans", scopeSpansList);
+    JsonArray resourceSpansList = new JsonArray();
+    resourceSpansList.add(resourceSpans);
+
+    JsonObject request = new JsonObject();
+    request.add("resourceSpans", resourceSpansList);
+    return request;
+  }
+
+  /**
+   * The command line of a running process with secrets redacted, or empty when it cannot be
+   * determined (java 8, or a process that already exited).
+   */
+  private static Optional<List<String>> commandLine(Process process) {
+    try {
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      Class<?> processInfo = Class.forName("java.lang.ProcessHandle$Info");
+      Object handle = Process.class.getMethod("toHandle").invoke(process);
+      Object info = processHandle.getMethod("info").invoke(handle);
+      Optional<?> command = (Optional<?>) processInfo.getMethod("command").invoke(info);
+      Optional<?> arguments = (Optional<?>) processInfo.getMethod("arguments").invoke(info);
+      if (!command.isPresent()) {
+        return Optional.empty();
+      }
+      List<String> commandLine = new ArrayList<>();
+      commandLine.add((String) command.get());
+      for (Object argument : arguments.isPresent() ? (Object[]) arguments.get() : new Object[0]) {
+        commandLine.add((String) argument);
+      }
+      return Optional.of(redact(commandLine));
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Replace the values of flags that look like they hold secrets, and of the name=value pairs in
+   * arguments whose name looks like it does.
+   */
+  @VisibleForTesting
+  static List<String> redact(List<String> commandLine) {
+    List<String> redacted = new ArrayList<>();
+    boolean redactNext = false;
+    for (String argument : commandLine) {
+      int equals = argument.indexOf('=');
+      String flag = equals < 0 ? argument : argument.substring(0, equals);
+      if (redactNext && !argument.startsWith("-")) {
+        redacted.add(REDACTED);
+        redactNext = false;
+      } else if (SECRET_FLAG.matcher(flag).matches()) {
+        redacted.add(equals < 0 ? argument : flag + "=" + REDACTED);
+        redactNext = equals < 0;
+      } else {
+        redacted.add(SECRET_PAIR.matcher(argument).replaceAll("$1$2" + REDACTED));
+        redactNext = false;
+      }
+    }
+    return redacted;
+  }
+
+  private static JsonObject status(boolean ok) {
+    JsonObject status = new JsonObject();
+    status.addProperty("code", ok ? STATUS_OK : STATUS_ERROR);
+    return status;
+  }
+
+  private static JsonObject attribute(String key, String value) {
+    JsonObject attributeValue = new JsonObject();
+    attributeValue.addProperty("stringValue", value);
+    return attribute(key, attributeValue);
+  }
+
+  private static JsonObject attribute(String key, long value) {
+    // int64 values are strings in OTLP/JSON
+    JsonObject attributeValue = new JsonObject();
+    attributeValue.addProperty("intValue", Long.toString(value));
+    return attribute(key, attributeValue);
+  }
+
+  private static JsonObject attribute(String key, boolean value) {
+    JsonObject attributeValue = new JsonObject();
+    attributeValue.addProperty("boolValue", value);
+    return attribute(key, attributeValue);
+  }
+
+  private static JsonObject attribute(String key, JsonObject value) {
+    JsonObject attribute = new JsonObject();
+    attribute.addProperty("key", key);
+    attribute.add("value", value);
+    return attribute;
+  }
+
+  private static long now() {
+    Instant now = Instant.now();
+    return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+  }
+
+  private static String randomHex(int bytes) {
+    byte[] id = new byte[bytes];
+    random.nextBytes(id);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : id) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /** The span of a single process. */
+  public class Span {
+    private final File traceFile;
+    private final String task;
+    private final Optional<List<String>> commandLine;
+    private final String spanId = randomHex(8);
+    private final long startTime = now();
+    private long endTime;
+    private Integer exitCode;
+    private long stdoutBytes;
+    private long stderrBytes;
+    private boolean detached;
+    private boolean failed;
+
+    private Span(File traceFile, String task, Optional<List<String>> commandLine) {
+      this.traceFile = traceFile;
+      this.task = task;
+      this.commandLine = commandLine;
+    }
+
+    /**
+     * End the span.
+     *
+     * @param exitCode the exit code, null if the process is still running
+     * @param stdoutBytes bytes read from the process standard output
+     * @param stderrBytes bytes read from the process standard error
+     * @param detached true if the process was left running in the background
+     * @param failed true if the process handler failed
+     */
+    public synchronized void end(
+        Integer exitCode, long stdoutBytes, long stderrBytes, boolean detached, boolean failed) {
+      this.endTime = now();
+      this.exitCode = exitCode;
+      this.stdoutBytes = stdoutBytes;
+      this.stderrBytes = stderrBytes;
+      this.detached = detached;
+      this.failed = failed;
+    }
+
+    private synchronized JsonObject toOtlp() {
+      JsonArray attributes = new JsonArray();
+      attributes.add(attribute("appengine.task", task));
+      commandLine.ifPresent(
+          command -> {
+            String executable = new File(command.get(0)).getName();
+            attributes.add(attribute("process.executable.name", executable));
+            attributes.add(attribute("process.command_line", String.join(" ", command)));
+          });
+      if (exitCode != null) {
+        attributes.add(attribute("process.exit_code", exitCode));
+      }
+      attributes.add(attribute("appengine.process.stdout_bytes", stdoutBytes));
+      attributes.add(attribute("appengine.process.stderr_bytes", stderrBytes));
+      if (detached) {
+        attributes.add(attribute("appengine.process.detached", true));
+      }
+
+      JsonObject span = new JsonObject();
+      span.addProperty("traceId", traceId);
+      span.addProperty("spanId", spanId);
+      span.addProperty("parentSpanId", rootSpanId);
+      span.addProperty("name", task);
+      span.addProperty("kind", SPAN_KIND_CLIENT);
+      span.addProperty("startTimeUnixNano", Long.toString(startTime));
+      // a span that never ended belongs to a build that was torn down mid-process
+      span.addProperty("endTimeUnixNano", Long.toString(endTime == 0 ? now() : endTime));
+      span.add("attributes", attributes);
+      span.add("status", status(!failed && (exitCode == null || exitCode == 0) && endTime != 0));
+      return span;
+    }
+  }
+}
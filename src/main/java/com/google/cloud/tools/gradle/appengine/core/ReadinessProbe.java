@@ -0,0 +1,232 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.gradle.api.GradleException;
+
+/**
+ * Wait for a server to serve: poll a url until it answers with the expected status, backing off
+ * exponentially between attempts. Returns as soon as the server answers rather than after a fixed
+ * wait or a log line, and fails early if the server process exits.
+ */
+public class ReadinessProbe {
+
+  private static final long MAX_BACKOFF_MILLIS = 1000;
+  private static final int MAX_ATTEMPT_MILLIS = 2000;
+  // a server that is not ready may be too busy or stuck to answer jcmd
+  private static final long JCMD_TIMEOUT_MILLIS = 10_000;
+
+  private final URL url;
+  private final int expectedStatus;
+  private final long initialBackoffMillis;
+  private final long timeoutMillis;
+  private final long maxBackoffMillis;
+  private int attempts;
+
+  /**
+   * Constructor.
+   *
+   * @param url the url to poll
+   * @param expectedStatus the status of a ready server
+   * @param initialBackoffMillis the wait after the first failed attempt, doubled after each one
+   * @param timeoutMillis how long to wait for the server
+   */
+  public ReadinessProbe(
+      URL url, int expectedStatus, long initialBackoffMillis, long timeoutMillis) {
+    this(url, expectedStatus, initialBackoffMillis, timeoutMillis, MAX_BACKOFF_MILLIS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param url the url to poll
+   * @param expectedStatus the status of a ready server
+   * @param initialBackoffMillis the wait after the first failed attempt, doubled after each one
+   * @param timeoutMillis how long to wait for the server
+   * @param maxBackoffMillis the longest wait between attempts, bounds the error on the time to
+   *     ready
+   */
+  public ReadinessProbe(
+      URL url,
+      int expectedStatus,
+      long initialBackoffMillis,
+      long timeoutMillis,
+      long maxBackoffMillis) {
+    this.url = url;
+    this.expectedStatus = expectedStatus;
+    this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+    this.timeoutMillis = timeoutMillis;
+    this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+  }
+
+  /**
+   * Poll until the server is ready, returns false if it isn't within the timeout.
+   *
+   * @param process the server, the wait is over if it exits
+   */
+  public boolean await(Process process) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    long backoff = initialBackoffMillis;
+    while (true) {
+      if (!process.isAlive()) {
+        throw new GradleException(
+            "Server exited with code " + process.exitValue() + " before serving " + url);
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      attempts++;
+      if (probe((int) Math.min(remaining, MAX_ATTEMPT_MILLIS))) {
+        return true;
+      }
+      Thread.sleep(Math.min(backoff, Math.max(1, deadline - System.currentTimeMillis())));
+      backoff = Math.min(backoff * 2, maxBackoffMillis);
+    }
+  }
+
+  /** The number of requests sent so far. */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  private boolean probe(int timeout) {
+    HttpURLConnection connection = null;
+    try {
+      connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(timeout);
+      connection.setReadTimeout(timeout);
+      connection.setInstanceFollowRedirects(false);
+      return connection.getResponseCode() == expectedStatus;
+    } catch (IOException ex) {
+      // not listening yet
+      return false;
+    } finally {
+      if (connection != null) {
+        connection.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Write the thread dumps of the java processes among {@code process} and its descendants to
+   * {@code file}, with the jcmd of the build's jdk. Best effort: on java 8 only {@code process}
+   * itself is known, and without jcmd only the reason is written.
+   */
+  public static void dumpThreads(Process process, File file) throws IOException {
+    StringBuilder dump = new StringBuilder();
+    List<Long> pids = findJavaProcessIds(process);
+    File jcmd = findJcmd();
+    if (pids.isEmpty()) {
+      dump.append("No java process found, thread dumps need java 9 or later\n");
+    } else if (jcmd == null) {
+      dump.append("jcmd was not found in ").append(System.getProperty("java.home")).append('\n');
+    } else {
+      for (long pid : pids) {
+        dump.append("==== ").append(pid).append('\n');
+        dump.append(
+            run(
+                new ProcessBuilder(jcmd.getPath(), Long.toString(pid), "Thread.print"),
+                JCMD_TIMEOUT_MILLIS));
+      }
+    }
+    Files.write(file.toPath(), dump.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Run {@code command} and return its output, or what it wrote before it was killed for not
+   * exiting within {@code timeoutMillis}. The output goes to a file rather than a pipe, reading a
+   * pipe would block for as long as the command hangs.
+   */
+  @VisibleForTesting
+  static String run(ProcessBuilder command, long timeoutMillis) throws IOException {
+    File output = File.createTempFile("jcmd", ".txt");
+    try {
+      Process process = command.redirectErrorStream(true).redirectOutput(output).start();
+      boolean exited = false;
+      try {
+        exited = process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } finally {
+        process.destroyForcibly();
+      }
+      String result = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+      return exited
+          ? result
+          : result + command.command().get(0) + " did not exit within " + timeoutMillis + " ms\n";
+    } finally {
+      Files.deleteIfExists(output.toPath());
+    }
+  }
+
+  /** The pids of the java processes among {@code process} and its descendants. */
+  @VisibleForTesting
+  static List<Long> findJavaProcessIds(Process process) {
+    try {
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      Class<?> processInfo = Class.forName("java.lang.ProcessHandle$Info");
+      Method pid = processHandle.getMethod("pid");
+      Method info = processHandle.getMethod("info");
+      Method command = processInfo.getMethod("command");
+      Object handle = Process.class.getMethod("toHandle").invoke(process);
+      List<Object> handles = new ArrayList<>();
+      handles.add(handle);
+      ((Stream<?>) processHandle.getMethod("descendants").invoke(handle)).forEach(handles::add);
+      List<Long> pids = new ArrayList<>();
+      for (Object each : handles) {
+        Optional<?> executable = (Optional<?>) command.invoke(info.invoke(each));
+        if (executable.map(path -> isJava(path.toString())).orElse(false)) {
+          pids.add((Long) pid.invoke(each));
+        }
+      }
+      return pids;
+    } catch (ReflectiveOperationException ex) {
+      return new ArrayList<>();
+    }
+  }
+
+  private static boolean isJava(String executable) {
+    String name = new File(executable).getName();
+    return name.equals("java") || name.equals("java.exe");
+  }
+
+  private static File findJcmd() {
+    File javaHome = new File(System.getProperty("java.home"));
+    // java 8 runs from the jre directory of the jdk
+    return Stream.of(javaHome, javaHome.getParentFile())
+        .filter(home -> home != null)
+        .flatMap(home -> Stream.of(new File(home, "bin/jcmd"), new File(home, "bin/jcmd.exe")))
+        .filter(File::isFile)
+        .findFirst()
+        .orElse(null);
+  }
+}
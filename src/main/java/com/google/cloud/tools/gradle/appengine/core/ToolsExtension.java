@@ -29,6 +29,8 @@ public class ToolsExtension {
   private String cloudSdkVersion;
   private File cloudSdkServiceAccountFile;
   private String verbosity;
+  private Integer processTimeout;
+  private File traceFile;
 
   public ToolsExtension(Project project) {
     this.project = project;
@@ -65,4 +67,20 @@ public class ToolsExtension {
   public void setVerbosity(String verbosity) {
     this.verbosity = verbosity;
   }
+
+  public Integer getProcessTimeout() {
+    return processTimeout;
+  }
+
+  public void setProcessTimeout(Integer processTimeout) {
+    this.processTimeout = processTimeout;
+  }
+
+  public File getTraceFile() {
+    return traceFile;
+  }
+
+  public void setTraceFile(Object traceFile) {
+    this.traceFile = project.file(traceFile);
+  }
 }
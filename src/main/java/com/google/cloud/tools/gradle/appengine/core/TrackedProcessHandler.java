@@ -0,0 +1,241 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.common.base.Throwables;
+import com.google.common.io.CountingInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Process handler that registers its process with the build's {@link ProcessRegistry} before
+ * handing it to {@code delegate}, and releases it when the delegate is done, the timeout expires or
+ * the build finishes under it.
+ */
+public class TrackedProcessHandler implements ProcessHandler {
+
+  private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+  private final ProcessRegistry registry;
+  private final String description;
+  private final ProcessHandler delegate;
+  private final List<Closeable> resources = new ArrayList<>();
+  private Integer timeout;
+  private boolean detached;
+  private long stopGraceMillis;
+  private BuildMetrics.TaskMetrics taskMetrics;
+  private ProcessTracer tracer;
+  private File traceFile;
+  private volatile Process process;
+
+  /**
+   * Constructor.
+   *
+   * @param registry the registry of the current build
+   * @param description describes the process in diagnostics, usually the task path
+   * @param delegate the handler doing the actual work
+   */
+  public TrackedProcessHandler(
+      ProcessRegistry registry, String description, ProcessHandler delegate) {
+    this.registry = registry;
+    this.description = description;
+    this.delegate = delegate;
+  }
+
+  /** Kill the process if it is still being handled after {@code timeout} seconds. */
+  public TrackedProcessHandler setTimeout(Integer timeout) {
+    this.timeout = timeout;
+    return this;
+  }
+
+  /** Leave the process running after the delegate returns, for background processes. */
+  public TrackedProcessHandler setDetached(boolean detached) {
+    this.detached = detached;
+    return this;
+  }
+
+  /**
+   * Ask the process to stop, and give it {@code stopGraceMillis} to exit on its own, before it is
+   * killed on cancellation, timeout or at the end of the build.
+   */
+  public TrackedProcessHandler setStopGracePeriod(long stopGraceMillis) {
+    this.stopGraceMillis = stopGraceMillis;
+    return this;
+  }
+
+  /** Close {@code resource} (like an output file listener) once the process is released. */
+  public TrackedProcessHandler addResource(Closeable resource) {
+    resources.add(resource);
+    return this;
+  }
+
+  /** Record the wall and cpu time of the process in {@code taskMetrics}. */
+  public TrackedProcessHandler setTaskMetrics(BuildMetrics.TaskMetrics taskMetrics) {
+    this.taskMetrics = taskMetrics;
+    return this;
+  }
+
+  /** Record a trace span for the process with {@code tracer}, written to {@code traceFile}. */
+  public TrackedProcessHandler setTrace(ProcessTracer tracer, File traceFile) {
+    this.tracer = tracer;
+    this.traceFile = traceFile;
+    return this;
+  }
+
+  /** The process handed to this handler, null until it's started. */
+  public Process getProcess() {
+    return process;
+  }
+
+  @Override
+  public void handleProcess(Process process) throws ProcessHandlerException {
+    this.process = process;
+    ProcessRegistry.TrackedProcess tracked =
+        registry.register(description, process, resources, stopGraceMillis);
+    ProcessTracer.Span span =
+        tracer == null ? null : tracer.startSpan(traceFile, description, process);
+    CountingProcess countingProcess = new CountingProcess(process);
+    long startTime = System.currentTimeMillis();
+    boolean handled = false;
+    Future<Void> result =
+        registry.submit(
+            () -> {
+              delegate.handleProcess(countingProcess);
+              return null;
+            });
+    try {
+      // poll so the cpu time of the process can be sampled while it runs
+      while (!handled) {
+        try {
+          result.get(SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          handled = true;
+        } catch (TimeoutException ex) {
+          tracked.sampleCpuTime();
+          long elapsed = System.currentTimeMillis() - startTime;
+          if (timeout != null && timeout > 0 && elapsed >= TimeUnit.SECONDS.toMillis(timeout)) {
+            throw new ProcessHandlerException(
+                description + " did not complete within " + timeout + " seconds");
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ProcessHandlerException(description + " was interrupted", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (registry.isClosed()) {
+        // the delegate was interrupted by the end of the build
+        throw new ProcessHandlerException(description + " was cancelled", cause);
+      }
+      Throwables.throwIfInstanceOf(cause, ProcessHandlerException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new ProcessHandlerException(cause);
+    } finally {
+      if (taskMetrics != null) {
+        taskMetrics.recordProcess(System.currentTimeMillis() - startTime, tracked.getCpuMillis());
+      }
+      boolean detach = handled && detached && !registry.isClosed();
+      if (detach) {
+        registry.detach(tracked);
+      } else {
+        registry.release(tracked);
+        result.cancel(true);
+      }
+      if (span != null) {
+        span.end(
+            process.isAlive() ? null : process.exitValue(),
+            countingProcess.stdout.getCount(),
+            countingProcess.stderr.getCount(),
+            detach,
+            !handled);
+      }
+    }
+    if (registry.isClosed()) {
+      throw new ProcessHandlerException(description + " was cancelled");
+    }
+  }
+
+  /** Counts the output read from a process by the delegate handler. */
+  private static class CountingProcess extends Process {
+    private final Process process;
+    private final CountingInputStream stdout;
+    private final CountingInputStream stderr;
+
+    private CountingProcess(Process process) {
+      this.process = process;
+      this.stdout = new CountingInputStream(process.getInputStream());
+      this.stderr = new CountingInputStream(process.getErrorStream());
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return process.getOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return stderr;
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      return process.waitFor();
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+      return process.waitFor(timeout, unit);
+    }
+
+    @Override
+    public int exitValue() {
+      return process.exitValue();
+    }
+
+    @Override
+    public boolean isAlive() {
+      return process.isAlive();
+    }
+
+    @Override
+    public void destroy() {
+      process.destroy();
+    }
+
+    @Override
+    public Process destroyForcibly() {
+      process.destroyForcibly();
+      return this;
+    }
+  }
+}
@@ -17,8 +17,6 @@
 
 package com.google.cloud.tools.gradle.appengine.sourcecontext;
 
-import com.google.cloud.tools.appengine.configuration.GenRepoInfoFileConfiguration;
-import com.google.cloud.tools.gradle.appengine.util.NullSafe;
 import java.io.File;
 import org.gradle.api.Project;
 import org.gradle.api.tasks.InputDirectory;
@@ -47,6 +45,7 @@ public class GenRepoInfoFileExtension {
     this.outputDirectory = outputDirectory;
   }
 
+  /** A directory in the git repository to describe. */
   @InputDirectory
   public File getSourceDirectory() {
     return sourceDirectory;
@@ -55,11 +54,4 @@ public class GenRepoInfoFileExtension {
   public void setSourceDirectory(Object sourceDirectory) {
     this.sourceDirectory = project.file(sourceDirectory);
   }
-
-  GenRepoInfoFileConfiguration toGenRepoInfoFileConfiguration() {
-    return GenRepoInfoFileConfiguration.builder()
-        .outputDirectory(NullSafe.convert(outputDirectory, File::toPath))
-        .sourceDirectory(NullSafe.convert(outputDirectory, File::toPath))
-        .build();
-  }
 }
@@ -17,20 +17,46 @@
 
 package com.google.cloud.tools.gradle.appengine.sourcecontext;
 
-import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.operations.Gcloud;
-import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 
-/** Generate source context information. */
+/**
+ * Generate source context information: the {@code source-context.json} that gcloud's {@code
+ * gen-repo-info-file} writes, from the git repository of the source directory read in the build.
+ * The task is keyed on the commit checked out and the url of the remote only, a build on the same
+ * commit is up to date or comes from the build cache.
+ */
+@CacheableTask
 public class GenRepoInfoFileTask extends DefaultTask {
 
+  static final String SOURCE_CONTEXT_FILE = "source-context.json";
+  private static final Gson GSON =
+      new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+  private static final Pattern CLOUD_REPO_URL =
+      Pattern.compile("https://source\\.developers\\.google\\.com/p/([^/]+)/r/([^/]+)/?");
+  private static final Pattern URL_CREDENTIALS = Pattern.compile("^(https?://)[^/@]+@");
+
   private GenRepoInfoFileExtension configuration;
-  private Gcloud gcloud;
 
-  @Nested
+  @Internal
   public GenRepoInfoFileExtension getConfiguration() {
     return configuration;
   }
@@ -39,15 +65,85 @@ public class GenRepoInfoFileTask extends DefaultTask {
     this.configuration = configuration;
   }
 
-  public void setGcloud(Gcloud gcloud) {
-    this.gcloud = gcloud;
+  /**
+   * Does nothing, the source context is no longer generated by gcloud.
+   *
+   * @deprecated the task reads the git repository itself, to be removed in the next release
+   */
+  @Deprecated
+  public void setGcloud(Gcloud gcloud) {}
+
+  /** The commit checked out in the repository of the source directory. */
+  @Input
+  @Optional
+  public String getRevisionId() throws IOException {
+    GitRepository repository = GitRepository.find(configuration.getSourceDirectory());
+    return repository == null ? null : repository.resolveHead();
+  }
+
+  /** The url of the remote the commit comes from, without credentials. */
+  @Input
+  @Optional
+  public String getRemoteUrl() throws IOException {
+    GitRepository repository = GitRepository.find(configuration.getSourceDirectory());
+    return repository == null ? null : selectRemoteUrl(repository.getRemoteUrls());
+  }
+
+  @OutputDirectory
+  public File getOutputDirectory() {
+    return configuration.getOutputDirectory();
   }
 
   /** Task entrypoint : generate source context file. */
   @TaskAction
-  public void generateRepositoryInfoFile() throws AppEngineException {
-    gcloud
-        .newGenRepoInfo(CloudSdkOperations.getDefaultHandler(getLogger()))
-        .generate(configuration.toGenRepoInfoFileConfiguration());
+  public void generateRepositoryInfoFile() throws IOException {
+    Path sourceContext = getOutputDirectory().toPath().resolve(SOURCE_CONTEXT_FILE);
+    Files.deleteIfExists(sourceContext);
+    String revisionId = getRevisionId();
+    String remoteUrl = getRemoteUrl();
+    if (revisionId == null || remoteUrl == null) {
+      getLogger()
+          .warn(
+              "Not generating source context, {} has no git {}",
+              configuration.getSourceDirectory(),
+              revisionId == null ? "commit checked out" : "remote");
+      return;
+    }
+    Files.write(
+        sourceContext, toSourceContext(remoteUrl, revisionId).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** The remote gcloud picks: origin, or else the first one. */
+  @VisibleForTesting
+  static String selectRemoteUrl(Map<String, String> remoteUrls) {
+    String url = remoteUrls.get("origin");
+    if (url == null && !remoteUrls.isEmpty()) {
+      url = remoteUrls.values().iterator().next();
+    }
+    return url == null ? null : URL_CREDENTIALS.matcher(url).replaceFirst("$1");
+  }
+
+  /** The source context of {@code revisionId} in the repository at {@code remoteUrl}. */
+  @VisibleForTesting
+  static String toSourceContext(String remoteUrl, String revisionId) {
+    JsonObject context = new JsonObject();
+    Matcher cloudRepo = CLOUD_REPO_URL.matcher(remoteUrl);
+    if (cloudRepo.matches()) {
+      JsonObject projectRepoId = new JsonObject();
+      projectRepoId.addProperty("projectId", cloudRepo.group(1));
+      projectRepoId.addProperty("repoName", cloudRepo.group(2));
+      JsonObject repoId = new JsonObject();
+      repoId.add("projectRepoId", projectRepoId);
+      JsonObject cloudRepoContext = new JsonObject();
+      cloudRepoContext.add("repoId", repoId);
+      cloudRepoContext.addProperty("revisionId", revisionId);
+      context.add("cloudRepo", cloudRepoContext);
+    } else {
+      JsonObject git = new JsonObject();
+      git.addProperty("url", remoteUrl);
+      git.addProperty("revisionId", revisionId);
+      context.add("git", git);
+    }
+    return GSON.toJson(context);
   }
 }
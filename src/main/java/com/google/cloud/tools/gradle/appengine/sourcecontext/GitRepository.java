@@ -0,0 +1,154 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.sourcecontext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read the state of a git repository from its files, without git: the commit of HEAD from the
+ * loose and packed refs, and the urls of the remotes from the config. Enough to describe the
+ * source of a build, not a git implementation (no reflogs, no includes in the config...).
+ */
+class GitRepository {
+
+  private static final Pattern COMMIT = Pattern.compile("[0-9a-f]{40}");
+  private static final Pattern REMOTE_SECTION =
+      Pattern.compile("\\[\\s*remote\\s+\"(.*)\"\\s*\\]");
+
+  // holds HEAD
+  private final Path gitDirectory;
+  // holds the refs and the config, differs from gitDirectory in worktrees
+  private final Path commonDirectory;
+
+  private GitRepository(Path gitDirectory, Path commonDirectory) {
+    this.gitDirectory = gitDirectory;
+    this.commonDirectory = commonDirectory;
+  }
+
+  /** The repository holding {@code directory}, or null if it's not in one. */
+  static GitRepository find(File directory) throws IOException {
+    for (Path path = directory.toPath().toAbsolutePath(); path != null; path = path.getParent()) {
+      Path dotGit = path.resolve(".git");
+      if (Files.isDirectory(dotGit)) {
+        return open(dotGit);
+      }
+      if (Files.isRegularFile(dotGit)) {
+        // worktrees and submodules point to their git directory
+        String content = read(dotGit);
+        if (content.startsWith("gitdir:")) {
+          return open(path.resolve(content.substring("gitdir:".length()).trim()).normalize());
+        }
+      }
+    }
+    return null;
+  }
+
+  private static GitRepository open(Path gitDirectory) throws IOException {
+    Path commonDirFile = gitDirectory.resolve("commondir");
+    Path commonDirectory = gitDirectory;
+    if (Files.isRegularFile(commonDirFile)) {
+      commonDirectory = gitDirectory.resolve(read(commonDirFile)).normalize();
+    }
+    return new GitRepository(gitDirectory, commonDirectory);
+  }
+
+  /** The commit checked out, or null if there is none yet. */
+  String resolveHead() throws IOException {
+    String head = read(gitDirectory.resolve("HEAD"));
+    // symbolic refs can chain, but not forever
+    for (int depth = 0; depth < 10 && head != null; depth++) {
+      if (!head.startsWith("ref:")) {
+        return COMMIT.matcher(head).matches() ? head : null;
+      }
+      head = resolveRef(head.substring("ref:".length()).trim());
+    }
+    return null;
+  }
+
+  /** The content of {@code ref}, loose or packed, or null if it doesn't exist. */
+  private String resolveRef(String ref) throws IOException {
+    // refs of a worktree (bisect...) live in its own directory
+    for (Path directory : new Path[] {gitDirectory, commonDirectory}) {
+      Path loose = directory.resolve(ref);
+      if (Files.isRegularFile(loose)) {
+        return read(loose);
+      }
+    }
+    Path packedRefs = commonDirectory.resolve("packed-refs");
+    if (Files.isRegularFile(packedRefs)) {
+      for (String line : Files.readAllLines(packedRefs, StandardCharsets.UTF_8)) {
+        // comments and the peeled commits of annotated tags
+        if (line.startsWith("#") || line.startsWith("^")) {
+          continue;
+        }
+        int space = line.indexOf(' ');
+        if (space > 0 && line.substring(space + 1).trim().equals(ref)) {
+          return line.substring(0, space);
+        }
+      }
+    }
+    return null;
+  }
+
+  /** The url of each remote, by name. */
+  Map<String, String> getRemoteUrls() throws IOException {
+    Map<String, String> remotes = new TreeMap<>();
+    Path config = commonDirectory.resolve("config");
+    if (!Files.isRegularFile(config)) {
+      return remotes;
+    }
+    String remote = null;
+    List<String> lines = Files.readAllLines(config, StandardCharsets.UTF_8);
+    for (String line : lines) {
+      String trimmed = line.trim();
+      if (trimmed.startsWith("[")) {
+        Matcher section = REMOTE_SECTION.matcher(trimmed);
+        remote = section.matches() ? section.group(1) : null;
+        continue;
+      }
+      int equals = trimmed.indexOf('=');
+      if (remote != null
+          && equals > 0
+          && trimmed.substring(0, equals).trim().equalsIgnoreCase("url")
+          && !remotes.containsKey(remote)) {
+        remotes.put(remote, unquote(trimmed.substring(equals + 1).trim()));
+      }
+    }
+    return remotes;
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+  }
+}
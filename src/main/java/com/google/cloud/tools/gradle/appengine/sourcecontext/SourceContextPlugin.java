@@ -17,13 +17,8 @@
 
 package com.google.cloud.tools.gradle.appengine.sourcecontext;
 
-import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkNotFoundException;
-import com.google.cloud.tools.gradle.appengine.core.AppEngineCoreExtensionProperties;
-import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
-import com.google.cloud.tools.gradle.appengine.core.ToolsExtension;
 import com.google.cloud.tools.gradle.appengine.util.ExtensionUtil;
 import java.io.File;
-import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.plugins.ExtensionAware;
@@ -36,7 +31,6 @@ public class SourceContextPlugin implements Plugin<Project> {
 
   private Project project;
   private GenRepoInfoFileExtension extension;
-  private CloudSdkOperations cloudSdkOperations;
 
   public static final String SOURCE_CONTEXT_EXTENSION = "sourceContext";
 
@@ -51,7 +45,6 @@ public class SourceContextPlugin implements Plugin<Project> {
   private void createExtension() {
     // obtain extensions defined by core plugin.
     ExtensionAware appengine = new ExtensionUtil(project).get("appengine");
-    final ToolsExtension tools = ((AppEngineCoreExtensionProperties) appengine).getTools();
 
     // create source context extension and set defaults
     extension =
@@ -60,18 +53,6 @@ public class SourceContextPlugin implements Plugin<Project> {
             .create(SOURCE_CONTEXT_EXTENSION, GenRepoInfoFileExtension.class, project);
     extension.setOutputDirectory(new File(project.getBuildDir(), "sourceContext"));
     extension.setSourceDirectory(new File(project.getProjectDir(), "src"));
-
-    // wait to read the cloudSdkHome till after project evaluation
-    project.afterEvaluate(
-        project -> {
-          try {
-            cloudSdkOperations =
-                new CloudSdkOperations(tools.getCloudSdkHome(), null, tools.getVerbosity());
-          } catch (CloudSdkNotFoundException ex) {
-            // this should be caught in AppEngineCorePluginConfig before it can ever reach here.
-            throw new GradleException("Could not find CloudSDK: ", ex);
-          }
-        });
   }
 
   private void createSourceContextTask() {
@@ -83,11 +64,7 @@ public class SourceContextPlugin implements Plugin<Project> {
             genRepoInfoFile -> {
               genRepoInfoFile.setDescription("_internal");
 
-              project.afterEvaluate(
-                  project -> {
-                    genRepoInfoFile.setConfiguration(extension);
-                    genRepoInfoFile.setGcloud(cloudSdkOperations.getGcloud());
-                  });
+              project.afterEvaluate(project -> genRepoInfoFile.setConfiguration(extension));
             });
     configureArchiveTask(project.getTasks().withType(War.class).findByName("war"));
     configureArchiveTask(project.getTasks().withType(Jar.class).findByName("jar"));
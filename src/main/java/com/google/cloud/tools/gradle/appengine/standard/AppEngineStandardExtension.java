@@ -36,6 +36,9 @@ public class AppEngineStandardExtension implements AppEngineCoreExtensionPropert
   @InternalProperty private StageStandardExtension stage;
   @InternalProperty private RunExtension run;
 
+  private boolean explodeFromSources;
+  private boolean runFromBuildOutputs;
+
   /** Create nested configuration blocks as Extensions. */
   public void createSubExtensions(Project project) {
     tools =
@@ -82,4 +85,28 @@ public class AppEngineStandardExtension implements AppEngineCoreExtensionPropert
   public RunExtension getRun() {
     return run;
   }
+
+  public boolean getExplodeFromSources() {
+    return explodeFromSources;
+  }
+
+  /**
+   * Populate the exploded app directory used by run and stage straight from the sources of the war
+   * task, instead of building the war and extracting it.
+   */
+  public void setExplodeFromSources(boolean explodeFromSources) {
+    this.explodeFromSources = explodeFromSources;
+  }
+
+  public boolean getRunFromBuildOutputs() {
+    return runFromBuildOutputs;
+  }
+
+  /**
+   * Run the dev server on a layout of links to the build outputs and to the runtime jars, instead
+   * of the exploded war.
+   */
+  public void setRunFromBuildOutputs(boolean runFromBuildOutputs) {
+    this.runFromBuildOutputs = runFromBuildOutputs;
+  }
 }
@@ -26,12 +26,21 @@ import com.google.cloud.tools.gradle.appengine.core.DeployTargetResolver;
 import com.google.cloud.tools.gradle.appengine.core.DeployTask;
 import com.google.cloud.tools.gradle.appengine.core.ToolsExtension;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import java.io.File;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
 import org.gradle.api.plugins.BasePlugin;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.plugins.WarPlugin;
+import org.gradle.api.plugins.WarPluginConvention;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.bundling.War;
 
 /** Plugin definition for App Engine standard environments. */
@@ -39,13 +48,23 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
 
   public static final String APP_ENGINE_STANDARD_TASK_GROUP = "App Engine Standard environment";
   public static final String EXPLODE_WAR_TASK_NAME = "explodeWar";
+  public static final String LINK_APP_TASK_NAME = "linkApp";
   public static final String STAGE_TASK_NAME = "appengineStage";
+  public static final String QUICKSTART_TASK_NAME = "appengineQuickstart";
+  public static final String COMPILE_JSPS_TASK_NAME = "appengineCompileJsps";
   public static final String RUN_TASK_NAME = "appengineRun";
   public static final String START_TASK_NAME = "appengineStart";
   public static final String STOP_TASK_NAME = "appengineStop";
+  public static final String DEV_APP_SERVER_SERVICE_NAME = "appengineDevAppServer";
+  public static final String LOAD_TEST_TASK_NAME = "appengineLoadTest";
+  public static final String COLD_START_BENCHMARK_TASK_NAME = "appengineColdStartBenchmark";
+  public static final String RELOAD_TASK_NAME = "appengineReload";
+  public static final String STATS_TASK_NAME = "appengineStats";
 
   public static final String STAGED_APP_DIR_NAME = "staged-app";
   public static final String DEV_APP_SERVER_OUTPUT_DIR_NAME = "dev-appserver-out";
+  public static final String QUICKSTART_DIR_NAME = "appengine-quickstart";
+  public static final String COMPILED_JSPS_DIR_NAME = "appengine-compiled-jsps";
 
   public static final String STAGE_EXTENSION = "stage";
   public static final String RUN_EXTENSION = "run";
@@ -57,6 +76,7 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
   private RunExtension runExtension;
   private StageStandardExtension stageExtension;
   private File explodedWarDir;
+  private File linkedAppDir;
 
   @Override
   public void apply(Project project) {
@@ -71,12 +91,14 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
         project, appengineExtension, APP_ENGINE_STANDARD_TASK_GROUP, true);
 
     explodedWarDir = new File(project.getBuildDir(), "exploded-" + project.getName());
+    linkedAppDir = new File(project.getBuildDir(), "linked-" + project.getName());
 
     configureExtensions();
 
     createExplodedWarTask();
     createStageTask();
     createRunTasks();
+    createLinkAppTask();
   }
 
   private void configureExtensions() {
@@ -147,14 +169,87 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
               explodeWar.setDescription("Explode a war into a directory");
 
               project.afterEvaluate(
-                  project ->
-                      explodeWar.setWarFile(
-                          ((War) project.getTasks().getByPath(WarPlugin.WAR_TASK_NAME))
-                              .getArchivePath()));
+                  project -> {
+                    War war = (War) project.getTasks().getByPath(WarPlugin.WAR_TASK_NAME);
+                    if (appengineExtension.getExplodeFromSources()) {
+                      explodeWar.setWarSpec(war);
+                      explodeWar.getDependsOn().remove(WarPlugin.WAR_TASK_NAME);
+                      dependOnExplodedAppOnly(explodeWar);
+                    } else {
+                      explodeWar.setWarFile(war.getArchivePath());
+                    }
+                  });
             });
     project.getTasks().getByName(BasePlugin.ASSEMBLE_TASK_NAME).dependsOn(EXPLODE_WAR_TASK_NAME);
   }
 
+  /** Run and stage only need the exploded app, don't make them build the war archive. */
+  private void dependOnExplodedAppOnly(ExplodeWarTask explodeWar) {
+    replaceAssembleDependency(
+        explodeWar,
+        STAGE_TASK_NAME,
+        QUICKSTART_TASK_NAME,
+        COMPILE_JSPS_TASK_NAME,
+        RUN_TASK_NAME,
+        START_TASK_NAME,
+        COLD_START_BENCHMARK_TASK_NAME);
+  }
+
+  /** Make {@code taskNames} depend on {@code replacement} instead of assembling the app. */
+  private void replaceAssembleDependency(Task replacement, String... taskNames) {
+    Task assemble = project.getTasks().getByName(BasePlugin.ASSEMBLE_TASK_NAME);
+    Task explodeWar = project.getTasks().getByName(EXPLODE_WAR_TASK_NAME);
+    for (String taskName : taskNames) {
+      Set<Object> dependsOn = project.getTasks().getByName(taskName).getDependsOn();
+      boolean dependedOnAssemble = dependsOn.remove(assemble);
+      dependedOnAssemble |= dependsOn.remove(BasePlugin.ASSEMBLE_TASK_NAME);
+      // explodeFromSources may have replaced assemble already
+      dependedOnAssemble |= replacement != explodeWar && dependsOn.remove(explodeWar);
+      if (dependedOnAssemble) {
+        dependsOn.add(replacement);
+      }
+    }
+  }
+
+  private void createLinkAppTask() {
+    project
+        .getTasks()
+        .create(
+            LINK_APP_TASK_NAME,
+            LinkAppTask.class,
+            linkApp -> {
+              linkApp.setLinkedAppDirectory(linkedAppDir);
+              linkApp.dependsOn(JavaPlugin.CLASSES_TASK_NAME);
+              linkApp.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+              linkApp.setDescription("Link the build outputs into an app for the dev server");
+
+              project.afterEvaluate(
+                  project -> {
+                    War war = (War) project.getTasks().getByPath(WarPlugin.WAR_TASK_NAME);
+                    WarPluginConvention warConvention =
+                        project.getConvention().getPlugin(WarPluginConvention.class);
+                    linkApp.setClasspath(war.getClasspath());
+                    linkApp.setWebAppDirectory(warConvention.getWebAppDir());
+                    if (appengineExtension.getRunFromBuildOutputs()) {
+                      runFromLinkedApp(linkApp);
+                    }
+                  });
+            });
+  }
+
+  /** Point the dev server at the linked app, unless the services were configured. */
+  private void runFromLinkedApp(LinkAppTask linkApp) {
+    if (ImmutableList.of(explodedWarDir).equals(runExtension.getServices())) {
+      runExtension.setServices(linkedAppDir);
+    }
+    replaceAssembleDependency(
+        linkApp, RUN_TASK_NAME, START_TASK_NAME, COLD_START_BENCHMARK_TASK_NAME);
+    // the links already serve the changed files
+    DevAppServerReloadTask reloadTask =
+        (DevAppServerReloadTask) project.getTasks().getByName(RELOAD_TASK_NAME);
+    reloadTask.setExplodedAppDirectory(null);
+  }
+
   private void createStageTask() {
     project
         .getTasks()
@@ -163,6 +258,66 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
             stageStandardTask ->
                 project.afterEvaluate(
                     ignored -> stageStandardTask.setAppCfg(cloudSdkOperations.getAppcfg())));
+    project
+        .getTasks()
+        .withType(QuickstartTask.class)
+        .whenTaskAdded(
+            quickstartTask ->
+                project.afterEvaluate(
+                    ignored -> {
+                      quickstartTask.setAppCfg(cloudSdkOperations.getAppcfg());
+                      quickstartTask.setCloudSdk(cloudSdkOperations.getCloudSdk());
+                    }));
+
+    QuickstartTask quickstartTask =
+        project
+            .getTasks()
+            .create(
+                QUICKSTART_TASK_NAME,
+                QuickstartTask.class,
+                quickstart -> {
+                  quickstart.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+                  quickstart.setDescription(
+                      "Generate the quickstart descriptors of an App Engine standard application");
+                  quickstart.setQuickstartDirectory(
+                      new File(project.getBuildDir(), QUICKSTART_DIR_NAME));
+                  quickstart.dependsOn(BasePlugin.ASSEMBLE_TASK_NAME);
+
+                  project.afterEvaluate(
+                      project -> {
+                        quickstart.setSourceDirectory(stageExtension.getSourceDirectory());
+                      });
+                });
+
+    CompileJspsTask compileJspsTask =
+        project
+            .getTasks()
+            .create(
+                COMPILE_JSPS_TASK_NAME,
+                CompileJspsTask.class,
+                compileJsps -> {
+                  compileJsps.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+                  compileJsps.setDescription(
+                      "Compile the JSPs of an App Engine standard application");
+                  compileJsps.setCompiledJspsDirectory(
+                      new File(project.getBuildDir(), COMPILED_JSPS_DIR_NAME));
+                  compileJsps.dependsOn(BasePlugin.ASSEMBLE_TASK_NAME);
+
+                  project.afterEvaluate(
+                      project -> {
+                        compileJsps.setSourceDirectory(stageExtension.getSourceDirectory());
+                        compileJsps.setCompileEncoding(stageExtension.getCompileEncoding());
+                        // Jasper and the apis of the App Engine SDK, as appcfg compiles with them
+                        // resolved once the Cloud SDK is downloaded
+                        Callable<Path> javaSdk =
+                            () -> cloudSdkOperations.getCloudSdk().getAppEngineSdkForJavaPath();
+                        compileJsps.setJspCompilerClasspath(
+                            project.fileTree(
+                                javaSdk,
+                                tree ->
+                                    tree.include("lib/shared/**/*.jar", "lib/tools/jsp/**/*.jar")));
+                      });
+                });
 
     StageStandardTask stageTask =
         project
@@ -179,6 +334,20 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
                   project.afterEvaluate(
                       project -> {
                         stageTask1.setStageStandardExtension(stageExtension);
+                        // the native engine stages the cached descriptors instead of running
+                        // quickstart with the rest of appcfg
+                        if (Boolean.TRUE.equals(stageExtension.getNativeStaging())
+                            && Boolean.TRUE.equals(stageExtension.getEnableQuickstart())) {
+                          stageTask1.setQuickstartDirectory(
+                              quickstartTask.getQuickstartDirectory());
+                          stageTask1.dependsOn(quickstartTask);
+                        }
+                        // the native engine stages JSPs compiled in parallel and incrementally
+                        if (Boolean.TRUE.equals(stageExtension.getNativeStaging())) {
+                          stageTask1.setCompiledJspsDirectory(
+                              compileJspsTask.getCompiledJspsDirectory());
+                          stageTask1.dependsOn(compileJspsTask);
+                        }
                       });
                 });
 
@@ -241,6 +410,14 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
               startTask.setDescription(
                   "Run an App Engine standard environment application locally in the background");
               startTask.dependsOn(project.getTasks().findByName(BasePlugin.ASSEMBLE_TASK_NAME));
+              startTask.setDevAppServerService(
+                  project
+                      .getGradle()
+                      .getSharedServices()
+                      .registerIfAbsent(
+                          DEV_APP_SERVER_SERVICE_NAME + project.getPath(),
+                          DevAppServerService.class,
+                          spec -> {}));
 
               project.afterEvaluate(
                   project -> {
@@ -260,6 +437,9 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
               stopTask.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
               stopTask.setDescription(
                   "Stop a locally running App Engine standard environment application");
+              stopTask.setDevAppServerService(
+                  ((DevAppServerStartTask) project.getTasks().getByName(START_TASK_NAME))
+                      .getDevAppServerService());
 
               project.afterEvaluate(
                   project -> {
@@ -267,5 +447,107 @@ public class AppEngineStandardPlugin implements Plugin<Project> {
                     stopTask.setDevServers(cloudSdkOperations.getDevServers());
                   });
             });
+
+    project
+        .getTasks()
+        .create(
+            LOAD_TEST_TASK_NAME,
+            LoadTestTask.class,
+            loadTestTask -> {
+              loadTestTask.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+              loadTestTask.setDescription(
+                  "Load test the app started by "
+                      + START_TASK_NAME
+                      + " and report latency percentiles and throughput");
+              loadTestTask.setReportDirectory(
+                  new File(project.getBuildDir(), "reports/appengine-load-test"));
+
+              // the server may have been started by an earlier build, don't start it again
+              DevAppServerStartTask startTask =
+                  (DevAppServerStartTask) project.getTasks().getByName(START_TASK_NAME);
+              loadTestTask.mustRunAfter(startTask);
+              loadTestTask.doFirst(
+                  task -> startTask.getDevAppServerService().get().awaitReady(task.getLogger()));
+
+              project.afterEvaluate(project -> loadTestTask.setRunConfig(runExtension));
+            });
+
+    project
+        .getTasks()
+        .create(
+            STATS_TASK_NAME,
+            DevAppServerStatsTask.class,
+            statsTask -> {
+              statsTask.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+              statsTask.setDescription(
+                  "Sample the heap, GC and threads of the JVM of the app started by "
+                      + START_TASK_NAME);
+              statsTask.setStatsDirectory(
+                  new File(project.getBuildDir(), DEV_APP_SERVER_OUTPUT_DIR_NAME));
+
+              DevAppServerStartTask startTask =
+                  (DevAppServerStartTask) project.getTasks().getByName(START_TASK_NAME);
+              statsTask.setDevAppServerService(startTask.getDevAppServerService());
+              statsTask.mustRunAfter(startTask);
+              // sampling in the background, before the load it should observe
+              project.getTasks().getByName(LOAD_TEST_TASK_NAME).mustRunAfter(statsTask);
+              project.getTasks().getByName(STOP_TASK_NAME).mustRunAfter(statsTask);
+
+              project.afterEvaluate(project -> statsTask.setRunConfig(runExtension));
+            });
+
+    project
+        .getTasks()
+        .create(
+            COLD_START_BENCHMARK_TASK_NAME,
+            ColdStartBenchmarkTask.class,
+            benchmarkTask -> {
+              benchmarkTask.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+              benchmarkTask.setDescription(
+                  "Time the cold starts of an App Engine standard environment application locally");
+              benchmarkTask.dependsOn(project.getTasks().findByName(BasePlugin.ASSEMBLE_TASK_NAME));
+              benchmarkTask.setReportDirectory(
+                  new File(project.getBuildDir(), "reports/appengine-cold-start"));
+              benchmarkTask.setHistoryFile(
+                  new File(project.getBuildDir(), "appengine-perf/cold-start-history.json"));
+
+              project.afterEvaluate(
+                  project -> {
+                    benchmarkTask.setRunConfig(runExtension);
+                    benchmarkTask.setDevServers(cloudSdkOperations.getDevServers());
+                  });
+            });
+
+    project
+        .getTasks()
+        .create(
+            RELOAD_TASK_NAME,
+            DevAppServerReloadTask.class,
+            reloadTask -> {
+              reloadTask.setGroup(APP_ENGINE_STANDARD_TASK_GROUP);
+              reloadTask.setDescription(
+                  "Push changed classes and resources to the app started by "
+                      + START_TASK_NAME
+                      + ", use with --continuous");
+              reloadTask.dependsOn(JavaPlugin.CLASSES_TASK_NAME);
+              reloadTask.setExplodedAppDirectory(explodedWarDir);
+              reloadTask.setReloadReport(new File(reloadTask.getTemporaryDir(), "last-reload.txt"));
+              reloadTask.setClasses(
+                  project
+                      .getConvention()
+                      .getPlugin(JavaPluginConvention.class)
+                      .getSourceSets()
+                      .getByName(SourceSet.MAIN_SOURCE_SET_NAME)
+                      .getOutput());
+
+              project.afterEvaluate(
+                  project -> {
+                    reloadTask.setRunConfig(runExtension);
+                    reloadTask.setDevAppServerLog(
+                        new File(
+                            project.getBuildDir(),
+                            DEV_APP_SERVER_OUTPUT_DIR_NAME + "/dev_appserver.out"));
+                  });
+            });
   }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.util.AppEngineWebXml;
+import com.google.cloud.tools.gradle.appengine.util.AppEngineWebXml.FilePattern;
+import com.google.cloud.tools.gradle.appengine.util.WebXml;
+import com.google.common.collect.ImmutableList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translate appengine-web.xml and web.xml to the app.yaml of a staged java8 app, in the layout
+ * appcfg writes it: the settings, then the static handlers serving {@code __static__}, then the
+ * dynamic handlers of the servlet and filter mappings.
+ */
+class AppYamlTranslator {
+
+  private static final List<String> DEFAULT_WELCOME_FILES =
+      ImmutableList.of("index.html", "index.jsp");
+  private static final String[] SCALING_TYPES = {
+    "automatic-scaling", "basic-scaling", "manual-scaling"
+  };
+
+  private final AppEngineWebXml appEngineWebXml;
+  private final WebXml webXml;
+  private final FilePatternFilter staticFiles;
+
+  /** Constructor, {@code webXml} is null for an app without web.xml. */
+  AppYamlTranslator(AppEngineWebXml appEngineWebXml, WebXml webXml, FilePatternFilter staticFiles) {
+    this.appEngineWebXml = appEngineWebXml;
+    this.webXml = webXml;
+    this.staticFiles = staticFiles;
+  }
+
+  String translate() {
+    StringBuilder yaml = new StringBuilder();
+    appendQuoted(yaml, "application", appEngineWebXml.getText("application"));
+    appendQuoted(yaml, "version", appEngineWebXml.getText("version"));
+    yaml.append("runtime: java8\n");
+    appendQuoted(yaml, "service", appEngineWebXml.getService());
+    if (appEngineWebXml.getText("instance-class") != null) {
+      yaml.append("instance_class: ").append(appEngineWebXml.getText("instance-class"));
+      yaml.append('\n');
+    }
+    for (String scaling : SCALING_TYPES) {
+      if (appEngineWebXml.has(scaling)) {
+        yaml.append(yamlKey(scaling)).append(":\n");
+        Map<String, String> settings = appEngineWebXml.getChildTexts(scaling);
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+          yaml.append("  ").append(yamlKey(setting.getKey())).append(": ");
+          yaml.append(setting.getValue()).append('\n');
+        }
+      }
+    }
+    List<String> inboundServices = appEngineWebXml.getInboundServices();
+    if (!inboundServices.isEmpty()) {
+      yaml.append("inbound_services:\n");
+      for (String service : inboundServices) {
+        yaml.append("- ").append(service).append('\n');
+      }
+    }
+    if (appEngineWebXml.getBoolean("precompilation-enabled", true)) {
+      yaml.append("derived_file_type:\n- java_precompiled\n");
+    }
+    yaml.append("threadsafe: ");
+    yaml.append(appEngineWebXml.getBoolean("threadsafe", false) ? "True" : "False").append('\n');
+    String autoIdPolicy = appEngineWebXml.getText("auto-id-policy");
+    yaml.append("auto_id_policy: ").append(autoIdPolicy == null ? "default" : autoIdPolicy);
+    yaml.append('\n');
+    Map<String, String> environment = appEngineWebXml.getEnvironmentVariables();
+    if (!environment.isEmpty()) {
+      yaml.append("env_variables:\n");
+      appendMap(yaml, "  ", environment);
+    }
+    yaml.append("api_version: 'user_defined'\n");
+    yaml.append("handlers:\n");
+    appendStaticHandlers(yaml);
+    appendDynamicHandlers(yaml);
+    return yaml.toString();
+  }
+
+  private void appendStaticHandlers(StringBuilder yaml) {
+    List<String> welcomeFiles = webXml == null ? null : webXml.getWelcomeFiles();
+    for (String welcomeFile : welcomeFiles == null ? DEFAULT_WELCOME_FILES : welcomeFiles) {
+      FilePattern include = findStaticInclude("/" + welcomeFile);
+      if (include == null) {
+        continue;
+      }
+      appendStaticHandler(yaml, "(/.*/)", "__static__\\1" + welcomeFile, include);
+      appendStaticHandler(yaml, "(/)", "__static__\\1" + welcomeFile, include);
+    }
+    for (FilePattern include : staticFiles.getIncludes()) {
+      String regex = FilePatternFilter.globToRegex(include.getPath());
+      appendStaticHandler(yaml, "(" + regex + ")", "__static__\\1", include);
+    }
+  }
+
+  private FilePattern findStaticInclude(String path) {
+    if (!staticFiles.matches(path)) {
+      return null;
+    }
+    for (FilePattern include : staticFiles.getIncludes()) {
+      if (path.matches(FilePatternFilter.globToRegex(include.getPath()))) {
+        return include;
+      }
+    }
+    return null;
+  }
+
+  private static void appendStaticHandler(
+      StringBuilder yaml, String url, String staticFile, FilePattern include) {
+    yaml.append("- url: ").append(url).append('\n');
+    yaml.append("  static_files: ").append(staticFile).append('\n');
+    yaml.append("  upload: __NOT_USED__\n");
+    yaml.append("  require_matching_file: True\n");
+    yaml.append("  login: optional\n");
+    yaml.append("  secure: optional\n");
+    if (include.getExpiration() != null) {
+      yaml.append("  expiration: ").append(include.getExpiration()).append('\n');
+    }
+    if (!include.getHttpHeaders().isEmpty()) {
+      yaml.append("  http_headers:\n");
+      appendMap(yaml, "    ", include.getHttpHeaders());
+    }
+  }
+
+  private void appendDynamicHandlers(StringBuilder yaml) {
+    Set<String> urls = new LinkedHashSet<>(ImmutableList.of("/", "/.*/", "/_ah/.*"));
+    if (webXml != null) {
+      for (String urlPattern : webXml.getUrlPatterns()) {
+        urls.add(urlPatternToRegex(urlPattern));
+      }
+    }
+    for (String url : urls) {
+      yaml.append("- url: ").append(url).append('\n');
+      yaml.append("  script: unused\n");
+      yaml.append("  login: optional\n");
+      yaml.append("  secure: optional\n");
+    }
+  }
+
+  /** The regex of a servlet url pattern: a path prefix, an extension or an exact path. */
+  static String urlPatternToRegex(String urlPattern) {
+    if (urlPattern.equals("/") || urlPattern.equals("/*")) {
+      return "/.*";
+    }
+    if (urlPattern.endsWith("/*")) {
+      return escape(urlPattern.substring(0, urlPattern.length() - 2)) + "/.*";
+    }
+    if (urlPattern.startsWith("*.")) {
+      return "/.*" + escape(urlPattern.substring(1));
+    }
+    return escape(urlPattern.startsWith("/") ? urlPattern : "/" + urlPattern);
+  }
+
+  private static String escape(String path) {
+    StringBuilder regex = new StringBuilder();
+    for (char c : path.toCharArray()) {
+      if ("\\.[]{}()*+-?^$|".indexOf(c) >= 0) {
+        regex.append('\\');
+      }
+      regex.append(c);
+    }
+    return regex.toString();
+  }
+
+  private static void appendQuoted(StringBuilder yaml, String key, String value) {
+    if (value != null) {
+      yaml.append(key).append(": ").append(quote(value)).append('\n');
+    }
+  }
+
+  private static void appendMap(StringBuilder yaml, String indent, Map<String, String> map) {
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      yaml.append(indent).append(quote(entry.getKey())).append(": ");
+      yaml.append(quote(entry.getValue())).append('\n');
+    }
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "''") + "'";
+  }
+
+  private static String yamlKey(String element) {
+    return element.replace('-', '_');
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.operations.DevServers;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.LegacyProcessHandler;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
+import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import com.google.cloud.tools.gradle.appengine.core.ProcessRegistry;
+import com.google.cloud.tools.gradle.appengine.core.ReadinessProbe;
+import com.google.cloud.tools.gradle.appengine.core.TrackedProcessHandler;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Measure the cold start of the app: start it in a new dev server, on a free port, as many times
+ * as asked, and time the launch of the server to the first successful answer on a warmup url. The
+ * distribution is reported and kept in a history, with the jvm flags of each run, so the cost of
+ * a new dependency or flag shows against the previous runs.
+ */
+public class ColdStartBenchmarkTask extends DefaultTask {
+
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  // poll often, the wait between two polls is the error on the measure
+  private static final long PROBE_INTERVAL_MILLIS = 10;
+
+  private RunExtension runConfig;
+  private DevServers devServers;
+  private int iterations = 5;
+  private String warmupPath = "/_ah/warmup";
+  private int warmupStatus = 200;
+  private int historySize = 20;
+  private double regressionThreshold = 0.25;
+  private File reportDirectory;
+  private File historyFile;
+
+  public ColdStartBenchmarkTask() {
+    // force it to always run (required since we use OutputDirectory)
+    this.getOutputs().upToDateWhen(task -> false);
+  }
+
+  public void setRunConfig(RunExtension runConfig) {
+    this.runConfig = runConfig;
+  }
+
+  public void setDevServers(DevServers devServers) {
+    this.devServers = devServers;
+  }
+
+  @Internal
+  public int getIterations() {
+    return iterations;
+  }
+
+  public void setIterations(int iterations) {
+    this.iterations = iterations;
+  }
+
+  /** The path whose first successful answer ends a cold start. */
+  @Internal
+  public String getWarmupPath() {
+    return warmupPath;
+  }
+
+  public void setWarmupPath(String warmupPath) {
+    this.warmupPath = warmupPath;
+  }
+
+  @Internal
+  public int getWarmupStatus() {
+    return warmupStatus;
+  }
+
+  public void setWarmupStatus(int warmupStatus) {
+    this.warmupStatus = warmupStatus;
+  }
+
+  /** Number of previous runs to keep and compare against. */
+  @Internal
+  public int getHistorySize() {
+    return historySize;
+  }
+
+  public void setHistorySize(int historySize) {
+    this.historySize = historySize;
+  }
+
+  /** Relative slowdown of the median against the previous runs reported as a regression. */
+  @Internal
+  public double getRegressionThreshold() {
+    return regressionThreshold;
+  }
+
+  public void setRegressionThreshold(double regressionThreshold) {
+    this.regressionThreshold = regressionThreshold;
+  }
+
+  @OutputDirectory
+  public File getReportDirectory() {
+    return reportDirectory;
+  }
+
+  public void setReportDirectory(Object reportDirectory) {
+    this.reportDirectory = getProject().file(reportDirectory);
+  }
+
+  @Internal
+  public File getHistoryFile() {
+    return historyFile;
+  }
+
+  public void setHistoryFile(Object historyFile) {
+    this.historyFile = getProject().file(historyFile);
+  }
+
+  /** Task entrypoint : time the cold starts. */
+  @TaskAction
+  public void benchmarkAction() throws AppEngineException, IOException {
+    List<Long> startupMillis = new ArrayList<>();
+    for (int i = 1; i <= Math.max(1, iterations); i++) {
+      long millis = coldStart();
+      getLogger().lifecycle("Cold start " + i + ": " + millis + " ms");
+      startupMillis.add(millis);
+    }
+
+    History history = readHistory();
+    Run run =
+        new Run(
+            Instant.now().toString(),
+            runConfig.getJvmFlags() == null ? Collections.emptyList() : runConfig.getJvmFlags(),
+            startupMillis);
+    String comparison = compare(run, history.runs, regressionThreshold);
+    history.runs.add(run);
+    while (history.runs.size() > Math.max(historySize, 1)) {
+      history.runs.remove(0);
+    }
+    Files.createDirectories(historyFile.getParentFile().toPath());
+    try (Writer writer = Files.newBufferedWriter(historyFile.toPath(), StandardCharsets.UTF_8)) {
+      GSON.toJson(history, writer);
+    }
+
+    try (Writer writer =
+        Files.newBufferedWriter(
+            new File(reportDirectory, "report.json").toPath(), StandardCharsets.UTF_8)) {
+      GSON.toJson(run, writer);
+    }
+    File textReport = new File(reportDirectory, "report.txt");
+    String report = run.render() + (comparison == null ? "" : comparison + "\n");
+    Files.write(textReport.toPath(), report.getBytes(StandardCharsets.UTF_8));
+
+    getLogger().lifecycle(run.summary());
+    if (comparison != null) {
+      getLogger().lifecycle(comparison);
+    }
+    getLogger().lifecycle("Cold start report written to : " + textReport);
+  }
+
+  /** Start a new server and time it to the first successful answer, then kill it. */
+  private long coldStart() throws AppEngineException, IOException {
+    int port = DevAppServerStartTask.allocatePort();
+    ProcessHandler processHandler =
+        LegacyProcessHandler.builder()
+            .addStdOutLineListener(getLogger()::info)
+            .addStdErrLineListener(getLogger()::info)
+            .async(true)
+            .build();
+    // killed below, once timed
+    TrackedProcessHandler trackedProcessHandler =
+        CloudSdkOperations.track(this, processHandler).setDetached(true);
+    URL url =
+        new URL(
+            "http",
+            DevAppServerReloadTask.reloadHost(runConfig.getHost()),
+            port,
+            warmupPath.startsWith("/") ? warmupPath : "/" + warmupPath);
+    ReadinessProbe probe =
+        new ReadinessProbe(
+            url,
+            warmupStatus,
+            PROBE_INTERVAL_MILLIS,
+            TimeUnit.SECONDS.toMillis(runConfig.getStartSuccessTimeout()),
+            PROBE_INTERVAL_MILLIS);
+
+    long start = System.nanoTime();
+    devServers.newDevAppServer(trackedProcessHandler).run(runConfig.toRunConfiguration(port));
+    Process process = trackedProcessHandler.getProcess();
+    try {
+      if (!probe.await(process)) {
+        throw new GradleException(
+            "The dev server did not answer "
+                + warmupStatus
+                + " on "
+                + url
+                + " within "
+                + runConfig.getStartSuccessTimeout()
+                + " seconds");
+      }
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new GradleException("Interrupted while waiting for the dev server", ex);
+    } finally {
+      ProcessRegistry.destroyTree(process);
+    }
+  }
+
+  private History readHistory() {
+    if (!historyFile.isFile()) {
+      return new History();
+    }
+    try (Reader reader = Files.newBufferedReader(historyFile.toPath(), StandardCharsets.UTF_8)) {
+      History history = GSON.fromJson(reader, History.class);
+      return history == null || history.runs == null ? new History() : history;
+    } catch (IOException | JsonParseException ex) {
+      getLogger().warn("Ignoring unreadable cold start history " + historyFile, ex);
+      return new History();
+    }
+  }
+
+  /**
+   * Compare the median of {@code current} to the median of the medians of {@code previous} runs,
+   * null without previous runs.
+   */
+  @VisibleForTesting
+  static String compare(Run current, List<Run> previous, double threshold) {
+    List<Long> medians =
+        previous.stream()
+            .filter(run -> run.startupMillis != null && !run.startupMillis.isEmpty())
+            .map(run -> percentile(run.startupMillis, 50))
+            .collect(Collectors.toList());
+    if (medians.isEmpty()) {
+      return null;
+    }
+    long baseline = percentile(medians, 50);
+    long median = percentile(current.startupMillis, 50);
+    String comparison =
+        String.format(
+            Locale.ROOT,
+            "Median cold start %d ms, %+d ms against the median of %d previous runs (%d ms)",
+            median,
+            median - baseline,
+            medians.size(),
+            baseline);
+    if (median > baseline * (1 + threshold)) {
+      return "Cold start regression: " + comparison;
+    }
+    return comparison;
+  }
+
+  /** The nearest-rank {@code percentile} of {@code values}. */
+  @VisibleForTesting
+  static long percentile(List<Long> values, double percentile) {
+    List<Long> sorted = values.stream().sorted().collect(Collectors.toList());
+    int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+    return sorted.get(Math.max(0, Math.min(sorted.size(), rank) - 1));
+  }
+
+  /** History of previous runs, as stored on disk. */
+  private static class History {
+    private List<Run> runs = new ArrayList<>();
+  }
+
+  /** The cold starts of one run, with the flags they were measured with. */
+  @VisibleForTesting
+  static class Run {
+    private final String startTime;
+    private final List<String> jvmFlags;
+    private final List<Long> startupMillis;
+
+    Run(String startTime, List<String> jvmFlags, List<Long> startupMillis) {
+      this.startTime = startTime;
+      this.jvmFlags = jvmFlags;
+      this.startupMillis = startupMillis;
+    }
+
+    String summary() {
+      long total = startupMillis.stream().mapToLong(Long::longValue).sum();
+      return String.format(
+          Locale.ROOT,
+          "%d cold starts: min %d ms, p50 %d ms, p90 %d ms, max %d ms, mean %d ms",
+          startupMillis.size(),
+          percentile(startupMillis, 0),
+          percentile(startupMillis, 50),
+          percentile(startupMillis, 90),
+          percentile(startupMillis, 100),
+          total / startupMillis.size());
+    }
+
+    String render() {
+      StringBuilder result = new StringBuilder();
+      result.append("Run:        ").append(startTime).append('\n');
+      result.append("JVM flags:  ").append(String.join(" ", jvmFlags)).append('\n');
+      result
+          .append("Starts:     ")
+          .append(
+              startupMillis.stream()
+                  .map(millis -> millis + " ms")
+                  .collect(Collectors.joining(", ")))
+          .append('\n');
+      result.append(summary()).append('\n');
+      return result.toString();
+    }
+  }
+}
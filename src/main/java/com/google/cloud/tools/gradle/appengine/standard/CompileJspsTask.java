@@ -0,0 +1,577 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+/**
+ * Translate and compile the JSPs of an app with Jasper, in parallel on the Worker API. The JSPs are
+ * split into one batch per worker, each compiled by its own {@code JspC} to its own directory, so
+ * that the tag files the batches share are not written concurrently. Only the JSPs that
+ * changed since the last run are compiled again; a change to a tag file, a fragment or a tag
+ * library descriptor, or to the classes and jars of the app, compiles them all. The output only
+ * depends on the content of these inputs and comes from the build cache when it can.
+ *
+ * <p>Each compiled servlet is also kept in a cache under the temporary directory of the task, keyed
+ * on the content and path of its JSP, the tag files, fragments and descriptors of the app, the tag
+ * libraries of its jars, the content of its classes and jars, and the compile encoding. A JSP found
+ * there is not compiled again when everything is, after the output was removed or Jasper changed
+ * for instance. The classes compiled from tag files are cached once for all the JSPs, keyed on the
+ * tag libraries and the classes and jars of the app.
+ *
+ * <p>The output directory holds the compiled servlets under {@code classes}, and for each JSP a
+ * file under {@code servlets}, at the path of the JSP, naming its servlet class.
+ */
+@CacheableTask
+public class CompileJspsTask extends DefaultTask {
+
+  static final String CLASSES = "classes";
+  static final String SERVLETS = "servlets";
+  private static final String JSP_CACHE = "jsp-cache";
+  private static final String BATCHES = "batches";
+  // where Jasper compiles the tag files the JSPs use, shared by the servlets
+  private static final String TAG_CLASSES = "org/apache/jsp/tag";
+  // the package appcfg compiles JSPs to
+  private static final String JSP_PACKAGE = "org.apache.jsp";
+
+  private final WorkerExecutor workerExecutor;
+  private File sourceDirectory;
+  private FileCollection jspCompilerClasspath;
+  private String compileEncoding;
+  private File compiledJspsDirectory;
+
+  @Inject
+  public CompileJspsTask(WorkerExecutor workerExecutor) {
+    this.workerExecutor = workerExecutor;
+  }
+
+  @Internal
+  public File getSourceDirectory() {
+    return sourceDirectory;
+  }
+
+  public void setSourceDirectory(File sourceDirectory) {
+    this.sourceDirectory = sourceDirectory;
+  }
+
+  /** The JSPs, and the tag files, fragments and descriptors they can use. */
+  @Incremental
+  @InputFiles
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public FileCollection getJspSources() {
+    return getProject()
+        .fileTree(
+            (Callable<File>) () -> sourceDirectory,
+            tree ->
+                tree.include(
+                        "**/*.jsp", "**/*.jspx", "**/*.jspf", "**/*.tag", "**/*.tagx", "**/*.tld")
+                    .exclude("WEB-INF/classes/**", "WEB-INF/lib/**"));
+  }
+
+  /** The classes and jars of the app, with the tag libraries of the jars. */
+  @Classpath
+  public FileCollection getClasspath() {
+    return getProject()
+        .files((Callable<List<File>>) () -> QuickstartTask.classpath(sourceDirectory));
+  }
+
+  /** Jasper and the servlet and JSP apis. */
+  @Classpath
+  public FileCollection getJspCompilerClasspath() {
+    return jspCompilerClasspath;
+  }
+
+  public void setJspCompilerClasspath(FileCollection jspCompilerClasspath) {
+    this.jspCompilerClasspath = jspCompilerClasspath;
+  }
+
+  @Input
+  @Optional
+  public String getCompileEncoding() {
+    return compileEncoding;
+  }
+
+  public void setCompileEncoding(String compileEncoding) {
+    this.compileEncoding = compileEncoding;
+  }
+
+  @OutputDirectory
+  public File getCompiledJspsDirectory() {
+    return compiledJspsDirectory;
+  }
+
+  public void setCompiledJspsDirectory(File compiledJspsDirectory) {
+    this.compiledJspsDirectory = compiledJspsDirectory;
+  }
+
+  /** Task entrypoint : compile the JSPs that changed. */
+  @TaskAction
+  public void compileAction(InputChanges inputChanges) throws IOException {
+    Path output = compiledJspsDirectory.toPath();
+    List<String> toCompile = new ArrayList<>();
+    boolean compileAll = !inputChanges.isIncremental();
+    if (!compileAll) {
+      for (FileChange change : inputChanges.getFileChanges(getJspSources())) {
+        String path = change.getNormalizedPath();
+        if (change.getFileType() == FileType.DIRECTORY) {
+          continue;
+        }
+        if (!isJsp(path)) {
+          // can be used by any JSP
+          compileAll = true;
+          break;
+        }
+        removeServlet(output, path);
+        if (change.getChangeType() != ChangeType.REMOVED) {
+          toCompile.add(path);
+        }
+      }
+    }
+    if (compileAll) {
+      getProject().delete(output.resolve(CLASSES), output.resolve(SERVLETS));
+      toCompile = listJsps(sourceDirectory.toPath());
+    }
+    Files.createDirectories(output.resolve(CLASSES));
+    Files.createDirectories(output.resolve(SERVLETS));
+    if (toCompile.isEmpty()) {
+      return;
+    }
+
+    Path cache = getTemporaryDir().toPath().resolve(JSP_CACHE);
+    String dependenciesHash =
+        Hashing.sha256()
+            .newHasher()
+            .putString(tagLibrariesHash(sourceDirectory.toPath()), StandardCharsets.UTF_8)
+            .putString(classpathHash(getClasspath().getFiles()), StandardCharsets.UTF_8)
+            .hash()
+            .toString();
+    String tagsKey = "tags-" + dependenciesHash;
+    copyTree(cache.resolve(tagsKey), output.resolve(CLASSES).resolve(TAG_CLASSES));
+    Map<String, String> keys = new LinkedHashMap<>();
+    List<String> misses = new ArrayList<>();
+    for (String path : toCompile) {
+      String key = jspKey(sourceDirectory.toPath(), path, dependenciesHash, compileEncoding);
+      keys.put(path, key);
+      if (!restoreServlet(cache.resolve(key), output, path)) {
+        misses.add(path);
+      }
+    }
+    if (compileAll) {
+      // every JSP of the app has a key, the others are stale
+      List<String> live = new ArrayList<>(keys.values());
+      live.add(tagsKey);
+      pruneCache(cache, live);
+    }
+    if (misses.isEmpty()) {
+      getLogger().info("Restored {} JSPs from the cache", toCompile.size());
+      return;
+    }
+
+    int workers =
+        Math.min(misses.size(), getProject().getGradle().getStartParameter().getMaxWorkerCount());
+    WorkQueue queue =
+        workerExecutor.classLoaderIsolation(
+            spec -> spec.getClasspath().from(jspCompilerClasspath));
+    Path batchesDirectory = getTemporaryDir().toPath().resolve(BATCHES);
+    getProject().delete(batchesDirectory);
+    List<Path> batchDirectories = new ArrayList<>();
+    for (List<String> batch : batches(misses, workers)) {
+      Path batchDirectory = batchesDirectory.resolve(String.valueOf(batchDirectories.size()));
+      batchDirectories.add(batchDirectory);
+      queue.submit(
+          CompileJsps.class,
+          parameters -> {
+            parameters.getSourceDirectory().set(sourceDirectory);
+            parameters.getJspPaths().set(batch);
+            parameters.getClasspath().from(getClasspath());
+            parameters.getCompileEncoding().set(compileEncoding);
+            parameters.getCompiledJspsDirectory().set(batchDirectory.toFile());
+          });
+    }
+    queue.await();
+    // the batches compile the tag files they use on their own, each gets the same classes
+    for (Path batchDirectory : batchDirectories) {
+      copyTree(batchDirectory.resolve(CLASSES), output.resolve(CLASSES));
+      copyTree(batchDirectory.resolve(SERVLETS), output.resolve(SERVLETS));
+    }
+    getProject().delete(batchesDirectory);
+    for (String path : misses) {
+      cacheServlet(output, path, cache.resolve(keys.get(path)));
+    }
+    // the tag files used by the JSPs compiled so far, whatever run compiled them
+    copyTree(output.resolve(CLASSES).resolve(TAG_CLASSES), cache.resolve(tagsKey));
+    getLogger()
+        .info(
+            "Compiled {} JSPs on {} workers{}, restored {} from the cache",
+            misses.size(),
+            workers,
+            compileAll ? "" : ", incrementally",
+            toCompile.size() - misses.size());
+  }
+
+  /**
+   * Hash of what every JSP of the app in {@code sourceDirectory} can use: its tag files, fragments
+   * and descriptors, and the tag libraries of its jars.
+   */
+  @VisibleForTesting
+  static String tagLibrariesHash(Path sourceDirectory) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    if (!Files.isDirectory(sourceDirectory)) {
+      return hasher.hash().toString();
+    }
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(sourceDirectory)) {
+      files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      String path = sourceDirectory.relativize(file).toString().replace(File.separatorChar, '/');
+      if (path.startsWith("WEB-INF/lib/") && path.endsWith(".jar")) {
+        hasher.putString(path, StandardCharsets.UTF_8);
+        try (JarFile jar = new JarFile(file.toFile(), false)) {
+          Enumeration<JarEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (entry.getName().startsWith("META-INF/") && isTagLibraryFile(entry.getName())) {
+              hasher.putString(entry.getName(), StandardCharsets.UTF_8).putLong(entry.getCrc());
+            }
+          }
+        }
+      } else if (!path.startsWith("WEB-INF/classes/")
+          && !path.startsWith("WEB-INF/lib/")
+          && (isTagLibraryFile(path) || path.endsWith(".jspf"))) {
+        hasher.putString(path, StandardCharsets.UTF_8).putBytes(Files.readAllBytes(file));
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Hash of the content of the classes directories and jars of {@code classpath}. */
+  @VisibleForTesting
+  static String classpathHash(Collection<File> classpath) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (File element : classpath) {
+      Path root = element.toPath();
+      if (!Files.exists(root)) {
+        continue;
+      }
+      hasher.putString(element.getName(), StandardCharsets.UTF_8);
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(root)) {
+        files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        hasher
+            .putString(root.relativize(file).toString(), StandardCharsets.UTF_8)
+            .putBytes(MoreFiles.asByteSource(file).hash(Hashing.sha256()).asBytes());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * The key of the servlet compiled from the JSP at {@code path} in the per-JSP cache, {@code
+   * dependenciesHash} covering the tag libraries and the classpath of the app.
+   */
+  @VisibleForTesting
+  static String jspKey(
+      Path sourceDirectory, String path, String dependenciesHash, String compileEncoding)
+      throws IOException {
+    return Hashing.sha256()
+        .newHasher()
+        .putString(path, StandardCharsets.UTF_8)
+        .putBytes(Files.readAllBytes(sourceDirectory.resolve(path)))
+        .putString(dependenciesHash, StandardCharsets.UTF_8)
+        .putString(String.valueOf(compileEncoding), StandardCharsets.UTF_8)
+        .hash()
+        .toString();
+  }
+
+  /** Copy the servlet cached in {@code entry} to {@code output}, if there is one. */
+  @VisibleForTesting
+  static boolean restoreServlet(Path entry, Path output, String path) throws IOException {
+    if (!Files.isDirectory(entry)) {
+      return false;
+    }
+    copyTree(entry.resolve(CLASSES), output.resolve(CLASSES));
+    Path servlet = output.resolve(SERVLETS).resolve(path);
+    Files.createDirectories(servlet.getParent());
+    Files.copy(entry.resolve(SERVLETS), servlet, StandardCopyOption.REPLACE_EXISTING);
+    return true;
+  }
+
+  /** Keep the servlet compiled from the JSP at {@code path} in {@code entry} of the cache. */
+  @VisibleForTesting
+  static void cacheServlet(Path output, String path, Path entry) throws IOException {
+    Path servlet = output.resolve(SERVLETS).resolve(path);
+    if (Files.isDirectory(entry) || !Files.isRegularFile(servlet)) {
+      return;
+    }
+    // written aside and moved, a failed run can't leave a partial entry
+    Path partial = entry.resolveSibling(entry.getFileName() + ".tmp");
+    if (Files.exists(partial)) {
+      MoreFiles.deleteRecursively(partial, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+    Files.createDirectories(partial);
+    Files.copy(servlet, partial.resolve(SERVLETS));
+    Path classes = output.resolve(CLASSES);
+    for (Path file : servletFiles(output, readServlet(servlet))) {
+      Path copy = partial.resolve(CLASSES).resolve(classes.relativize(file).toString());
+      Files.createDirectories(copy.getParent());
+      Files.copy(file, copy);
+    }
+    Files.move(partial, entry, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Delete the entries of {@code cache} other than {@code keys}. */
+  private static void pruneCache(Path cache, Collection<String> keys) throws IOException {
+    if (!Files.isDirectory(cache)) {
+      return;
+    }
+    try (Stream<Path> entries = Files.list(cache)) {
+      for (Path entry : entries.collect(Collectors.toList())) {
+        if (!keys.contains(entry.getFileName().toString())) {
+          MoreFiles.deleteRecursively(entry, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+      }
+    }
+  }
+
+  private static void copyTree(Path source, Path target) throws IOException {
+    if (!Files.isDirectory(source)) {
+      return;
+    }
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(source)) {
+      files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Path copy = target.resolve(source.relativize(file).toString());
+      Files.createDirectories(copy.getParent());
+      Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** Split {@code paths} round robin into {@code count} batches. */
+  @VisibleForTesting
+  static List<List<String>> batches(List<String> paths, int count) {
+    List<List<String>> batches = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, count); i++) {
+      batches.add(new ArrayList<>());
+    }
+    for (int i = 0; i < paths.size(); i++) {
+      batches.get(i % batches.size()).add(paths.get(i));
+    }
+    batches.removeIf(List::isEmpty);
+    return batches;
+  }
+
+  /** Delete the servlet compiled from the JSP at {@code path}, its classes and inner classes. */
+  @VisibleForTesting
+  static void removeServlet(Path output, String path) throws IOException {
+    Path servlet = output.resolve(SERVLETS).resolve(path);
+    if (!Files.isRegularFile(servlet)) {
+      return;
+    }
+    for (Path file : servletFiles(output, readServlet(servlet))) {
+      Files.delete(file);
+    }
+    Files.delete(servlet);
+  }
+
+  /** The files compiled for the servlet {@code className}: its class, inner classes and source. */
+  private static List<Path> servletFiles(Path output, String className) throws IOException {
+    int lastDot = className.lastIndexOf('.');
+    Path directory =
+        output.resolve(CLASSES).resolve(className.substring(0, lastDot).replace('.', '/'));
+    String simpleName = className.substring(lastDot + 1);
+    if (!Files.isDirectory(directory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(
+              file -> {
+                String name = file.getFileName().toString();
+                return name.equals(simpleName + ".class")
+                    || name.equals(simpleName + ".java")
+                    || name.startsWith(simpleName + "$");
+              })
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static String readServlet(Path servlet) throws IOException {
+    return new String(Files.readAllBytes(servlet), StandardCharsets.UTF_8).trim();
+  }
+
+  /** The JSPs of the app in {@code sourceDirectory}, relative to it. */
+  @VisibleForTesting
+  static List<String> listJsps(Path sourceDirectory) throws IOException {
+    if (!Files.isDirectory(sourceDirectory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> walk = Files.walk(sourceDirectory)) {
+      return walk.filter(Files::isRegularFile)
+          .map(path -> sourceDirectory.relativize(path).toString())
+          .map(path -> path.replace(File.separatorChar, '/'))
+          .filter(path -> isJsp(path) && !path.startsWith("WEB-INF/classes/"))
+          .filter(path -> !path.startsWith("WEB-INF/lib/"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static boolean isJsp(String path) {
+    return path.endsWith(".jsp") || path.endsWith(".jspx");
+  }
+
+  private static boolean isTagLibraryFile(String path) {
+    return path.endsWith(".tld") || path.endsWith(".tag") || path.endsWith(".tagx");
+  }
+
+  /** The parameters of a batch of JSPs to compile. */
+  public interface CompileJspsParameters extends WorkParameters {
+    DirectoryProperty getSourceDirectory();
+
+    ListProperty<String> getJspPaths();
+
+    ConfigurableFileCollection getClasspath();
+
+    Property<String> getCompileEncoding();
+
+    DirectoryProperty getCompiledJspsDirectory();
+  }
+
+  /**
+   * Compile a batch of JSPs with the {@code JspC} of the worker classpath. Jasper is not a
+   * dependency of the plugin, it comes from the App Engine SDK and is called reflectively.
+   */
+  public abstract static class CompileJsps implements WorkAction<CompileJspsParameters> {
+
+    @Override
+    public void execute() {
+      CompileJspsParameters parameters = getParameters();
+      File sourceDirectory = parameters.getSourceDirectory().get().getAsFile();
+      Path output = parameters.getCompiledJspsDirectory().get().getAsFile().toPath();
+      List<String> jspPaths = parameters.getJspPaths().get();
+      try {
+        ClassLoader classLoader = getClass().getClassLoader();
+        Class<?> jspcClass = classLoader.loadClass("org.apache.jasper.JspC");
+        Object jspc = jspcClass.getConstructor().newInstance();
+        invoke(jspc, "setUriroot", String.class, sourceDirectory.getAbsolutePath());
+        invoke(jspc, "setOutputDir", String.class, output.resolve(CLASSES).toString());
+        invoke(jspc, "setClassPath", String.class, parameters.getClasspath().getAsPath());
+        invoke(jspc, "setPackage", String.class, JSP_PACKAGE);
+        invoke(jspc, "setCompile", boolean.class, true);
+        invoke(jspc, "setJspFiles", String.class, String.join(",", jspPaths));
+        if (parameters.getCompileEncoding().isPresent()) {
+          invoke(jspc, "setJavaEncoding", String.class, parameters.getCompileEncoding().get());
+        }
+        jspcClass.getMethod("execute").invoke(jspc);
+
+        Class<?> jspUtil = classLoader.loadClass("org.apache.jasper.compiler.JspUtil");
+        Method makeJavaPackage = jspUtil.getMethod("makeJavaPackage", String.class);
+        Method makeJavaIdentifier = jspUtil.getMethod("makeJavaIdentifier", String.class);
+        for (String jspPath : jspPaths) {
+          int lastSlash = jspPath.lastIndexOf('/');
+          String className = JSP_PACKAGE;
+          if (lastSlash > 0) {
+            className += "." + makeJavaPackage.invoke(null, jspPath.substring(0, lastSlash));
+          }
+          className += "." + makeJavaIdentifier.invoke(null, jspPath.substring(lastSlash + 1));
+          writeServlet(output, jspPath, className);
+          // only the classes are staged
+          Files.deleteIfExists(
+              output.resolve(CLASSES).resolve(className.replace('.', '/') + ".java"));
+        }
+      } catch (ClassNotFoundException ex) {
+        throw new GradleException("Jasper was not found on the JSP compiler classpath", ex);
+      } catch (InvocationTargetException ex) {
+        throw new GradleException("Failed to compile JSPs " + jspPaths, ex.getCause());
+      } catch (ReflectiveOperationException ex) {
+        throw new GradleException("Unsupported Jasper version", ex);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private static void invoke(Object target, String method, Class<?> type, Object value)
+        throws ReflectiveOperationException {
+      target.getClass().getMethod(method, type).invoke(target, value);
+    }
+
+    private static void writeServlet(Path output, String jspPath, String className)
+        throws IOException {
+      Path servlet = output.resolve(SERVLETS).resolve(jspPath);
+      Files.createDirectories(servlet.getParent());
+      Files.write(servlet, className.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+
+/**
+ * Push the changed classes and resources of a project to a dev server started with {@code
+ * appengineStart}, and wait for the server to reload the app. Meant to be run in a continuous build
+ * ({@code gradle --continuous appengineReload}): each change to the sources recompiles them, syncs
+ * only the changed files into the exploded app and reports how long the app took to come back,
+ * without rebuilding and extracting the war or restarting the server.
+ *
+ * <p>The dev server picks up the changes through its scan of the app directory, which is enabled
+ * by {@code appengine.run.automaticRestart}. The reload is timed from the sync to the first answer
+ * after the server showed it picked up the changes: it logged the reload of the app, or stopped
+ * answering while reloading it.
+ */
+public class DevAppServerReloadTask extends DefaultTask {
+
+  // the scan interval that automaticRestart configures on the dev server
+  private static final long SCAN_INTERVAL_MILLIS = 1000;
+  private static final long POLL_INTERVAL_MILLIS = 100;
+  // a probe held longer than this is taken as the server reloading the app
+  private static final long RELOADING_PROBE_MILLIS = 500;
+
+  // the reload messages of the java8 dev server and of the jetty based one
+  private static final Pattern RELOADED =
+      Pattern.compile(".*(Reloading the webapp context|Started .*WebAppContext).*");
+
+  private RunExtension runConfig;
+  private FileCollection classes;
+  private File explodedAppDirectory;
+  private File devAppServerLog;
+  private File reloadReport;
+
+  @Internal
+  public RunExtension getRunConfig() {
+    return runConfig;
+  }
+
+  public void setRunConfig(RunExtension runConfig) {
+    this.runConfig = runConfig;
+  }
+
+  /** The compiled classes and resources of the app, what goes in WEB-INF/classes. */
+  @Incremental
+  @InputFiles
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public FileCollection getClasses() {
+    return classes;
+  }
+
+  public void setClasses(FileCollection classes) {
+    this.classes = classes;
+  }
+
+  /**
+   * The app directory served by the dev server, that the changes are synced into. Null when the
+   * server sees the build outputs directly ({@code appengine.runFromBuildOutputs}).
+   */
+  @Internal
+  public File getExplodedAppDirectory() {
+    return explodedAppDirectory;
+  }
+
+  public void setExplodedAppDirectory(File explodedAppDirectory) {
+    this.explodedAppDirectory = explodedAppDirectory;
+  }
+
+  /** The output of the server started by {@code appengineStart}, where it logs the reloads. */
+  @Internal
+  public File getDevAppServerLog() {
+    return devAppServerLog;
+  }
+
+  public void setDevAppServerLog(File devAppServerLog) {
+    this.devAppServerLog = devAppServerLog;
+  }
+
+  /** A record of the last reload, it also lets the changes be tracked between runs. */
+  @OutputFile
+  public File getReloadReport() {
+    return reloadReport;
+  }
+
+  public void setReloadReport(File reloadReport) {
+    this.reloadReport = reloadReport;
+  }
+
+  /** Task entrypoint : sync the changes and wait for the dev server to reload them. */
+  @TaskAction
+  public void reloadAction(InputChanges inputChanges) throws IOException {
+    long start = System.nanoTime();
+    // only the lines logged from now on can be about these changes
+    long logOffset = devAppServerLog == null ? 0 : devAppServerLog.length();
+    int synced = 0;
+    for (FileChange change : inputChanges.getFileChanges(getClasses())) {
+      if (change.getFileType() == FileType.DIRECTORY) {
+        continue;
+      }
+      if (explodedAppDirectory == null) {
+        // served in place, there is nothing to copy
+        synced += inputChanges.isIncremental() ? 1 : 0;
+        continue;
+      }
+      Path webInfClasses = explodedAppDirectory.toPath().resolve("WEB-INF/classes");
+      Path target = webInfClasses.resolve(change.getNormalizedPath());
+      if (sync(change.getChangeType(), change.getFile().toPath(), target)) {
+        synced++;
+      }
+    }
+    long syncMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // always written, a missing output would make the next run sync everything again
+    StringBuilder report = new StringBuilder();
+    report.append("files=").append(synced).append("\nsyncMillis=").append(syncMillis).append('\n');
+    try {
+      if (synced == 0) {
+        getLogger().lifecycle("No changes to reload");
+        return;
+      }
+      if (!Boolean.TRUE.equals(runConfig.getAutomaticRestart())) {
+        getLogger()
+            .warn(
+                "appengine.run.automaticRestart is not set, the dev server will only pick up the"
+                    + " changes when it is restarted");
+        return;
+      }
+
+      URL url = new URL("http", reloadHost(runConfig.getHost()), reloadPort(), "/");
+      int timeoutSeconds = Math.max(1, runConfig.getStartSuccessTimeout());
+      waitForReload(url, logOffset, TimeUnit.SECONDS.toMillis(timeoutSeconds));
+      long reloadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      report.append("reloadMillis=").append(reloadMillis).append('\n');
+
+      getLogger()
+          .lifecycle(
+              "Reloaded {} changed files in {} ms ({} ms to sync them)",
+              synced,
+              reloadMillis,
+              syncMillis);
+    } finally {
+      Files.write(reloadReport.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Apply a change of {@code source} to {@code target}, returns false if {@code target} was
+   * already up to date.
+   */
+  @VisibleForTesting
+  static boolean sync(ChangeType changeType, Path source, Path target) throws IOException {
+    if (changeType == ChangeType.REMOVED) {
+      return Files.deleteIfExists(target);
+    }
+    // the first run reports every file as added, most of them are already in the exploded app
+    if (Files.isRegularFile(target)
+        && Files.size(target) == Files.size(source)
+        && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(source)) >= 0) {
+      return false;
+    }
+    Files.createDirectories(target.getParent());
+    Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    return true;
+  }
+
+  /**
+   * Wait for the dev server to pick up the changes, then until it answers again. An answer before
+   * that would come from the app as it was before the changes.
+   */
+  private void waitForReload(URL url, long logOffset, long timeoutMillis) {
+    long deadline = System.currentTimeMillis() + SCAN_INTERVAL_MILLIS + timeoutMillis;
+    try {
+      while (!logsReload(devAppServerLog, logOffset) && isServing(url, RELOADING_PROBE_MILLIS)) {
+        if (System.currentTimeMillis() >= deadline) {
+          throw new GradleException(
+              "The dev server at "
+                  + url
+                  + " did not pick up the changes within "
+                  + timeoutMillis
+                  + " ms, is appengine.run.automaticRestart set on the running server?");
+        }
+        Thread.sleep(POLL_INTERVAL_MILLIS);
+      }
+      while (System.currentTimeMillis() < deadline) {
+        if (isServing(url, timeoutMillis)) {
+          return;
+        }
+        Thread.sleep(POLL_INTERVAL_MILLIS);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new GradleException("Interrupted while waiting for the dev server to reload", ex);
+    }
+    throw new GradleException(
+        "The dev server at " + url + " did not come back within " + timeoutMillis + " ms");
+  }
+
+  /** Whether the server logged a reload of the app in {@code log} past {@code offset}. */
+  @VisibleForTesting
+  static boolean logsReload(File log, long offset) {
+    if (log == null || log.length() <= offset) {
+      return false;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+      file.seek(offset);
+      String line;
+      while ((line = file.readLine()) != null) {
+        if (RELOADED.matcher(line).matches()) {
+          return true;
+        }
+      }
+    } catch (IOException ex) {
+      // the log is only a hint, the probe still tells when the server reloads
+    }
+    return false;
+  }
+
+  private static boolean isServing(URL url, long readTimeoutMillis) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout((int) POLL_INTERVAL_MILLIS);
+      connection.setReadTimeout((int) readTimeoutMillis);
+      connection.setInstanceFollowRedirects(false);
+      try {
+        // any answer from the app will do, but not the unavailable page shown while it restarts
+        return connection.getResponseCode() < HttpURLConnection.HTTP_INTERNAL_ERROR;
+      } finally {
+        connection.disconnect();
+      }
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private int reloadPort() {
+    Integer port = runConfig.resolvePort();
+    return port == null ? 8080 : port;
+  }
+
+  @VisibleForTesting
+  static String reloadHost(String host) {
+    // the server listens on all interfaces, reach it locally
+    if (Strings.isNullOrEmpty(host) || "0.0.0.0".equals(host) || "::".equals(host)) {
+      return "localhost";
+    }
+    return host;
+  }
+}
@@ -20,6 +20,9 @@ package com.google.cloud.tools.gradle.appengine.standard;
 import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.operations.DevServers;
 import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.ProjectConfigurationException;
 import org.gradle.api.tasks.TaskAction;
@@ -27,6 +30,10 @@ import org.gradle.api.tasks.TaskAction;
 /** RunExtension App Engine Standard Environment applications locally. */
 public class DevAppServerRunTask extends DefaultTask {
 
+  private static final long RECORDING_CHECK_MILLIS = 1_000;
+  // when the run is cancelled, the time a profiled server has to dump its recording and exit
+  private static final long PROFILE_STOP_GRACE_MILLIS = 30_000;
+
   private RunExtension runConfig;
   private DevServers devServers;
 
@@ -40,9 +47,27 @@ public class DevAppServerRunTask extends DefaultTask {
 
   /** Task entrypoint : run the devappserver (blocking). */
   @TaskAction
-  public void runAction() throws AppEngineException, ProjectConfigurationException {
-    devServers
-        .newDevAppServer(CloudSdkOperations.getDefaultHandler(getLogger()))
-        .run(runConfig.toRunConfiguration());
+  public void runAction() throws AppEngineException, ProjectConfigurationException, IOException {
+    boolean profile = Boolean.TRUE.equals(runConfig.getProfile());
+    File recordingFile = runConfig.getRecordingFile();
+    if (profile) {
+      // a recording left by an earlier server would pass for this one's
+      Files.createDirectories(recordingFile.getParentFile().toPath());
+      Files.deleteIfExists(recordingFile.toPath());
+    }
+    // the server runs until it is stopped, so it is tracked without a timeout; cancelling the run
+    // (ctrl-c) stops a profiled server rather than killing it, so that it dumps its recording
+    try {
+      devServers
+          .newDevAppServer(
+              CloudSdkOperations.track(this, CloudSdkOperations.getDefaultHandler(getLogger()))
+                  .setStopGracePeriod(profile ? PROFILE_STOP_GRACE_MILLIS : 0))
+          .run(runConfig.toRunConfiguration());
+    } finally {
+      if (profile) {
+        // the server has exited, the recording is complete if it was dumped at all
+        FlightRecording.logSummary(recordingFile, RECORDING_CHECK_MILLIS, getLogger());
+      }
+    }
   }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.core.ProcessRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build scoped view of the dev server started by {@code appengineStart}. With an asynchronous
+ * start, the task returns as soon as the server process is launched and the tasks using the
+ * server only block on its readiness when they start, so the boot overlaps with the rest of the
+ * build.
+ *
+ * <p>A server started for tests is a fixture of the build: it is killed when the build finishes,
+ * failed or cancelled, if {@code appengineStop} didn't stop it.
+ *
+ * <p>{@code appengineStats} samples the server JVM in the background while the rest of the build
+ * runs, until {@code appengineStop} or the end of the build writes the series.
+ */
+public abstract class DevAppServerService
+    implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+  private CompletableFuture<Long> ready;
+  private Thread readinessThread;
+  private Process fixture;
+  private long startTime;
+  private int timeoutSeconds;
+  private JvmStatsSampler sampler;
+  private Thread samplingThread;
+  private File statsDirectory;
+
+  /**
+   * Called by the start task once the server is launched.
+   *
+   * @param timeoutSeconds how long the tasks using the server wait for it, from now
+   * @return to be completed once the server is ready, or exceptionally if it won't be
+   */
+  synchronized CompletableFuture<Long> starting(int timeoutSeconds) {
+    this.startTime = System.currentTimeMillis();
+    this.timeoutSeconds = timeoutSeconds;
+    this.ready = new CompletableFuture<>();
+    return ready;
+  }
+
+  /**
+   * Called by the start task when it reuses the server of a previous build instead of starting
+   * one, the tasks using it don't wait.
+   */
+  synchronized void reused() {
+    this.startTime = System.currentTimeMillis();
+    this.ready = CompletableFuture.completedFuture(0L);
+  }
+
+  /** Time from the start of the server to {@link System#currentTimeMillis}. */
+  synchronized long elapsedMillis() {
+    return System.currentTimeMillis() - startTime;
+  }
+
+  /** Kill {@code process} at the end of the build if it is still running. */
+  synchronized void stopWithBuild(Process process) {
+    this.fixture = process;
+  }
+
+  /** Runs {@code readinessCheck} in the background, it is interrupted if the build finishes. */
+  synchronized void checkReadiness(Runnable readinessCheck) {
+    readinessThread = new Thread(readinessCheck, "appengine-readiness");
+    readinessThread.setDaemon(true);
+    readinessThread.start();
+  }
+
+  /**
+   * Sample the server JVM every {@code intervalMillis} in the background, until {@link
+   * #stopSampling} writes the series to {@code statsDirectory}.
+   */
+  synchronized void startSampling(
+      JvmStatsSampler sampler, long intervalMillis, File statsDirectory) throws IOException {
+    stopSampling(Logging.getLogger(DevAppServerService.class));
+    this.sampler = sampler;
+    this.statsDirectory = statsDirectory;
+    samplingThread =
+        new Thread(() -> sampler.run(intervalMillis, Long.MAX_VALUE), "appengine-stats");
+    samplingThread.setDaemon(true);
+    samplingThread.start();
+  }
+
+  /** Stop sampling the server JVM, write the series and log its summary. */
+  synchronized void stopSampling(Logger logger) throws IOException {
+    if (sampler == null) {
+      return;
+    }
+    samplingThread.interrupt();
+    try {
+      // a JMX call in flight isn't interrupted
+      samplingThread.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    try (JvmStatsSampler ignored = sampler) {
+      sampler.write(statsDirectory);
+      logger.lifecycle(JvmStatsSampler.summarize(sampler.getSamples()).render());
+      logger.lifecycle("Dev App Server stats written to : " + statsDirectory.getAbsolutePath());
+    } finally {
+      sampler = null;
+      samplingThread = null;
+    }
+  }
+
+  /**
+   * Block until the server started in this build is ready, returns at once if it wasn't started
+   * asynchronously.
+   */
+  public void awaitReady(Logger logger) {
+    CompletableFuture<Long> ready;
+    long remainingMillis;
+    synchronized (this) {
+      ready = this.ready;
+      remainingMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds) - elapsedMillis();
+    }
+    if (ready == null) {
+      return;
+    }
+    if (!ready.isDone()) {
+      logger.lifecycle("Waiting for the Dev App Server to be ready");
+    }
+    try {
+      long readyMillis = ready.get(Math.max(0, remainingMillis), TimeUnit.MILLISECONDS);
+      logger.info("Dev App Server was ready in {} ms", readyMillis);
+    } catch (TimeoutException ex) {
+      throw new GradleException(
+          "The Dev App Server did not start within " + timeoutSeconds + " seconds");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof GradleException) {
+        throw (GradleException) cause;
+      }
+      throw new GradleException("The Dev App Server failed to start", cause);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new GradleException("Interrupted while waiting for the Dev App Server", ex);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    Logger logger = Logging.getLogger(DevAppServerService.class);
+    try {
+      stopSampling(logger);
+    } catch (IOException ex) {
+      logger.warn("Cannot write the Dev App Server stats: " + ex.getMessage());
+    }
+    if (readinessThread != null) {
+      readinessThread.interrupt();
+    }
+    if (ready != null) {
+      ready.cancel(false);
+    }
+    if (fixture != null && fixture.isAlive()) {
+      ProcessRegistry.destroyTree(fixture);
+    }
+  }
+}
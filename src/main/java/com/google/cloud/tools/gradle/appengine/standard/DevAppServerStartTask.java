@@ -21,21 +21,60 @@ import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.operations.DevServers;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.LegacyProcessHandler;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.NonZeroExceptionExitListener;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessExitListener;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
+import com.google.cloud.tools.gradle.appengine.core.BuildMetrics;
+import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import com.google.cloud.tools.gradle.appengine.core.ProcessRegistry;
+import com.google.cloud.tools.gradle.appengine.core.ReadinessProbe;
+import com.google.cloud.tools.gradle.appengine.core.TrackedProcessHandler;
 import com.google.cloud.tools.gradle.appengine.util.io.FileOutputLineListener;
+import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.testing.Test;
 
-/** Start the App Engine development server asynchronously. */
+/**
+ * Start the App Engine development server asynchronously. The task returns once the server logs
+ * its startup message, or with a readiness path, as soon as the server answers on it; the time to
+ * ready is recorded as the "ready" phase of the task metrics. With {@link
+ * RunExtension#getAsyncStart}, the task returns once the server is launched and the tasks declared
+ * with {@link #usedBy} wait for it to be ready when they start. With {@link
+ * RunExtension#getReuseServer}, a server left running by a previous build is reused as long as its
+ * services and settings are unchanged.
+ */
 public class DevAppServerStartTask extends DefaultTask {
 
+  /** The system properties giving tests declared with {@link #usedByTest} the server address. */
+  public static final String HOST_PROPERTY = "appengine.host";
+
+  public static final String PORT_PROPERTY = "appengine.port";
+
+  // the startup messages of the java8 dev server and of the jetty based one
+  private static final Pattern STARTED =
+      Pattern.compile(".*(Dev App Server is now running|INFO:oejs\\.Server:main: Started).*");
+
   private RunExtension runConfig;
   private DevServers devServers;
   private File devAppServerLoggingDir;
+  private Provider<DevAppServerService> devAppServerService;
+  private final Set<Test> tests = new LinkedHashSet<>();
 
   public DevAppServerStartTask() {
     // force it to always run (required since we use OutputDirectory)
@@ -59,6 +98,63 @@ public class DevAppServerStartTask extends DefaultTask {
     return devAppServerLoggingDir;
   }
 
+  @Internal
+  public Provider<DevAppServerService> getDevAppServerService() {
+    return devAppServerService;
+  }
+
+  public void setDevAppServerService(Provider<DevAppServerService> devAppServerService) {
+    this.devAppServerService = devAppServerService;
+  }
+
+  /**
+   * Declare that {@code task} uses the dev server: it runs after this task and, with an
+   * asynchronous start, waits for the server to be ready before its first action.
+   */
+  public void usedBy(Task task) {
+    task.dependsOn(this);
+    task.doFirst(user -> devAppServerService.get().awaitReady(user.getLogger()));
+  }
+
+  /**
+   * Declare that {@code test} needs the dev server, as a fixture started once for all the tests
+   * of the build: like {@link #usedBy}, and the tests get its address in the {@value
+   * #HOST_PROPERTY} and {@value #PORT_PROPERTY} system properties. The server is stopped by {@code
+   * appengineStop} once the tests ran, failed or not, or killed with the build if it is cancelled.
+   */
+  public void usedByTest(Test test) {
+    usedBy(test);
+    tests.add(test);
+    // set on execution, the address is not an input of the tests
+    test.doFirst(
+        user -> {
+          test.systemProperty(HOST_PROPERTY, serverHost());
+          test.systemProperty(PORT_PROPERTY, serverPort());
+        });
+    Task stopTask = getProject().getTasks().getByName(AppEngineStandardPlugin.STOP_TASK_NAME);
+    test.finalizedBy(stopTask);
+    // one server for every test task, stopped after the last one
+    stopTask.mustRunAfter(test);
+  }
+
+  /** The host to reach the server on, the local host when it listens on every address. */
+  private String serverHost() {
+    return DevAppServerReloadTask.reloadHost(runConfig.getHost());
+  }
+
+  private int serverPort() {
+    Integer port = runConfig.resolvePort();
+    return port == null ? 8080 : port;
+  }
+
+  /** A port nothing listens on, on any address. */
+  @VisibleForTesting
+  static int allocatePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
   /** Task entrypoint : start the dev appserver (non-blocking). */
   @TaskAction
   public void startAction() throws AppEngineException, IOException {
@@ -66,20 +162,207 @@ public class DevAppServerStartTask extends DefaultTask {
     // Add a listener to write to a file for non-blocking starts, this really only works
     // when the gradle daemon is running (which is default for newer versions of gradle)
     File logFile = new File(devAppServerLoggingDir, "dev_appserver.out");
+    boolean reuseServer = Boolean.TRUE.equals(runConfig.getReuseServer());
+    String servicesFingerprint = null;
+    String settingsFingerprint = null;
+    String readinessPath = runConfig.getReadinessPath();
+    if (reuseServer) {
+      servicesFingerprint = RunningDevAppServers.servicesFingerprint(runConfig.getServices());
+      settingsFingerprint = RunningDevAppServers.settingsFingerprint(runConfig);
+      Process running = reuseRunningServer(servicesFingerprint, settingsFingerprint);
+      if (running != null) {
+        // it may still be reloading changed services
+        if (readinessPath != null) {
+          awaitReady(running, readinessPath);
+        }
+        started(running, true, servicesFingerprint, settingsFingerprint);
+        getLogger().lifecycle("Dev App Server output written to : " + logFile.getAbsolutePath());
+        return;
+      }
+    }
+    if (Boolean.TRUE.equals(runConfig.getAllocatePort())) {
+      int port = allocatePort();
+      runConfig.setAllocatedPort(port);
+      getLogger().lifecycle("Dev App Server allocated port " + port);
+      if (runConfig.getJmxPort() != null) {
+        int jmxPort = allocatePort();
+        runConfig.setAllocatedJmxPort(jmxPort);
+        getLogger().lifecycle("Dev App Server allocated JMX port " + jmxPort);
+      }
+    }
+    if (Boolean.TRUE.equals(runConfig.getProfile())) {
+      // a recording left by an earlier server would pass for this one's
+      Files.deleteIfExists(runConfig.getRecordingFile().toPath());
+      getLogger().lifecycle("Dev App Server recorded, appengineStop prints the summary");
+    }
     FileOutputLineListener logFileWriter = new FileOutputLineListener(logFile);
 
     Logger taskLogger = getLogger();
-    ProcessHandler processHandler =
+    LegacyProcessHandler.Builder processHandlerBuilder =
         LegacyProcessHandler.builder()
             .addStdOutLineListener(taskLogger::lifecycle)
             .addStdOutLineListener(logFileWriter)
             .addStdErrLineListener(taskLogger::lifecycle)
-            .addStdErrLineListener(logFileWriter)
-            .setExitListener(new NonZeroExceptionExitListener())
-            .buildDevAppServerAsync(runConfig.getStartSuccessTimeout());
+            .addStdErrLineListener(logFileWriter);
+    ProcessExitListener exitListener = new NonZeroExceptionExitListener();
+    boolean asyncStart = Boolean.TRUE.equals(runConfig.getAsyncStart());
+    DevAppServerService service = devAppServerService.get();
+    CompletableFuture<Long> ready =
+        asyncStart ? service.starting(runConfig.getStartSuccessTimeout()) : null;
+    if (asyncStart) {
+      if (readinessPath == null) {
+        processHandlerBuilder
+            .addStdOutLineListener(line -> completeIfStarted(line, ready, service))
+            .addStdErrLineListener(line -> completeIfStarted(line, ready, service));
+      }
+      ProcessExitListener nonZeroExitListener = exitListener;
+      exitListener =
+          exitCode -> {
+            ready.completeExceptionally(
+                new GradleException("The Dev App Server exited with code " + exitCode));
+            nonZeroExitListener.onExit(exitCode);
+          };
+    }
+    processHandlerBuilder.setExitListener(exitListener);
+    // with a readiness probe or an asynchronous start, don't wait for the startup message
+    ProcessHandler processHandler =
+        readinessPath == null && !asyncStart
+            ? processHandlerBuilder.buildDevAppServerAsync(runConfig.getStartSuccessTimeout())
+            : processHandlerBuilder.async(true).build();
+
+    // the server outlives this task, its log file is closed once it exits
+    TrackedProcessHandler trackedProcessHandler =
+        CloudSdkOperations.track(this, processHandler).setDetached(true).addResource(logFileWriter);
 
-    devServers.newDevAppServer(processHandler).run(runConfig.toRunConfiguration());
+    BuildMetrics.TaskMetrics metrics = BuildMetrics.of(this);
+    if (asyncStart) {
+      try (BuildMetrics.Phase ignored = metrics.startPhase("launch")) {
+        devServers.newDevAppServer(trackedProcessHandler).run(runConfig.toRunConfiguration());
+      }
+      started(trackedProcessHandler.getProcess(), false, servicesFingerprint, settingsFingerprint);
+      if (readinessPath != null) {
+        Process process = trackedProcessHandler.getProcess();
+        service.checkReadiness(
+            () -> {
+              try {
+                awaitReady(process, readinessPath);
+                ready.complete(service.elapsedMillis());
+              } catch (IOException | RuntimeException ex) {
+                ready.completeExceptionally(ex);
+              }
+            });
+      }
+      getLogger().lifecycle("Dev App Server starting, the tasks using it wait until it is ready");
+      getLogger().lifecycle("Dev App Server output written to : " + logFile.getAbsolutePath());
+      return;
+    }
+
+    long startTime = System.currentTimeMillis();
+    try (BuildMetrics.Phase ignored = metrics.startPhase("ready")) {
+      devServers.newDevAppServer(trackedProcessHandler).run(runConfig.toRunConfiguration());
+      started(trackedProcessHandler.getProcess(), false, servicesFingerprint, settingsFingerprint);
+      if (readinessPath != null) {
+        awaitReady(trackedProcessHandler.getProcess(), readinessPath);
+      }
+    }
+    getLogger()
+        .lifecycle("Dev App Server ready in " + (System.currentTimeMillis() - startTime) + " ms");
 
     getLogger().lifecycle("Dev App Server output written to : " + logFile.getAbsolutePath());
   }
+
+  /**
+   * Hand the server over to the build service, and to later builds if it can be reused. A server
+   * reused from a previous build is registered like a new one, and is ready already.
+   */
+  private void started(
+      Process process, boolean reused, String servicesFingerprint, String settingsFingerprint)
+      throws IOException {
+    runConfig.setRecording(Boolean.TRUE.equals(runConfig.getProfile()));
+    DevAppServerService service = devAppServerService.get();
+    if (reused) {
+      service.reused();
+    }
+    // a fixture only if tests using it run in this build, not when started by hand
+    if (tests.stream().anyMatch(getProject().getGradle().getTaskGraph()::hasTask)) {
+      service.stopWithBuild(process);
+    }
+    if (servicesFingerprint != null) {
+      RunningDevAppServers.started(
+          devAppServerLoggingDir, process, servicesFingerprint, settingsFingerprint);
+    }
+  }
+
+  /**
+   * The server left running by a previous build if it can serve this one, else null. A server with
+   * other settings, or other services it doesn't reload itself, is stopped.
+   */
+  private Process reuseRunningServer(String servicesFingerprint, String settingsFingerprint) {
+    RunningDevAppServers.RunningDevAppServer running =
+        RunningDevAppServers.find(devAppServerLoggingDir);
+    if (running == null) {
+      return null;
+    }
+    if (running.getSettingsFingerprint().equals(settingsFingerprint)) {
+      if (running.getServicesFingerprint().equals(servicesFingerprint)) {
+        getLogger().lifecycle("Dev App Server reused, its services and settings are unchanged");
+        return running.getProcess();
+      }
+      if (Boolean.TRUE.equals(runConfig.getAutomaticRestart())) {
+        getLogger().lifecycle("Dev App Server reused, it reloads the changed services itself");
+        return running.getProcess();
+      }
+    }
+    getLogger().lifecycle("Restarting the Dev App Server, its services or settings changed");
+    ProcessRegistry.destroyTree(running.getProcess());
+    return null;
+  }
+
+  private static void completeIfStarted(
+      String line, CompletableFuture<Long> ready, DevAppServerService service) {
+    if (!ready.isDone() && STARTED.matcher(line).matches()) {
+      ready.complete(service.elapsedMillis());
+    }
+  }
+
+  /** Wait for the server to answer on {@code readinessPath}, dump its threads if it doesn't. */
+  private void awaitReady(Process process, String readinessPath) throws IOException {
+    URL url =
+        new URL(
+            "http",
+            serverHost(),
+            serverPort(),
+            readinessPath.startsWith("/") ? readinessPath : "/" + readinessPath);
+    ReadinessProbe probe =
+        new ReadinessProbe(
+            url,
+            runConfig.getReadinessStatus(),
+            runConfig.getReadinessBackoffMillis(),
+            TimeUnit.SECONDS.toMillis(runConfig.getStartSuccessTimeout()));
+    try {
+      if (probe.await(process)) {
+        getLogger().info("{} answered after {} probes", url, probe.getAttempts());
+        return;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new GradleException("Interrupted while waiting for the dev server", ex);
+    }
+    File threadDump = new File(devAppServerLoggingDir, "dev_appserver-threads.txt");
+    try {
+      ReadinessProbe.dumpThreads(process, threadDump);
+    } finally {
+      // a server that didn't come up is of no use to the build
+      ProcessRegistry.destroyTree(process);
+    }
+    throw new GradleException(
+        "The dev server did not answer "
+            + runConfig.getReadinessStatus()
+            + " on "
+            + url
+            + " within "
+            + runConfig.getStartSuccessTimeout()
+            + " seconds, its threads are dumped in "
+            + threadDump.getAbsolutePath());
+  }
 }
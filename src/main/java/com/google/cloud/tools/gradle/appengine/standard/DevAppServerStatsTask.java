@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Sample the heap, GC and threads of the dev server JVM started by {@code appengineStart} with
+ * {@link RunExtension#getJmxPort}. Without a duration, the samples are taken in the background
+ * while the rest of the build runs, a load test for instance, and written by {@code appengineStop}
+ * or at the end of the build; with one, the task samples until it is over.
+ */
+public class DevAppServerStatsTask extends DefaultTask {
+
+  private RunExtension runConfig;
+  private Provider<DevAppServerService> devAppServerService;
+  private File statsDirectory;
+  private long intervalMillis = 1000;
+  private Integer durationSeconds;
+  // the worker threads of the jetty pools of the dev servers
+  private String requestThreadPattern = "(qtp|btpool).*";
+
+  public void setRunConfig(RunExtension runConfig) {
+    this.runConfig = runConfig;
+  }
+
+  @Internal
+  public Provider<DevAppServerService> getDevAppServerService() {
+    return devAppServerService;
+  }
+
+  public void setDevAppServerService(Provider<DevAppServerService> devAppServerService) {
+    this.devAppServerService = devAppServerService;
+  }
+
+  /** Where the CSV and JSON series go, next to the output of the server. */
+  @Internal
+  public File getStatsDirectory() {
+    return statsDirectory;
+  }
+
+  public void setStatsDirectory(File statsDirectory) {
+    this.statsDirectory = statsDirectory;
+  }
+
+  @Internal
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public void setIntervalMillis(long intervalMillis) {
+    this.intervalMillis = intervalMillis;
+  }
+
+  /** How long the task samples for, null to sample in the background until the server stops. */
+  @Internal
+  public Integer getDurationSeconds() {
+    return durationSeconds;
+  }
+
+  public void setDurationSeconds(Integer durationSeconds) {
+    this.durationSeconds = durationSeconds;
+  }
+
+  /** The names of the threads serving requests, to tell how saturated the server is. */
+  @Internal
+  public String getRequestThreadPattern() {
+    return requestThreadPattern;
+  }
+
+  public void setRequestThreadPattern(String requestThreadPattern) {
+    this.requestThreadPattern = requestThreadPattern;
+  }
+
+  /** Task entrypoint : sample the dev server JVM. */
+  @TaskAction
+  public void statsAction() throws IOException {
+    Integer jmxPort = runConfig.resolveJmxPort();
+    if (jmxPort == null) {
+      throw new GradleException(
+          "Set appengine.run.jmxPort and start the Dev App Server to sample its JVM");
+    }
+    DevAppServerService service = devAppServerService.get();
+    service.awaitReady(getLogger());
+    Files.createDirectories(statsDirectory.toPath());
+    JvmStatsSampler sampler;
+    try {
+      sampler = JvmStatsSampler.connect(jmxPort, Pattern.compile(requestThreadPattern));
+    } catch (IOException ex) {
+      throw new GradleException(
+          "Cannot connect to the Dev App Server JVM on port "
+              + jmxPort
+              + ", was it started with jmxPort set?",
+          ex);
+    }
+
+    if (durationSeconds == null) {
+      service.startSampling(sampler, intervalMillis, statsDirectory);
+      getLogger()
+          .lifecycle(
+              "Sampling the Dev App Server JVM every {} ms until {}",
+              intervalMillis,
+              AppEngineStandardPlugin.STOP_TASK_NAME);
+      return;
+    }
+    try (JvmStatsSampler ignored = sampler) {
+      sampler.run(
+          intervalMillis, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(durationSeconds));
+      sampler.write(statsDirectory);
+    }
+    getLogger().lifecycle(JvmStatsSampler.summarize(sampler.getSamples()).render());
+    getLogger().lifecycle("Dev App Server stats written to : " + statsDirectory.getAbsolutePath());
+  }
+}
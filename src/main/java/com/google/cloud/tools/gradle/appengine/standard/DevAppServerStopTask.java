@@ -21,14 +21,21 @@ import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.operations.DevServer;
 import com.google.cloud.tools.appengine.operations.DevServers;
 import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import java.io.IOException;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
 
 /** Stop the App Engine development server. */
 public class DevAppServerStopTask extends DefaultTask {
 
+  // the server dumps its recording while it exits, after answering the stop request
+  private static final long RECORDING_DUMP_TIMEOUT_MILLIS = 30_000;
+
   private RunExtension runConfig;
   private DevServers devServers;
+  private Provider<DevAppServerService> devAppServerService;
 
   public void setRunConfig(RunExtension runConfig) {
     this.runConfig = runConfig;
@@ -38,15 +45,43 @@ public class DevAppServerStopTask extends DefaultTask {
     this.devServers = devServers;
   }
 
+  @Internal
+  public Provider<DevAppServerService> getDevAppServerService() {
+    return devAppServerService;
+  }
+
+  public void setDevAppServerService(Provider<DevAppServerService> devAppServerService) {
+    this.devAppServerService = devAppServerService;
+  }
+
   /** Task entrypoint : Stop the dev appserver (get StopConfiguration from helper). */
   @TaskAction
-  public void stopAction() {
-    DevServer server =
-        devServers.newDevAppServer(CloudSdkOperations.getDefaultHandler(getLogger()));
+  public void stopAction() throws IOException {
+    if (devAppServerService != null) {
+      // the last samples, before the server goes away
+      devAppServerService.get().stopSampling(getLogger());
+    }
+    DevServer server = devServers.newDevAppServer(CloudSdkOperations.getDefaultHandler(this));
+    boolean stopped = false;
     try {
       server.stop(runConfig.toStopConfiguration());
+      stopped = true;
     } catch (AppEngineException ex) {
       getLogger().error("Failed to stop server: " + ex.getMessage());
     }
+    if (stopped && Boolean.TRUE.equals(runConfig.getAllocatePort())) {
+      // the port is free again, the next server gets a new one; kept while the server may still
+      // run, so another appengineStop can reach it
+      runConfig.setAllocatedPort(null);
+      runConfig.setAllocatedJmxPort(null);
+    }
+    // only wait for a dump if the stopped server was recorded
+    if (runConfig.isRecording()) {
+      runConfig.setRecording(false);
+      if (stopped) {
+        FlightRecording.logSummary(
+            runConfig.getRecordingFile(), RECORDING_DUMP_TIMEOUT_MILLIS, getLogger());
+      }
+    }
   }
 }
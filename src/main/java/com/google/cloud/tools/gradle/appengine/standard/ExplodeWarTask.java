@@ -17,33 +17,330 @@
 
 package com.google.cloud.tools.gradle.appengine.standard;
 
+import com.google.cloud.tools.gradle.appengine.util.io.ZipExtractor;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
-import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.bundling.War;
 
-/** Expand a war. */
-public class ExplodeWarTask extends Sync {
+/**
+ * Expand a war. Only the entries that changed since the last run are extracted: the crc and size
+ * of each entry in the war's central directory are compared to an index of the exploded directory
+ * kept in the task's temporary directory, and files that are not in the war anymore are deleted.
+ *
+ * <p>With {@link #setWarSpec(War)}, the directory is populated straight from the copy spec of the
+ * war task instead, so the war never has to be compressed and extracted again.
+ */
+public class ExplodeWarTask extends DefaultTask {
+
+  // generated by the dev server, it must survive re-explosion
+  private static final Set<String> PRESERVED =
+      ImmutableSet.of("WEB-INF/appengine-generated/datastore-indexes-auto.xml");
 
+  private File warFile;
+  private War warSpec;
   private File explodedAppDirectory;
 
+  public ExplodeWarTask() {
+    // the copy spec of a war can't be fingerprinted (renames, filters...), rely on the incremental
+    // copy instead
+    getOutputs().upToDateWhen(task -> warSpec == null);
+  }
+
+  @InputFile
+  @Optional
+  public File getWarFile() {
+    return warFile;
+  }
+
   public void setWarFile(File warFile) {
-    from(getProject().zipTree(warFile));
+    this.warFile = warFile;
+  }
+
+  @Internal
+  public War getWarSpec() {
+    return warSpec;
+  }
+
+  /** Populate the exploded directory from the copy spec of {@code war} instead of its archive. */
+  public void setWarSpec(War warSpec) {
+    this.warSpec = warSpec;
+  }
+
+  /** The files that go in the war, when exploding from its copy spec. */
+  @InputFiles
+  @Optional
+  public FileCollection getWarSources() {
+    return warSpec == null ? null : warSpec.getSource();
   }
 
   /**
-   * Sets the output directory of Sync Task and preserves the setting so it can be recovered later
+   * Sets the output directory of the task and preserves the setting so it can be recovered later
    * via getter.
    */
   public void setExplodedAppDirectory(File explodedAppDirectory) {
     this.explodedAppDirectory = explodedAppDirectory;
-    into(explodedAppDirectory);
-    preserve(
-        patternFilterable ->
-            patternFilterable.include("WEB-INF/appengine-generated/datastore-indexes-auto.xml"));
   }
 
   @OutputDirectory
   public File getExplodedAppDirectory() {
     return explodedAppDirectory;
   }
+
+  /** Task entrypoint : explode the war. */
+  @TaskAction
+  public void explodeWar() throws IOException {
+    if (warSpec != null) {
+      Stats stats = copyWarSpec();
+      getLogger()
+          .info(
+              "Exploded {} sources: {} files copied, {} unchanged, {} files deleted",
+              warSpec.getName(),
+              stats.extracted,
+              stats.unchanged,
+              stats.deleted);
+      return;
+    }
+
+    File indexFile = new File(getTemporaryDir(), "exploded-index.txt");
+    Map<String, IndexEntry> index = readIndex(indexFile);
+    // the index is rewritten as entries are extracted, drop it so a failure can't leave it stale
+    Files.deleteIfExists(indexFile.toPath());
+
+    int parallelism = getProject().getGradle().getStartParameter().getMaxWorkerCount();
+    Stats stats = explode(warFile, explodedAppDirectory.toPath(), index, parallelism);
+    writeIndex(indexFile, index);
+
+    getLogger()
+        .info(
+            "Exploded {}: {} entries extracted, {} unchanged, {} files deleted",
+            warFile.getName(),
+            stats.extracted,
+            stats.unchanged,
+            stats.deleted);
+  }
+
+  /**
+   * Bring {@code explodedApp} in sync with {@code war}, skipping the entries whose crc and size
+   * match {@code index} and whose file was not modified since it was extracted. {@code index} is
+   * updated to describe the new content of the directory. Changed entries are extracted on up to
+   * {@code parallelism} threads.
+   */
+  @VisibleForTesting
+  static Stats explode(File war, Path explodedApp, Map<String, IndexEntry> index, int parallelism)
+      throws IOException {
+    Stats stats = new Stats();
+    Path root = explodedApp.toAbsolutePath().normalize();
+    Files.createDirectories(root);
+    Set<String> wantedFiles = new HashSet<>(PRESERVED);
+    Set<Path> wantedDirectories = new HashSet<>();
+    wantedDirectories.add(root);
+
+    try (ZipExtractor extractor = ZipExtractor.open(war)) {
+      Map<String, ZipExtractor.Entry> toExtract = new LinkedHashMap<>();
+      for (ZipExtractor.Entry entry : extractor.getEntries()) {
+        Path target = root.resolve(entry.getName()).normalize();
+        if (!target.startsWith(root)) {
+          throw new GradleException(
+              "War entry is outside of the target directory: " + entry.getName());
+        }
+        String name = root.relativize(target).toString().replace(File.separatorChar, '/');
+        if (entry.isDirectory()) {
+          Files.createDirectories(target);
+          addWithParents(wantedDirectories, target, root);
+          continue;
+        }
+        wantedFiles.add(name);
+        addWithParents(wantedDirectories, target.getParent(), root);
+
+        IndexEntry previous = index.get(name);
+        if (previous != null && previous.matches(entry, target)) {
+          stats.unchanged++;
+        } else {
+          toExtract.put(name, entry);
+        }
+      }
+
+      extractor.extract(toExtract.values(), root, parallelism);
+      for (Map.Entry<String, ZipExtractor.Entry> extracted : toExtract.entrySet()) {
+        ZipExtractor.Entry entry = extracted.getValue();
+        long lastModified = root.resolve(extracted.getKey()).toFile().lastModified();
+        index.put(
+            extracted.getKey(), new IndexEntry(entry.getCrc(), entry.getSize(), lastModified));
+      }
+      stats.extracted = toExtract.size();
+    }
+
+    index.keySet().retainAll(wantedFiles);
+    stats.deleted = deleteUnwanted(root, wantedFiles, wantedDirectories);
+    return stats;
+  }
+
+  /** Copy the files of the war copy spec that changed, and delete the ones that are gone. */
+  private Stats copyWarSpec() throws IOException {
+    Stats stats = new Stats();
+    Path root = explodedAppDirectory.toPath().toAbsolutePath().normalize();
+    Set<String> wantedFiles = new HashSet<>(PRESERVED);
+    Set<Path> wantedDirectories = new HashSet<>();
+    wantedDirectories.add(root);
+
+    getProject()
+        .copy(
+            copySpec -> {
+              copySpec.into(root.toFile());
+              copySpec.with(warSpec);
+              copySpec.eachFile(
+                  details -> {
+                    String name = details.getRelativePath().getPathString();
+                    Path target = root.resolve(name);
+                    wantedFiles.add(name);
+                    addWithParents(wantedDirectories, target.getParent(), root);
+                    // copies are not timestamped with their source, so a copy newer than its
+                    // source with the same size is up to date
+                    File targetFile = target.toFile();
+                    if (targetFile.isFile()
+                        && targetFile.length() == details.getSize()
+                        && targetFile.lastModified() >= details.getLastModified()) {
+                      details.exclude();
+                      stats.unchanged++;
+                    } else {
+                      stats.extracted++;
+                    }
+                  });
+            });
+
+    stats.deleted = deleteUnwanted(root, wantedFiles, wantedDirectories);
+    return stats;
+  }
+
+  private static void addWithParents(Set<Path> directories, Path directory, Path root) {
+    for (Path each = directory; each != null && each.startsWith(root); each = each.getParent()) {
+      if (!directories.add(each)) {
+        return;
+      }
+    }
+  }
+
+  /** Delete the files that are not in the war, and the directories left empty. */
+  private static int deleteUnwanted(Path root, Set<String> wantedFiles, Set<Path> wantedDirectories)
+      throws IOException {
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(root)) {
+      // deepest first, so directories are emptied before they are looked at
+      paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+    int deleted = 0;
+    for (Path path : paths) {
+      if (Files.isDirectory(path)) {
+        if (!wantedDirectories.contains(path) && isEmpty(path)) {
+          Files.delete(path);
+        }
+      } else {
+        String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+        if (!wantedFiles.contains(name)) {
+          Files.delete(path);
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private static boolean isEmpty(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      return !children.findAny().isPresent();
+    }
+  }
+
+  private static Map<String, IndexEntry> readIndex(File indexFile) {
+    Map<String, IndexEntry> index = new HashMap<>();
+    if (!indexFile.isFile()) {
+      return index;
+    }
+    try (Stream<String> lines = Files.lines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+      lines.forEach(
+          line -> {
+            String[] fields = line.split("\t", 4);
+            if (fields.length == 4) {
+              index.put(
+                  fields[3],
+                  new IndexEntry(
+                      Long.parseLong(fields[0]),
+                      Long.parseLong(fields[1]),
+                      Long.parseLong(fields[2])));
+            }
+          });
+    } catch (IOException | UncheckedIOException | NumberFormatException ex) {
+      // a broken index only costs a full extraction
+      index.clear();
+    }
+    return index;
+  }
+
+  private static void writeIndex(File indexFile, Map<String, IndexEntry> index)
+      throws IOException {
+    try (BufferedWriter writer =
+        Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+        IndexEntry value = entry.getValue();
+        writer.write(
+            value.crc + "\t" + value.size + "\t" + value.lastModified + "\t" + entry.getKey());
+        writer.newLine();
+      }
+    }
+  }
+
+  /** What was extracted from a war entry. */
+  @VisibleForTesting
+  static class IndexEntry {
+    private final long crc;
+    private final long size;
+    private final long lastModified;
+
+    IndexEntry(long crc, long size, long lastModified) {
+      this.crc = crc;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    private boolean matches(ZipExtractor.Entry entry, Path target) {
+      File file = target.toFile();
+      return crc == entry.getCrc()
+          && size == entry.getSize()
+          && file.length() == size
+          && file.lastModified() == lastModified;
+    }
+  }
+
+  /** Counts of what an explosion did. */
+  @VisibleForTesting
+  static class Stats {
+    int extracted;
+    int unchanged;
+    int deleted;
+  }
 }
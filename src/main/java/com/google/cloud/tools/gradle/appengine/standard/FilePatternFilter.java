@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.util.AppEngineWebXml.FilePattern;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The files selected by the {@code static-files} or {@code resource-files} of appengine-web.xml:
+ * the ones matching an include and none of the excludes, everything when there are no includes.
+ * Paths are relative to the root of the app and start with a slash.
+ */
+class FilePatternFilter {
+
+  private final List<FilePattern> includes = new ArrayList<>();
+  private final List<Pattern> includeRegexes = new ArrayList<>();
+  private final List<Pattern> excludeRegexes = new ArrayList<>();
+
+  /**
+   * Build the filter of {@code patterns}, where {@code alwaysExcluded} are globs that are never
+   * selected whatever the patterns.
+   */
+  FilePatternFilter(List<FilePattern> patterns, String... alwaysExcluded) {
+    for (FilePattern pattern : patterns) {
+      if (pattern.isInclude()) {
+        includes.add(pattern);
+        includeRegexes.add(Pattern.compile(globToRegex(pattern.getPath())));
+      } else {
+        excludeRegexes.add(Pattern.compile(globToRegex(pattern.getPath())));
+      }
+    }
+    if (includes.isEmpty()) {
+      FilePattern everything =
+          new FilePattern(true, "/**", null, Collections.<String, String>emptyMap());
+      includes.add(everything);
+      includeRegexes.add(Pattern.compile(globToRegex(everything.getPath())));
+    }
+    for (String glob : alwaysExcluded) {
+      excludeRegexes.add(Pattern.compile(globToRegex(glob)));
+    }
+  }
+
+  /** The include patterns, in order, with the implicit one when there are none. */
+  List<FilePattern> getIncludes() {
+    return includes;
+  }
+
+  boolean matches(String path) {
+    for (Pattern exclude : excludeRegexes) {
+      if (exclude.matcher(path).matches()) {
+        return false;
+      }
+    }
+    for (Pattern include : includeRegexes) {
+      if (include.matcher(path).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A regex matching the paths of {@code glob}: {@code **} crosses directories, not {@code *}. */
+  static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+          regex.append(".*");
+          i++;
+        } else {
+          regex.append("[^/]*");
+        }
+      } else if ("\\.[]{}()+-?^$|".indexOf(c) >= 0) {
+        regex.append('\\').append(c);
+      } else {
+        regex.append(c);
+      }
+    }
+    return regex.toString();
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.gradle.api.logging.Logger;
+
+/**
+ * The Java Flight Recorder recording of the dev server. The server's JVM starts recording with
+ * the configured profile and dumps the recording when it exits, the summary reads it through
+ * {@code jdk.jfr.consumer}, found reflectively as the plugin still runs on java 8.
+ */
+class FlightRecording {
+
+  static final String RECORDING_FILE_NAME = "dev_appserver.jfr";
+
+  private static final int TOP = 10;
+  private static final long POLL_MILLIS = 200;
+
+  private FlightRecording() {}
+
+  /** The JVM flag that records with the {@code settings} profile and dumps to {@code file}. */
+  static String startFlag(String settings, File file) {
+    return "-XX:StartFlightRecording=name=appengine,settings="
+        + settings
+        + ",dumponexit=true,filename="
+        + file.getAbsolutePath();
+  }
+
+  /**
+   * Wait until the exiting server has dumped the recording to {@code file}, that is until it is
+   * there and doesn't grow anymore. Returns false if it isn't complete after {@code timeoutMillis}.
+   */
+  static boolean awaitDump(File file, long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    long size = -1;
+    while (System.currentTimeMillis() < deadline) {
+      long current = file.isFile() ? file.length() : -1;
+      if (current > 0 && current == size) {
+        return true;
+      }
+      size = current;
+      Thread.sleep(POLL_MILLIS);
+    }
+    return false;
+  }
+
+  /** Log the summary of the recording once the server has dumped it. */
+  static void logSummary(File file, long timeoutMillis, Logger logger) throws IOException {
+    try {
+      if (!awaitDump(file, timeoutMillis)) {
+        logger.warn("The Dev App Server didn't dump its recording to " + file);
+        return;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    logger.lifecycle("Dev App Server recording written to : " + file.getAbsolutePath());
+    logger.lifecycle(summarize(file));
+  }
+
+  /** The hot methods, allocation sites and GC pauses of the recording, as text. */
+  static String summarize(File file) throws IOException {
+    Closeable recording;
+    Method hasMoreEvents;
+    Method readEvent;
+    try {
+      Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+      hasMoreEvents = recordingFile.getMethod("hasMoreEvents");
+      readEvent = recordingFile.getMethod("readEvent");
+      recording = (Closeable) recordingFile.getConstructor(Path.class).newInstance(file.toPath());
+    } catch (ClassNotFoundException
+        | NoSuchMethodException
+        | InstantiationException
+        | IllegalAccessException ex) {
+      return "The recording can't be summarized on this JVM, open "
+          + file
+          + " in JDK Mission Control\n";
+    } catch (InvocationTargetException ex) {
+      throw new IOException("Cannot read the recording " + file, ex.getCause());
+    }
+
+    Map<String, Long> executionSamples = new HashMap<>();
+    Map<String, Long> allocationSamples = new HashMap<>();
+    Map<String, Long> tlabAllocations = new HashMap<>();
+    int collections = 0;
+    Duration totalPause = Duration.ZERO;
+    Duration longestPause = Duration.ZERO;
+    // one event at a time, the recording may not fit in the heap of the daemon
+    try (Closeable ignored = recording) {
+      while ((Boolean) hasMoreEvents.invoke(recording)) {
+        Object event = readEvent.invoke(recording);
+        String name = (String) invoke(invoke(event, "getEventType"), "getName");
+        switch (name) {
+          case "jdk.ExecutionSample":
+            executionSamples.merge(topFrame(event), 1L, Long::sum);
+            break;
+          case "jdk.ObjectAllocationSample":
+            allocationSamples.merge(
+                allocationSite(event), (Long) value(event, "weight"), Long::sum);
+            break;
+          case "jdk.ObjectAllocationInNewTLAB":
+            tlabAllocations.merge(
+                allocationSite(event), (Long) value(event, "tlabSize"), Long::sum);
+            break;
+          case "jdk.ObjectAllocationOutsideTLAB":
+            tlabAllocations.merge(
+                allocationSite(event), (Long) value(event, "allocationSize"), Long::sum);
+            break;
+          case "jdk.GarbageCollection":
+            collections++;
+            totalPause = totalPause.plus(duration(event, "sumOfPauses"));
+            Duration pause = duration(event, "longestPause");
+            if (pause.compareTo(longestPause) > 0) {
+              longestPause = pause;
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    } catch (InvocationTargetException ex) {
+      throw new IOException("Cannot read the recording " + file, ex.getCause());
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException("Cannot read the recording " + file, ex);
+    }
+
+    StringBuilder summary = new StringBuilder();
+    summary.append("Hot methods (execution samples):\n");
+    appendTop(summary, executionSamples, "");
+    // newer JVMs sample allocations, older ones record them per TLAB
+    summary.append("Allocation sites (bytes allocated):\n");
+    appendTop(summary, allocationSamples.isEmpty() ? tlabAllocations : allocationSamples, " B");
+    summary
+        .append("GC pauses: ")
+        .append(collections)
+        .append(" collections, ")
+        .append(totalPause.toMillis())
+        .append(" ms in total, ")
+        .append(longestPause.toMillis())
+        .append(" ms at most\n");
+    return summary.toString();
+  }
+
+  private static void appendTop(StringBuilder summary, Map<String, Long> counts, String unit) {
+    if (counts.isEmpty()) {
+      summary.append("  none recorded\n");
+      return;
+    }
+    counts.entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .limit(TOP)
+        .forEach(
+            entry ->
+                summary.append(
+                    String.format(
+                        Locale.ROOT, "  %12d%s  %s%n", entry.getValue(), unit, entry.getKey())));
+  }
+
+  /** The allocated class and the method that allocated it. */
+  private static String allocationSite(Object event) {
+    return invoke(value(event, "objectClass"), "getName") + " in " + topFrame(event);
+  }
+
+  /** The innermost java method of the stack trace of {@code event}. */
+  private static String topFrame(Object event) {
+    Object stackTrace = invoke(event, "getStackTrace");
+    if (stackTrace != null) {
+      for (Object frame : (List<?>) invoke(stackTrace, "getFrames")) {
+        if ((Boolean) invoke(frame, "isJavaFrame")) {
+          Object method = invoke(frame, "getMethod");
+          return invoke(invoke(method, "getType"), "getName") + "." + invoke(method, "getName");
+        }
+      }
+    }
+    return "<unknown>";
+  }
+
+  private static Object value(Object event, String field) {
+    return get(event, "getValue", field);
+  }
+
+  private static Duration duration(Object event, String field) {
+    return (Duration) get(event, "getDuration", field);
+  }
+
+  private static Object get(Object event, String getter, String field) {
+    try {
+      return event.getClass().getMethod(getter, String.class).invoke(event, field);
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException("Cannot read " + field + " of a recorded event", ex);
+    }
+  }
+
+  private static Object invoke(Object target, String method) {
+    try {
+      return target.getClass().getMethod(method).invoke(target);
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException("Cannot read " + method + " of a recorded event", ex);
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * Samples the heap, the garbage collections and the threads of the dev server JVM over JMX, and
+ * writes them as CSV and JSON time series. The request threads are the pool threads matching a
+ * name pattern; a request thread is busy unless it is parked, or polling its selector.
+ */
+class JvmStatsSampler implements Closeable {
+
+  static final String CSV_FILE_NAME = "dev_appserver-stats.csv";
+  static final String JSON_FILE_NAME = "dev_appserver-stats.json";
+
+  private static final String LOOPBACK = "127.0.0.1";
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  private static final String CSV_HEADER =
+      "timestamp,elapsedMillis,heapUsed,heapCommitted,heapMax,gcCount,gcTimeMillis,"
+          + "threads,daemonThreads,requestThreads,busyRequestThreads";
+
+  private final MBeanServerConnection connection;
+  private final Closeable connector;
+  private final Pattern requestThreads;
+  private final MemoryMXBean memory;
+  private final ThreadMXBean threads;
+  private final List<Sample> samples = new ArrayList<>();
+  private long startTime;
+
+  @VisibleForTesting
+  JvmStatsSampler(MBeanServerConnection connection, Closeable connector, Pattern requestThreads)
+      throws IOException {
+    this.connection = connection;
+    this.connector = connector;
+    this.requestThreads = requestThreads;
+    this.memory =
+        ManagementFactory.newPlatformMXBeanProxy(
+            connection, ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+    this.threads =
+        ManagementFactory.newPlatformMXBeanProxy(
+            connection, ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+  }
+
+  /** Connect to the JMX agent of the JVM listening on {@code port} of the loopback address. */
+  static JvmStatsSampler connect(int port, Pattern requestThreads) throws IOException {
+    JMXServiceURL url =
+        new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + LOOPBACK + ":" + port + "/jmxrmi");
+    JMXConnector connector = JMXConnectorFactory.connect(url);
+    try {
+      return new JvmStatsSampler(connector.getMBeanServerConnection(), connector, requestThreads);
+    } catch (IOException | RuntimeException ex) {
+      connector.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * The flags opening a JMX agent on {@code port} of the loopback address, with RMI on the same
+   * port so only one port has to be free. The agent doesn't authenticate, it must not listen on
+   * other addresses: {@code jmxremote.host} binds it, {@code jmxremote.local.only} would only
+   * filter the clients of the local connector.
+   */
+  static List<String> jmxFlags(int port) {
+    return ImmutableList.of(
+        "-Dcom.sun.management.jmxremote.port=" + port,
+        "-Dcom.sun.management.jmxremote.rmi.port=" + port,
+        "-Dcom.sun.management.jmxremote.host=" + LOOPBACK,
+        "-Dcom.sun.management.jmxremote.authenticate=false",
+        "-Dcom.sun.management.jmxremote.ssl=false",
+        "-Djava.rmi.server.hostname=" + LOOPBACK);
+  }
+
+  /**
+   * Sample every {@code intervalMillis} until {@code endTime}, the thread is interrupted or the
+   * JVM goes away.
+   */
+  void run(long intervalMillis, long endTime) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        sample();
+        long remainingMillis = endTime - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+          return;
+        }
+        Thread.sleep(Math.min(intervalMillis, remainingMillis));
+      }
+    } catch (InterruptedException ex) {
+      // stopped with the server or the build
+    } catch (IOException | RuntimeException ex) {
+      // the server exited, its samples stop there
+    }
+  }
+
+  /** Take a sample and add it to the series. */
+  @VisibleForTesting
+  Sample sample() throws IOException {
+    long timestamp = System.currentTimeMillis();
+    Sample sample = new Sample();
+    sample.timestamp = timestamp;
+
+    MemoryUsage heap = memory.getHeapMemoryUsage();
+    sample.heapUsed = heap.getUsed();
+    sample.heapCommitted = heap.getCommitted();
+    sample.heapMax = heap.getMax();
+
+    for (ObjectName name : connection.queryNames(garbageCollectors(), null)) {
+      GarbageCollectorMXBean collector =
+          ManagementFactory.newPlatformMXBeanProxy(
+              connection, name.getCanonicalName(), GarbageCollectorMXBean.class);
+      // -1 if the collector doesn't tell
+      sample.gcCount += Math.max(0, collector.getCollectionCount());
+      sample.gcTimeMillis += Math.max(0, collector.getCollectionTime());
+    }
+
+    sample.threads = threads.getThreadCount();
+    sample.daemonThreads = threads.getDaemonThreadCount();
+    for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds(), 1)) {
+      // a thread that ended since its id was listed has no info
+      if (thread == null || !requestThreads.matcher(thread.getThreadName()).matches()) {
+        continue;
+      }
+      sample.requestThreads++;
+      if (isBusy(thread)) {
+        sample.busyRequestThreads++;
+      }
+    }
+
+    synchronized (this) {
+      if (samples.isEmpty()) {
+        startTime = timestamp;
+      }
+      sample.elapsedMillis = timestamp - startTime;
+      samples.add(sample);
+    }
+    return sample;
+  }
+
+  private static boolean isBusy(ThreadInfo thread) {
+    switch (thread.getThreadState()) {
+      case WAITING:
+      case TIMED_WAITING:
+        return false;
+      default:
+        StackTraceElement[] stack = thread.getStackTrace();
+        // selectors and acceptors are pool threads that wait in native code
+        return stack.length == 0 || !stack[0].getClassName().startsWith("sun.nio.ch.");
+    }
+  }
+
+  private static ObjectName garbageCollectors() {
+    try {
+      return new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*");
+    } catch (MalformedObjectNameException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  synchronized List<Sample> getSamples() {
+    return new ArrayList<>(samples);
+  }
+
+  /** Write the samples to {@code directory}, as CSV and JSON. */
+  void write(File directory) throws IOException {
+    List<Sample> samples = getSamples();
+    List<String> lines = new ArrayList<>();
+    lines.add(CSV_HEADER);
+    for (Sample sample : samples) {
+      lines.add(sample.toCsv());
+    }
+    Files.write(new File(directory, CSV_FILE_NAME).toPath(), lines, StandardCharsets.UTF_8);
+    try (Writer writer =
+        Files.newBufferedWriter(
+            new File(directory, JSON_FILE_NAME).toPath(), StandardCharsets.UTF_8)) {
+      GSON.toJson(new Series(summarize(samples), samples), writer);
+    }
+  }
+
+  /** The peaks and totals of {@code samples}. */
+  @VisibleForTesting
+  static Summary summarize(List<Sample> samples) {
+    Summary summary = new Summary();
+    summary.samples = samples.size();
+    if (samples.isEmpty()) {
+      return summary;
+    }
+    Sample first = samples.get(0);
+    Sample last = samples.get(samples.size() - 1);
+    summary.durationMillis = last.elapsedMillis;
+    summary.heapMax = last.heapMax;
+    summary.gcCount = last.gcCount;
+    summary.gcTimeMillis = last.gcTimeMillis;
+    summary.sampledGcCount = last.gcCount - first.gcCount;
+    summary.sampledGcTimeMillis = last.gcTimeMillis - first.gcTimeMillis;
+    for (Sample sample : samples) {
+      summary.peakHeapUsed = Math.max(summary.peakHeapUsed, sample.heapUsed);
+      summary.peakThreads = Math.max(summary.peakThreads, sample.threads);
+      summary.requestThreads = Math.max(summary.requestThreads, sample.requestThreads);
+      summary.peakBusyRequestThreads =
+          Math.max(summary.peakBusyRequestThreads, sample.busyRequestThreads);
+    }
+    return summary;
+  }
+
+  @Override
+  public void close() throws IOException {
+    connector.close();
+  }
+
+  /** One sample of the server JVM, the GC counts and times are cumulative. */
+  static class Sample {
+    long timestamp;
+    long elapsedMillis;
+    long heapUsed;
+    long heapCommitted;
+    long heapMax;
+    long gcCount;
+    long gcTimeMillis;
+    int threads;
+    int daemonThreads;
+    int requestThreads;
+    int busyRequestThreads;
+
+    String toCsv() {
+      return timestamp
+          + ","
+          + elapsedMillis
+          + ","
+          + heapUsed
+          + ","
+          + heapCommitted
+          + ","
+          + heapMax
+          + ","
+          + gcCount
+          + ","
+          + gcTimeMillis
+          + ","
+          + threads
+          + ","
+          + daemonThreads
+          + ","
+          + requestThreads
+          + ","
+          + busyRequestThreads;
+    }
+  }
+
+  /** The peaks of a series, and its GC totals since the server started and while sampling. */
+  static class Summary {
+    int samples;
+    long durationMillis;
+    long peakHeapUsed;
+    long heapMax;
+    long gcCount;
+    long gcTimeMillis;
+    long sampledGcCount;
+    long sampledGcTimeMillis;
+    int peakThreads;
+    int requestThreads;
+    int peakBusyRequestThreads;
+
+    String render() {
+      if (samples == 0) {
+        return "No sample of the Dev App Server JVM was taken";
+      }
+      return String.format(
+          "Dev App Server JVM, %d samples over %d ms:%n"
+              + "  peak heap used  %d MB of %d MB%n"
+              + "  GC              %d ms in %d collections while sampling, %d ms in total%n"
+              + "  peak threads    %d%n"
+              + "  request threads %d busy at most, of %d",
+          samples,
+          durationMillis,
+          peakHeapUsed >> 20,
+          heapMax >> 20,
+          sampledGcTimeMillis,
+          sampledGcCount,
+          gcTimeMillis,
+          peakThreads,
+          peakBusyRequestThreads,
+          requestThreads);
+    }
+  }
+
+  private static class Series {
+    private final Summary summary;
+    private final List<Sample> samples;
+
+    private Series(Summary summary, List<Sample> samples) {
+      this.summary = summary;
+      this.samples = samples;
+    }
+  }
+}
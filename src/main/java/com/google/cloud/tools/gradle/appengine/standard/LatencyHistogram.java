@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+/**
+ * Latency histogram in the style of HdrHistogram: values below 64 are counted exactly, larger ones
+ * in 64 buckets per power of two, so any percentile is within 1.6% of the recorded value with a
+ * fixed footprint whatever the number of values. Not thread safe, merge one per thread.
+ */
+class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final long[] counts = new long[SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1)];
+  private long totalCount;
+  private long max;
+
+  /** Count {@code value}, negative values are counted as 0. */
+  void record(long value) {
+    long recorded = Math.max(0, value);
+    counts[index(recorded)]++;
+    totalCount++;
+    max = Math.max(max, recorded);
+  }
+
+  /** Add the values counted by {@code other}. */
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    max = Math.max(max, other.max);
+  }
+
+  long getTotalCount() {
+    return totalCount;
+  }
+
+  long getMax() {
+    return max;
+  }
+
+  /**
+   * The value below which {@code percentile} percent of the values fall: the highest value of its
+   * bucket, never more than the largest value recorded. 0 if nothing was recorded.
+   */
+  long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    int shift = magnitude - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return SUB_BUCKETS * (shift + 1) + subBucket;
+  }
+
+  private static long highestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.util.io.FileLinker;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Lay out an app for the dev server without copying it. {@code WEB-INF/classes} links to the
+ * compiled classes, {@code WEB-INF/lib} links to the runtime jars where Gradle resolved them and
+ * the files of the webapp directory are hard linked. The other class and resource directories go
+ * on the classpath through the manifest of an empty jar in {@code WEB-INF/lib}. Where links can't
+ * be created (Windows without the privilege), jars go on the manifest too and the webapp files are
+ * copied.
+ *
+ * <p>Recompiled classes are seen through the links without running this task again. Laying out
+ * links is cheap, the task is not fingerprinted and always runs.
+ */
+public class LinkAppTask extends DefaultTask {
+
+  static final String CLASSPATH_JAR = "appengine-classpath.jar";
+  // written by the dev server (local datastore, generated indexes), it must survive re-linking
+  private static final String APPENGINE_GENERATED = "appengine-generated";
+
+  private File webAppDirectory;
+  private FileCollection classpath;
+  private File linkedAppDirectory;
+
+  /** The webapp directory of the war, linked at the root of the app. */
+  @Internal
+  public File getWebAppDirectory() {
+    return webAppDirectory;
+  }
+
+  public void setWebAppDirectory(File webAppDirectory) {
+    this.webAppDirectory = webAppDirectory;
+  }
+
+  /** The classpath of the war: class and resource directories, and jars. */
+  @Internal
+  public FileCollection getClasspath() {
+    return classpath;
+  }
+
+  public void setClasspath(FileCollection classpath) {
+    this.classpath = classpath;
+    dependsOn(classpath);
+  }
+
+  @Internal
+  public File getLinkedAppDirectory() {
+    return linkedAppDirectory;
+  }
+
+  public void setLinkedAppDirectory(File linkedAppDirectory) {
+    this.linkedAppDirectory = linkedAppDirectory;
+  }
+
+  /** Task entrypoint : lay out the links. */
+  @TaskAction
+  public void linkAction() throws IOException {
+    Linker linker = new Linker(getLogger(), true);
+    link(linkedAppDirectory.toPath(), webAppDirectory, classpath.getFiles(), linker);
+    getLogger()
+        .info(
+            "Linked app in {}: {} links, {} copies, {} entries on the manifest classpath",
+            linkedAppDirectory,
+            linker.links + linker.fileLinker.getLinks(),
+            linker.fileLinker.getCopies(),
+            linker.manifestEntries);
+  }
+
+  /** Rebuild the layout of {@code root} from {@code webAppDirectory} and {@code classpath}. */
+  @VisibleForTesting
+  static void link(Path root, File webAppDirectory, Iterable<File> classpath, Linker linker)
+      throws IOException {
+    Path webInf = root.resolve("WEB-INF");
+    Path lib = webInf.resolve("lib");
+    clean(root, webInf.resolve(APPENGINE_GENERATED));
+    Files.createDirectories(lib);
+    List<File> manifestClasspath = new ArrayList<>();
+
+    if (webAppDirectory != null && webAppDirectory.isDirectory()) {
+      for (Path entry : list(webAppDirectory.toPath())) {
+        String name = entry.getFileName().toString();
+        if (!name.equals("WEB-INF")) {
+          linker.linkOrCopy(root.resolve(name), entry);
+          continue;
+        }
+        for (Path child : list(entry)) {
+          String childName = child.getFileName().toString();
+          if (childName.equals("lib")) {
+            for (Path jar : list(child)) {
+              linkJar(lib.resolve(jar.getFileName().toString()), jar, manifestClasspath, linker);
+            }
+          } else if (childName.equals("classes")) {
+            manifestClasspath.add(child.toFile());
+          } else if (childName.equals(APPENGINE_GENERATED)) {
+            // the dev server writes there, keep its files rather than the sources
+            copyMissing(child, webInf.resolve(APPENGINE_GENERATED));
+          } else {
+            linker.linkOrCopy(webInf.resolve(childName), child);
+          }
+        }
+      }
+    }
+
+    boolean classesLinked = false;
+    for (File file : classpath) {
+      if (file.isDirectory()) {
+        // the first directory holds the compiled classes, the others go on the manifest
+        if (!classesLinked && linker.link(webInf.resolve("classes"), file.toPath())) {
+          classesLinked = true;
+        } else {
+          manifestClasspath.add(file);
+        }
+      } else if (file.isFile()) {
+        linkJar(lib.resolve(file.getName()), file.toPath(), manifestClasspath, linker);
+      }
+    }
+
+    if (!manifestClasspath.isEmpty()) {
+      writeClasspathJar(lib.resolve(CLASSPATH_JAR), manifestClasspath);
+      linker.manifestEntries += manifestClasspath.size();
+    }
+  }
+
+  private static void linkJar(Path target, Path jar, List<File> manifestClasspath, Linker linker)
+      throws IOException {
+    // two jars with the same name, or no links: the manifest takes the jar
+    if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) || !linker.link(target, jar)) {
+      manifestClasspath.add(jar.toFile());
+    }
+  }
+
+  /** An empty jar whose manifest puts {@code classpath} on the classpath of the app. */
+  private static void writeClasspathJar(Path jar, List<File> classpath) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest
+        .getMainAttributes()
+        .put(
+            Attributes.Name.CLASS_PATH,
+            classpath.stream()
+                .map(file -> file.toURI().toString())
+                .collect(Collectors.joining(" ")));
+    try (OutputStream out = Files.newOutputStream(jar);
+        JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+      jarOut.finish();
+    }
+  }
+
+  /** Delete the content of {@code root} except {@code preserved}, without following links. */
+  private static void clean(Path root, Path preserved) throws IOException {
+    if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+      Files.createDirectories(root);
+      return;
+    }
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(root)) {
+      paths =
+          walk.filter(path -> !path.equals(root) && !path.startsWith(preserved))
+              .sorted(Comparator.reverseOrder())
+              .collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      // a directory that holds the preserved one is not empty
+      if (!preserved.startsWith(path)) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static void copyMissing(Path source, Path target) throws IOException {
+    try (Stream<Path> walk = Files.walk(source)) {
+      for (Path path : (Iterable<Path>) walk::iterator) {
+        Path copy = target.resolve(source.relativize(path).toString());
+        if (Files.isDirectory(path)) {
+          Files.createDirectories(copy);
+        } else if (!Files.exists(copy)) {
+          Files.copy(path, copy);
+        }
+      }
+    }
+  }
+
+  private static List<Path> list(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      return children.sorted().collect(Collectors.toList());
+    }
+  }
+
+  /** Creates links, or copies once links turn out not to be supported. */
+  @VisibleForTesting
+  static class Linker {
+    private final Logger logger;
+    private final FileLinker fileLinker;
+    private boolean symbolicLinksSupported;
+    private int links;
+    private int manifestEntries;
+
+    Linker(Logger logger, boolean linksSupported) {
+      this.logger = logger;
+      this.fileLinker = new FileLinker(logger, linksSupported);
+      this.symbolicLinksSupported = linksSupported;
+    }
+
+    /** Link {@code link} to {@code target}, returns false if links are not supported. */
+    boolean link(Path link, Path target) throws IOException {
+      if (!symbolicLinksSupported) {
+        return false;
+      }
+      try {
+        Files.createDirectories(link.getParent());
+        Files.createSymbolicLink(link, target.toAbsolutePath());
+        links++;
+        return true;
+      } catch (UnsupportedOperationException | IOException ex) {
+        if (Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+          throw ex;
+        }
+        logger.info("Cannot create symbolic links, using the manifest: " + ex.getMessage());
+        symbolicLinksSupported = false;
+        return false;
+      }
+    }
+
+    /**
+     * Mirror {@code target} at {@code link} with hard links to its files, or copies. The server
+     * refuses to serve static files through symbolic links, but a hard link is a regular file.
+     */
+    void linkOrCopy(Path link, Path target) throws IOException {
+      try (Stream<Path> walk = Files.walk(target)) {
+        for (Path path : (Iterable<Path>) walk::iterator) {
+          Path copy = link.resolve(target.relativize(path).toString());
+          if (Files.isDirectory(path)) {
+            Files.createDirectories(copy);
+          } else {
+            fileLinker.linkOrCopy(copy, path);
+          }
+        }
+      }
+    }
+  }
+}
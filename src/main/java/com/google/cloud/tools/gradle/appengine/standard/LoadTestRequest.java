@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** A request of the mix sent by {@link LoadTestTask}. */
+public class LoadTestRequest {
+
+  // the request line of access logs, as written by the dev server and most front ends
+  private static final Pattern REQUEST_LINE =
+      Pattern.compile("\"(GET|HEAD|POST|PUT|DELETE|OPTIONS) (/[^\\s\"]*) HTTP/[0-9.]+\"");
+
+  private final String method;
+  private final String path;
+  private final String body;
+
+  /**
+   * Constructor.
+   *
+   * @param method the http method
+   * @param path the path and query of the request, from the root of the server
+   * @param body the body of the request, null for none
+   */
+  public LoadTestRequest(String method, String path, String body) {
+    this.method = method.toUpperCase(Locale.ROOT);
+    this.path = path.startsWith("/") ? path : "/" + path;
+    this.body = body;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  /** The requests found in the lines of an access log, in order, without their bodies. */
+  static List<LoadTestRequest> parseRecorded(List<String> lines) {
+    List<LoadTestRequest> requests = new ArrayList<>();
+    for (String line : lines) {
+      Matcher matcher = REQUEST_LINE.matcher(line);
+      if (matcher.find()) {
+        requests.add(new LoadTestRequest(matcher.group(1), matcher.group(2), null));
+      }
+    }
+    return requests;
+  }
+
+  @Override
+  public String toString() {
+    return method + " " + path;
+  }
+}
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Send a mix of requests to the app started by {@code appengineStart} from concurrent clients for
+ * a fixed duration, report the latency percentiles and the throughput, and fail the build if they
+ * break the configured thresholds or if no request succeeded. The requests only ever go to the
+ * local dev server.
+ */
+public class LoadTestTask extends DefaultTask {
+
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+  private static final int READ_TIMEOUT_MILLIS = 60000;
+
+  private RunExtension runConfig;
+  private final List<LoadTestRequest> requests = new ArrayList<>();
+  private File recordedRequests;
+  private int concurrency = 4;
+  private int durationSeconds = 10;
+  private int warmupSeconds = 2;
+  private Double maxP50Millis;
+  private Double maxP95Millis;
+  private Double maxP99Millis;
+  private Double maxMillis;
+  private Double minRequestsPerSecond;
+  private Double maxErrorRate;
+  private File reportDirectory;
+
+  public LoadTestTask() {
+    // force it to always run (required since we use OutputDirectory)
+    this.getOutputs().upToDateWhen(task -> false);
+  }
+
+  public void setRunConfig(RunExtension runConfig) {
+    this.runConfig = runConfig;
+  }
+
+  /** The requests of the mix, sent in turn. Without any, the root of the app is requested. */
+  @Internal
+  public List<LoadTestRequest> getRequests() {
+    return requests;
+  }
+
+  public void request(String path) {
+    request("GET", path);
+  }
+
+  public void request(String method, String path) {
+    request(method, path, null);
+  }
+
+  public void request(String method, String path, String body) {
+    requests.add(new LoadTestRequest(method, path, body));
+  }
+
+  /** An access log whose requests are added to the mix, without their bodies. */
+  @Internal
+  public File getRecordedRequests() {
+    return recordedRequests;
+  }
+
+  public void setRecordedRequests(Object recordedRequests) {
+    this.recordedRequests = getProject().file(recordedRequests);
+  }
+
+  /** Number of clients sending requests at the same time. */
+  @Internal
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  @Internal
+  public int getDurationSeconds() {
+    return durationSeconds;
+  }
+
+  public void setDurationSeconds(int durationSeconds) {
+    this.durationSeconds = durationSeconds;
+  }
+
+  /** Time spent sending the mix before measuring, for the jit and the caches of the app. */
+  @Internal
+  public int getWarmupSeconds() {
+    return warmupSeconds;
+  }
+
+  public void setWarmupSeconds(int warmupSeconds) {
+    this.warmupSeconds = warmupSeconds;
+  }
+
+  @Internal
+  public Double getMaxP50Millis() {
+    return maxP50Millis;
+  }
+
+  public void setMaxP50Millis(Double maxP50Millis) {
+    this.maxP50Millis = maxP50Millis;
+  }
+
+  @Internal
+  public Double getMaxP95Millis() {
+    return maxP95Millis;
+  }
+
+  public void setMaxP95Millis(Double maxP95Millis) {
+    this.maxP95Millis = maxP95Millis;
+  }
+
+  @Internal
+  public Double getMaxP99Millis() {
+    return maxP99Millis;
+  }
+
+  public void setMaxP99Millis(Double maxP99Millis) {
+    this.maxP99Millis = maxP99Millis;
+  }
+
+  @Internal
+  public Double getMaxMillis() {
+    return maxMillis;
+  }
+
+  public void setMaxMillis(Double maxMillis) {
+    this.maxMillis = maxMillis;
+  }
+
+  @Internal
+  public Double getMinRequestsPerSecond() {
+    return minRequestsPerSecond;
+  }
+
+  public void setMinRequestsPerSecond(Double minRequestsPerSecond) {
+    this.minRequestsPerSecond = minRequestsPerSecond;
+  }
+
+  /** Highest share of failed requests (0.01 = 1%): errors statuses and requests without answer. */
+  @Internal
+  public Double getMaxErrorRate() {
+    return maxErrorRate;
+  }
+
+  public void setMaxErrorRate(Double maxErrorRate) {
+    this.maxErrorRate = maxErrorRate;
+  }
+
+  @OutputDirectory
+  public File getReportDirectory() {
+    return reportDirectory;
+  }
+
+  public void setReportDirectory(Object reportDirectory) {
+    this.reportDirectory = getProject().file(reportDirectory);
+  }
+
+  /** Task entrypoint : load test the local server. */
+  @TaskAction
+  public void loadTestAction() throws IOException, InterruptedException {
+    List<LoadTestRequest> mix = new ArrayList<>(requests);
+    if (recordedRequests != null) {
+      // access logs are ascii, but any byte decodes in latin-1
+      mix.addAll(
+          LoadTestRequest.parseRecorded(
+              Files.readAllLines(recordedRequests.toPath(), StandardCharsets.ISO_8859_1)));
+    }
+    if (mix.isEmpty()) {
+      mix.add(new LoadTestRequest("GET", "/", null));
+    }
+    Integer port = runConfig.resolvePort();
+    URL server =
+        new URL(
+            "http",
+            DevAppServerReloadTask.reloadHost(runConfig.getHost()),
+            port == null ? 8080 : port,
+            "/");
+
+    int clients = Math.max(1, concurrency);
+    if (warmupSeconds > 0) {
+      getLogger().lifecycle("Warming up " + server + " for " + warmupSeconds + " seconds");
+      run(server, mix, clients, TimeUnit.SECONDS.toMillis(warmupSeconds));
+    }
+    getLogger()
+        .lifecycle(
+            "Sending "
+                + mix.size()
+                + " requests in turn to "
+                + server
+                + " from "
+                + clients
+                + " clients for "
+                + durationSeconds
+                + " seconds");
+    Report report = run(server, mix, clients, TimeUnit.SECONDS.toMillis(durationSeconds));
+
+    try (Writer writer =
+        Files.newBufferedWriter(
+            new File(reportDirectory, "report.json").toPath(), StandardCharsets.UTF_8)) {
+      GSON.toJson(report, writer);
+    }
+    File textReport = new File(reportDirectory, "report.txt");
+    Files.write(textReport.toPath(), report.render().getBytes(StandardCharsets.UTF_8));
+    getLogger().lifecycle(report.summary());
+    getLogger().lifecycle("Load test report written to : " + textReport);
+
+    List<String> violations = findViolations(report);
+    if (!violations.isEmpty()) {
+      throw new GradleException("Load test thresholds exceeded: " + String.join(", ", violations));
+    }
+  }
+
+  @VisibleForTesting
+  List<String> findViolations(Report report) {
+    List<String> violations = new ArrayList<>();
+    if (!report.anySucceeded()) {
+      // the latencies would be those of the failures, whatever the thresholds
+      violations.add("no request succeeded out of " + report.requests);
+      return violations;
+    }
+    checkMax(violations, "p50", report.latency.p50Millis, maxP50Millis);
+    checkMax(violations, "p95", report.latency.p95Millis, maxP95Millis);
+    checkMax(violations, "p99", report.latency.p99Millis, maxP99Millis);
+    checkMax(violations, "max", report.latency.maxMillis, maxMillis);
+    if (minRequestsPerSecond != null && report.requestsPerSecond < minRequestsPerSecond) {
+      violations.add(
+          String.format(
+              Locale.ROOT,
+              "throughput %.1f/s < %.1f/s",
+              report.requestsPerSecond,
+              minRequestsPerSecond));
+    }
+    if (maxErrorRate != null && report.errorRate > maxErrorRate) {
+      violations.add(
+          String.format(Locale.ROOT, "error rate %.4f > %.4f", report.errorRate, maxErrorRate));
+    }
+    return violations;
+  }
+
+  private static void checkMax(List<String> violations, String name, double value, Double max) {
+    if (max != null && value > max) {
+      violations.add(String.format(Locale.ROOT, "%s %.1f ms > %.1f ms", name, value, max));
+    }
+  }
+
+  /** Send {@code mix} in turn from {@code concurrency} clients for {@code durationMillis}. */
+  @VisibleForTesting
+  static Report run(URL server, List<LoadTestRequest> mix, int concurrency, long durationMillis)
+      throws InterruptedException {
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            concurrency,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "appengine-load-test-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    AtomicLong next = new AtomicLong();
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    try {
+      List<Future<Client>> futures = new ArrayList<>();
+      for (int i = 0; i < concurrency; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  Client client = new Client(mix.size());
+                  while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                    int index = (int) (next.getAndIncrement() % mix.size());
+                    client.send(server, mix.get(index), index);
+                  }
+                  return client;
+                }));
+      }
+      List<Client> clients = new ArrayList<>();
+      for (Future<Client> future : futures) {
+        clients.add(future.get());
+      }
+      return new Report(server, mix, clients, concurrency, System.nanoTime() - start);
+    } catch (ExecutionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new GradleException("Load test client failed", ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** One client: sends a request at a time and keeps its own histograms. */
+  private static class Client {
+    private final LatencyHistogram[] latencies;
+    private final long[] errors;
+
+    private Client(int requests) {
+      latencies = new LatencyHistogram[requests];
+      for (int i = 0; i < requests; i++) {
+        latencies[i] = new LatencyHistogram();
+      }
+      errors = new long[requests];
+    }
+
+    private void send(URL server, LoadTestRequest request, int index) {
+      long begin = System.nanoTime();
+      boolean failed;
+      HttpURLConnection connection = null;
+      try {
+        // not resolved against the server, a path like //host/x would name another host
+        URL url =
+            new URL(server.getProtocol(), server.getHost(), server.getPort(), request.getPath());
+        connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(request.getMethod());
+        connection.setInstanceFollowRedirects(false);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (request.getBody() != null) {
+          connection.setDoOutput(true);
+          try (OutputStream body = connection.getOutputStream()) {
+            body.write(request.getBody().getBytes(StandardCharsets.UTF_8));
+          }
+        }
+        int status = connection.getResponseCode();
+        failed = status >= HttpURLConnection.HTTP_BAD_REQUEST;
+        // read the whole answer, so the connection is kept alive for the next request
+        try (InputStream answer =
+            failed ? connection.getErrorStream() : connection.getInputStream()) {
+          if (answer != null) {
+            ByteStreams.exhaust(answer);
+          }
+        }
+      } catch (IOException ex) {
+        failed = true;
+        if (connection != null) {
+          connection.disconnect();
+        }
+      }
+      latencies[index].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+      if (failed) {
+        errors[index]++;
+      }
+    }
+  }
+
+  /** The results of a run, as written to the json report. */
+  @VisibleForTesting
+  static class Report {
+    private final String server;
+    private final int concurrency;
+    private final double durationSeconds;
+    private final long requests;
+    private final long errors;
+    private final double errorRate;
+    private final double requestsPerSecond;
+    private final Latency latency;
+    private final List<RequestReport> byRequest = new ArrayList<>();
+
+    private Report(
+        URL server,
+        List<LoadTestRequest> mix,
+        List<Client> clients,
+        int concurrency,
+        long elapsedNanos) {
+      this.server = server.toString();
+      this.concurrency = concurrency;
+      this.durationSeconds = elapsedNanos / 1e9;
+      LatencyHistogram total = new LatencyHistogram();
+      long totalErrors = 0;
+      for (int i = 0; i < mix.size(); i++) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        long requestErrors = 0;
+        for (Client client : clients) {
+          latencies.add(client.latencies[i]);
+          requestErrors += client.errors[i];
+        }
+        total.add(latencies);
+        totalErrors += requestErrors;
+        byRequest.add(
+            new RequestReport(
+                mix.get(i).toString(),
+                latencies.getTotalCount(),
+                requestErrors,
+                new Latency(latencies)));
+      }
+      this.requests = total.getTotalCount();
+      this.errors = totalErrors;
+      this.errorRate = requests == 0 ? 0 : (double) errors / requests;
+      this.requestsPerSecond = durationSeconds == 0 ? 0 : requests / durationSeconds;
+      this.latency = new Latency(total);
+    }
+
+    long getRequests() {
+      return requests;
+    }
+
+    long getErrors() {
+      return errors;
+    }
+
+    boolean anySucceeded() {
+      return errors < requests;
+    }
+
+    Latency getLatency() {
+      return latency;
+    }
+
+    List<RequestReport> getByRequest() {
+      return byRequest;
+    }
+
+    String summary() {
+      if (!anySucceeded()) {
+        return String.format(Locale.ROOT, "%d requests, none succeeded", requests);
+      }
+      return String.format(
+          Locale.ROOT,
+          "%d requests, %d errors, %.1f requests/s, latency p50 %.1f ms, p95 %.1f ms,"
+              + " p99 %.1f ms, max %.1f ms",
+          requests,
+          errors,
+          requestsPerSecond,
+          latency.p50Millis,
+          latency.p95Millis,
+          latency.p99Millis,
+          latency.maxMillis);
+    }
+
+    String render() {
+      StringBuilder result = new StringBuilder();
+      result
+          .append(String.format(Locale.ROOT, "Server:      %s%n", server))
+          .append(String.format(Locale.ROOT, "Clients:     %d%n", concurrency))
+          .append(String.format(Locale.ROOT, "Duration:    %.1f s%n", durationSeconds))
+          .append(String.format(Locale.ROOT, "Requests:    %d%n", requests))
+          .append(String.format(Locale.ROOT, "Errors:      %d (%.2f%%)%n", errors, errorRate * 100))
+          .append(String.format(Locale.ROOT, "Throughput:  %.1f requests/s%n%n", requestsPerSecond))
+          .append(
+              String.format(
+                  Locale.ROOT,
+                  "%-40s %10s %8s %10s %10s %10s %10s%n",
+                  "Request",
+                  "Count",
+                  "Errors",
+                  "p50 (ms)",
+                  "p95 (ms)",
+                  "p99 (ms)",
+                  "max (ms)"));
+      for (RequestReport request : byRequest) {
+        result.append(
+            String.format(
+                Locale.ROOT,
+                "%-40s %10d %8d %10.1f %10.1f %10.1f %10.1f%n",
+                request.request,
+                request.requests,
+                request.errors,
+                request.latency.p50Millis,
+                request.latency.p95Millis,
+                request.latency.p99Millis,
+                request.latency.maxMillis));
+      }
+      result.append(
+          String.format(
+              Locale.ROOT,
+              "%-40s %10d %8d %10.1f %10.1f %10.1f %10.1f%n",
+              "All",
+              requests,
+              errors,
+              latency.p50Millis,
+              latency.p95Millis,
+              latency.p99Millis,
+              latency.maxMillis));
+      return result.toString();
+    }
+  }
+
+  /** The results of one request of the mix. */
+  @VisibleForTesting
+  static class RequestReport {
+    private final String request;
+    private final long requests;
+    private final long errors;
+    private final Latency latency;
+
+    private RequestReport(String request, long requests, long errors, Latency latency) {
+      this.request = request;
+      this.requests = requests;
+      this.errors = errors;
+      this.latency = latency;
+    }
+
+    long getRequests() {
+      return requests;
+    }
+
+    long getErrors() {
+      return errors;
+    }
+  }
+
+  /** Latency percentiles, in milliseconds. */
+  @VisibleForTesting
+  static class Latency {
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    private Latency(LatencyHistogram micros) {
+      p50Millis = micros.getValueAtPercentile(50) / 1000.0;
+      p95Millis = micros.getValueAtPercentile(95) / 1000.0;
+      p99Millis = micros.getValueAtPercentile(99) / 1000.0;
+      maxMillis = micros.getMax() / 1000.0;
+    }
+
+    double getMaxMillis() {
+      return maxMillis;
+    }
+  }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.util.AppEngineWebXml;
+import com.google.cloud.tools.gradle.appengine.util.WebXml;
+import com.google.cloud.tools.gradle.appengine.util.io.JarSplitter;
+import com.google.common.base.Splitter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.work.ChangeType;
+
+/**
+ * Stage an appengine-web.xml app for the java8 runtime without appcfg: copy the app, its static
+ * files to {@code __static__}, and translate its configuration to app.yaml. Only apps that need
+ * nothing but that are staged here, {@link #findUnsupported} tells which ones must go through
+ * appcfg (configuration files to translate, flex apps...). JSPs and quickstart descriptors are
+ * staged from the outputs of {@link CompileJspsTask} and {@link QuickstartTask}.
+ */
+class NativeStandardStaging {
+
+  static final String WEBINF_CLASSES_JAR = "_ah_webinf_classes.jar";
+  static final String COMPILED_JSPS_JAR = "_ah_compiled_jsps-0000.jar";
+  private static final String WEBINF_CLASSES = "WEB-INF/classes/";
+  private static final String STATIC_DIRECTORY = "__static__";
+  private static final String[] UNSUPPORTED_FILES = {
+    "cron.xml", "queue.xml", "dos.xml", "dispatch.xml", "datastore-indexes.xml"
+  };
+  private static final String[] UNSUPPORTED_ELEMENTS = {
+    "vm", "env", "error-handlers", "admin-console", "api-config", "backends"
+  };
+
+  private final Path sourceDirectory;
+  private final Path stagingDirectory;
+  // what was staged from each source file, relative to the staging directory
+  private final Map<String, List<String>> index = new TreeMap<>();
+  private boolean enableJarClasses;
+  private boolean enableJarSplitting;
+  private String jarSplittingExcludes;
+  private String runtime;
+  private int parallelism = 1;
+  private boolean enableQuickstart;
+  // the descriptors of QuickstartTask
+  private Path quickstartDirectory;
+  // the servlets of CompileJspsTask
+  private Path compiledJspsDirectory;
+  private boolean deleteJsps;
+  private boolean disableJarJsps;
+
+  NativeStandardStaging(Path sourceDirectory, Path stagingDirectory) {
+    this.sourceDirectory = sourceDirectory;
+    this.stagingDirectory = stagingDirectory;
+  }
+
+  /** The engine for the configuration of {@code stage}. */
+  static NativeStandardStaging of(StageStandardExtension stage) {
+    NativeStandardStaging staging =
+        new NativeStandardStaging(
+            stage.getSourceDirectory().toPath(), stage.getStagingDirectory().toPath());
+    staging.enableJarClasses = Boolean.TRUE.equals(stage.getEnableJarClasses());
+    staging.enableJarSplitting = Boolean.TRUE.equals(stage.getEnableJarSplitting());
+    staging.jarSplittingExcludes = stage.getJarSplittingExcludes();
+    staging.runtime = stage.getRuntime();
+    staging.enableQuickstart = Boolean.TRUE.equals(stage.getEnableQuickstart());
+    staging.deleteJsps = Boolean.TRUE.equals(stage.getDeleteJsps());
+    staging.disableJarJsps = Boolean.TRUE.equals(stage.getDisableJarJsps());
+    return staging;
+  }
+
+  NativeStandardStaging enableJarClasses(boolean enableJarClasses) {
+    this.enableJarClasses = enableJarClasses;
+    return this;
+  }
+
+  NativeStandardStaging enableJarSplitting(boolean enableJarSplitting, String excludes) {
+    this.enableJarSplitting = enableJarSplitting;
+    this.jarSplittingExcludes = excludes;
+    return this;
+  }
+
+  /** Split jars on up to {@code parallelism} threads. */
+  NativeStandardStaging parallelism(int parallelism) {
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Stage the quickstart descriptors generated in {@code quickstartDirectory}, the handlers are
+   * translated from {@code min-quickstart-web.xml} rather than web.xml.
+   */
+  NativeStandardStaging quickstartDirectory(Path quickstartDirectory) {
+    this.enableQuickstart = true;
+    this.quickstartDirectory = quickstartDirectory;
+    return this;
+  }
+
+  /**
+   * Stage the JSPs compiled in {@code compiledJspsDirectory}: their classes are jarred in
+   * WEB-INF/lib, or copied to WEB-INF/classes with {@code disableJarJsps}, and their servlets are
+   * declared in the staged web.xml.
+   */
+  NativeStandardStaging compiledJspsDirectory(Path compiledJspsDirectory) {
+    this.compiledJspsDirectory = compiledJspsDirectory;
+    return this;
+  }
+
+  NativeStandardStaging deleteJsps(boolean deleteJsps) {
+    this.deleteJsps = deleteJsps;
+    return this;
+  }
+
+  NativeStandardStaging disableJarJsps(boolean disableJarJsps) {
+    this.disableJarJsps = disableJarJsps;
+    return this;
+  }
+
+  /** Why the options of {@code stage} need appcfg, or null if they don't. */
+  static String findUnsupportedOption(StageStandardExtension stage) {
+    if (stage.getDockerfile() != null) {
+      return "a dockerfile is set";
+    }
+    if (stage.getRuntime() != null && !"java8".equals(stage.getRuntime())) {
+      return "the runtime is " + stage.getRuntime();
+    }
+    return null;
+  }
+
+  /** Why the app needs appcfg to be staged, or null if it can be staged here. */
+  String findUnsupported() throws IOException {
+    if (enableQuickstart && quickstartDirectory == null) {
+      return "enableQuickstart is set without the quickstart descriptors";
+    }
+    Path webInf = sourceDirectory.resolve("WEB-INF");
+    File appEngineWebXmlFile = webInf.resolve("appengine-web.xml").toFile();
+    if (!appEngineWebXmlFile.isFile()) {
+      return "there is no WEB-INF/appengine-web.xml";
+    }
+    AppEngineWebXml appEngineWebXml = AppEngineWebXml.parse(appEngineWebXmlFile);
+    // the runtime option overrides the one of appengine-web.xml
+    String appRuntime = runtime != null ? runtime : appEngineWebXml.getText("runtime");
+    if (!"java8".equals(appRuntime)) {
+      return "the runtime is " + (appRuntime == null ? "not java8" : appRuntime);
+    }
+    for (String element : UNSUPPORTED_ELEMENTS) {
+      if (appEngineWebXml.has(element)) {
+        return "appengine-web.xml declares " + element;
+      }
+    }
+    if (!appEngineWebXml.getBoolean("ssl-enabled", true)) {
+      return "appengine-web.xml disables ssl";
+    }
+    String publicRoot = appEngineWebXml.getText("public-root");
+    if (publicRoot != null && !publicRoot.equals("/")) {
+      return "appengine-web.xml declares a public-root";
+    }
+    for (String file : UNSUPPORTED_FILES) {
+      if (Files.exists(webInf.resolve(file))) {
+        return "the app has a WEB-INF/" + file;
+      }
+    }
+    Path indexesAuto = webInf.resolve("appengine-generated/datastore-indexes-auto.xml");
+    if (Files.isRegularFile(indexesAuto)
+        && new String(Files.readAllBytes(indexesAuto), StandardCharsets.UTF_8)
+            .contains("<datastore-index")) {
+      return "the app has generated datastore indexes";
+    }
+    File webXml = getWebXml();
+    if (webXml.isFile() && WebXml.parse(webXml).hasSecurityConstraints()) {
+      return "web.xml declares security constraints";
+    }
+    try (Stream<Path> walk = Files.walk(sourceDirectory)) {
+      if (walk.anyMatch(path -> path.toString().endsWith(".jsp"))) {
+        if (compiledJspsDirectory == null) {
+          return "the app has JSPs to compile";
+        }
+        if (enableQuickstart) {
+          // quickstart runs on the compiled JSPs, not on the classes of the app
+          return "the app has JSPs and enableQuickstart is set";
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Stage the app into the staging directory, which must be empty. */
+  void stage() throws IOException {
+    Configuration configuration = new Configuration();
+    index.clear();
+    Files.createDirectories(stagingDirectory);
+    for (Path file : list(sourceDirectory)) {
+      stageFile(configuration, relativePath(sourceDirectory, file));
+    }
+    splitJars(configuration);
+    if (enableJarClasses) {
+      jarClasses();
+    }
+    WebXml webXml = configuration.webXml;
+    if (compiledJspsDirectory != null) {
+      webXml = stageCompiledJsps(webXml);
+    }
+    if (quickstartDirectory != null) {
+      // not sources, restaging leaves them alone and new ones come with a full stage
+      for (String name :
+          new String[] {QuickstartTask.QUICKSTART_WEB_XML, QuickstartTask.MIN_QUICKSTART_WEB_XML}) {
+        copy(quickstartDirectory.resolve(name), stagingDirectory.resolve("WEB-INF").resolve(name));
+      }
+    }
+    String appYaml = configuration.translateAppYaml(webXml);
+    Files.write(stagingDirectory.resolve("app.yaml"), appYaml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Bring a previous stage, described by the index read with {@link #readIndex}, up to date with
+   * {@code changes} to the source files (paths relative to the source directory). The outputs of
+   * the changed files are deleted and staged again, the rest of the stage is left alone. Returns
+   * false without touching the stage if the configuration of the app changed: the handlers and the
+   * file patterns depend on it, everything has to be staged again.
+   */
+  boolean restage(Map<String, ChangeType> changes) throws IOException {
+    if (changes.containsKey("WEB-INF/appengine-web.xml")
+        || changes.containsKey("WEB-INF/web.xml")) {
+      return false;
+    }
+    Configuration configuration = new Configuration();
+    boolean classesChanged = false;
+    for (Map.Entry<String, ChangeType> change : changes.entrySet()) {
+      String path = change.getKey();
+      unstageFile(path);
+      if (change.getValue() != ChangeType.REMOVED) {
+        stageFile(configuration, path);
+      }
+      classesChanged |= path.startsWith(WEBINF_CLASSES);
+    }
+    splitJars(configuration);
+    if (enableJarClasses && classesChanged) {
+      jarClasses();
+    }
+    return true;
+  }
+
+  /** Copy {@code path} to the app if it's a resource, and to __static__ if it's a static file. */
+  private void stageFile(Configuration configuration, String path) throws IOException {
+    if (path.startsWith("WEB-INF/appengine-generated/")) {
+      // written by the dev server, the local datastore is not part of the app
+      return;
+    }
+    if (enableJarClasses && path.startsWith(WEBINF_CLASSES)) {
+      // goes in the classes jar
+      return;
+    }
+    if (deleteJsps && compiledJspsDirectory != null && path.endsWith(".jsp")) {
+      // compiled
+      return;
+    }
+    Path source = sourceDirectory.resolve(path);
+    List<String> outputs = new ArrayList<>();
+    if (path.startsWith("WEB-INF/") || configuration.resourceFiles.matches("/" + path)) {
+      Path target = stagingDirectory.resolve(path);
+      copy(source, target);
+      if (configuration.jarSplitter != null
+          && path.startsWith("WEB-INF/lib/")
+          && path.endsWith(".jar")) {
+        // split with the other jars, its parts are indexed then
+        configuration.jarsToSplit.put(target, path);
+      } else {
+        outputs.add(path);
+      }
+    }
+    if (configuration.staticFiles.matches("/" + path)) {
+      copy(source, stagingDirectory.resolve(STATIC_DIRECTORY).resolve(path));
+      outputs.add(STATIC_DIRECTORY + "/" + path);
+    }
+    if (!outputs.isEmpty()) {
+      index.put(path, outputs);
+    }
+  }
+
+  /**
+   * Stage the classes of the compiled JSPs and declare their servlets in the staged web.xml, which
+   * is returned. Not sources, restaging leaves them alone and new ones come with a full stage.
+   */
+  private WebXml stageCompiledJsps(WebXml webXml) throws IOException {
+    Path servlets = compiledJspsDirectory.resolve(CompileJspsTask.SERVLETS);
+    Map<String, String> servletClasses = new LinkedHashMap<>();
+    if (Files.isDirectory(servlets)) {
+      for (Path servlet : list(servlets)) {
+        String className = new String(Files.readAllBytes(servlet), StandardCharsets.UTF_8).trim();
+        servletClasses.put("/" + relativePath(servlets, servlet), className);
+      }
+    }
+    if (servletClasses.isEmpty()) {
+      return webXml;
+    }
+
+    Path classes = compiledJspsDirectory.resolve(CompileJspsTask.CLASSES);
+    if (disableJarJsps) {
+      for (Path file : list(classes)) {
+        copy(file, stagingDirectory.resolve(WEBINF_CLASSES).resolve(relativePath(classes, file)));
+      }
+    } else {
+      Path jar = stagingDirectory.resolve("WEB-INF/lib").resolve(COMPILED_JSPS_JAR);
+      Files.createDirectories(jar.getParent());
+      jarDirectory(classes, jar);
+    }
+    Path webXmlFile = stagingDirectory.resolve("WEB-INF/web.xml");
+    if (!Files.exists(webXmlFile)) {
+      Files.createDirectories(webXmlFile.getParent());
+      Files.write(webXmlFile, "<web-app/>".getBytes(StandardCharsets.UTF_8));
+    }
+    WebXml stagedWebXml = WebXml.parse(webXmlFile.toFile());
+    stagedWebXml.addServlets(servletClasses);
+    stagedWebXml.write(webXmlFile.toFile());
+    return stagedWebXml;
+  }
+
+  /** Split the staged jars, concurrently, and index the parts. */
+  private void splitJars(Configuration configuration) throws IOException {
+    if (configuration.jarsToSplit.isEmpty()) {
+      return;
+    }
+    Map<Path, List<Path>> splits =
+        configuration.jarSplitter.splitAll(configuration.jarsToSplit.keySet(), parallelism);
+    for (Map.Entry<Path, List<Path>> split : splits.entrySet()) {
+      List<String> outputs = new ArrayList<>();
+      for (Path part : split.getValue()) {
+        outputs.add(relativePath(stagingDirectory, part));
+      }
+      index.put(configuration.jarsToSplit.get(split.getKey()), outputs);
+    }
+  }
+
+  /** Delete what was staged from {@code path}, and the directories left empty. */
+  private void unstageFile(String path) throws IOException {
+    List<String> outputs = index.remove(path);
+    if (outputs == null) {
+      return;
+    }
+    for (String output : outputs) {
+      Path staged = stagingDirectory.resolve(output);
+      Files.deleteIfExists(staged);
+      for (Path parent = staged.getParent();
+          !parent.equals(stagingDirectory) && isEmpty(parent);
+          parent = parent.getParent()) {
+        Files.delete(parent);
+      }
+    }
+  }
+
+  /** Jar WEB-INF/classes of the sources, there is no jar anymore once it's empty. */
+  private void jarClasses() throws IOException {
+    Path classes = sourceDirectory.resolve(WEBINF_CLASSES);
+    Path jar = stagingDirectory.resolve("WEB-INF/lib").resolve(WEBINF_CLASSES_JAR);
+    if (Files.isDirectory(classes) && !list(classes).isEmpty()) {
+      Files.createDirectories(jar.getParent());
+      jarDirectory(classes, jar);
+    } else {
+      Files.deleteIfExists(jar);
+    }
+  }
+
+  /** The descriptor the handlers come from, the quickstart one holds the annotated servlets. */
+  private File getWebXml() {
+    if (quickstartDirectory != null) {
+      return quickstartDirectory.resolve(QuickstartTask.MIN_QUICKSTART_WEB_XML).toFile();
+    }
+    return sourceDirectory.resolve("WEB-INF/web.xml").toFile();
+  }
+
+  /** Load the index of the previous stage, returns false if there is none. */
+  boolean readIndex(File indexFile) {
+    index.clear();
+    if (!indexFile.isFile()) {
+      return false;
+    }
+    try (Stream<String> lines = Files.lines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+      lines.forEach(
+          line -> {
+            List<String> fields = Splitter.on('\t').splitToList(line);
+            index.put(fields.get(0), new ArrayList<>(fields.subList(1, fields.size())));
+          });
+      return true;
+    } catch (IOException | UncheckedIOException ex) {
+      // a broken index only costs a full stage
+      index.clear();
+      return false;
+    }
+  }
+
+  /** Write down what was staged from each source file, to restage them later. */
+  void writeIndex(File indexFile) throws IOException {
+    try (BufferedWriter writer =
+        Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, List<String>> entry : index.entrySet()) {
+        writer.write(entry.getKey() + "\t" + String.join("\t", entry.getValue()));
+        writer.newLine();
+      }
+    }
+  }
+
+  private static void copy(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** Jar the content of {@code directory} into {@code jar}, in a stable order. */
+  private static void jarDirectory(Path directory, Path jar) throws IOException {
+    try (OutputStream out = Files.newOutputStream(jar);
+        JarOutputStream jarOut = new JarOutputStream(out)) {
+      for (Path file : list(directory)) {
+        String name = directory.relativize(file).toString().replace('\\', '/');
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(Files.getLastModifiedTime(file).toMillis());
+        jarOut.putNextEntry(entry);
+        Files.copy(file, jarOut);
+        jarOut.closeEntry();
+      }
+    }
+  }
+
+  /** The regular files under {@code directory}, sorted. */
+  private static List<Path> list(Path directory) throws IOException {
+    try (Stream<Path> walk = Files.walk(directory)) {
+      return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static boolean isEmpty(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      return !children.findAny().isPresent();
+    }
+  }
+
+  private static String relativePath(Path root, Path file) {
+    return root.relativize(file).toString().replace(File.separatorChar, '/');
+  }
+
+  /** The configuration of the app, parsed once per stage. */
+  private class Configuration {
+    private final AppEngineWebXml appEngineWebXml;
+    private final WebXml webXml;
+    private final FilePatternFilter resourceFiles;
+    private final FilePatternFilter staticFiles;
+    private final JarSplitter jarSplitter;
+    // staged jars to split, to the source path they are staged from
+    private final Map<Path, String> jarsToSplit = new LinkedHashMap<>();
+
+    private Configuration() {
+      File webInf = sourceDirectory.resolve("WEB-INF").toFile();
+      appEngineWebXml = AppEngineWebXml.parse(new File(webInf, "appengine-web.xml"));
+      File webXmlFile = getWebXml();
+      webXml = webXmlFile.isFile() ? WebXml.parse(webXmlFile) : null;
+      resourceFiles = new FilePatternFilter(appEngineWebXml.getFilePatterns("resource-files"));
+      staticFiles =
+          new FilePatternFilter(
+              appEngineWebXml.getFilePatterns("static-files"), "/WEB-INF/**", "/**.jsp");
+      if (enableJarSplitting) {
+        List<String> excludes =
+            jarSplittingExcludes == null
+                ? Collections.<String>emptyList()
+                : Splitter.on(',')
+                    .trimResults()
+                    .omitEmptyStrings()
+                    .splitToList(jarSplittingExcludes);
+        jarSplitter = new JarSplitter(JarSplitter.DEFAULT_MAX_SIZE, excludes);
+      } else {
+        jarSplitter = null;
+      }
+    }
+
+    /** The app.yaml of the app, with the handlers of {@code stagedWebXml}. */
+    private String translateAppYaml(WebXml stagedWebXml) {
+      return new AppYamlTranslator(appEngineWebXml, stagedWebXml, staticFiles).translate();
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.configuration.AppEngineWebXmlProjectStageConfiguration;
+import com.google.cloud.tools.appengine.operations.AppCfg;
+import com.google.cloud.tools.appengine.operations.CloudSdk;
+import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileException;
+import com.google.cloud.tools.gradle.appengine.core.BuildMetrics;
+import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import com.google.cloud.tools.gradle.appengine.util.io.FileLinker;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Generate the Jetty quickstart descriptors of an app, {@code quickstart-web.xml} and {@code
+ * min-quickstart-web.xml}, with appcfg. They only depend on the classes, the jars and the
+ * descriptors of the app: the task is keyed on the content of {@code WEB-INF/classes} and of the
+ * {@code WEB-INF/lib} jars sorted by name, and on the version of the Cloud SDK, so its output comes
+ * from the build cache when only static files changed. appcfg runs on a copy of the app holding
+ * nothing else.
+ *
+ * <p>The descriptors are only staged by the native staging engine, for apps without JSPs: staging
+ * with appcfg runs quickstart again.
+ */
+@CacheableTask
+public class QuickstartTask extends DefaultTask {
+
+  static final String QUICKSTART_WEB_XML = "quickstart-web.xml";
+  static final String MIN_QUICKSTART_WEB_XML = "min-quickstart-web.xml";
+
+  private File sourceDirectory;
+  private File quickstartDirectory;
+  private AppCfg appCfg;
+  private CloudSdk cloudSdk;
+
+  /** The exploded app, only its classes, jars and descriptors are inputs. */
+  @Internal
+  public File getSourceDirectory() {
+    return sourceDirectory;
+  }
+
+  public void setSourceDirectory(File sourceDirectory) {
+    this.sourceDirectory = sourceDirectory;
+  }
+
+  /** {@code WEB-INF/classes} and the {@code WEB-INF/lib} jars sorted by name. */
+  @Classpath
+  public FileCollection getClasspath() {
+    return getProject().files((Callable<List<File>>) () -> classpath(sourceDirectory));
+  }
+
+  /** {@code WEB-INF/web.xml} and {@code WEB-INF/appengine-web.xml}. */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NAME_ONLY)
+  public FileCollection getDescriptors() {
+    return getProject()
+        .files(
+            (Callable<List<File>>)
+                () ->
+                    Arrays.asList(
+                        new File(sourceDirectory, "WEB-INF/web.xml"),
+                        new File(sourceDirectory, "WEB-INF/appengine-web.xml")));
+  }
+
+  /** Holds the generated descriptors. */
+  @OutputDirectory
+  public File getQuickstartDirectory() {
+    return quickstartDirectory;
+  }
+
+  public void setQuickstartDirectory(File quickstartDirectory) {
+    this.quickstartDirectory = quickstartDirectory;
+  }
+
+  public void setAppCfg(AppCfg appCfg) {
+    this.appCfg = appCfg;
+  }
+
+  /** The version of the Cloud SDK, and of the quickstart of its App Engine component. */
+  @Input
+  public String getCloudSdkVersion() {
+    try {
+      return cloudSdk.getVersion().toString();
+    } catch (CloudSdkVersionFileException ex) {
+      throw new GradleException("Unable to read the version of the Cloud SDK", ex);
+    }
+  }
+
+  public void setCloudSdk(CloudSdk cloudSdk) {
+    this.cloudSdk = cloudSdk;
+  }
+
+  /** Task entrypoint : generate the quickstart descriptors. */
+  @TaskAction
+  public void quickstartAction() throws AppEngineException, IOException {
+    BuildMetrics.TaskMetrics metrics = BuildMetrics.of(this);
+    Path app = new File(getTemporaryDir(), "app").toPath();
+    Path staged = new File(getTemporaryDir(), "staged").toPath();
+    getProject().delete(app, staged, quickstartDirectory);
+
+    reduceApp(sourceDirectory.toPath(), app, new FileLinker(getLogger(), true));
+    try (BuildMetrics.Phase ignored = metrics.startPhase("quickstart")) {
+      appCfg
+          .newStaging(CloudSdkOperations.getDefaultHandler(this))
+          .stageStandard(
+              AppEngineWebXmlProjectStageConfiguration.builder(app, staged)
+                  .enableQuickstart(true)
+                  .disableUpdateCheck(true)
+                  .build());
+    }
+    Files.createDirectories(quickstartDirectory.toPath());
+    for (String name : new String[] {QUICKSTART_WEB_XML, MIN_QUICKSTART_WEB_XML}) {
+      Path generated = staged.resolve("WEB-INF").resolve(name);
+      if (!Files.isRegularFile(generated)) {
+        throw new GradleException("appcfg did not generate WEB-INF/" + name);
+      }
+      Files.copy(
+          generated,
+          quickstartDirectory.toPath().resolve(name),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    getProject().delete(app, staged);
+  }
+
+  /** The classpath of the app in {@code sourceDirectory}, in a stable order. */
+  @VisibleForTesting
+  static List<File> classpath(File sourceDirectory) {
+    List<File> classpath = new ArrayList<>();
+    File webInf = new File(sourceDirectory, "WEB-INF");
+    classpath.add(new File(webInf, "classes"));
+    File[] jars = new File(webInf, "lib").listFiles((dir, name) -> name.endsWith(".jar"));
+    if (jars != null) {
+      Arrays.sort(jars);
+      classpath.addAll(Arrays.asList(jars));
+    }
+    return classpath;
+  }
+
+  /**
+   * Lay out in {@code target} the part of the app in {@code source} that quickstart reads: the
+   * descriptors, the classes and the jars. The files are hard linked where possible.
+   */
+  @VisibleForTesting
+  static void reduceApp(Path source, Path target, FileLinker linker) throws IOException {
+    Path webInf = source.resolve("WEB-INF");
+    for (String name : new String[] {"web.xml", "appengine-web.xml"}) {
+      if (Files.isRegularFile(webInf.resolve(name))) {
+        linker.linkOrCopy(target.resolve("WEB-INF").resolve(name), webInf.resolve(name));
+      }
+    }
+    for (File file : classpath(source.toFile())) {
+      if (!file.exists()) {
+        continue;
+      }
+      try (Stream<Path> walk = Files.walk(file.toPath())) {
+        for (Path path : (Iterable<Path>) walk::iterator) {
+          if (Files.isRegularFile(path)) {
+            linker.linkOrCopy(target.resolve(source.relativize(path).toString()), path);
+          }
+        }
+      }
+    }
+  }
+}
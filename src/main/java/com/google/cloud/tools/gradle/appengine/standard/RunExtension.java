@@ -23,12 +23,17 @@ import com.google.cloud.tools.gradle.appengine.core.DeployTargetResolver;
 import com.google.cloud.tools.gradle.appengine.core.InternalProperty;
 import com.google.common.collect.ImmutableList;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.api.ProjectConfigurationException;
+import org.gradle.api.Task;
 import org.gradle.api.plugins.BasePlugin;
 
 /** Extension element to define Run configurations for App Engine Standard Environments. */
@@ -38,6 +43,15 @@ public class RunExtension {
 
   private final Project project;
   private int startSuccessTimeout;
+  private String readinessPath;
+  private int readinessStatus = 200;
+  private int readinessBackoffMillis = 50;
+  private Boolean asyncStart;
+  private Boolean reuseServer;
+  private Boolean allocatePort;
+  private Boolean profile;
+  private String profileSettings = "profile";
+  private Integer jmxPort;
   private String serverVersion;
 
   private List<File> services;
@@ -71,6 +85,189 @@ public class RunExtension {
     this.startSuccessTimeout = startSuccessTimeout;
   }
 
+  /**
+   * The path {@code appengineStart} polls until the server answers {@link #getReadinessStatus},
+   * instead of waiting for its startup message. Null to wait for the message.
+   */
+  public String getReadinessPath() {
+    return readinessPath;
+  }
+
+  public void setReadinessPath(String readinessPath) {
+    this.readinessPath = readinessPath;
+  }
+
+  public int getReadinessStatus() {
+    return readinessStatus;
+  }
+
+  public void setReadinessStatus(int readinessStatus) {
+    this.readinessStatus = readinessStatus;
+  }
+
+  /** The wait after the first unanswered probe, doubled after each one up to a second. */
+  public int getReadinessBackoffMillis() {
+    return readinessBackoffMillis;
+  }
+
+  public void setReadinessBackoffMillis(int readinessBackoffMillis) {
+    this.readinessBackoffMillis = readinessBackoffMillis;
+  }
+
+  /**
+   * Whether {@code appengineStart} returns as soon as the server is launched, the tasks declared
+   * with {@link DevAppServerStartTask#usedBy} wait for it to be ready instead.
+   */
+  public Boolean getAsyncStart() {
+    return asyncStart;
+  }
+
+  public void setAsyncStart(Boolean asyncStart) {
+    this.asyncStart = asyncStart;
+  }
+
+  /**
+   * Whether {@code appengineStart} reuses the server it started in a previous build of this daemon
+   * when its services and settings are unchanged, instead of starting a new one.
+   */
+  public Boolean getReuseServer() {
+    return reuseServer;
+  }
+
+  public void setReuseServer(Boolean reuseServer) {
+    this.reuseServer = reuseServer;
+  }
+
+  /**
+   * Whether {@code appengineStart} picks a free port for the server instead of {@link #getPort},
+   * so servers can run side by side. The port is kept in the build directory for the tasks of
+   * later builds, like {@code appengineStop}.
+   */
+  public Boolean getAllocatePort() {
+    return allocatePort;
+  }
+
+  public void setAllocatePort(Boolean allocatePort) {
+    this.allocatePort = allocatePort;
+  }
+
+  /**
+   * Whether the server runs under Java Flight Recorder, the recording is dumped to {@link
+   * #getRecordingFile} when the server exits and summarized by {@code appengineStop} or {@code
+   * appengineRun}.
+   */
+  public Boolean getProfile() {
+    return profile;
+  }
+
+  public void setProfile(Boolean profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * The Flight Recorder settings of the recording: {@code default}, {@code profile} or the path of
+   * a {@code .jfc} file.
+   */
+  public String getProfileSettings() {
+    return profileSettings;
+  }
+
+  public void setProfileSettings(String profileSettings) {
+    this.profileSettings = profileSettings;
+  }
+
+  /**
+   * The port of the JMX agent of the server JVM, that {@code appengineStats} samples. No agent if
+   * null. With {@link #getAllocatePort}, a free port is picked instead, like for the server. The
+   * agent only listens on the loopback address but doesn't authenticate: every local user can
+   * connect to it. Binding it to loopback needs Java 8u102 or later for the server.
+   */
+  public Integer getJmxPort() {
+    return jmxPort;
+  }
+
+  public void setJmxPort(Integer jmxPort) {
+    this.jmxPort = jmxPort;
+  }
+
+  /** The file the recording is dumped to, in the output directory of the dev server. */
+  File getRecordingFile() {
+    return new File(
+        new File(project.getBuildDir(), AppEngineStandardPlugin.DEV_APP_SERVER_OUTPUT_DIR_NAME),
+        FlightRecording.RECORDING_FILE_NAME);
+  }
+
+  /**
+   * The port the server listens on: with {@link #getAllocatePort}, the port allocated to the last
+   * server started and not stopped since, otherwise the configured one.
+   */
+  Integer resolvePort() {
+    return resolvePort(port, getAllocatedPortFile());
+  }
+
+  /** Record the port allocated to the server, null once the server is stopped. */
+  void setAllocatedPort(Integer allocatedPort) throws IOException {
+    writePort(getAllocatedPortFile(), allocatedPort);
+  }
+
+  /** The port of the JMX agent of the server, allocated like {@link #resolvePort}. */
+  Integer resolveJmxPort() {
+    return jmxPort == null ? null : resolvePort(jmxPort, getAllocatedJmxPortFile());
+  }
+
+  void setAllocatedJmxPort(Integer allocatedJmxPort) throws IOException {
+    writePort(getAllocatedJmxPortFile(), allocatedJmxPort);
+  }
+
+  private Integer resolvePort(Integer configuredPort, File portFile) {
+    if (!Boolean.TRUE.equals(allocatePort) || !portFile.isFile()) {
+      return configuredPort;
+    }
+    try {
+      return Integer.valueOf(
+          new String(Files.readAllBytes(portFile.toPath()), StandardCharsets.UTF_8).trim());
+    } catch (IOException | NumberFormatException ex) {
+      throw new GradleException("Cannot read the allocated port from " + portFile, ex);
+    }
+  }
+
+  private static void writePort(File portFile, Integer port) throws IOException {
+    if (port == null) {
+      Files.deleteIfExists(portFile.toPath());
+    } else {
+      Files.write(portFile.toPath(), port.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /** Whether the server started by {@code appengineStart}, and not stopped since, is recorded. */
+  boolean isRecording() {
+    return getRecordingMarker().isFile();
+  }
+
+  void setRecording(boolean recording) throws IOException {
+    File marker = getRecordingMarker();
+    if (recording) {
+      Files.write(marker.toPath(), new byte[0]);
+    } else {
+      Files.deleteIfExists(marker.toPath());
+    }
+  }
+
+  private File getRecordingMarker() {
+    Task startTask = project.getTasks().getByName(AppEngineStandardPlugin.START_TASK_NAME);
+    return new File(startTask.getTemporaryDir(), "recording-in-progress");
+  }
+
+  private File getAllocatedPortFile() {
+    Task startTask = project.getTasks().getByName(AppEngineStandardPlugin.START_TASK_NAME);
+    return new File(startTask.getTemporaryDir(), "allocated-port.txt");
+  }
+
+  private File getAllocatedJmxPortFile() {
+    Task startTask = project.getTasks().getByName(AppEngineStandardPlugin.START_TASK_NAME);
+    return new File(startTask.getTemporaryDir(), "allocated-jmx-port.txt");
+  }
+
   public String getServerVersion() {
     return serverVersion;
   }
@@ -143,20 +340,30 @@ public class RunExtension {
     if (!serviceProject.equals(project)) {
       project.evaluationDependsOn(serviceProject.getPath());
     }
-    project
-        .getTasks()
-        .findByName(AppEngineStandardPlugin.RUN_TASK_NAME)
-        .dependsOn(serviceProject.getTasks().findByPath(BasePlugin.ASSEMBLE_TASK_NAME));
-    project
-        .getTasks()
-        .findByName(AppEngineStandardPlugin.START_TASK_NAME)
-        .dependsOn(serviceProject.getTasks().findByPath(BasePlugin.ASSEMBLE_TASK_NAME));
-    return serviceProject
-        .getTasks()
-        .findByName(AppEngineStandardPlugin.EXPLODE_WAR_TASK_NAME)
-        .getOutputs()
-        .getFiles()
-        .getSingleFile();
+    Task explodeWar =
+        serviceProject.getTasks().findByName(AppEngineStandardPlugin.EXPLODE_WAR_TASK_NAME);
+    AppEngineStandardExtension serviceExtension =
+        serviceProject.getExtensions().findByType(AppEngineStandardExtension.class);
+    // a service run from its build outputs or exploded from its sources doesn't need its war
+    // archive built
+    Task serviceTask;
+    File serviceDirectory;
+    if (serviceExtension != null && serviceExtension.getRunFromBuildOutputs()) {
+      LinkAppTask linkApp =
+          (LinkAppTask)
+              serviceProject.getTasks().findByName(AppEngineStandardPlugin.LINK_APP_TASK_NAME);
+      serviceTask = linkApp;
+      serviceDirectory = linkApp.getLinkedAppDirectory();
+    } else {
+      serviceTask =
+          serviceExtension != null && serviceExtension.getExplodeFromSources()
+              ? explodeWar
+              : serviceProject.getTasks().findByPath(BasePlugin.ASSEMBLE_TASK_NAME);
+      serviceDirectory = explodeWar.getOutputs().getFiles().getSingleFile();
+    }
+    project.getTasks().findByName(AppEngineStandardPlugin.RUN_TASK_NAME).dependsOn(serviceTask);
+    project.getTasks().findByName(AppEngineStandardPlugin.START_TASK_NAME).dependsOn(serviceTask);
+    return serviceDirectory;
   }
 
   public Map<String, String> getEnvironment() {
@@ -184,7 +391,33 @@ public class RunExtension {
     this.projectId = projectId;
   }
 
+  /**
+   * The run configuration of the server, recorded with {@link #getProfile} and sampled over JMX
+   * with {@link #getJmxPort}.
+   */
   RunConfiguration toRunConfiguration() {
+    if (!Boolean.TRUE.equals(profile) && jmxPort == null) {
+      return toRunConfiguration(resolvePort(), jvmFlags);
+    }
+    List<String> serverJvmFlags = new ArrayList<>();
+    if (jvmFlags != null) {
+      serverJvmFlags.addAll(jvmFlags);
+    }
+    if (Boolean.TRUE.equals(profile)) {
+      serverJvmFlags.add(FlightRecording.startFlag(profileSettings, getRecordingFile()));
+    }
+    if (jmxPort != null) {
+      serverJvmFlags.addAll(JvmStatsSampler.jmxFlags(resolveJmxPort()));
+    }
+    return toRunConfiguration(resolvePort(), serverJvmFlags);
+  }
+
+  /** The run configuration, with the server on {@code port}, neither recorded nor sampled. */
+  RunConfiguration toRunConfiguration(Integer port) {
+    return toRunConfiguration(port, jvmFlags);
+  }
+
+  private RunConfiguration toRunConfiguration(Integer port, List<String> jvmFlags) {
     String processedProjectId = deployTargetResolver.getProject(projectId);
     return RunConfiguration.builder(
             services.stream().map(File::toPath).collect(Collectors.toList()))
@@ -200,6 +433,6 @@ public class RunExtension {
   }
 
   StopConfiguration toStopConfiguration() {
-    return StopConfiguration.builder().host(host).port(port).build();
+    return StopConfiguration.builder().host(host).port(resolvePort()).build();
   }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The dev servers started by {@code appengineStart} in this daemon, with fingerprints of their
+ * services and run settings, so a later build can reuse a server whose inputs didn't change
+ * instead of booting a new one.
+ */
+class RunningDevAppServers {
+
+  // written by the dev server itself (local datastore, generated indexes)
+  private static final Path APPENGINE_GENERATED = Paths.get("WEB-INF", "appengine-generated");
+
+  private static final Map<File, RunningDevAppServer> servers = new HashMap<>();
+
+  private RunningDevAppServers() {}
+
+  /** The server started for {@code key} that is still running, null if there is none. */
+  static synchronized RunningDevAppServer find(File key) {
+    RunningDevAppServer server = servers.get(key);
+    if (server != null && !server.process.isAlive()) {
+      servers.remove(key);
+      return null;
+    }
+    return server;
+  }
+
+  /** Remember the server started for {@code key}, replacing the previous one. */
+  static synchronized void started(
+      File key, Process process, String servicesFingerprint, String settingsFingerprint) {
+    servers.put(key, new RunningDevAppServer(process, servicesFingerprint, settingsFingerprint));
+  }
+
+  /**
+   * Fingerprint of the files of {@code services}: their paths, sizes and modification times, links
+   * followed so an app laid out by {@code linkApp} changes with its targets.
+   */
+  @VisibleForTesting
+  static String servicesFingerprint(List<File> services) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (File service : services) {
+      Path root = service.toPath();
+      hasher.putString(root.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+      if (!Files.isDirectory(root)) {
+        continue;
+      }
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(root, FileVisitOption.FOLLOW_LINKS)) {
+        files =
+            walk.filter(Files::isRegularFile)
+                .filter(path -> !root.relativize(path).startsWith(APPENGINE_GENERATED))
+                .sorted()
+                .collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        hasher
+            .putString(root.relativize(file).toString(), StandardCharsets.UTF_8)
+            .putLong(Files.size(file))
+            .putLong(Files.getLastModifiedTime(file).toMillis());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Fingerprint of the settings the server was started with, other than its services. */
+  static String settingsFingerprint(RunExtension run) {
+    return Hashing.sha256()
+        .hashString(
+            Stream.of(
+                    run.getHost(),
+                    run.getPort(),
+                    run.getJvmFlags(),
+                    run.getAutomaticRestart(),
+                    run.getDefaultGcsBucketName(),
+                    run.getEnvironment(),
+                    run.getAdditionalArguments(),
+                    run.getProjectId(),
+                    run.getProfile(),
+                    run.getProfileSettings(),
+                    run.getJmxPort())
+                .map(Objects::toString)
+                .collect(Collectors.joining("\n")),
+            StandardCharsets.UTF_8)
+        .toString();
+  }
+
+  /** A server left running by a previous build. */
+  static class RunningDevAppServer {
+    private final Process process;
+    private final String servicesFingerprint;
+    private final String settingsFingerprint;
+
+    private RunningDevAppServer(
+        Process process, String servicesFingerprint, String settingsFingerprint) {
+      this.process = process;
+      this.servicesFingerprint = servicesFingerprint;
+      this.settingsFingerprint = settingsFingerprint;
+    }
+
+    Process getProcess() {
+      return process;
+    }
+
+    String getServicesFingerprint() {
+      return servicesFingerprint;
+    }
+
+    String getSettingsFingerprint() {
+      return settingsFingerprint;
+    }
+  }
+}
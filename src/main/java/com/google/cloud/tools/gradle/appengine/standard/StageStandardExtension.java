@@ -44,6 +44,7 @@ public class StageStandardExtension {
   private Boolean enableJarClasses;
   private Boolean disableJarJsps;
   private String runtime;
+  private Boolean nativeStaging;
 
   /** Constuctor. */
   public StageStandardExtension(Project project) {
@@ -168,6 +169,21 @@ public class StageStandardExtension {
     this.runtime = runtime;
   }
 
+  /**
+   * Stage java8 apps in the build rather than with appcfg, when they use nothing that needs appcfg
+   * (cron.xml and the other configuration files...). Experimental: the app.yaml it writes is not
+   * yet validated against the one appcfg writes.
+   */
+  @Input
+  @Optional
+  public Boolean getNativeStaging() {
+    return nativeStaging;
+  }
+
+  public void setNativeStaging(Boolean nativeStaging) {
+    this.nativeStaging = nativeStaging;
+  }
+
   AppEngineWebXmlProjectStageConfiguration toStageStandardConfiguration() {
     return AppEngineWebXmlProjectStageConfiguration.builder(
             sourceDirectory.toPath(), stagingDirectory.toPath())
@@ -19,15 +19,40 @@ package com.google.cloud.tools.gradle.appengine.standard;
 
 import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.operations.AppCfg;
+import com.google.cloud.tools.gradle.appengine.core.BuildMetrics;
 import com.google.cloud.tools.gradle.appengine.core.CloudSdkOperations;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
 
-/** Stage App Engine Standard Environment applications for deployment. */
+/**
+ * Stage App Engine Standard Environment applications for deployment. With native staging, only
+ * the source files that changed since the last run are staged again; appcfg stages everything
+ * from scratch.
+ */
 public class StageStandardTask extends DefaultTask {
 
   private StageStandardExtension stageStandardExtension;
+  private FileCollection stagingSources;
+  private File quickstartDirectory;
+  private File compiledJspsDirectory;
   private AppCfg appCfg;
 
   @Nested
@@ -37,6 +62,46 @@ public class StageStandardTask extends DefaultTask {
 
   public void setStageStandardExtension(StageStandardExtension stageStandardExtension) {
     this.stageStandardExtension = stageStandardExtension;
+    this.stagingSources =
+        getProject().files((Callable<File>) stageStandardExtension::getSourceDirectory);
+  }
+
+  /** The files of the source directory, tracked one by one to restage only the changed ones. */
+  @Incremental
+  @InputFiles
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public FileCollection getStagingSources() {
+    return stagingSources;
+  }
+
+  /**
+   * The descriptors of {@link QuickstartTask}, staged by the native engine instead of running
+   * quickstart. Not incremental, new descriptors stage everything again.
+   */
+  @InputDirectory
+  @Optional
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public File getQuickstartDirectory() {
+    return quickstartDirectory;
+  }
+
+  public void setQuickstartDirectory(File quickstartDirectory) {
+    this.quickstartDirectory = quickstartDirectory;
+  }
+
+  /**
+   * The JSPs compiled by {@link CompileJspsTask}, staged by the native engine instead of compiling
+   * them with appcfg. Not incremental, a recompiled JSP stages everything again.
+   */
+  @InputDirectory
+  @Optional
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public File getCompiledJspsDirectory() {
+    return compiledJspsDirectory;
+  }
+
+  public void setCompiledJspsDirectory(File compiledJspsDirectory) {
+    this.compiledJspsDirectory = compiledJspsDirectory;
   }
 
   public void setAppCfg(AppCfg appCfg) {
@@ -45,10 +110,75 @@ public class StageStandardTask extends DefaultTask {
 
   /** Task entrypoint : stage the standard app. */
   @TaskAction
-  public void stageAction() throws AppEngineException {
-    getProject().delete(stageStandardExtension.getStagingDirectory());
-    appCfg
-        .newStaging(CloudSdkOperations.getDefaultHandler(getLogger()))
-        .stageStandard(stageStandardExtension.toStageStandardConfiguration());
+  public void stageAction(InputChanges inputChanges) throws AppEngineException, IOException {
+    BuildMetrics.TaskMetrics metrics = BuildMetrics.of(this);
+    NativeStandardStaging nativeStaging = findNativeStaging();
+    File indexFile = new File(getTemporaryDir(), "native-staging-index.txt");
+    if (nativeStaging != null
+        && inputChanges.isIncremental()
+        && nativeStaging.readIndex(indexFile)) {
+      // the index is rewritten after restaging, drop it so a failure can't leave it stale
+      Files.delete(indexFile.toPath());
+      Map<String, ChangeType> changes = new LinkedHashMap<>();
+      for (FileChange change : inputChanges.getFileChanges(stagingSources)) {
+        if (change.getFileType() != FileType.DIRECTORY) {
+          changes.put(change.getNormalizedPath(), change.getChangeType());
+        }
+      }
+      boolean restaged;
+      try (BuildMetrics.Phase ignored = metrics.startPhase("restage")) {
+        restaged = nativeStaging.restage(changes);
+      }
+      if (restaged) {
+        nativeStaging.writeIndex(indexFile);
+        getLogger().info("Restaged {} changed files", changes.size());
+        metrics.recordBytesStaged(stageStandardExtension.getStagingDirectory());
+        return;
+      }
+    }
+
+    try (BuildMetrics.Phase ignored = metrics.startPhase("clean")) {
+      getProject().delete(stageStandardExtension.getStagingDirectory(), indexFile);
+    }
+    try (BuildMetrics.Phase ignored = metrics.startPhase("stage")) {
+      if (nativeStaging != null) {
+        nativeStaging.stage();
+        nativeStaging.writeIndex(indexFile);
+      } else {
+        appCfg
+            .newStaging(CloudSdkOperations.getDefaultHandler(this))
+            .stageStandard(stageStandardExtension.toStageStandardConfiguration());
+      }
+    }
+    metrics.recordBytesStaged(stageStandardExtension.getStagingDirectory());
+  }
+
+  /** The native staging engine, if it is enabled and the app doesn't need appcfg. */
+  private NativeStandardStaging findNativeStaging() throws IOException {
+    if (!Boolean.TRUE.equals(stageStandardExtension.getNativeStaging())) {
+      return null;
+    }
+    NativeStandardStaging nativeStaging =
+        NativeStandardStaging.of(stageStandardExtension)
+            .parallelism(getProject().getGradle().getStartParameter().getMaxWorkerCount());
+    if (quickstartDirectory != null) {
+      nativeStaging.quickstartDirectory(quickstartDirectory.toPath());
+    }
+    if (compiledJspsDirectory != null) {
+      nativeStaging.compiledJspsDirectory(compiledJspsDirectory.toPath());
+    }
+    String unsupported = NativeStandardStaging.findUnsupportedOption(stageStandardExtension);
+    if (unsupported == null) {
+      unsupported = nativeStaging.findUnsupported();
+    }
+    if (unsupported != null) {
+      getLogger().lifecycle("Staging with appcfg, " + unsupported);
+      return null;
+    }
+    getLogger()
+        .warn(
+            "nativeStaging is experimental, the app.yaml it writes is not yet validated against"
+                + " the one appcfg writes");
+    return nativeStaging;
   }
 }
@@ -19,6 +19,11 @@ package com.google.cloud.tools.gradle.appengine.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
@@ -27,11 +32,15 @@ import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import org.gradle.api.GradleException;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
  * Simple parser for appengine-web.xml, this should ideally not exist, but we need it to correctly
- * error when vm=false and the user is using java8 as the target platform.
+ * error when vm=false and the user is using java8 as the target platform, and to stage apps
+ * without appcfg.
  */
 public class AppEngineWebXml {
 
@@ -59,4 +68,130 @@ public class AppEngineWebXml {
       throw new GradleException("XPath evaluation failed on appengine-web.xml", e);
     }
   }
+
+  /** Check if the top level element {@code name} is present. */
+  public boolean has(String name) {
+    return !getElements("/appengine-web-app/" + name).isEmpty();
+  }
+
+  /** The text of the top level element {@code name}, or null if it is missing or empty. */
+  public String getText(String name) {
+    List<Element> elements = getElements("/appengine-web-app/" + name);
+    if (elements.isEmpty()) {
+      return null;
+    }
+    String text = elements.get(0).getTextContent().trim();
+    return text.isEmpty() ? null : text;
+  }
+
+  /** The value of the boolean element {@code name}, or {@code defaultValue} if it is missing. */
+  public boolean getBoolean(String name, boolean defaultValue) {
+    String text = getText(name);
+    return text == null ? defaultValue : Boolean.parseBoolean(text);
+  }
+
+  /** The service of the app, declared as a service or a module. */
+  public String getService() {
+    String service = getText("service");
+    return service != null ? service : getText("module");
+  }
+
+  /** The text of each leaf child element of {@code name}, in order (scaling settings). */
+  public Map<String, String> getChildTexts(String name) {
+    Map<String, String> children = new LinkedHashMap<>();
+    for (Element child : getElements("/appengine-web-app/" + name + "/*")) {
+      // nested settings have no text of their own
+      if (child.getElementsByTagName("*").getLength() == 0) {
+        children.put(child.getTagName(), child.getTextContent().trim());
+      }
+    }
+    return children;
+  }
+
+  public List<String> getInboundServices() {
+    List<String> services = new ArrayList<>();
+    for (Element service : getElements("/appengine-web-app/inbound-services/service")) {
+      services.add(service.getTextContent().trim());
+    }
+    return services;
+  }
+
+  public Map<String, String> getEnvironmentVariables() {
+    Map<String, String> variables = new LinkedHashMap<>();
+    for (Element variable : getElements("/appengine-web-app/env-variables/env-var")) {
+      variables.put(variable.getAttribute("name"), variable.getAttribute("value"));
+    }
+    return variables;
+  }
+
+  /** The include and exclude patterns of {@code static-files} or {@code resource-files}. */
+  public List<FilePattern> getFilePatterns(String name) {
+    List<FilePattern> patterns = new ArrayList<>();
+    for (Element pattern : getElements("/appengine-web-app/" + name + "/*")) {
+      Map<String, String> headers = new LinkedHashMap<>();
+      NodeList children = pattern.getElementsByTagName("http-header");
+      for (int i = 0; i < children.getLength(); i++) {
+        Element header = (Element) children.item(i);
+        headers.put(header.getAttribute("name"), header.getAttribute("value"));
+      }
+      String expiration = pattern.getAttribute("expiration");
+      patterns.add(
+          new FilePattern(
+              pattern.getTagName().equals("include"),
+              pattern.getAttribute("path"),
+              expiration.isEmpty() ? null : expiration,
+              headers));
+    }
+    return patterns;
+  }
+
+  private List<Element> getElements(String expression) {
+    try {
+      XPath xpath = XPathFactory.newInstance().newXPath();
+      NodeList nodes = (NodeList) xpath.evaluate(expression, document, XPathConstants.NODESET);
+      List<Element> elements = new ArrayList<>();
+      for (int i = 0; i < nodes.getLength(); i++) {
+        if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+          elements.add((Element) nodes.item(i));
+        }
+      }
+      return elements;
+    } catch (XPathExpressionException e) {
+      throw new GradleException("XPath evaluation failed on appengine-web.xml", e);
+    }
+  }
+
+  /** An include or exclude of {@code static-files} or {@code resource-files}. */
+  public static class FilePattern {
+    private final boolean include;
+    private final String path;
+    private final String expiration;
+    private final Map<String, String> httpHeaders;
+
+    /** Constructor, {@code path} is relative to the root of the app. */
+    public FilePattern(
+        boolean include, String path, String expiration, Map<String, String> httpHeaders) {
+      this.include = include;
+      this.path = path.startsWith("/") ? path : "/" + path;
+      this.expiration = expiration;
+      this.httpHeaders = Collections.unmodifiableMap(httpHeaders);
+    }
+
+    public boolean isInclude() {
+      return include;
+    }
+
+    /** The glob of the pattern, from the root of the app and starting with a slash. */
+    public String getPath() {
+      return path;
+    }
+
+    public String getExpiration() {
+      return expiration;
+    }
+
+    public Map<String, String> getHttpHeaders() {
+      return httpHeaders;
+    }
+  }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.gradle.api.GradleException;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Simple parser for the parts of web.xml that go in the handlers of a staged app.yaml, which can
+ * also declare the servlets of compiled JSPs.
+ */
+public class WebXml {
+
+  private final Document document;
+
+  private WebXml(File webXml) {
+    try {
+      DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      // old web.xml files reference a DTD, don't fetch it
+      builder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
+      document = builder.parse(webXml);
+    } catch (SAXException | IOException | ParserConfigurationException e) {
+      throw new GradleException("Failed to parse web.xml", e);
+    }
+  }
+
+  public static WebXml parse(File webXml) {
+    return new WebXml(webXml);
+  }
+
+  /** The welcome files, in order, or null if web.xml doesn't declare any. */
+  public List<String> getWelcomeFiles() {
+    NodeList lists = document.getElementsByTagName("welcome-file-list");
+    if (lists.getLength() == 0) {
+      return null;
+    }
+    return getTexts("welcome-file");
+  }
+
+  /** The url patterns of the servlet and filter mappings, in order. */
+  public List<String> getUrlPatterns() {
+    List<String> patterns = new ArrayList<>();
+    for (String mapping : new String[] {"servlet-mapping", "filter-mapping"}) {
+      NodeList mappings = document.getElementsByTagName(mapping);
+      for (int i = 0; i < mappings.getLength(); i++) {
+        patterns.addAll(getTexts((Element) mappings.item(i), "url-pattern"));
+      }
+    }
+    return patterns;
+  }
+
+  /**
+   * Declare {@code servlets}, servlet classes by url pattern, after the servlets and the servlet
+   * mappings of web.xml: the order of the 2.3 DTD is kept.
+   */
+  public void addServlets(Map<String, String> servlets) {
+    Element root = document.getDocumentElement();
+    Node lastServlet = lastChild(root, "servlet");
+    Node lastMapping = lastChild(root, "servlet-mapping");
+    Node servletAnchor =
+        lastServlet != null ? lastServlet.getNextSibling() : firstChild(root, "servlet-mapping");
+    // right after the new servlets when there is no mapping yet
+    Node mappingAnchor = lastMapping != null ? lastMapping.getNextSibling() : servletAnchor;
+    for (Map.Entry<String, String> servlet : servlets.entrySet()) {
+      Element declaration = document.createElement("servlet");
+      appendText(declaration, "servlet-name", servlet.getValue());
+      appendText(declaration, "servlet-class", servlet.getValue());
+      insertBefore(root, declaration, servletAnchor);
+    }
+    for (Map.Entry<String, String> servlet : servlets.entrySet()) {
+      Element mapping = document.createElement("servlet-mapping");
+      appendText(mapping, "servlet-name", servlet.getValue());
+      appendText(mapping, "url-pattern", servlet.getKey());
+      insertBefore(root, mapping, mappingAnchor);
+    }
+  }
+
+  /** Write the document, with its DTD reference, to {@code file}. */
+  public void write(File file) {
+    try {
+      Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      DocumentType doctype = document.getDoctype();
+      if (doctype != null) {
+        if (doctype.getPublicId() != null) {
+          transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+        }
+        if (doctype.getSystemId() != null) {
+          transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+        }
+      }
+      transformer.transform(new DOMSource(document), new StreamResult(file));
+    } catch (TransformerException e) {
+      throw new GradleException("Failed to write web.xml", e);
+    }
+  }
+
+  public boolean hasSecurityConstraints() {
+    return document.getElementsByTagName("security-constraint").getLength() > 0;
+  }
+
+  private void appendText(Element parent, String tagName, String text) {
+    Element element = document.createElement(tagName);
+    element.setTextContent(text);
+    parent.appendChild(element);
+  }
+
+  /** Insert {@code node} before {@code anchor}, or at the end if it's null. */
+  private static void insertBefore(Element parent, Node node, Node anchor) {
+    if (anchor == null) {
+      parent.appendChild(node);
+    } else {
+      parent.insertBefore(node, anchor);
+    }
+  }
+
+  private static Node lastChild(Element parent, String tagName) {
+    Node last = null;
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element && ((Element) child).getTagName().equals(tagName)) {
+        last = child;
+      }
+    }
+    return last;
+  }
+
+  private static Node firstChild(Element parent, String tagName) {
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element && ((Element) child).getTagName().equals(tagName)) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  private List<String> getTexts(String tagName) {
+    return getTexts(document.getDocumentElement(), tagName);
+  }
+
+  private static List<String> getTexts(Element parent, String tagName) {
+    List<String> texts = new ArrayList<>();
+    NodeList elements = parent.getElementsByTagName(tagName);
+    for (int i = 0; i < elements.getLength(); i++) {
+      texts.add(elements.item(i).getTextContent().trim());
+    }
+    return texts;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.util.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.gradle.api.logging.Logger;
+
+/**
+ * Mirror files with hard links, or with copies once hard links turn out not to be supported (a
+ * target on another file system than the source, or a file system without them). A hard link
+ * costs no bytes and no time whatever the size of the file.
+ */
+public class FileLinker {
+
+  private final Logger logger;
+  private boolean hardLinksSupported;
+  private int links;
+  private int copies;
+
+  public FileLinker(Logger logger, boolean hardLinksSupported) {
+    this.logger = logger;
+    this.hardLinksSupported = hardLinksSupported;
+  }
+
+  /** Replace {@code target} with a hard link to {@code source}, or a copy of it. */
+  public void linkOrCopy(Path target, Path source) throws IOException {
+    Files.createDirectories(target.getParent());
+    Files.deleteIfExists(target);
+    if (hardLinksSupported) {
+      try {
+        Files.createLink(target, source);
+        links++;
+        return;
+      } catch (UnsupportedOperationException | IOException ex) {
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+          throw ex;
+        }
+        logger.info("Cannot create hard links, copying files: " + ex.getMessage());
+        hardLinksSupported = false;
+      }
+    }
+    copy(target, source);
+  }
+
+  /** Replace {@code target} with a copy of {@code source}, for files that must not be aliased. */
+  public void copy(Path target, Path source) throws IOException {
+    Files.createDirectories(target.getParent());
+    Files.deleteIfExists(target);
+    // with its time, so the copy can be recognized as up to date
+    Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+    copies++;
+  }
+
+  /**
+   * Check if {@code target} mirrors {@code source}: a hard link to it, or a copy with its size and
+   * modification time.
+   */
+  public static boolean isUpToDate(Path target, Path source) throws IOException {
+    if (!Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+      return false;
+    }
+    return Files.isSameFile(target, source)
+        || (Files.size(target) == Files.size(source)
+            // copied times can lose precision below the millisecond
+            && Files.getLastModifiedTime(target).toMillis()
+                == Files.getLastModifiedTime(source).toMillis());
+  }
+
+  public int getLinks() {
+    return links;
+  }
+
+  public int getCopies() {
+    return copies;
+  }
+}
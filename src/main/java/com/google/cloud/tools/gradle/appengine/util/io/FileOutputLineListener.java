@@ -18,12 +18,13 @@
 package com.google.cloud.tools.gradle.appengine.util.io;
 
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessOutputLineListener;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 
 /** A listener that redirects process output to a file. */
-public class FileOutputLineListener implements ProcessOutputLineListener {
+public class FileOutputLineListener implements ProcessOutputLineListener, Closeable {
   private final PrintStream logFilePrinter;
 
   public FileOutputLineListener(File logFile) throws IOException {
@@ -34,4 +35,9 @@ public class FileOutputLineListener implements ProcessOutputLineListener {
   public void onOutputLine(String line) {
     logFilePrinter.println(line);
   }
+
+  @Override
+  public void close() {
+    logFilePrinter.close();
+  }
 }
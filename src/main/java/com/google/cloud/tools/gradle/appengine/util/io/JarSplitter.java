@@ -0,0 +1,243 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.util.io;
+
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Split the jars too large for App Engine into parts of at most {@code maxSize} uncompressed
+ * bytes, each with the manifest of the jar, named like appcfg names them ({@code
+ * name-0000.jar}...), a split fails rather than overwrite a jar that already has the name of one of
+ * its parts. Entries whose name ends with one of the excluded suffixes are dropped from every jar,
+ * split or not.
+ *
+ * <p>Entries are streamed from one jar to the other, jars are split concurrently, and the output
+ * only depends on the input jar: entries keep their order and time, and the manifest keeps the
+ * time of the original one instead of the time of the split.
+ */
+public class JarSplitter {
+
+  /** The size over which appcfg splits jars. */
+  public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024;
+
+  // for jars without a manifest entry to take the time from: 1980-02-01, like Gradle's
+  // reproducible archives
+  private static final long CONSTANT_TIME =
+      new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final long maxSize;
+  private final List<String> excludedSuffixes;
+
+  public JarSplitter(long maxSize, List<String> excludedSuffixes) {
+    this.maxSize = maxSize;
+    this.excludedSuffixes = excludedSuffixes;
+  }
+
+  /**
+   * {@link #split} each of {@code jars} on up to {@code parallelism} threads. Returns the jars that
+   * replace each of them.
+   */
+  public Map<Path, List<Path>> splitAll(Collection<Path> jars, int parallelism)
+      throws IOException {
+    Map<Path, Future<List<Path>>> results = new LinkedHashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    try {
+      for (Path jar : jars) {
+        results.put(jar, executor.submit(() -> split(jar)));
+      }
+      Map<Path, List<Path>> parts = new LinkedHashMap<>();
+      for (Map.Entry<Path, Future<List<Path>>> result : results.entrySet()) {
+        parts.put(result.getKey(), result.getValue().get());
+      }
+      return parts;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while splitting jars", ex);
+    } catch (ExecutionException ex) {
+      Throwables.throwIfInstanceOf(ex.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new IOException(ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Split {@code jar} next to it and delete it, or rewrite it without the excluded entries.
+   * Returns the jars that replace it, {@code jar} itself when there was nothing to do.
+   */
+  public List<Path> split(Path jar) throws IOException {
+    List<Path> parts = new ArrayList<>();
+    boolean tooLarge;
+    try (JarFile jarFile = new JarFile(jar.toFile(), false)) {
+      // the same measure as the parts, so that a jar is split exactly when it does not fit in one
+      tooLarge = uncompressedSize(jarFile) > maxSize;
+      if (!tooLarge && !hasExcludedEntries(jarFile)) {
+        parts.add(jar);
+        return parts;
+      }
+      String baseName = jar.getFileName().toString().replaceFirst("\\.jar$", "");
+      Manifest manifest = jarFile.getManifest();
+      JarEntry manifestEntry = jarFile.getJarEntry(JarFile.MANIFEST_NAME);
+      long manifestTime = manifestEntry == null ? CONSTANT_TIME : manifestEntry.getTime();
+      JarOutputStream out = null;
+      long partSize = 0;
+      byte[] buffer = new byte[BUFFER_SIZE];
+      try {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+          JarEntry entry = entries.nextElement();
+          if (entry.getName().equalsIgnoreCase(JarFile.MANIFEST_NAME) || isExcluded(entry)) {
+            continue;
+          }
+          long entrySize = Math.max(0, entry.getSize());
+          // a jar that is only filtered is rewritten as one jar, whatever its content
+          if (out == null || (tooLarge && partSize > 0 && partSize + entrySize > maxSize)) {
+            if (out != null) {
+              out.close();
+            }
+            Path part =
+                tooLarge
+                    ? jar.resolveSibling(String.format("%s-%04d.jar", baseName, parts.size()))
+                    : jar.resolveSibling(baseName + ".jar.tmp");
+            try {
+              // a part must not replace a jar of the app, like foo-0001.jar next to foo.jar
+              out = open(part, manifest, manifestTime, tooLarge);
+            } catch (FileAlreadyExistsException ex) {
+              for (Path written : parts) {
+                Files.deleteIfExists(written);
+              }
+              throw new IOException(
+                  "Cannot split " + jar + ", its part " + part + " would replace an existing jar",
+                  ex);
+            }
+            parts.add(part);
+            partSize = 0;
+          }
+          JarEntry copy = new JarEntry(entry.getName());
+          copy.setTime(entry.getTime());
+          out.putNextEntry(copy);
+          try (InputStream in = jarFile.getInputStream(entry)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+              out.write(buffer, 0, read);
+            }
+          }
+          out.closeEntry();
+          partSize += entrySize;
+        }
+      } finally {
+        if (out != null) {
+          out.close();
+        }
+      }
+    }
+    if (!tooLarge) {
+      // only filtered, it keeps its name
+      Path filtered = parts.isEmpty() ? null : parts.remove(0);
+      Files.delete(jar);
+      if (filtered != null) {
+        Files.move(filtered, jar);
+        parts.add(jar);
+      }
+      return parts;
+    }
+    Files.delete(jar);
+    return parts;
+  }
+
+  /** The uncompressed size of the entries that are kept, the manifest aside. */
+  private long uncompressedSize(JarFile jarFile) {
+    long size = 0;
+    Enumeration<JarEntry> entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      JarEntry entry = entries.nextElement();
+      if (!entry.getName().equalsIgnoreCase(JarFile.MANIFEST_NAME) && !isExcluded(entry)) {
+        size += Math.max(0, entry.getSize());
+      }
+    }
+    return size;
+  }
+
+  private boolean hasExcludedEntries(JarFile jarFile) {
+    if (excludedSuffixes.isEmpty()) {
+      return false;
+    }
+    Enumeration<JarEntry> entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      if (isExcluded(entries.nextElement())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isExcluded(JarEntry entry) {
+    for (String suffix : excludedSuffixes) {
+      if (entry.getName().endsWith(suffix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A jar starting with {@code manifest}, written with a fixed time: {@link JarOutputStream} would
+   * stamp it with the current time.
+   */
+  private static JarOutputStream open(
+      Path part, Manifest manifest, long manifestTime, boolean createNew) throws IOException {
+    OpenOption[] options =
+        createNew
+            ? new OpenOption[] {StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE}
+            : new OpenOption[0];
+    JarOutputStream out = new JarOutputStream(Files.newOutputStream(part, options));
+    if (manifest != null) {
+      JarEntry entry = new JarEntry(JarFile.MANIFEST_NAME);
+      entry.setTime(manifestTime);
+      out.putNextEntry(entry);
+      manifest.write(out);
+      out.closeEntry();
+    }
+    return out;
+  }
+}
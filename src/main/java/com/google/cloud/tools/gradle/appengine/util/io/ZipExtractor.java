@@ -0,0 +1,381 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.util.io;
+
+import com.google.common.base.Throwables;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts entries of a zip (war, jar) concurrently. The archive is memory mapped and its central
+ * directory read once; stored entries are written with channel transfers, without going through
+ * the heap, and deflated entries are inflated in parallel on a bounded pool. Archives the mapping
+ * can't handle (zip64, over 2GB) are read through {@link ZipFile} instead, still in parallel, as
+ * are all archives on Windows, where a mapped file stays locked until the mapping is collected.
+ * Every extracted entry is checked against the size and CRC of the central directory, so a corrupt
+ * or truncated archive fails the extraction.
+ */
+public class ZipExtractor implements Closeable {
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File zip;
+  private final FileChannel channel;
+  private final MappedByteBuffer mapped;
+  private final ZipFile zipFile;
+  private final List<Entry> entries;
+
+  private ZipExtractor(File zip, FileChannel channel, MappedByteBuffer mapped, List<Entry> entries)
+      throws IOException {
+    this.zip = zip;
+    this.channel = channel;
+    this.mapped = mapped;
+    this.zipFile = mapped == null ? new ZipFile(zip) : null;
+    this.entries = entries == null ? readEntries(zipFile) : entries;
+  }
+
+  /** Open {@code zip} and read its central directory. */
+  public static ZipExtractor open(File zip) throws IOException {
+    FileChannel channel = FileChannel.open(zip.toPath(), StandardOpenOption.READ);
+    try {
+      if (channel.size() < Integer.MAX_VALUE && !isWindows()) {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        List<Entry> entries = readCentralDirectory(mapped);
+        if (entries != null) {
+          return new ZipExtractor(zip, channel, mapped, entries);
+        }
+      }
+      return new ZipExtractor(zip, channel, null, null);
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  private static boolean isWindows() {
+    return System.getProperty("os.name", "").startsWith("Windows");
+  }
+
+  /** The entries of the archive, in central directory order. */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Extract {@code toExtract} under {@code root}, replacing existing files, using up to {@code
+   * parallelism} threads. Entry names must have been checked to resolve under {@code root}.
+   */
+  public void extract(Collection<Entry> toExtract, Path root, int parallelism)
+      throws IOException {
+    // create the directories up front, so the workers don't race on them
+    for (Entry entry : toExtract) {
+      Path target = root.resolve(entry.name);
+      Files.createDirectories(entry.isDirectory() ? target : target.getParent());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    try {
+      List<Future<Void>> results = new ArrayList<>();
+      for (Entry entry : toExtract) {
+        if (!entry.isDirectory()) {
+          results.add(
+              executor.submit(
+                  () -> {
+                    extract(entry, root.resolve(entry.name));
+                    return null;
+                  }));
+        }
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while extracting " + zip, ex);
+    } catch (ExecutionException ex) {
+      Throwables.throwIfInstanceOf(ex.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new IOException(ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void extract(Entry entry, Path target) throws IOException {
+    if (mapped == null) {
+      try (CheckedInputStream in =
+          new CheckedInputStream(
+              zipFile.getInputStream(zipFile.getEntry(entry.name)), new CRC32())) {
+        long size = Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        check(entry, size, in.getChecksum().getValue());
+      }
+      return;
+    }
+    long dataOffset = dataOffset(entry);
+    if (entry.method == ZipEntry.STORED) {
+      try (FileChannel out =
+          FileChannel.open(
+              target,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING)) {
+        long transferred = 0;
+        while (transferred < entry.size) {
+          long count =
+              channel.transferTo(dataOffset + transferred, entry.size - transferred, out);
+          if (count <= 0) {
+            throw new ZipException("Truncated entry " + entry.name + " in " + zip);
+          }
+          transferred += count;
+        }
+      }
+      // the stored bytes are checked in place, still without copying them to the heap
+      ByteBuffer data = mapped.duplicate();
+      data.position((int) dataOffset);
+      data.limit((int) (dataOffset + entry.size));
+      CRC32 crc = new CRC32();
+      crc.update(data);
+      check(entry, entry.size, crc.getValue());
+    } else if (entry.method == ZipEntry.DEFLATED) {
+      inflate(entry, dataOffset, target);
+    } else {
+      throw new ZipException(
+          "Unsupported compression method " + entry.method + " for " + entry.name + " in " + zip);
+    }
+  }
+
+  /** Inflate a deflated entry straight from the mapping, a chunk of input at a time. */
+  private void inflate(Entry entry, long dataOffset, Path target) throws IOException {
+    ByteBuffer data = mapped.duplicate();
+    data.position((int) dataOffset);
+    data.limit((int) (dataOffset + entry.compressedSize));
+    byte[] input = new byte[BUFFER_SIZE];
+    byte[] output = new byte[BUFFER_SIZE];
+    Inflater inflater = new Inflater(true);
+    CRC32 crc = new CRC32();
+    long size = 0;
+    boolean padded = false;
+    try (OutputStream out = Files.newOutputStream(target)) {
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          int count = Math.min(input.length, data.remaining());
+          if (count == 0) {
+            // raw deflate data may need one byte past its end to finish, as ZipFile feeds it
+            if (padded) {
+              throw new ZipException("Truncated entry " + entry.name + " in " + zip);
+            }
+            padded = true;
+            input[0] = 0;
+            count = 1;
+          } else {
+            data.get(input, 0, count);
+          }
+          inflater.setInput(input, 0, count);
+        }
+        int count = inflater.inflate(output);
+        if (count == 0 && inflater.needsDictionary()) {
+          throw new ZipException("Unsupported preset dictionary in " + entry.name + " in " + zip);
+        }
+        out.write(output, 0, count);
+        crc.update(output, 0, count);
+        size += count;
+      }
+    } catch (DataFormatException ex) {
+      throw new ZipException("Corrupt entry " + entry.name + " in " + zip + ": " + ex.getMessage());
+    } finally {
+      inflater.end();
+    }
+    check(entry, size, crc.getValue());
+  }
+
+  /** Fail unless {@code size} and {@code crc} are the ones the central directory gives. */
+  private void check(Entry entry, long size, long crc) throws ZipException {
+    if (size != entry.size || crc != entry.crc) {
+      throw new ZipException("Corrupt entry " + entry.name + " in " + zip + ": bad size or CRC");
+    }
+  }
+
+  private long dataOffset(Entry entry) throws ZipException {
+    int header = (int) entry.localHeaderOffset;
+    if (mapped.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Bad local header for " + entry.name + " in " + zip);
+    }
+    int nameLength = Short.toUnsignedInt(mapped.getShort(header + 26));
+    int extraLength = Short.toUnsignedInt(mapped.getShort(header + 28));
+    return entry.localHeaderOffset + 30 + nameLength + extraLength;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (zipFile != null) {
+        zipFile.close();
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Read the central directory of a mapped archive, returns null if it needs zip64 support, which
+   * is left to {@link ZipFile}.
+   */
+  private static List<Entry> readCentralDirectory(ByteBuffer zip) throws ZipException {
+    int end = findEndOfCentralDirectory(zip);
+    int entryCount = Short.toUnsignedInt(zip.getShort(end + 10));
+    long directoryOffset = Integer.toUnsignedLong(zip.getInt(end + 16));
+    if (entryCount == 0xFFFF || directoryOffset == ZIP64_MAGIC) {
+      return null;
+    }
+    List<Entry> entries = new ArrayList<>(entryCount);
+    int position = (int) directoryOffset;
+    for (int i = 0; i < entryCount; i++) {
+      if (zip.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+        throw new ZipException("Bad central directory header at " + position);
+      }
+      int flags = Short.toUnsignedInt(zip.getShort(position + 8));
+      int method = Short.toUnsignedInt(zip.getShort(position + 10));
+      long crc = Integer.toUnsignedLong(zip.getInt(position + 16));
+      long compressedSize = Integer.toUnsignedLong(zip.getInt(position + 20));
+      long size = Integer.toUnsignedLong(zip.getInt(position + 24));
+      int nameLength = Short.toUnsignedInt(zip.getShort(position + 28));
+      int extraLength = Short.toUnsignedInt(zip.getShort(position + 30));
+      int commentLength = Short.toUnsignedInt(zip.getShort(position + 32));
+      long localHeaderOffset = Integer.toUnsignedLong(zip.getInt(position + 42));
+      if (compressedSize == ZIP64_MAGIC
+          || size == ZIP64_MAGIC
+          || localHeaderOffset == ZIP64_MAGIC) {
+        return null;
+      }
+      if ((flags & 1) != 0) {
+        throw new ZipException("Encrypted entries are not supported");
+      }
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameBuffer = zip.duplicate();
+      nameBuffer.position(position + 46);
+      nameBuffer.get(name);
+      entries.add(
+          new Entry(
+              new String(name, StandardCharsets.UTF_8),
+              method,
+              crc,
+              compressedSize,
+              size,
+              localHeaderOffset));
+      position += 46 + nameLength + extraLength + commentLength;
+    }
+    return entries;
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer zip) throws ZipException {
+    int last = zip.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+    // the record is followed by a comment of up to 64k
+    for (int position = last; position >= 0 && position >= last - 0xFFFF; position--) {
+      if (zip.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return position;
+      }
+    }
+    throw new ZipException("End of central directory not found, not a zip file");
+  }
+
+  private static List<Entry> readEntries(ZipFile zipFile) {
+    List<Entry> entries = new ArrayList<>();
+    Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+    while (zipEntries.hasMoreElements()) {
+      ZipEntry zipEntry = zipEntries.nextElement();
+      entries.add(
+          new Entry(
+              zipEntry.getName(),
+              zipEntry.getMethod(),
+              zipEntry.getCrc(),
+              zipEntry.getCompressedSize(),
+              zipEntry.getSize(),
+              -1));
+    }
+    return entries;
+  }
+
+  /** An entry of the archive, as described by the central directory. */
+  public static class Entry {
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    private Entry(
+        String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+  }
+}
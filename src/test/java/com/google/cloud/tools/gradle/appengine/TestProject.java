@@ -53,6 +53,17 @@ public class TestProject {
     return this;
   }
 
+  /** Add a standard appengine-gradle-plugin build file that explodes the war from its sources. */
+  public TestProject addStandardBuildFileExplodeFromSources() throws IOException {
+    addBuildFile("projects/AppEnginePluginTest/build-standard-explodeFromSources.gradle");
+    return this;
+  }
+
+  public TestProject addStandardBuildFileRunFromBuildOutputs() throws IOException {
+    addBuildFile("projects/AppEnginePluginTest/build-standard-runFromBuildOutputs.gradle");
+    return this;
+  }
+
   /** Add a standard appengine-gradle-plugin build file that specifies sdk home and version. */
   public TestProject addStandardBuildFileWithHome() throws IOException {
     addBuildFile("projects/AppEnginePluginTest/build-standard-home.gradle");
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.appyaml;
+
+import com.google.cloud.tools.gradle.appengine.util.io.FileLinker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import org.gradle.api.logging.Logging;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NativeAppYamlStagingTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private Path appEngineDirectory;
+  private Path artifact;
+  private Path extraFiles;
+  private Path staging;
+
+  @Before
+  public void setUp() throws IOException {
+    appEngineDirectory = tmpDir.newFolder("appengine").toPath();
+    write(appEngineDirectory.resolve("app.yaml"), "runtime: java11\n");
+    Path libs = tmpDir.newFolder("libs").toPath();
+    artifact = libs.resolve("app.jar");
+    writeArtifact("a/Main.class");
+    write(libs.resolve("lib/dep.jar"), "dependency");
+    extraFiles = tmpDir.newFolder("extra").toPath();
+    write(extraFiles.resolve("static/index.html"), "hello");
+    write(extraFiles.resolve("static/app.js"), "app");
+    staging = tmpDir.getRoot().toPath().resolve("staged-app");
+  }
+
+  @Test
+  public void testPlan_standard() throws IOException {
+    Map<String, Path> plan = newStaging().plan();
+
+    Assert.assertEquals(
+        ImmutableMap.of(
+            "static/app.js", extraFiles.resolve("static/app.js"),
+            "static/index.html", extraFiles.resolve("static/index.html"),
+            "app.yaml", appEngineDirectory.resolve("app.yaml"),
+            "app.jar", artifact,
+            "lib/dep.jar", artifact.resolveSibling("lib/dep.jar")),
+        plan);
+    Assert.assertEquals(
+        ImmutableList.of(
+            "static/app.js", "static/index.html", "app.yaml", "app.jar", "lib/dep.jar"),
+        new ArrayList<>(plan.keySet()));
+  }
+
+  @Test
+  public void testPlan_unknownLayout() throws IOException {
+    write(appEngineDirectory.resolve("app.yaml"), "runtime: java8\n");
+    Assert.assertNull(newStaging().plan());
+
+    write(appEngineDirectory.resolve("app.yaml"), "runtime: custom\nenv: flex\n");
+    Assert.assertNull(newStaging().plan());
+
+    Path docker = tmpDir.newFolder("docker").toPath();
+    write(docker.resolve("Dockerfile"), "FROM openjdk:11");
+    Map<String, Path> plan = newStaging().dockerDirectory(docker).plan();
+    Assert.assertEquals(docker.resolve("Dockerfile"), plan.get("Dockerfile"));
+    Assert.assertFalse(plan.containsKey("lib/dep.jar"));
+  }
+
+  @Test
+  public void testStage_incremental() throws IOException {
+    NativeAppYamlStaging nativeStaging = newStaging();
+    FileLinker linker = new FileLinker(Logging.getLogger(NativeAppYamlStagingTest.class), true);
+    NativeAppYamlStaging.Stats stats = nativeStaging.stage(nativeStaging.plan(), linker);
+    Assert.assertEquals(5, stats.staged);
+    Assert.assertEquals("hello", read(staging.resolve("static/index.html")));
+
+    // a stray file, and changes to the sources
+    write(staging.resolve("stale.txt"), "stale");
+    Files.delete(extraFiles.resolve("static/app.js"));
+    // a rebuilt jar is a new file
+    Files.delete(artifact);
+    writeArtifact("a/Main.class", "a/Other.class");
+    nativeStaging = newStaging();
+    stats = nativeStaging.stage(nativeStaging.plan(), linker);
+
+    Assert.assertEquals(1, stats.staged);
+    Assert.assertEquals(3, stats.unchanged);
+    Assert.assertEquals(2, stats.deleted);
+    Assert.assertEquals(Files.size(artifact), Files.size(staging.resolve("app.jar")));
+    Assert.assertFalse(Files.exists(staging.resolve("stale.txt")));
+    Assert.assertFalse(Files.exists(staging.resolve("static/app.js")));
+  }
+
+  @Test
+  public void testStage_appYamlCopied() throws IOException {
+    NativeAppYamlStaging nativeStaging = newStaging();
+    FileLinker linker = new FileLinker(Logging.getLogger(NativeAppYamlStagingTest.class), true);
+    nativeStaging.stage(nativeStaging.plan(), linker);
+    Path stagedAppYaml = staging.resolve("app.yaml");
+    Assert.assertEquals(1, linker.getCopies());
+    Assert.assertFalse(Files.isSameFile(stagedAppYaml, appEngineDirectory.resolve("app.yaml")));
+
+    // a staged app.yaml linked by an earlier version is replaced by a copy
+    Files.delete(stagedAppYaml);
+    Files.createLink(stagedAppYaml, appEngineDirectory.resolve("app.yaml"));
+    NativeAppYamlStaging.Stats stats = nativeStaging.stage(nativeStaging.plan(), linker);
+    Assert.assertEquals(1, stats.staged);
+    Assert.assertFalse(Files.isSameFile(stagedAppYaml, appEngineDirectory.resolve("app.yaml")));
+
+    // editing the staged file leaves the source alone
+    write(stagedAppYaml, "runtime: java17\n");
+    Assert.assertEquals("runtime: java11\n", read(appEngineDirectory.resolve("app.yaml")));
+  }
+
+  @Test
+  public void testStage_copies() throws IOException {
+    NativeAppYamlStaging nativeStaging = newStaging();
+    FileLinker linker = new FileLinker(Logging.getLogger(NativeAppYamlStagingTest.class), false);
+    nativeStaging.stage(nativeStaging.plan(), linker);
+    Assert.assertEquals(5, linker.getCopies());
+    Path stagedIndex = staging.resolve("static/index.html");
+    Assert.assertFalse(Files.isSameFile(stagedIndex, extraFiles.resolve("static/index.html")));
+
+    // copies keep the time of their source, they are recognized as up to date
+    NativeAppYamlStaging.Stats stats = nativeStaging.stage(nativeStaging.plan(), linker);
+    Assert.assertEquals(0, stats.staged);
+    Assert.assertEquals(5, linker.getCopies());
+  }
+
+  private void writeArtifact(String... entries) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib/dep.jar lib/missing.jar");
+    try (OutputStream out = Files.newOutputStream(artifact);
+        JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+      for (String entry : entries) {
+        jarOut.putNextEntry(new JarEntry(entry));
+        jarOut.closeEntry();
+      }
+    }
+  }
+
+  private NativeAppYamlStaging newStaging() throws IOException {
+    // what the extension lists from the extra files directory
+    Map<String, Path> files = new LinkedHashMap<>();
+    try (Stream<Path> walk = Files.walk(extraFiles)) {
+      walk.filter(Files::isRegularFile)
+          .sorted()
+          .forEach(file -> files.put(extraFiles.relativize(file).toString(), file));
+    }
+    return new NativeAppYamlStaging(appEngineDirectory, artifact, staging).extraFiles(files);
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
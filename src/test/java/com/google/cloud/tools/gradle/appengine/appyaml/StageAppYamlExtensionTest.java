@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.gradle.api.Project;
@@ -117,6 +118,30 @@ public class StageAppYamlExtensionTest {
     Assert.assertEquals(0, generatedConfig.getExtraFilesDirectory().size());
   }
 
+  @Test
+  public void testGetExtraFilesDirectoriesAsInputFiles_patterns() throws IOException {
+    File extra = extraFilesDirectories.get(0);
+    for (String name : Arrays.asList("index.html", "server.log", "index.html.swp")) {
+      Files.write(extra.toPath().resolve(name), "content".getBytes(Charsets.UTF_8));
+    }
+    StageAppYamlExtension extension = new StageAppYamlExtension(testContextProject);
+    extension.setStagingDirectory(stagingDirectory);
+    extension.setAppEngineDirectory(appEngineDirectory);
+    extension.setArtifact(artifact);
+    extension.setExtraFilesDirectories(Collections.singletonList(extra));
+    extension.setExtraFilesExcludes(Collections.singletonList("**/*.swp"));
+    extension.setExtraFilesIgnored(Collections.singletonList("**/*.log"));
+
+    Assert.assertEquals(
+        Collections.singleton(new File(extra, "index.html")),
+        extension.getExtraFilesDirectoriesAsInputFiles().getFiles());
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(new File(extra, "index.html"), new File(extra, "server.log"))),
+        extension.getExtraFiles().get(0).getFiles());
+    // the task stages the selected files itself
+    Assert.assertNull(extension.toAppYamlProjectStageConfiguration().getExtraFilesDirectory());
+  }
+
   @Test
   public void testGetExtraFilesDirectoriesAsInputFiles_indirectFunctional() throws IOException {
     TestProject testProject =
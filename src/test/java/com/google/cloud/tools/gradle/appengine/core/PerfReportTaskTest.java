@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.cloud.tools.gradle.appengine.core.BuildMetrics.TaskMetrics;
+import com.google.cloud.tools.gradle.appengine.core.PerfReportTask.Regression;
+import com.google.cloud.tools.gradle.appengine.core.PerfReportTask.Report;
+import com.google.cloud.tools.gradle.appengine.core.PerfReportTask.Run;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PerfReportTaskTest {
+
+  @Test
+  public void testFindRegressions_slowerPhase() {
+    List<Run> history =
+        ImmutableList.of(run(10000, 2000), run(11000, 2500), run(9000, 1500), run(30000, 1800));
+    List<Regression> regressions = PerfReportTask.findRegressions(run(10500, 4000), history, 0.25);
+
+    Assert.assertEquals(1, regressions.size());
+    Assert.assertEquals(
+        ":appengineStage phase stage took 4000ms, median is 1900ms",
+        regressions.get(0).toString());
+  }
+
+  @Test
+  public void testFindRegressions_belowThreshold() {
+    List<Run> history = ImmutableList.of(run(10000, 2000), run(10000, 2000));
+
+    Assert.assertTrue(PerfReportTask.findRegressions(run(12000, 2400), history, 0.25).isEmpty());
+  }
+
+  @Test
+  public void testFindRegressions_ignoresSmallDifferences() {
+    List<Run> history = ImmutableList.of(run(100, 10), run(100, 10));
+
+    Assert.assertTrue(PerfReportTask.findRegressions(run(400, 300), history, 0.25).isEmpty());
+  }
+
+  @Test
+  public void testRenderHtml_previousRuns() {
+    String html = PerfReportTask.renderHtml(new Report(run(10000, 2000), ImmutableList.of(), 0));
+
+    Assert.assertTrue(html, html.contains("compared with 0 previous runs"));
+  }
+
+  @Test
+  public void testFindRegressions_noHistory() {
+    Assert.assertTrue(
+        PerfReportTask.findRegressions(run(10000, 2000), ImmutableList.of(), 0.25).isEmpty());
+  }
+
+  private static Run run(long durationMillis, long stageMillis) {
+    TaskMetrics metrics = new BuildMetrics().forTask(":appengineStage");
+    metrics.recordDuration(durationMillis, false);
+    metrics.recordPhase("stage", stageMillis);
+    return new Run("2022-01-01T00:00:00Z", ImmutableList.of(metrics));
+  }
+}
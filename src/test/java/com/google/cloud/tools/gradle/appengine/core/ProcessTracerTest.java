@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcessTracerTest {
+
+  @Test
+  public void testRedact_flagWithValue() {
+    Assert.assertEquals(
+        ImmutableList.of(
+            "gcloud", "app", "deploy", "--credential-file-override=<redacted>", "--quiet"),
+        ProcessTracer.redact(
+            ImmutableList.of(
+                "gcloud",
+                "app",
+                "deploy",
+                "--credential-file-override=/home/me/key.json",
+                "--quiet")));
+  }
+
+  @Test
+  public void testRedact_flagFollowedByValue() {
+    Assert.assertEquals(
+        ImmutableList.of("appcfg", "--oauth2_access_token", "<redacted>", "stage", "app"),
+        ProcessTracer.redact(
+            ImmutableList.of("appcfg", "--oauth2_access_token", "ya29.secret", "stage", "app")));
+  }
+
+  @Test
+  public void testRedact_systemPropertyInFlagValue() {
+    Assert.assertEquals(
+        ImmutableList.of("java", "--jvm_flag=-Dapi.password=<redacted>", "--jvm_flag=-Xmx1g"),
+        ProcessTracer.redact(
+            ImmutableList.of("java", "--jvm_flag=-Dapi.password=hunter2", "--jvm_flag=-Xmx1g")));
+  }
+
+  @Test
+  public void testRedact_environmentVariableInFlagValue() {
+    Assert.assertEquals(
+        ImmutableList.of("dev_appserver", "--env_var=TOKEN=<redacted>", "--env_var=MODE=dev"),
+        ProcessTracer.redact(
+            ImmutableList.of("dev_appserver", "--env_var=TOKEN=abc123", "--env_var=MODE=dev")));
+  }
+
+  @Test
+  public void testRedact_pairsInArguments() {
+    Assert.assertEquals(
+        ImmutableList.of(
+            "java", "-Ddb.secret=<redacted>", "--env_var", "API_KEY=<redacted>", "-jar", "a.jar"),
+        ProcessTracer.redact(
+            ImmutableList.of(
+                "java", "-Ddb.secret=s3cr3t", "--env_var", "API_KEY=k", "-jar", "a.jar")));
+  }
+
+  @Test
+  public void testRedact_nothingToRedact() {
+    ImmutableList<String> commandLine =
+        ImmutableList.of("gcloud", "app", "deploy", "--version=v1", "app.yaml");
+    Assert.assertEquals(commandLine, ProcessTracer.redact(commandLine));
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.gradle.api.GradleException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReadinessProbeTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private HttpServer server;
+
+  @Before
+  public void setup() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    // unavailable for the first two requests
+    server.createContext(
+        "/ready",
+        exchange -> {
+          exchange.sendResponseHeaders(requests.incrementAndGet() > 2 ? 200 : 503, -1);
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @After
+  public void cleanup() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testAwait_readyAfterBackoff() throws Exception {
+    ReadinessProbe probe = new ReadinessProbe(url("/ready"), 200, 1, 10000);
+
+    Assert.assertTrue(probe.await(new FakeProcess(true)));
+    Assert.assertEquals(3, probe.getAttempts());
+  }
+
+  @Test
+  public void testAwait_timeout() throws Exception {
+    ReadinessProbe probe = new ReadinessProbe(url("/ready"), 204, 1, 200);
+
+    Assert.assertFalse(probe.await(new FakeProcess(true)));
+    Assert.assertTrue(probe.getAttempts() > 2);
+  }
+
+  @Test
+  public void testAwait_notListening() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+      port = socket.getLocalPort();
+    }
+    URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, "/");
+
+    Assert.assertFalse(new ReadinessProbe(url, 200, 1, 100).await(new FakeProcess(true)));
+  }
+
+  @Test
+  public void testAwait_processExited() throws Exception {
+    ReadinessProbe probe = new ReadinessProbe(url("/ready"), 200, 1, 10000);
+    try {
+      probe.await(new FakeProcess(false));
+      Assert.fail();
+    } catch (GradleException ex) {
+      Assert.assertEquals(
+          "Server exited with code 1 before serving " + url("/ready"), ex.getMessage());
+    }
+    Assert.assertEquals(0, probe.getAttempts());
+  }
+
+  @Test
+  public void testDumpThreads_unknownProcess() throws IOException {
+    File dump = new File(tmpDir.getRoot(), "threads.txt");
+    ReadinessProbe.dumpThreads(new FakeProcess(true), dump);
+
+    // a fake process has no handle, the dump says why it is empty
+    Assert.assertEquals(
+        "No java process found, thread dumps need java 9 or later\n",
+        new String(Files.readAllBytes(dump.toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testRun() throws IOException {
+    String output = ReadinessProbe.run(java("-version"), 60000);
+
+    Assert.assertTrue(output, output.contains("version"));
+  }
+
+  @Test
+  public void testRun_hungCommand() throws IOException {
+    long start = System.currentTimeMillis();
+    String output = ReadinessProbe.run(java(HangMain.class.getName()), 200);
+
+    Assert.assertTrue(output, output.endsWith(" did not exit within 200 ms\n"));
+    Assert.assertTrue(System.currentTimeMillis() - start < 30000);
+  }
+
+  private static ProcessBuilder java(String... args) {
+    List<String> command = new ArrayList<>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.addAll(Arrays.asList(args));
+    return new ProcessBuilder(command);
+  }
+
+  private URL url(String path) throws IOException {
+    InetSocketAddress address = server.getAddress();
+    return new URL("http", address.getHostString(), address.getPort(), path);
+  }
+
+  private static class FakeProcess extends Process {
+    private final boolean alive;
+
+    FakeProcess(boolean alive) {
+      this.alive = alive;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() {
+      return exitValue();
+    }
+
+    @Override
+    public int exitValue() {
+      if (alive) {
+        throw new IllegalThreadStateException();
+      }
+      return 1;
+    }
+
+    @Override
+    public void destroy() {}
+  }
+
+  /** Never exits on its own, like a jcmd attached to a stuck process. */
+  public static class HangMain {
+    /** Entrypoint. */
+    public static void main(String[] args) throws InterruptedException {
+      Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+    }
+  }
+}
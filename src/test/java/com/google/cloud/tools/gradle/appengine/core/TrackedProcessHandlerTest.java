@@ -0,0 +1,438 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.core;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.gradle.api.services.BuildServiceParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TrackedProcessHandlerTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private ProcessRegistry registry;
+
+  @Before
+  public void setup() {
+    registry = new TestProcessRegistry();
+  }
+
+  @After
+  public void cleanup() {
+    registry.close();
+  }
+
+  @Test
+  public void testHandleProcess_releasedWhenDone() throws ProcessHandlerException {
+    FakeProcess process = new FakeProcess();
+    AtomicBoolean resourceClosed = new AtomicBoolean();
+    new TrackedProcessHandler(registry, "test", TrackedProcessHandlerTest::waitForExit)
+        .addResource(() -> resourceClosed.set(true))
+        .handleProcess(process.exit(0));
+
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+    Assert.assertTrue(resourceClosed.get());
+    Assert.assertFalse(process.destroyed);
+  }
+
+  @Test
+  public void testHandleProcess_killedOnTimeout() {
+    FakeProcess process = new FakeProcess();
+    try {
+      new TrackedProcessHandler(registry, "test", TrackedProcessHandlerTest::waitForExit)
+          .setTimeout(1)
+          .handleProcess(process);
+      Assert.fail();
+    } catch (ProcessHandlerException ex) {
+      Assert.assertEquals("test did not complete within 1 seconds", ex.getMessage());
+    }
+
+    Assert.assertTrue(process.destroyed);
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testHandleProcess_detachedKeepsRunning()
+      throws ProcessHandlerException, InterruptedException {
+    FakeProcess process = new FakeProcess();
+    CountDownLatch resourceClosed = new CountDownLatch(1);
+    new TrackedProcessHandler(registry, "test", ignored -> {})
+        .setDetached(true)
+        .addResource(resourceClosed::countDown)
+        .handleProcess(process);
+
+    Assert.assertEquals(1, registry.getLiveProcessCount());
+    Assert.assertEquals(1, registry.getLiveProcessDescriptions().size());
+
+    // detached processes survive the end of the build
+    registry.close();
+    Assert.assertFalse(process.destroyed);
+
+    process.exit(0);
+    Assert.assertTrue(resourceClosed.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testHandleProcess_closeKillsProcess() throws InterruptedException {
+    FakeProcess process = new FakeProcess();
+    CountDownLatch started = new CountDownLatch(1);
+    Thread closer =
+        new Thread(
+            () -> {
+              try {
+                started.await();
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              registry.close();
+            });
+    closer.start();
+    try {
+      new TrackedProcessHandler(
+              registry,
+              "test",
+              toHandle -> {
+                started.countDown();
+                waitForExit(toHandle);
+              })
+          .handleProcess(process);
+      Assert.fail();
+    } catch (ProcessHandlerException ex) {
+      Assert.assertEquals("test was cancelled", ex.getMessage());
+    }
+    closer.join();
+
+    Assert.assertTrue(process.destroyed);
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testHandleProcess_closeStopsGracefully() throws InterruptedException {
+    FakeProcess process = new FakeProcess();
+    closeWhileHandling(process, 5_000);
+
+    Assert.assertTrue(process.destroyed);
+    Assert.assertFalse(process.killed);
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testHandleProcess_closeKillsAfterGracePeriod() throws InterruptedException {
+    FakeProcess process = new FakeProcess().ignoreStop();
+    closeWhileHandling(process, 200);
+
+    Assert.assertTrue(process.killed);
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testHandleProcess_closeRunsShutdownHooks()
+      throws IOException, InterruptedException {
+    // like a flight recording dumped on exit, a shutdown hook only runs if the jvm isn't killed
+    File hookFile = new File(tmpDir.getRoot(), "hook.txt");
+    File startedFile = new File(tmpDir.getRoot(), "started.txt");
+    Process process =
+        new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                ShutdownHookMain.class.getName(),
+                startedFile.getPath(),
+                hookFile.getPath())
+            .start();
+    CountDownLatch started = new CountDownLatch(1);
+    Thread closer =
+        new Thread(
+            () -> {
+              try {
+                started.await();
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (!startedFile.exists() && System.currentTimeMillis() < deadline) {
+                  Thread.sleep(50);
+                }
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              registry.close();
+            });
+    closer.start();
+    try {
+      new TrackedProcessHandler(
+              registry,
+              "test",
+              toHandle -> {
+                started.countDown();
+                waitForExit(toHandle);
+              })
+          .setStopGracePeriod(10_000)
+          .handleProcess(process);
+      Assert.fail();
+    } catch (ProcessHandlerException ex) {
+      Assert.assertEquals("test was cancelled", ex.getMessage());
+    }
+    closer.join();
+
+    Assert.assertTrue(startedFile.exists());
+    Assert.assertEquals(
+        "stopped", new String(Files.readAllBytes(hookFile.toPath()), StandardCharsets.UTF_8));
+  }
+
+  private void closeWhileHandling(FakeProcess process, long stopGraceMillis)
+      throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    Thread closer =
+        new Thread(
+            () -> {
+              try {
+                started.await();
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              registry.close();
+            });
+    closer.start();
+    try {
+      new TrackedProcessHandler(
+              registry,
+              "test",
+              toHandle -> {
+                started.countDown();
+                waitForExit(toHandle);
+              })
+          .setStopGracePeriod(stopGraceMillis)
+          .handleProcess(process);
+      Assert.fail();
+    } catch (ProcessHandlerException ex) {
+      Assert.assertEquals("test was cancelled", ex.getMessage());
+    }
+    closer.join();
+  }
+
+  @Test
+  public void testHandleProcess_delegateFailure() {
+    FakeProcess process = new FakeProcess();
+    try {
+      new TrackedProcessHandler(
+              registry,
+              "test",
+              ignored -> {
+                throw new ProcessHandlerException("failed");
+              })
+          .handleProcess(process);
+      Assert.fail();
+    } catch (ProcessHandlerException ex) {
+      Assert.assertEquals("failed", ex.getMessage());
+    }
+
+    Assert.assertTrue(process.destroyed);
+    Assert.assertEquals(0, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testHandleProcess_traced() throws ProcessHandlerException, IOException {
+    FakeProcess process = new FakeProcess("hello\n");
+    ProcessTracer tracer = new ProcessTracer("gradle appengineDeploy");
+    File traceFile = new File(tmpDir.getRoot(), "trace/trace.jsonl");
+    new TrackedProcessHandler(
+            registry,
+            ":appengineDeploy",
+            toHandle -> {
+              try {
+                ByteStreams.exhaust(toHandle.getInputStream());
+              } catch (IOException ex) {
+                throw new ProcessHandlerException(ex);
+              }
+              waitForExit(toHandle);
+            })
+        .setTrace(tracer, traceFile)
+        .handleProcess(process.exit(3));
+    tracer.export(true);
+    tracer.export(true);
+
+    List<String> lines = Files.readAllLines(traceFile.toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals(2, lines.size());
+    JsonArray spans =
+        new JsonParser()
+            .parse(lines.get(0))
+            .getAsJsonObject()
+            .getAsJsonArray("resourceSpans")
+            .get(0)
+            .getAsJsonObject()
+            .getAsJsonArray("scopeSpans")
+            .get(0)
+            .getAsJsonObject()
+            .getAsJsonArray("spans");
+    Assert.assertEquals(2, spans.size());
+    JsonObject span = spans.get(0).getAsJsonObject();
+    JsonObject root = spans.get(1).getAsJsonObject();
+    Assert.assertEquals(":appengineDeploy", span.get("name").getAsString());
+    Assert.assertEquals("gradle appengineDeploy", root.get("name").getAsString());
+    Assert.assertEquals(root.get("traceId"), span.get("traceId"));
+    Assert.assertEquals(root.get("spanId"), span.get("parentSpanId"));
+    Assert.assertEquals(2, span.getAsJsonObject("status").get("code").getAsInt());
+    String attributes = span.getAsJsonArray("attributes").toString();
+    Assert.assertTrue(
+        attributes.contains("{\"key\":\"process.exit_code\",\"value\":{\"intValue\":\"3\"}}"));
+    Assert.assertTrue(
+        attributes.contains(
+            "{\"key\":\"appengine.process.stdout_bytes\",\"value\":{\"intValue\":\"6\"}}"));
+  }
+
+  private static void waitForExit(Process process) throws ProcessHandlerException {
+    try {
+      process.waitFor();
+    } catch (InterruptedException ex) {
+      throw new ProcessHandlerException(ex);
+    }
+  }
+
+  private static class TestProcessRegistry extends ProcessRegistry {
+    @Override
+    public BuildServiceParameters.None getParameters() {
+      return null;
+    }
+  }
+
+  /** Writes its first argument once started, and its second from a shutdown hook. */
+  public static class ShutdownHookMain {
+    /** Entrypoint. */
+    public static void main(String[] args) throws IOException, InterruptedException {
+      Runtime.getRuntime()
+          .addShutdownHook(
+              new Thread(
+                  () -> {
+                    try {
+                      Files.write(
+                          new File(args[1]).toPath(), "stopped".getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException ex) {
+                      throw new UncheckedIOException(ex);
+                    }
+                  }));
+      Files.write(new File(args[0]).toPath(), new byte[0]);
+      Thread.sleep(60_000);
+    }
+  }
+
+  /** A process that runs until it is destroyed or told to exit. */
+  private static class FakeProcess extends Process {
+    private final CountDownLatch exited = new CountDownLatch(1);
+    private final InputStream output;
+    private volatile int exitCode;
+    private volatile boolean destroyed;
+    private volatile boolean killed;
+    private boolean ignoresStop;
+
+    FakeProcess() {
+      this("");
+    }
+
+    FakeProcess(String output) {
+      this.output = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Keep running when asked to stop, until it is killed. */
+    FakeProcess ignoreStop() {
+      ignoresStop = true;
+      return this;
+    }
+
+    FakeProcess exit(int exitCode) {
+      this.exitCode = exitCode;
+      exited.countDown();
+      return this;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return output;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      exited.await();
+      return exitCode;
+    }
+
+    @Override
+    public int exitValue() {
+      if (exited.getCount() > 0) {
+        throw new IllegalThreadStateException();
+      }
+      return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+      return exited.await(timeout, unit);
+    }
+
+    @Override
+    public void destroy() {
+      destroyed = true;
+      if (!ignoresStop) {
+        exit(143);
+      }
+    }
+
+    @Override
+    public Process destroyForcibly() {
+      destroyed = true;
+      killed = true;
+      exit(137);
+      return this;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return exited.getCount() > 0;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.sourcecontext;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitRepositoryTest {
+
+  private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+  private static final String OTHER_COMMIT = "89abcdef0123456789abcdef0123456789abcdef";
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private File root;
+  private File gitDir;
+  private File src;
+
+  @Before
+  public void setUp() throws IOException {
+    root = tmpDir.newFolder("repo");
+    gitDir = new File(root, ".git");
+    src = new File(root, "app/src");
+    src.mkdirs();
+    write(new File(gitDir, "HEAD"), "ref: refs/heads/main\n");
+  }
+
+  @Test
+  public void testFind_notInRepository() throws IOException {
+    Assert.assertNull(GitRepository.find(tmpDir.newFolder("other")));
+  }
+
+  @Test
+  public void testResolveHead_looseRef() throws IOException {
+    write(new File(gitDir, "refs/heads/main"), COMMIT + "\n");
+
+    Assert.assertEquals(COMMIT, GitRepository.find(src).resolveHead());
+  }
+
+  @Test
+  public void testResolveHead_packedRef() throws IOException {
+    write(
+        new File(gitDir, "packed-refs"),
+        "# pack-refs with: peeled fully-peeled sorted\n"
+            + OTHER_COMMIT
+            + " refs/heads/feature\n"
+            + COMMIT
+            + " refs/heads/main\n"
+            + "^"
+            + OTHER_COMMIT
+            + "\n");
+
+    Assert.assertEquals(COMMIT, GitRepository.find(src).resolveHead());
+  }
+
+  @Test
+  public void testResolveHead_detached() throws IOException {
+    write(new File(gitDir, "HEAD"), COMMIT + "\n");
+
+    Assert.assertEquals(COMMIT, GitRepository.find(src).resolveHead());
+  }
+
+  @Test
+  public void testResolveHead_noCommit() throws IOException {
+    Assert.assertNull(GitRepository.find(src).resolveHead());
+  }
+
+  @Test
+  public void testResolveHead_worktree() throws IOException {
+    write(new File(gitDir, "refs/heads/main"), COMMIT + "\n");
+    write(new File(gitDir, "refs/heads/feature"), OTHER_COMMIT + "\n");
+    File worktreeGitDir = new File(gitDir, "worktrees/feature");
+    write(new File(worktreeGitDir, "HEAD"), "ref: refs/heads/feature\n");
+    write(new File(worktreeGitDir, "commondir"), "../..\n");
+    File worktree = tmpDir.newFolder("feature");
+    write(new File(worktree, ".git"), "gitdir: " + worktreeGitDir.getAbsolutePath() + "\n");
+
+    Assert.assertEquals(OTHER_COMMIT, GitRepository.find(worktree).resolveHead());
+  }
+
+  @Test
+  public void testGetRemoteUrls() throws IOException {
+    write(
+        new File(gitDir, "config"),
+        "[core]\n"
+            + "\tbare = false\n"
+            + "[remote \"upstream\"]\n"
+            + "\turl = https://github.com/example/upstream.git\n"
+            + "\tfetch = +refs/heads/*:refs/remotes/upstream/*\n"
+            + "[remote \"origin\"]\n"
+            + "\turl = \"git@github.com:example/app.git\"\n"
+            + "[branch \"main\"]\n"
+            + "\tremote = origin\n");
+
+    Assert.assertEquals(
+        ImmutableMap.of(
+            "origin", "git@github.com:example/app.git",
+            "upstream", "https://github.com/example/upstream.git"),
+        GitRepository.find(src).getRemoteUrls());
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
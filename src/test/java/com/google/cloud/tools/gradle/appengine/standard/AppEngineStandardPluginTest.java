@@ -21,6 +21,7 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import com.google.cloud.tools.gradle.appengine.BuildResultFilter;
@@ -33,6 +34,8 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.testkit.runner.BuildResult;
 import org.gradle.testkit.runner.UnexpectedBuildFailure;
 import org.junit.Rule;
@@ -235,6 +238,86 @@ public class AppEngineStandardPluginTest {
     assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
   }
 
+  @Test
+  public void testRun_taskTreeExplodeFromSources() throws IOException {
+    BuildResult buildResult =
+        new TestProject(testProjectDir.getRoot())
+            .addStandardBuildFileExplodeFromSources()
+            .addAppEngineWebXml()
+            .applyGradleRunner("appengineRun", "--dry-run");
+
+    final List<String> expected =
+        ImmutableList.of(
+            ":compileJava",
+            ":processResources",
+            ":classes",
+            ":explodeWar",
+            ":downloadCloudSdk",
+            ":appengineRun");
+
+    assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
+  }
+
+  @Test
+  public void testRun_taskTreeRunFromBuildOutputs() throws IOException {
+    BuildResult buildResult =
+        new TestProject(testProjectDir.getRoot())
+            .addStandardBuildFileRunFromBuildOutputs()
+            .addAppEngineWebXml()
+            .applyGradleRunner("appengineRun", "--dry-run");
+
+    final List<String> expected =
+        ImmutableList.of(
+            ":compileJava",
+            ":processResources",
+            ":classes",
+            ":linkApp",
+            ":downloadCloudSdk",
+            ":appengineRun");
+
+    assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
+  }
+
+  @Test
+  public void testColdStartBenchmark_taskTreeExplodeFromSources() throws IOException {
+    BuildResult buildResult =
+        new TestProject(testProjectDir.getRoot())
+            .addStandardBuildFileExplodeFromSources()
+            .addAppEngineWebXml()
+            .applyGradleRunner("appengineColdStartBenchmark", "--dry-run");
+
+    final List<String> expected =
+        ImmutableList.of(
+            ":compileJava",
+            ":processResources",
+            ":classes",
+            ":explodeWar",
+            ":downloadCloudSdk",
+            ":appengineColdStartBenchmark");
+
+    assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
+  }
+
+  @Test
+  public void testColdStartBenchmark_taskTreeRunFromBuildOutputs() throws IOException {
+    BuildResult buildResult =
+        new TestProject(testProjectDir.getRoot())
+            .addStandardBuildFileRunFromBuildOutputs()
+            .addAppEngineWebXml()
+            .applyGradleRunner("appengineColdStartBenchmark", "--dry-run");
+
+    final List<String> expected =
+        ImmutableList.of(
+            ":compileJava",
+            ":processResources",
+            ":classes",
+            ":linkApp",
+            ":downloadCloudSdk",
+            ":appengineColdStartBenchmark");
+
+    assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
+  }
+
   @Test
   public void testStart_taskTree() throws IOException {
     BuildResult buildResult = createTestProject().applyGradleRunner("appengineStart", "--dry-run");
@@ -321,6 +404,41 @@ public class AppEngineStandardPluginTest {
     assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
   }
 
+  @Test
+  public void testReload_taskTree() throws IOException {
+    BuildResult buildResult =
+        createTestProject().applyGradleRunner("appengineReload", "--dry-run");
+
+    final List<String> expected =
+        ImmutableList.of(
+            ":compileJava",
+            ":processResources",
+            ":classes",
+            ":downloadCloudSdk",
+            ":appengineReload");
+
+    assertEquals(expected, BuildResultFilter.extractTasks(buildResult));
+  }
+
+  @Test
+  public void testUsedByTest_fixture() throws IOException {
+    Project p =
+        new TestProject(testProjectDir.getRoot())
+            .addAppEngineWebXml()
+            .applyStandardProjectBuilder();
+
+    DevAppServerStartTask startTask =
+        (DevAppServerStartTask) p.getTasks().getByName(AppEngineStandardPlugin.START_TASK_NAME);
+    Task stopTask = p.getTasks().getByName(AppEngineStandardPlugin.STOP_TASK_NAME);
+    org.gradle.api.tasks.testing.Test test =
+        (org.gradle.api.tasks.testing.Test) p.getTasks().getByName(JavaPlugin.TEST_TASK_NAME);
+    startTask.usedByTest(test);
+
+    assertTrue(test.getDependsOn().contains(startTask));
+    assertTrue(test.getFinalizedBy().getDependencies(test).contains(stopTask));
+    assertTrue(stopTask.getMustRunAfter().getDependencies(stopTask).contains(test));
+  }
+
   @Test
   public void testDefaultConfiguration() throws IOException {
     Project p =
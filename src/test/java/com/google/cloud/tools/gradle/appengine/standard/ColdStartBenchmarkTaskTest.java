@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColdStartBenchmarkTaskTest {
+
+  @Test
+  public void testPercentile() {
+    List<Long> values = ImmutableList.of(400L, 100L, 300L, 200L, 500L);
+
+    Assert.assertEquals(100, ColdStartBenchmarkTask.percentile(values, 0));
+    Assert.assertEquals(300, ColdStartBenchmarkTask.percentile(values, 50));
+    Assert.assertEquals(500, ColdStartBenchmarkTask.percentile(values, 90));
+    Assert.assertEquals(500, ColdStartBenchmarkTask.percentile(values, 100));
+  }
+
+  @Test
+  public void testCompare_noHistory() {
+    Assert.assertNull(
+        ColdStartBenchmarkTask.compare(run(1000L, 1100L), Collections.emptyList(), 0.25));
+  }
+
+  @Test
+  public void testCompare_unchanged() {
+    String comparison =
+        ColdStartBenchmarkTask.compare(
+            run(1000L, 1100L, 1200L),
+            ImmutableList.of(run(1000L, 1050L, 1100L), run(1100L, 1200L, 1300L)),
+            0.25);
+
+    Assert.assertEquals(
+        "Median cold start 1100 ms, +50 ms against the median of 2 previous runs (1050 ms)",
+        comparison);
+  }
+
+  @Test
+  public void testCompare_regression() {
+    String comparison =
+        ColdStartBenchmarkTask.compare(
+            run(2000L, 2100L, 2200L), ImmutableList.of(run(1000L, 1100L, 1200L)), 0.25);
+
+    Assert.assertEquals(
+        "Cold start regression: Median cold start 2100 ms, +1000 ms against the median of 1"
+            + " previous runs (1100 ms)",
+        comparison);
+  }
+
+  @Test
+  public void testSummary() {
+    Assert.assertEquals(
+        "3 cold starts: min 1000 ms, p50 1100 ms, p90 1300 ms, max 1300 ms, mean 1133 ms",
+        run(1300L, 1000L, 1100L).summary());
+  }
+
+  private static ColdStartBenchmarkTask.Run run(Long... startupMillis) {
+    return new ColdStartBenchmarkTask.Run(
+        "2026-10-19T10:00:00Z", ImmutableList.of("-Xmx512m"), ImmutableList.copyOf(startupMillis));
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompileJspsTaskTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testListJsps() throws IOException {
+    File app = tmpDir.newFolder("app");
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    write(new File(app, "admin/users.jspx"), "<jsp:root/>");
+    write(new File(app, "header.jspf"), "<%= 2 %>");
+    write(new File(app, "WEB-INF/tags/box.tag"), "<%@ tag %>");
+    write(new File(app, "WEB-INF/classes/META-INF/resources/lib.jsp"), "<%= 3 %>");
+
+    Assert.assertEquals(
+        ImmutableList.of("admin/users.jspx", "index.jsp"),
+        CompileJspsTask.listJsps(app.toPath()));
+  }
+
+  @Test
+  public void testBatches() {
+    ImmutableList<String> jsps = ImmutableList.of("a.jsp", "b.jsp", "c.jsp", "d.jsp", "e.jsp");
+
+    Assert.assertEquals(
+        ImmutableList.of(
+            ImmutableList.of("a.jsp", "c.jsp", "e.jsp"), ImmutableList.of("b.jsp", "d.jsp")),
+        CompileJspsTask.batches(jsps, 2));
+    Assert.assertEquals(
+        ImmutableList.of(ImmutableList.of("a.jsp"), ImmutableList.of("b.jsp")),
+        CompileJspsTask.batches(jsps.subList(0, 2), 4));
+  }
+
+  @Test
+  public void testRemoveServlet() throws IOException {
+    Path output = tmpDir.newFolder("compiled-jsps").toPath();
+    write(output.resolve("servlets/admin/users.jsp").toFile(), "org.apache.jsp.admin.users_jsp");
+    Path classes = output.resolve("classes/org/apache/jsp/admin");
+    write(classes.resolve("users_jsp.class").toFile(), "class");
+    write(classes.resolve("users_jsp$Helper.class").toFile(), "class");
+    write(classes.resolve("users_jsp_old.class").toFile(), "class");
+
+    CompileJspsTask.removeServlet(output, "admin/users.jsp");
+    // never compiled
+    CompileJspsTask.removeServlet(output, "index.jsp");
+
+    Assert.assertFalse(Files.exists(output.resolve("servlets/admin/users.jsp")));
+    Assert.assertFalse(Files.exists(classes.resolve("users_jsp.class")));
+    Assert.assertFalse(Files.exists(classes.resolve("users_jsp$Helper.class")));
+    Assert.assertTrue(Files.exists(classes.resolve("users_jsp_old.class")));
+  }
+
+  @Test
+  public void testTagLibrariesHash() throws IOException {
+    File app = tmpDir.newFolder("app");
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    write(new File(app, "WEB-INF/tags/box.tag"), "<%@ tag %>");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class");
+    String hash = CompileJspsTask.tagLibrariesHash(app.toPath());
+
+    write(new File(app, "index.jsp"), "<%= 2 %>");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class2");
+    Assert.assertEquals(hash, CompileJspsTask.tagLibrariesHash(app.toPath()));
+
+    write(new File(app, "WEB-INF/tags/box.tag"), "<%@ tag body-content=\"empty\" %>");
+    String tagChanged = CompileJspsTask.tagLibrariesHash(app.toPath());
+    Assert.assertNotEquals(hash, tagChanged);
+
+    File lib = new File(app, "WEB-INF/lib/tags.jar");
+    lib.getParentFile().mkdirs();
+    try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(lib))) {
+      jar.putNextEntry(new JarEntry("META-INF/tags.tld"));
+      jar.write("<taglib/>".getBytes(StandardCharsets.UTF_8));
+      jar.closeEntry();
+    }
+    Assert.assertNotEquals(tagChanged, CompileJspsTask.tagLibrariesHash(app.toPath()));
+  }
+
+  @Test
+  public void testClasspathHash() throws IOException {
+    File classes = tmpDir.newFolder("classes");
+    write(new File(classes, "a/Hello.class"), "class");
+    File jar = tmpDir.newFile("lib.jar");
+    write(jar, "jar");
+    String hash = CompileJspsTask.classpathHash(ImmutableList.of(classes, jar));
+    Assert.assertEquals(hash, CompileJspsTask.classpathHash(ImmutableList.of(classes, jar)));
+
+    write(new File(classes, "a/Hello.class"), "class2");
+    String classChanged = CompileJspsTask.classpathHash(ImmutableList.of(classes, jar));
+    Assert.assertNotEquals(hash, classChanged);
+
+    write(jar, "jar2");
+    Assert.assertNotEquals(
+        classChanged, CompileJspsTask.classpathHash(ImmutableList.of(classes, jar)));
+  }
+
+  @Test
+  public void testJspKey() throws IOException {
+    File app = tmpDir.newFolder("app");
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    write(new File(app, "admin/index.jsp"), "<%= 1 %>");
+    String key = CompileJspsTask.jspKey(app.toPath(), "index.jsp", "tags", null);
+
+    Assert.assertEquals(key, CompileJspsTask.jspKey(app.toPath(), "index.jsp", "tags", null));
+    Assert.assertNotEquals(
+        key, CompileJspsTask.jspKey(app.toPath(), "admin/index.jsp", "tags", null));
+    Assert.assertNotEquals(key, CompileJspsTask.jspKey(app.toPath(), "index.jsp", "tags2", null));
+    Assert.assertNotEquals(
+        key, CompileJspsTask.jspKey(app.toPath(), "index.jsp", "tags", "ISO-8859-1"));
+    write(new File(app, "index.jsp"), "<%= 2 %>");
+    Assert.assertNotEquals(key, CompileJspsTask.jspKey(app.toPath(), "index.jsp", "tags", null));
+  }
+
+  @Test
+  public void testCacheServlet() throws IOException {
+    Path output = tmpDir.newFolder("compiled-jsps").toPath();
+    write(output.resolve("servlets/admin/users.jsp").toFile(), "org.apache.jsp.admin.users_jsp");
+    Path classes = output.resolve("classes/org/apache/jsp/admin");
+    write(classes.resolve("users_jsp.class").toFile(), "class");
+    write(classes.resolve("users_jsp$Helper.class").toFile(), "inner");
+    write(classes.resolve("groups_jsp.class").toFile(), "other");
+    Path entry = tmpDir.getRoot().toPath().resolve("cache/key");
+
+    CompileJspsTask.cacheServlet(output, "admin/users.jsp", entry);
+    Path restored = tmpDir.newFolder("restored").toPath();
+    Assert.assertTrue(CompileJspsTask.restoreServlet(entry, restored, "admin/users.jsp"));
+    Assert.assertFalse(
+        CompileJspsTask.restoreServlet(entry.resolveSibling("other"), restored, "index.jsp"));
+
+    Assert.assertEquals(
+        "org.apache.jsp.admin.users_jsp",
+        read(restored.resolve("servlets/admin/users.jsp")));
+    Path restoredClasses = restored.resolve("classes/org/apache/jsp/admin");
+    Assert.assertEquals("class", read(restoredClasses.resolve("users_jsp.class")));
+    Assert.assertEquals("inner", read(restoredClasses.resolve("users_jsp$Helper.class")));
+    Assert.assertFalse(Files.exists(restoredClasses.resolve("groups_jsp.class")));
+    Assert.assertFalse(Files.exists(entry.resolveSibling("key.tmp")));
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
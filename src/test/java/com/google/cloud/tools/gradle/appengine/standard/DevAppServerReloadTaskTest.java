@@ -0,0 +1,108 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import org.gradle.work.ChangeType;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DevAppServerReloadTaskTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testSync_added() throws IOException {
+    Path source = tmpDir.newFile("Servlet.class").toPath();
+    Files.write(source, "class".getBytes(StandardCharsets.UTF_8));
+    Path target = tmpDir.getRoot().toPath().resolve("exploded/WEB-INF/classes/a/Servlet.class");
+
+    Assert.assertTrue(DevAppServerReloadTask.sync(ChangeType.ADDED, source, target));
+    Assert.assertEquals("class", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSync_alreadyUpToDate() throws IOException {
+    Path source = tmpDir.newFile("Servlet.class").toPath();
+    Files.write(source, "class".getBytes(StandardCharsets.UTF_8));
+    Path target = tmpDir.newFile("copy.class").toPath();
+    Files.write(target, "class".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(source, FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(target, FileTime.fromMillis(2000));
+
+    Assert.assertFalse(DevAppServerReloadTask.sync(ChangeType.ADDED, source, target));
+  }
+
+  @Test
+  public void testSync_modified() throws IOException {
+    Path source = tmpDir.newFile("Servlet.class").toPath();
+    Files.write(source, "recompiled".getBytes(StandardCharsets.UTF_8));
+    Path target = tmpDir.newFile("copy.class").toPath();
+    Files.write(target, "compiled!!".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(source, FileTime.fromMillis(2000));
+    Files.setLastModifiedTime(target, FileTime.fromMillis(1000));
+
+    Assert.assertTrue(DevAppServerReloadTask.sync(ChangeType.MODIFIED, source, target));
+    Assert.assertEquals(
+        "recompiled", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSync_removed() throws IOException {
+    Path source = tmpDir.getRoot().toPath().resolve("Gone.class");
+    Path target = tmpDir.newFile("copy.class").toPath();
+
+    Assert.assertTrue(DevAppServerReloadTask.sync(ChangeType.REMOVED, source, target));
+    Assert.assertFalse(Files.exists(target));
+    Assert.assertFalse(DevAppServerReloadTask.sync(ChangeType.REMOVED, source, target));
+  }
+
+  @Test
+  public void testLogsReload() throws IOException {
+    File log = tmpDir.newFile("dev_appserver.out");
+    Files.write(
+        log.toPath(),
+        "INFO: Dev App Server is now running\n".getBytes(StandardCharsets.UTF_8));
+    long offset = log.length();
+
+    Assert.assertFalse(DevAppServerReloadTask.logsReload(log, offset));
+    Assert.assertFalse(DevAppServerReloadTask.logsReload(null, 0));
+
+    Files.write(
+        log.toPath(),
+        "INFO: Reloading the webapp context.\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    Assert.assertTrue(DevAppServerReloadTask.logsReload(log, offset));
+    Assert.assertFalse(DevAppServerReloadTask.logsReload(log, log.length()));
+  }
+
+  @Test
+  public void testReloadHost() {
+    Assert.assertEquals("localhost", DevAppServerReloadTask.reloadHost(null));
+    Assert.assertEquals("localhost", DevAppServerReloadTask.reloadHost("0.0.0.0"));
+    Assert.assertEquals("127.0.0.2", DevAppServerReloadTask.reloadHost("127.0.0.2"));
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildServiceParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DevAppServerServiceTest {
+
+  private final Logger logger = Logging.getLogger(DevAppServerServiceTest.class);
+  private final DevAppServerService service = new TestDevAppServerService();
+
+  @After
+  public void cleanup() {
+    service.close();
+  }
+
+  @Test
+  public void testAwaitReady_notStarted() {
+    service.awaitReady(logger);
+  }
+
+  @Test
+  public void testAwaitReady_readyInBackground() throws InterruptedException {
+    CompletableFuture<Long> ready = service.starting(10);
+    CountDownLatch checked = new CountDownLatch(1);
+    service.checkReadiness(
+        () -> {
+          ready.complete(service.elapsedMillis());
+          checked.countDown();
+        });
+
+    service.awaitReady(logger);
+    checked.await();
+    Assert.assertTrue(ready.isDone());
+  }
+
+  @Test
+  public void testAwaitReady_failed() {
+    service.starting(10).completeExceptionally(new GradleException("exited with code 1"));
+    try {
+      service.awaitReady(logger);
+      Assert.fail();
+    } catch (GradleException ex) {
+      Assert.assertEquals("exited with code 1", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testAwaitReady_timeout() {
+    service.starting(0);
+    try {
+      service.awaitReady(logger);
+      Assert.fail();
+    } catch (GradleException ex) {
+      Assert.assertEquals("The Dev App Server did not start within 0 seconds", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testClose_interruptsReadinessCheck() throws InterruptedException {
+    CompletableFuture<Long> ready = service.starting(10);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    service.checkReadiness(
+        () -> {
+          try {
+            Thread.sleep(10000);
+          } catch (InterruptedException ex) {
+            interrupted.countDown();
+          }
+        });
+
+    service.close();
+    interrupted.await();
+    Assert.assertTrue(ready.isCancelled());
+  }
+
+  @Test
+  public void testClose_killsFixture() {
+    FakeProcess fixture = new FakeProcess();
+    service.stopWithBuild(fixture);
+
+    service.close();
+    Assert.assertFalse(fixture.isAlive());
+  }
+
+  @Test
+  public void testReused_readyAndStoppedWithBuild() {
+    FakeProcess fixture = new FakeProcess();
+    service.reused();
+    service.stopWithBuild(fixture);
+
+    service.awaitReady(logger);
+    service.close();
+    Assert.assertFalse(fixture.isAlive());
+  }
+
+  @Test
+  public void testClose_fixtureAlreadyStopped() {
+    FakeProcess fixture = new FakeProcess().exit();
+    service.stopWithBuild(fixture);
+
+    service.close();
+    Assert.assertFalse(fixture.destroyed);
+  }
+
+  private static class TestDevAppServerService extends DevAppServerService {
+    @Override
+    public BuildServiceParameters.None getParameters() {
+      return null;
+    }
+  }
+
+  private static class FakeProcess extends Process {
+    private volatile boolean alive = true;
+    private volatile boolean destroyed;
+
+    FakeProcess exit() {
+      alive = false;
+      return this;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+
+    @Override
+    public int exitValue() {
+      if (alive) {
+        throw new IllegalThreadStateException();
+      }
+      return 137;
+    }
+
+    @Override
+    public void destroy() {
+      alive = false;
+      destroyed = true;
+    }
+  }
+}
@@ -18,9 +18,16 @@
 package com.google.cloud.tools.gradle.appengine.standard;
 
 import com.google.cloud.tools.gradle.appengine.TestProject;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -63,4 +70,76 @@ public class ExplodeWarTaskTest {
     Assert.assertTrue(Files.isRegularFile(datastoreIndexesAutoXml));
     Assert.assertFalse(Files.isRegularFile(junkXml));
   }
+
+  @Test
+  public void testExplodeFromSources() throws IOException {
+    new TestProject(testProjectDir.getRoot())
+        .addStandardBuildFileExplodeFromSources()
+        .addAppEngineWebXml()
+        .applyGradleRunner("explodeWar");
+
+    Path build = testProjectDir.getRoot().toPath().resolve("build");
+    Path explodedApp = build.resolve("exploded-" + testProjectDir.getRoot().getName());
+    Assert.assertTrue(Files.isRegularFile(explodedApp.resolve("WEB-INF/appengine-web.xml")));
+    Assert.assertFalse(Files.exists(build.resolve("libs")));
+  }
+
+  @Test
+  public void testExplode_incremental() throws IOException {
+    File war = new File(testProjectDir.getRoot(), "app.war");
+    Path explodedApp = testProjectDir.getRoot().toPath().resolve("exploded");
+    Map<String, ExplodeWarTask.IndexEntry> index = new HashMap<>();
+
+    writeWar(
+        war,
+        ImmutableMap.of(
+            "index.html", "hello",
+            "WEB-INF/web.xml", "<web-app/>",
+            "WEB-INF/lib/a.jar", "a",
+            "WEB-INF/lib/b.jar", "b"));
+    ExplodeWarTask.Stats stats = ExplodeWarTask.explode(war, explodedApp, index, 2);
+    Assert.assertEquals(4, stats.extracted);
+    Assert.assertEquals(0, stats.unchanged);
+
+    Path datastoreIndexesAutoXml =
+        explodedApp.resolve("WEB-INF/appengine-generated/datastore-indexes-auto.xml");
+    Files.createDirectories(datastoreIndexesAutoXml.getParent());
+    Files.createFile(datastoreIndexesAutoXml);
+    Files.createFile(explodedApp.resolve("junk.txt"));
+    // modified behind our back, must be extracted again
+    Files.write(explodedApp.resolve("index.html"), "modified".getBytes(StandardCharsets.UTF_8));
+
+    writeWar(
+        war,
+        ImmutableMap.of(
+            "index.html", "hello",
+            "WEB-INF/web.xml", "<web-app></web-app>",
+            "WEB-INF/lib/a.jar", "a"));
+    stats = ExplodeWarTask.explode(war, explodedApp, index, 2);
+    Assert.assertEquals(2, stats.extracted);
+    Assert.assertEquals(1, stats.unchanged);
+    Assert.assertEquals(2, stats.deleted);
+
+    Assert.assertEquals(
+        "hello",
+        new String(Files.readAllBytes(explodedApp.resolve("index.html")), StandardCharsets.UTF_8));
+    Assert.assertEquals(
+        "<web-app></web-app>",
+        new String(
+            Files.readAllBytes(explodedApp.resolve("WEB-INF/web.xml")), StandardCharsets.UTF_8));
+    Assert.assertFalse(Files.exists(explodedApp.resolve("WEB-INF/lib/b.jar")));
+    Assert.assertFalse(Files.exists(explodedApp.resolve("junk.txt")));
+    Assert.assertTrue(Files.isRegularFile(datastoreIndexesAutoXml));
+    Assert.assertEquals(3, index.size());
+  }
+
+  private static void writeWar(File war, Map<String, String> entries) throws IOException {
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(war.toPath()))) {
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        zip.putNextEntry(new ZipEntry(entry.getKey()));
+        zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlightRecordingTest {
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testStartFlag() {
+    File file = new File(tmpDir.getRoot(), "dev_appserver.jfr");
+    Assert.assertEquals(
+        "-XX:StartFlightRecording=name=appengine,settings=profile,dumponexit=true,filename="
+            + file.getAbsolutePath(),
+        FlightRecording.startFlag("profile", file));
+  }
+
+  @Test
+  public void testAwaitDump_missing() throws InterruptedException {
+    Assert.assertFalse(
+        FlightRecording.awaitDump(new File(tmpDir.getRoot(), "dev_appserver.jfr"), 500));
+  }
+
+  @Test
+  public void testAwaitDump_complete() throws IOException, InterruptedException {
+    File file = tmpDir.newFile("dev_appserver.jfr");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    Assert.assertTrue(FlightRecording.awaitDump(file, 5000));
+  }
+
+  @Test
+  public void testSummarize() throws Exception {
+    Class<?> recordingClass = findRecordingClass();
+    assumeTrue(recordingClass != null);
+    File file = new File(tmpDir.getRoot(), "dev_appserver.jfr");
+    Object recording = recordingClass.getConstructor().newInstance();
+    recordingClass.getMethod("enable", String.class).invoke(recording, "jdk.GarbageCollection");
+    recordingClass.getMethod("start").invoke(recording);
+    System.gc();
+    recordingClass.getMethod("stop").invoke(recording);
+    recordingClass.getMethod("dump", Path.class).invoke(recording, file.toPath());
+    recordingClass.getMethod("close").invoke(recording);
+
+    String summary = FlightRecording.summarize(file);
+
+    Assert.assertTrue(summary, summary.contains("Hot methods (execution samples):\n  none"));
+    Assert.assertTrue(summary, summary.contains("Allocation sites (bytes allocated):\n  none"));
+    Assert.assertTrue(summary, summary.matches("(?s).*GC pauses: [1-9]\\d* collections.*"));
+  }
+
+  private static Class<?> findRecordingClass() {
+    try {
+      return Class.forName("jdk.jfr.Recording");
+    } catch (ClassNotFoundException ex) {
+      return null;
+    }
+  }
+}
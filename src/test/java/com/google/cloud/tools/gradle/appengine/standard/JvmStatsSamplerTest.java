@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JvmStatsSamplerTest {
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private JvmStatsSampler newSampler() throws IOException {
+    return new JvmStatsSampler(
+        ManagementFactory.getPlatformMBeanServer(), () -> {}, Pattern.compile("test-qtp-.*"));
+  }
+
+  @Test
+  public void testSample_requestThreads() throws Exception {
+    AtomicBoolean stop = new AtomicBoolean();
+    CountDownLatch running = new CountDownLatch(1);
+    Thread busy =
+        new Thread(
+            () -> {
+              running.countDown();
+              while (!stop.get()) {
+                Thread.yield();
+              }
+            },
+            "test-qtp-1");
+    Thread idle = new Thread(JvmStatsSamplerTest::sleepUntilInterrupted, "test-qtp-2");
+    busy.start();
+    idle.start();
+    try {
+      running.await();
+      // let the idle thread park
+      while (idle.getState() != Thread.State.TIMED_WAITING) {
+        Thread.sleep(10);
+      }
+
+      JvmStatsSampler.Sample sample = newSampler().sample();
+
+      Assert.assertEquals(2, sample.requestThreads);
+      Assert.assertEquals(1, sample.busyRequestThreads);
+      Assert.assertTrue(sample.heapUsed > 0);
+      Assert.assertTrue(sample.threads >= 3);
+      Assert.assertEquals(0, sample.elapsedMillis);
+    } finally {
+      stop.set(true);
+      idle.interrupt();
+      busy.join();
+      idle.join();
+    }
+  }
+
+  @Test
+  public void testRun_untilEndTime() throws IOException {
+    JvmStatsSampler sampler = newSampler();
+    sampler.run(10, System.currentTimeMillis() + 200);
+
+    List<JvmStatsSampler.Sample> samples = sampler.getSamples();
+    Assert.assertTrue(samples.size() > 1);
+    Assert.assertTrue(samples.get(samples.size() - 1).elapsedMillis > 0);
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    JvmStatsSampler sampler = newSampler();
+    sampler.sample();
+    sampler.sample();
+    File directory = tmpDir.getRoot();
+
+    sampler.write(directory);
+
+    List<String> csv =
+        Files.readAllLines(
+            new File(directory, JvmStatsSampler.CSV_FILE_NAME).toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals(3, csv.size());
+    Assert.assertTrue(csv.get(0).startsWith("timestamp,elapsedMillis,heapUsed,"));
+    Assert.assertEquals(11, csv.get(1).split(",").length);
+    String json =
+        new String(
+            Files.readAllBytes(new File(directory, JvmStatsSampler.JSON_FILE_NAME).toPath()),
+            StandardCharsets.UTF_8);
+    Assert.assertTrue(json, json.contains("\"summary\""));
+    Assert.assertTrue(json, json.contains("\"samples\": 2"));
+  }
+
+  @Test
+  public void testSummarize() {
+    JvmStatsSampler.Summary summary =
+        JvmStatsSampler.summarize(
+            Arrays.asList(
+                newSample(0, 100 << 20, 3, 40, 20, 1),
+                newSample(1000, 300 << 20, 5, 70, 24, 4),
+                newSample(2000, 200 << 20, 6, 90, 22, 2)));
+
+    Assert.assertEquals(3, summary.samples);
+    Assert.assertEquals(2000, summary.durationMillis);
+    Assert.assertEquals(300 << 20, summary.peakHeapUsed);
+    Assert.assertEquals(3, summary.sampledGcCount);
+    Assert.assertEquals(50, summary.sampledGcTimeMillis);
+    Assert.assertEquals(90, summary.gcTimeMillis);
+    Assert.assertEquals(24, summary.peakThreads);
+    Assert.assertEquals(4, summary.peakBusyRequestThreads);
+    Assert.assertTrue(summary.render(), summary.render().contains("peak heap used  300 MB"));
+  }
+
+  @Test
+  public void testSummarize_empty() {
+    Assert.assertEquals(
+        "No sample of the Dev App Server JVM was taken",
+        JvmStatsSampler.summarize(Arrays.asList()).render());
+  }
+
+  private static JvmStatsSampler.Sample newSample(
+      long elapsedMillis, long heapUsed, long gcCount, long gcTimeMillis, int threads, int busy) {
+    JvmStatsSampler.Sample sample = new JvmStatsSampler.Sample();
+    sample.elapsedMillis = elapsedMillis;
+    sample.heapUsed = heapUsed;
+    sample.heapMax = 1 << 30;
+    sample.gcCount = gcCount;
+    sample.gcTimeMillis = gcTimeMillis;
+    sample.threads = threads;
+    sample.requestThreads = 8;
+    sample.busyRequestThreads = busy;
+    return sample;
+  }
+
+  private static void sleepUntilInterrupted() {
+    try {
+      Thread.sleep(60000);
+    } catch (InterruptedException ex) {
+      // done
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testGetValueAtPercentile_empty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+    Assert.assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  public void testGetValueAtPercentile_smallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int value = 1; value <= 50; value++) {
+      histogram.record(value);
+    }
+
+    Assert.assertEquals(25, histogram.getValueAtPercentile(50));
+    Assert.assertEquals(48, histogram.getValueAtPercentile(95));
+    Assert.assertEquals(50, histogram.getValueAtPercentile(100));
+    Assert.assertEquals(50, histogram.getTotalCount());
+  }
+
+  @Test
+  public void testGetValueAtPercentile_largeValuesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 100000; value++) {
+      histogram.record(value * 1000);
+    }
+
+    assertWithinPrecision(50000000, histogram.getValueAtPercentile(50));
+    assertWithinPrecision(99000000, histogram.getValueAtPercentile(99));
+    Assert.assertEquals(100000000, histogram.getValueAtPercentile(100));
+    Assert.assertEquals(100000000, histogram.getMax());
+  }
+
+  @Test
+  public void testAdd() {
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    first.record(10);
+    first.record(20);
+    second.record(30);
+    second.record(-5);
+
+    first.add(second);
+    Assert.assertEquals(4, first.getTotalCount());
+    Assert.assertEquals(30, first.getMax());
+    Assert.assertEquals(0, first.getValueAtPercentile(25));
+    Assert.assertEquals(20, first.getValueAtPercentile(75));
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    Assert.assertTrue(
+        expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 64.0 + 1);
+  }
+}
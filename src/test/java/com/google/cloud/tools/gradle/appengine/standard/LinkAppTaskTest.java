@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import org.gradle.api.logging.Logging;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LinkAppTaskTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private File webApp;
+  private File classes;
+  private File resources;
+  private File jar;
+  private Path linkedApp;
+
+  @Before
+  public void setUp() throws IOException {
+    webApp = tmpDir.newFolder("webapp");
+    write(new File(webApp, "index.html"), "hello");
+    write(new File(webApp, "WEB-INF/appengine-web.xml"), "<appengine-web-app/>");
+    write(new File(webApp, "WEB-INF/appengine-generated/datastore-indexes-auto.xml"), "source");
+    classes = tmpDir.newFolder("classes");
+    write(new File(classes, "a/Servlet.class"), "class");
+    resources = tmpDir.newFolder("resources");
+    write(new File(resources, "logging.properties"), "level=INFO");
+    jar = tmpDir.newFile("lib-1.0.jar");
+    linkedApp = tmpDir.getRoot().toPath().resolve("linked");
+  }
+
+  @Test
+  public void testLink() throws IOException {
+    Assume.assumeTrue(canLink());
+    LinkAppTask.link(
+        linkedApp,
+        webApp,
+        ImmutableList.of(classes, resources, jar),
+        new LinkAppTask.Linker(Logging.getLogger(LinkAppTaskTest.class), true));
+
+    Path webInf = linkedApp.resolve("WEB-INF");
+    // hard links, static files are not served through symbolic links
+    Assert.assertFalse(Files.isSymbolicLink(linkedApp.resolve("index.html")));
+    Assert.assertTrue(
+        Files.isSameFile(linkedApp.resolve("index.html"), webApp.toPath().resolve("index.html")));
+    Assert.assertTrue(
+        Files.isSameFile(
+            webInf.resolve("appengine-web.xml"),
+            webApp.toPath().resolve("WEB-INF/appengine-web.xml")));
+    Assert.assertTrue(Files.isSymbolicLink(webInf.resolve("classes")));
+    Assert.assertTrue(Files.isRegularFile(webInf.resolve("classes/a/Servlet.class")));
+    Assert.assertTrue(Files.isSymbolicLink(webInf.resolve("lib/lib-1.0.jar")));
+    // written by the dev server, not linked to the sources
+    Path datastoreIndexesAutoXml = webInf.resolve("appengine-generated/datastore-indexes-auto.xml");
+    Assert.assertFalse(Files.isSymbolicLink(datastoreIndexesAutoXml));
+    Assert.assertEquals(ImmutableList.of(resources.toURI().toString()), readClasspath(webInf));
+
+    // relinking keeps what the dev server wrote
+    Files.write(datastoreIndexesAutoXml, "generated".getBytes(StandardCharsets.UTF_8));
+    LinkAppTask.link(
+        linkedApp,
+        webApp,
+        ImmutableList.of(classes, resources, jar),
+        new LinkAppTask.Linker(Logging.getLogger(LinkAppTaskTest.class), true));
+    Assert.assertEquals(
+        "generated",
+        new String(Files.readAllBytes(datastoreIndexesAutoXml), StandardCharsets.UTF_8));
+    Assert.assertTrue(Files.isSymbolicLink(webInf.resolve("classes")));
+  }
+
+  @Test
+  public void testLink_noLinks() throws IOException {
+    LinkAppTask.link(
+        linkedApp,
+        webApp,
+        ImmutableList.of(classes, resources, jar),
+        new LinkAppTask.Linker(Logging.getLogger(LinkAppTaskTest.class), false));
+
+    Path webInf = linkedApp.resolve("WEB-INF");
+    Assert.assertFalse(
+        Files.isSameFile(linkedApp.resolve("index.html"), webApp.toPath().resolve("index.html")));
+    Assert.assertTrue(Files.isRegularFile(webInf.resolve("appengine-web.xml")));
+    Assert.assertFalse(Files.exists(webInf.resolve("classes")));
+    Assert.assertEquals(
+        ImmutableList.of(
+            classes.toURI().toString(), resources.toURI().toString(), jar.toURI().toString()),
+        readClasspath(webInf));
+  }
+
+  private boolean canLink() {
+    try {
+      Files.createSymbolicLink(tmpDir.getRoot().toPath().resolve("probe"), jar.toPath());
+      return true;
+    } catch (UnsupportedOperationException | IOException ex) {
+      return false;
+    }
+  }
+
+  private static List<String> readClasspath(Path webInf) throws IOException {
+    try (JarFile classpathJar =
+        new JarFile(webInf.resolve("lib").resolve(LinkAppTask.CLASSPATH_JAR).toFile())) {
+      String classpath =
+          classpathJar.getManifest().getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+      return Arrays.asList(classpath.split(" "));
+    }
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadTestTaskTest {
+
+  private final ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<String> otherPaths = new ConcurrentLinkedQueue<>();
+  private HttpServer server;
+
+  @Before
+  public void setup() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/ok",
+        exchange -> {
+          byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+          bodies.add(new String(body, StandardCharsets.UTF_8));
+          byte[] answer = "ok".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, answer.length);
+          exchange.getResponseBody().write(answer);
+          exchange.close();
+        });
+    server.createContext(
+        "/fail",
+        exchange -> {
+          exchange.sendResponseHeaders(500, -1);
+          exchange.close();
+        });
+    server.createContext(
+        "/",
+        exchange -> {
+          otherPaths.add(exchange.getRequestURI().toString());
+          exchange.sendResponseHeaders(404, -1);
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @After
+  public void cleanup() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testRun_mix() throws Exception {
+    List<LoadTestRequest> mix =
+        ImmutableList.of(
+            new LoadTestRequest("get", "ok", null),
+            new LoadTestRequest("POST", "/ok", "payload"),
+            new LoadTestRequest("GET", "/fail", null));
+
+    LoadTestTask.Report report = LoadTestTask.run(url(), mix, 3, 300);
+
+    Assert.assertTrue(report.getRequests() >= 3);
+    Assert.assertEquals(3, report.getByRequest().size());
+    LoadTestTask.RequestReport ok = report.getByRequest().get(0);
+    LoadTestTask.RequestReport fail = report.getByRequest().get(2);
+    Assert.assertEquals(0, ok.getErrors());
+    Assert.assertEquals(fail.getRequests(), fail.getErrors());
+    Assert.assertEquals(fail.getErrors(), report.getErrors());
+    Assert.assertTrue(bodies.contains("payload"));
+    Assert.assertTrue(report.getLatency().getMaxMillis() > 0);
+    Assert.assertTrue(report.anySucceeded());
+  }
+
+  @Test
+  public void testRun_notListening() throws Exception {
+    server.stop(0);
+    List<LoadTestRequest> mix = ImmutableList.of(new LoadTestRequest("GET", "/ok", null));
+
+    LoadTestTask.Report report = LoadTestTask.run(url(), mix, 1, 100);
+
+    Assert.assertTrue(report.getRequests() > 0);
+    Assert.assertEquals(report.getRequests(), report.getErrors());
+    Assert.assertFalse(report.anySucceeded());
+    Assert.assertEquals(report.getRequests() + " requests, none succeeded", report.summary());
+  }
+
+  @Test
+  public void testRun_onlyToTheServer() throws Exception {
+    // resolved against the server, the path would send the requests to port 1
+    List<LoadTestRequest> mix =
+        ImmutableList.of(new LoadTestRequest("GET", "//localhost:1/x", null));
+
+    LoadTestTask.run(url(), mix, 1, 100);
+
+    Assert.assertTrue(otherPaths.contains("//localhost:1/x"));
+  }
+
+  @Test
+  public void testParseRecorded() {
+    List<LoadTestRequest> requests =
+        LoadTestRequest.parseRecorded(
+            ImmutableList.of(
+                "127.0.0.1 - - [19/Oct/2026:10:00:00 +0000] \"GET /index.html?a=b HTTP/1.1\" 200",
+                "INFO: started",
+                "INFO 2026-10-19 10:00:01 module.py:861] default: \"POST /api HTTP/1.1\" 201 12"));
+
+    Assert.assertEquals(2, requests.size());
+    Assert.assertEquals("GET /index.html?a=b", requests.get(0).toString());
+    Assert.assertEquals("POST /api", requests.get(1).toString());
+    Assert.assertNull(requests.get(1).getBody());
+  }
+
+  private URL url() throws IOException {
+    InetSocketAddress address = server.getAddress();
+    return new URL("http", address.getHostString(), address.getPort(), "/");
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.util.WebXml;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.work.ChangeType;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Golden tests of the native staging: the app.yaml and layout of the staged apps follow what
+ * appcfg stages for the same apps. The golden app.yaml files are checked against appcfg, and
+ * recorded from it, by {@code NativeStandardStagingIntegrationTest}.
+ */
+public class NativeStandardStagingTest {
+
+  private static final String RESOURCES = "projects/NativeStandardStagingTest/";
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testStage_simple() throws IOException {
+    File app = createApp("simple");
+    write(new File(app, "index.html"), "hello");
+    write(new File(app, "css/site.css"), "body {}");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class");
+    write(new File(app, "WEB-INF/lib/lib.jar"), "jar");
+    write(new File(app, "WEB-INF/appengine-generated/local_db.bin"), "datastore");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+
+    NativeStandardStaging nativeStaging = new NativeStandardStaging(app.toPath(), staging);
+    Assert.assertNull(nativeStaging.findUnsupported());
+    nativeStaging.stage();
+
+    Assert.assertEquals(readResource("simple-app.yaml"), read(staging.resolve("app.yaml")));
+    Assert.assertEquals(
+        ImmutableList.of(
+            "WEB-INF/appengine-web.xml",
+            "WEB-INF/classes/a/Hello.class",
+            "WEB-INF/lib/lib.jar",
+            "WEB-INF/web.xml",
+            "__static__/css/site.css",
+            "__static__/index.html",
+            "app.yaml",
+            "css/site.css",
+            "index.html"),
+        listFiles(staging));
+  }
+
+  @Test
+  public void testStage_configured() throws IOException {
+    File app = createApp("configured");
+    write(new File(app, "home.html"), "home");
+    write(new File(app, "static/app.js"), "app");
+    write(new File(app, "static/private/key.txt"), "key");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+
+    new NativeStandardStaging(app.toPath(), staging).stage();
+
+    Assert.assertEquals(readResource("configured-app.yaml"), read(staging.resolve("app.yaml")));
+    Assert.assertEquals(
+        ImmutableList.of(
+            "WEB-INF/appengine-web.xml",
+            "WEB-INF/classes/a/Hello.class",
+            "WEB-INF/web.xml",
+            "__static__/home.html",
+            "__static__/static/app.js",
+            "app.yaml",
+            "home.html"),
+        listFiles(staging));
+  }
+
+  @Test
+  public void testStage_enableJarClasses() throws IOException {
+    File app = createApp("simple");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class");
+    write(new File(app, "WEB-INF/classes/logging.properties"), "level=INFO");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+
+    new NativeStandardStaging(app.toPath(), staging).enableJarClasses(true).stage();
+
+    Path classesJar = staging.resolve("WEB-INF/lib/" + NativeStandardStaging.WEBINF_CLASSES_JAR);
+    Assert.assertFalse(Files.exists(staging.resolve("WEB-INF/classes")));
+    try (JarFile jar = new JarFile(classesJar.toFile())) {
+      Assert.assertEquals(
+          ImmutableList.of("a/Hello.class", "logging.properties"),
+          jar.stream().map(entry -> entry.getName()).collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testRestage() throws IOException {
+    File app = createApp("configured");
+    write(new File(app, "home.html"), "home");
+    write(new File(app, "static/app.js"), "app");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class");
+    write(new File(app, "WEB-INF/classes/a/Gone.class"), "class");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+    File indexFile = tmpDir.newFile("index.txt");
+    NativeStandardStaging previous = new NativeStandardStaging(app.toPath(), staging);
+    previous.enableJarClasses(true).stage();
+    previous.writeIndex(indexFile);
+    Path appYaml = staging.resolve("app.yaml");
+    Files.write(appYaml, "kept".getBytes(StandardCharsets.UTF_8));
+
+    write(new File(app, "static/app.js"), "app2");
+    write(new File(app, "static/lib/util.js"), "util");
+    Files.delete(new File(app, "home.html").toPath());
+    Files.delete(new File(app, "WEB-INF/classes/a/Gone.class").toPath());
+    NativeStandardStaging restaging = new NativeStandardStaging(app.toPath(), staging);
+    restaging.enableJarClasses(true);
+    Assert.assertTrue(restaging.readIndex(indexFile));
+    Assert.assertTrue(
+        restaging.restage(
+            ImmutableMap.of(
+                "static/app.js", ChangeType.MODIFIED,
+                "static/lib/util.js", ChangeType.ADDED,
+                "home.html", ChangeType.REMOVED,
+                "WEB-INF/classes/a/Gone.class", ChangeType.REMOVED)));
+
+    // the app.yaml is derived from the configuration only, it is kept
+    Assert.assertEquals("kept", read(appYaml));
+    Assert.assertEquals("app2", read(staging.resolve("__static__/static/app.js")));
+    Assert.assertEquals(
+        ImmutableList.of(
+            "WEB-INF/appengine-web.xml",
+            "WEB-INF/lib/" + NativeStandardStaging.WEBINF_CLASSES_JAR,
+            "WEB-INF/web.xml",
+            "__static__/static/app.js",
+            "__static__/static/lib/util.js",
+            "app.yaml"),
+        listFiles(staging));
+    Assert.assertFalse(Files.exists(staging.resolve("__static__/home.html")));
+    try (JarFile jar =
+        new JarFile(
+            staging.resolve("WEB-INF/lib/" + NativeStandardStaging.WEBINF_CLASSES_JAR).toFile())) {
+      Assert.assertNull(jar.getEntry("a/Gone.class"));
+      Assert.assertNotNull(jar.getEntry("a/Hello.class"));
+    }
+  }
+
+  @Test
+  public void testRestage_configurationChanged() throws IOException {
+    File app = createApp("simple");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+    NativeStandardStaging nativeStaging = new NativeStandardStaging(app.toPath(), staging);
+    nativeStaging.stage();
+
+    Assert.assertFalse(
+        nativeStaging.restage(ImmutableMap.of("WEB-INF/web.xml", ChangeType.MODIFIED)));
+  }
+
+  @Test
+  public void testStage_quickstart() throws IOException {
+    File app = createApp("simple");
+    File quickstart = tmpDir.newFolder("quickstart");
+    String minQuickstartWebXml =
+        "<web-app><servlet-mapping><servlet-name>annotated</servlet-name>"
+            + "<url-pattern>/annotated</url-pattern></servlet-mapping></web-app>";
+    write(new File(quickstart, QuickstartTask.MIN_QUICKSTART_WEB_XML), minQuickstartWebXml);
+    write(new File(quickstart, QuickstartTask.QUICKSTART_WEB_XML), "<web-app/>");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+
+    NativeStandardStaging nativeStaging =
+        new NativeStandardStaging(app.toPath(), staging).quickstartDirectory(quickstart.toPath());
+    Assert.assertNull(nativeStaging.findUnsupported());
+    nativeStaging.stage();
+
+    String appYaml = read(staging.resolve("app.yaml"));
+    Assert.assertTrue(appYaml.contains("- url: /annotated\n"));
+    Assert.assertFalse(appYaml.contains("- url: /hello\n"));
+    Assert.assertEquals(
+        minQuickstartWebXml,
+        read(staging.resolve("WEB-INF").resolve(QuickstartTask.MIN_QUICKSTART_WEB_XML)));
+    Assert.assertTrue(
+        Files.isRegularFile(staging.resolve("WEB-INF").resolve(QuickstartTask.QUICKSTART_WEB_XML)));
+  }
+
+  @Test
+  public void testStage_compiledJsps() throws IOException {
+    File app = createApp("simple");
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    write(new File(app, "admin/users.jsp"), "<%= 2 %>");
+    File compiledJsps = tmpDir.newFolder("compiled-jsps");
+    write(new File(compiledJsps, "servlets/index.jsp"), "org.apache.jsp.index_jsp");
+    write(new File(compiledJsps, "servlets/admin/users.jsp"), "org.apache.jsp.admin.users_jsp");
+    write(new File(compiledJsps, "classes/org/apache/jsp/index_jsp.class"), "class");
+    write(new File(compiledJsps, "classes/org/apache/jsp/admin/users_jsp.class"), "class");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+
+    NativeStandardStaging nativeStaging =
+        new NativeStandardStaging(app.toPath(), staging)
+            .compiledJspsDirectory(compiledJsps.toPath())
+            .deleteJsps(true);
+    Assert.assertNull(nativeStaging.findUnsupported());
+    nativeStaging.stage();
+
+    Assert.assertFalse(Files.exists(staging.resolve("index.jsp")));
+    try (JarFile jar =
+        new JarFile(
+            staging.resolve("WEB-INF/lib/" + NativeStandardStaging.COMPILED_JSPS_JAR).toFile())) {
+      Assert.assertEquals(
+          ImmutableList.of(
+              "org/apache/jsp/admin/users_jsp.class", "org/apache/jsp/index_jsp.class"),
+          jar.stream().map(entry -> entry.getName()).collect(Collectors.toList()));
+    }
+    WebXml webXml = WebXml.parse(staging.resolve("WEB-INF/web.xml").toFile());
+    Assert.assertEquals(
+        ImmutableList.of("/hello", "/admin/users.jsp", "/index.jsp", "/api/*"),
+        webXml.getUrlPatterns());
+    String appYaml = read(staging.resolve("app.yaml"));
+    Assert.assertTrue(appYaml.contains("- url: /index\\.jsp\n"));
+  }
+
+  @Test
+  public void testStage_compiledJspsNotJarred() throws IOException {
+    File app = createApp("simple");
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    File compiledJsps = tmpDir.newFolder("compiled-jsps");
+    write(new File(compiledJsps, "servlets/index.jsp"), "org.apache.jsp.index_jsp");
+    write(new File(compiledJsps, "classes/org/apache/jsp/index_jsp.class"), "class");
+    Path staging = tmpDir.getRoot().toPath().resolve("staging");
+
+    new NativeStandardStaging(app.toPath(), staging)
+        .compiledJspsDirectory(compiledJsps.toPath())
+        .disableJarJsps(true)
+        .stage();
+
+    Assert.assertTrue(Files.exists(staging.resolve("index.jsp")));
+    Assert.assertTrue(
+        Files.isRegularFile(staging.resolve("WEB-INF/classes/org/apache/jsp/index_jsp.class")));
+    Assert.assertFalse(
+        Files.exists(staging.resolve("WEB-INF/lib/" + NativeStandardStaging.COMPILED_JSPS_JAR)));
+  }
+
+  @Test
+  public void testFindUnsupported() throws IOException {
+    File app = createApp("simple");
+    NativeStandardStaging staging =
+        new NativeStandardStaging(app.toPath(), tmpDir.getRoot().toPath().resolve("staging"));
+    Assert.assertNull(staging.findUnsupported());
+
+    write(new File(app, "WEB-INF/cron.xml"), "<cronentries/>");
+    Assert.assertEquals("the app has a WEB-INF/cron.xml", staging.findUnsupported());
+    Files.delete(new File(app, "WEB-INF/cron.xml").toPath());
+
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    Assert.assertEquals("the app has JSPs to compile", staging.findUnsupported());
+  }
+
+  private File createApp(String name) throws IOException {
+    File app = tmpDir.newFolder(name);
+    write(new File(app, "WEB-INF/appengine-web.xml"), readResource(name + "/appengine-web.xml"));
+    write(new File(app, "WEB-INF/web.xml"), readResource(name + "/web.xml"));
+    return app;
+  }
+
+  private String readResource(String path) throws IOException {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCES + path)) {
+      return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static List<String> listFiles(Path root) throws IOException {
+    try (Stream<Path> walk = Files.walk(root)) {
+      return walk.filter(Files::isRegularFile)
+          .map(path -> root.relativize(path).toString().replace('\\', '/'))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
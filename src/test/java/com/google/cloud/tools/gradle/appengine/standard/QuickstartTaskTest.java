@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import com.google.cloud.tools.gradle.appengine.util.io.FileLinker;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.logging.Logging;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuickstartTaskTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private File app;
+
+  @Before
+  public void setUp() throws IOException {
+    app = tmpDir.newFolder("app");
+    write(new File(app, "index.html"), "hello");
+    write(new File(app, "index.jsp"), "<%= 1 %>");
+    write(new File(app, "WEB-INF/web.xml"), "<web-app/>");
+    write(new File(app, "WEB-INF/appengine-web.xml"), "<appengine-web-app/>");
+    write(new File(app, "WEB-INF/classes/a/Hello.class"), "class");
+    write(new File(app, "WEB-INF/lib/b.jar"), "jar");
+    write(new File(app, "WEB-INF/lib/a.jar"), "jar");
+    write(new File(app, "WEB-INF/lib/notes.txt"), "notes");
+  }
+
+  @Test
+  public void testClasspath() {
+    File webInf = new File(app, "WEB-INF");
+    Assert.assertEquals(
+        ImmutableList.of(
+            new File(webInf, "classes"),
+            new File(webInf, "lib/a.jar"),
+            new File(webInf, "lib/b.jar")),
+        QuickstartTask.classpath(app));
+  }
+
+  @Test
+  public void testReduceApp() throws IOException {
+    Path reduced = tmpDir.getRoot().toPath().resolve("reduced");
+
+    QuickstartTask.reduceApp(
+        app.toPath(), reduced, new FileLinker(Logging.getLogger(QuickstartTaskTest.class), true));
+
+    // static files and JSPs don't change the quickstart descriptors
+    Assert.assertEquals(
+        ImmutableList.of(
+            "WEB-INF/appengine-web.xml",
+            "WEB-INF/classes/a/Hello.class",
+            "WEB-INF/lib/a.jar",
+            "WEB-INF/lib/b.jar",
+            "WEB-INF/web.xml"),
+        listFiles(reduced));
+  }
+
+  private static List<String> listFiles(Path root) throws IOException {
+    try (Stream<Path> walk = Files.walk(root)) {
+      return walk.filter(Files::isRegularFile)
+          .map(path -> root.relativize(path).toString().replace('\\', '/'))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
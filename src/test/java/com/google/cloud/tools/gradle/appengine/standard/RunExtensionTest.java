@@ -18,6 +18,7 @@
 package com.google.cloud.tools.gradle.appengine.standard;
 
 import com.google.cloud.tools.gradle.appengine.MultiModuleTestProject;
+import com.google.cloud.tools.gradle.appengine.TestProject;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -78,6 +79,69 @@ public class RunExtensionTest {
         assemblesAfter, getAssembleDependencies(frontend, AppEngineStandardPlugin.START_TASK_NAME));
   }
 
+  @Test
+  public void testResolvePort_allocated() throws IOException {
+    Project p =
+        new TestProject(tmpDir.getRoot()).addAppEngineWebXml().applyStandardProjectBuilder();
+    RunExtension run = p.getExtensions().getByType(AppEngineStandardExtension.class).getRun();
+    run.setPort(9000);
+    run.setAllocatePort(true);
+    Assert.assertEquals(Integer.valueOf(9000), run.resolvePort());
+
+    int port = DevAppServerStartTask.allocatePort();
+    run.setAllocatedPort(port);
+    Assert.assertEquals(Integer.valueOf(port), run.resolvePort());
+
+    // stopped, back to the configured port
+    run.setAllocatedPort(null);
+    Assert.assertEquals(Integer.valueOf(9000), run.resolvePort());
+  }
+
+  @Test
+  public void testResolvePort_notAllocated() throws IOException {
+    Project p =
+        new TestProject(tmpDir.getRoot()).addAppEngineWebXml().applyStandardProjectBuilder();
+    RunExtension run = p.getExtensions().getByType(AppEngineStandardExtension.class).getRun();
+    run.setPort(9000);
+    run.setAllocatedPort(9001);
+
+    Assert.assertEquals(Integer.valueOf(9000), run.resolvePort());
+  }
+
+  @Test
+  public void testResolveJmxPort_allocated() throws IOException {
+    Project p =
+        new TestProject(tmpDir.getRoot()).addAppEngineWebXml().applyStandardProjectBuilder();
+    RunExtension run = p.getExtensions().getByType(AppEngineStandardExtension.class).getRun();
+    Assert.assertNull(run.resolveJmxPort());
+    run.setJmxPort(9010);
+    run.setAllocatePort(true);
+    Assert.assertEquals(Integer.valueOf(9010), run.resolveJmxPort());
+
+    run.setAllocatedPort(9001);
+    run.setAllocatedJmxPort(9011);
+    Assert.assertEquals(Integer.valueOf(9001), run.resolvePort());
+    Assert.assertEquals(Integer.valueOf(9011), run.resolveJmxPort());
+
+    run.setAllocatedJmxPort(null);
+    Assert.assertEquals(Integer.valueOf(9010), run.resolveJmxPort());
+  }
+
+  @Test
+  public void testRecording() throws IOException {
+    Project p =
+        new TestProject(tmpDir.getRoot()).addAppEngineWebXml().applyStandardProjectBuilder();
+    RunExtension run = p.getExtensions().getByType(AppEngineStandardExtension.class).getRun();
+    Assert.assertFalse(run.isRecording());
+
+    run.setRecording(true);
+    Assert.assertTrue(run.isRecording());
+
+    // stopped
+    run.setRecording(false);
+    Assert.assertFalse(run.isRecording());
+  }
+
   private Set<String> getAssembleDependencies(Project project, String taskName) {
     Task task = project.getTasks().findByPath(taskName);
     return task.getDependsOn().stream()
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.standard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RunningDevAppServersTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private Path app;
+  private List<File> services;
+
+  @Before
+  public void setup() throws IOException {
+    app = tmpDir.newFolder("app").toPath();
+    Files.createDirectories(app.resolve("WEB-INF/classes"));
+    write(app.resolve("WEB-INF/classes/Servlet.class"), "servlet");
+    write(app.resolve("index.html"), "index");
+    services = Collections.singletonList(app.toFile());
+  }
+
+  @Test
+  public void testServicesFingerprint_unchanged() throws IOException {
+    Assert.assertEquals(
+        RunningDevAppServers.servicesFingerprint(services),
+        RunningDevAppServers.servicesFingerprint(services));
+  }
+
+  @Test
+  public void testServicesFingerprint_changedFile() throws IOException {
+    String before = RunningDevAppServers.servicesFingerprint(services);
+    Path servlet = app.resolve("WEB-INF/classes/Servlet.class");
+    write(servlet, "servlet2");
+
+    Assert.assertNotEquals(before, RunningDevAppServers.servicesFingerprint(services));
+  }
+
+  @Test
+  public void testServicesFingerprint_touchedFile() throws IOException {
+    String before = RunningDevAppServers.servicesFingerprint(services);
+    Path index = app.resolve("index.html");
+    Files.setLastModifiedTime(
+        index, FileTime.fromMillis(Files.getLastModifiedTime(index).toMillis() + 10000));
+
+    Assert.assertNotEquals(before, RunningDevAppServers.servicesFingerprint(services));
+  }
+
+  @Test
+  public void testServicesFingerprint_addedFile() throws IOException {
+    String before = RunningDevAppServers.servicesFingerprint(services);
+    write(app.resolve("other.html"), "other");
+
+    Assert.assertNotEquals(before, RunningDevAppServers.servicesFingerprint(services));
+  }
+
+  @Test
+  public void testServicesFingerprint_ignoresGeneratedFiles() throws IOException {
+    String before = RunningDevAppServers.servicesFingerprint(services);
+    Files.createDirectories(app.resolve("WEB-INF/appengine-generated"));
+    write(app.resolve("WEB-INF/appengine-generated/local_db.bin"), "data");
+
+    Assert.assertEquals(before, RunningDevAppServers.servicesFingerprint(services));
+  }
+
+  @Test
+  public void testFind_running() {
+    File key = new File(tmpDir.getRoot(), "running");
+    FakeProcess process = new FakeProcess(true);
+    RunningDevAppServers.started(key, process, "services", "settings");
+
+    RunningDevAppServers.RunningDevAppServer server = RunningDevAppServers.find(key);
+    Assert.assertSame(process, server.getProcess());
+    Assert.assertEquals("services", server.getServicesFingerprint());
+    Assert.assertEquals("settings", server.getSettingsFingerprint());
+  }
+
+  @Test
+  public void testFind_exited() {
+    File key = new File(tmpDir.getRoot(), "exited");
+    RunningDevAppServers.started(key, new FakeProcess(false), "services", "settings");
+
+    Assert.assertNull(RunningDevAppServers.find(key));
+  }
+
+  @Test
+  public void testFind_unknown() {
+    Assert.assertNull(RunningDevAppServers.find(new File(tmpDir.getRoot(), "unknown")));
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static class FakeProcess extends Process {
+    private final boolean alive;
+
+    FakeProcess(boolean alive) {
+      this.alive = alive;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() {
+      return exitValue();
+    }
+
+    @Override
+    public int exitValue() {
+      if (alive) {
+        throw new IllegalThreadStateException();
+      }
+      return 0;
+    }
+
+    @Override
+    public void destroy() {}
+  }
+}
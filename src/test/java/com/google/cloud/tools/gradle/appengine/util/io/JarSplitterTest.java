@@ -0,0 +1,199 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.util.io;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarSplitterTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private Path jar;
+
+  @Before
+  public void setUp() throws IOException {
+    jar = tmpDir.getRoot().toPath().resolve("library.jar");
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue("Implementation-Title", "library");
+    try (OutputStream out = Files.newOutputStream(jar);
+        JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+      // random, the jar is about as large as its content
+      byte[] content = new byte[400];
+      Random random = new Random(0);
+      for (String name : ImmutableList.of("a/A.class", "a/B.class", "a/C.class", "a/A.java")) {
+        jarOut.putNextEntry(new JarEntry(name));
+        random.nextBytes(content);
+        jarOut.write(content);
+        jarOut.closeEntry();
+      }
+    }
+  }
+
+  @Test
+  public void testSplit() throws IOException {
+    List<Path> parts = new JarSplitter(800, ImmutableList.of(".java")).split(jar);
+
+    Assert.assertFalse(Files.exists(jar));
+    Assert.assertEquals(
+        ImmutableList.of(
+            jar.resolveSibling("library-0000.jar"), jar.resolveSibling("library-0001.jar")),
+        parts);
+    Assert.assertEquals(ImmutableList.of("a/A.class", "a/B.class"), readEntries(parts.get(0)));
+    Assert.assertEquals(ImmutableList.of("a/C.class"), readEntries(parts.get(1)));
+    for (Path part : parts) {
+      try (JarFile jarFile = new JarFile(part.toFile())) {
+        Assert.assertEquals(
+            "library", jarFile.getManifest().getMainAttributes().getValue("Implementation-Title"));
+      }
+    }
+  }
+
+  @Test
+  public void testSplit_partNameTaken() throws IOException {
+    Path sibling = jar.resolveSibling("library-0001.jar");
+    Files.write(sibling, "another jar".getBytes(StandardCharsets.UTF_8));
+    try {
+      new JarSplitter(800, ImmutableList.of(".java")).split(jar);
+      Assert.fail();
+    } catch (IOException ex) {
+      Assert.assertEquals(
+          "Cannot split " + jar + ", its part " + sibling + " would replace an existing jar",
+          ex.getMessage());
+    }
+
+    Assert.assertTrue(Files.exists(jar));
+    Assert.assertFalse(Files.exists(jar.resolveSibling("library-0000.jar")));
+    Assert.assertEquals(
+        "another jar", new String(Files.readAllBytes(sibling), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSplit_reproducible() throws IOException {
+    Path copy = tmpDir.newFolder("copy").toPath().resolve("library.jar");
+    Files.copy(jar, copy);
+    long manifestTime;
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      manifestTime = jarFile.getJarEntry(JarFile.MANIFEST_NAME).getTime();
+    }
+
+    List<Path> parts = new JarSplitter(800, ImmutableList.of(".java")).split(jar);
+    List<Path> copyParts = new JarSplitter(800, ImmutableList.of(".java")).split(copy);
+
+    Assert.assertEquals(parts.size(), copyParts.size());
+    for (int i = 0; i < parts.size(); i++) {
+      Assert.assertArrayEquals(
+          Files.readAllBytes(parts.get(i)), Files.readAllBytes(copyParts.get(i)));
+      try (JarFile jarFile = new JarFile(parts.get(i).toFile())) {
+        // the time of the original manifest, not the time of the split
+        Assert.assertEquals(manifestTime, jarFile.getJarEntry(JarFile.MANIFEST_NAME).getTime());
+      }
+    }
+  }
+
+  @Test
+  public void testSplitAll() throws IOException {
+    Path other = tmpDir.getRoot().toPath().resolve("other.jar");
+    Files.copy(jar, other);
+
+    Map<Path, List<Path>> parts =
+        new JarSplitter(800, ImmutableList.of(".java")).splitAll(ImmutableList.of(jar, other), 2);
+
+    Assert.assertEquals(ImmutableList.of(jar, other), new ArrayList<>(parts.keySet()));
+    Assert.assertEquals(
+        ImmutableList.of(
+            other.resolveSibling("other-0000.jar"), other.resolveSibling("other-0001.jar")),
+        parts.get(other));
+  }
+
+  @Test
+  public void testSplit_smallJarOnlyFiltered() throws IOException {
+    List<Path> parts = new JarSplitter(1024 * 1024, ImmutableList.of(".java")).split(jar);
+
+    Assert.assertEquals(ImmutableList.of(jar), parts);
+    Assert.assertEquals(ImmutableList.of("a/A.class", "a/B.class", "a/C.class"), readEntries(jar));
+  }
+
+  @Test
+  public void testSplit_compressedJar() throws IOException {
+    // zeros compress well, the jar is small but its content is not
+    Path compressed = tmpDir.getRoot().toPath().resolve("compressed.jar");
+    try (OutputStream out = Files.newOutputStream(compressed);
+        JarOutputStream jarOut = new JarOutputStream(out)) {
+      for (String name : ImmutableList.of("a/A.class", "a/B.class", "a/C.class", "a/A.java")) {
+        jarOut.putNextEntry(new JarEntry(name));
+        jarOut.write(new byte[1000]);
+        jarOut.closeEntry();
+      }
+    }
+    Assert.assertTrue(Files.size(compressed) < 1500);
+
+    List<Path> parts = new JarSplitter(1500, ImmutableList.of(".java")).split(compressed);
+
+    Assert.assertEquals(3, parts.size());
+    List<String> entries = new ArrayList<>();
+    for (Path part : parts) {
+      Assert.assertEquals(1, readEntries(part).size());
+      entries.addAll(readEntries(part));
+    }
+    Assert.assertEquals(ImmutableList.of("a/A.class", "a/B.class", "a/C.class"), entries);
+    Assert.assertFalse(Files.exists(compressed));
+    Assert.assertFalse(Files.exists(compressed.resolveSibling("compressed.jar.tmp")));
+  }
+
+  @Test
+  public void testSplit_nothingToDo() throws IOException {
+    long size = Files.size(jar);
+    List<Path> parts = new JarSplitter(1024 * 1024, ImmutableList.<String>of()).split(jar);
+
+    Assert.assertEquals(ImmutableList.of(jar), parts);
+    Assert.assertEquals(size, Files.size(jar));
+  }
+
+  private static List<String> readEntries(Path jar) throws IOException {
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      List<String> names = new ArrayList<>();
+      for (JarEntry entry : jarFile.stream().collect(Collectors.toList())) {
+        if (!entry.getName().startsWith("META-INF/")) {
+          names.add(entry.getName());
+        }
+      }
+      return names;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Google LLC. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.google.cloud.tools.gradle.appengine.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipExtractorTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testExtract_storedAndDeflated() throws IOException {
+    byte[] random = new byte[300 * 1024];
+    new Random(42).nextBytes(random);
+    byte[] text = new byte[200 * 1024];
+    Arrays.fill(text, (byte) 'a');
+
+    File zip = tmpDir.newFile("app.war");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+      out.putNextEntry(new ZipEntry("WEB-INF/"));
+      out.closeEntry();
+      putStored(out, "WEB-INF/lib/random.jar", random);
+      out.putNextEntry(new ZipEntry("WEB-INF/classes/text.txt"));
+      out.write(text);
+      out.closeEntry();
+      putStored(out, "empty.txt", new byte[0]);
+    }
+
+    Path root = tmpDir.newFolder("exploded").toPath();
+    try (ZipExtractor extractor = ZipExtractor.open(zip)) {
+      Assert.assertEquals(4, extractor.getEntries().size());
+      Assert.assertTrue(extractor.getEntries().get(0).isDirectory());
+      Assert.assertEquals(random.length, extractor.getEntries().get(1).getSize());
+      extractor.extract(extractor.getEntries(), root, 3);
+    }
+
+    Assert.assertTrue(Files.isDirectory(root.resolve("WEB-INF")));
+    Assert.assertArrayEquals(random, Files.readAllBytes(root.resolve("WEB-INF/lib/random.jar")));
+    Assert.assertArrayEquals(text, Files.readAllBytes(root.resolve("WEB-INF/classes/text.txt")));
+    Assert.assertEquals(0, Files.size(root.resolve("empty.txt")));
+  }
+
+  @Test
+  public void testExtract_replacesExistingFiles() throws IOException {
+    File zip = tmpDir.newFile("app.war");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+      out.putNextEntry(new ZipEntry("index.html"));
+      out.write("hello".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    Path root = tmpDir.newFolder("exploded").toPath();
+    byte[] previous = "a longer previous content".getBytes(StandardCharsets.UTF_8);
+    Files.write(root.resolve("index.html"), previous);
+
+    try (ZipExtractor extractor = ZipExtractor.open(zip)) {
+      extractor.extract(extractor.getEntries(), root, 1);
+    }
+
+    byte[] extracted = Files.readAllBytes(root.resolve("index.html"));
+    Assert.assertEquals("hello", new String(extracted, StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = ZipException.class)
+  public void testOpen_notAZip() throws IOException {
+    File notAZip = tmpDir.newFile("app.war");
+    Files.write(notAZip.toPath(), "not a zip".getBytes(StandardCharsets.UTF_8));
+    ZipExtractor.open(notAZip).close();
+  }
+
+  @Test
+  public void testExtract_corruptStoredEntry() throws IOException {
+    File zip = tmpDir.newFile("app.war");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+      putStored(out, "index.html", "hello world".getBytes(StandardCharsets.UTF_8));
+    }
+    byte[] bytes = Files.readAllBytes(zip.toPath());
+    bytes[indexOf(bytes, "hello world")] = 'j';
+    Files.write(zip.toPath(), bytes);
+
+    assertCorrupt(zip, "index.html");
+  }
+
+  @Test
+  public void testExtract_deflatedEntryBadCrc() throws IOException {
+    File zip = tmpDir.newFile("app.war");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+      out.putNextEntry(new ZipEntry("index.html"));
+      out.write("hello world".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    byte[] bytes = Files.readAllBytes(zip.toPath());
+    // the crc of the central directory header, 16 bytes after its signature
+    int header = indexOf(bytes, "PK\u0001\u0002");
+    bytes[header + 16] ^= 1;
+    Files.write(zip.toPath(), bytes);
+
+    assertCorrupt(zip, "index.html");
+  }
+
+  private void assertCorrupt(File zip, String name) throws IOException {
+    Path root = tmpDir.newFolder("exploded").toPath();
+    try (ZipExtractor extractor = ZipExtractor.open(zip)) {
+      extractor.extract(extractor.getEntries(), root, 1);
+      Assert.fail();
+    } catch (ZipException ex) {
+      Assert.assertEquals(
+          "Corrupt entry " + name + " in " + zip + ": bad size or CRC", ex.getMessage());
+    }
+  }
+
+  private static int indexOf(byte[] bytes, String text) {
+    byte[] pattern = text.getBytes(StandardCharsets.ISO_8859_1);
+    for (int i = 0; i + pattern.length <= bytes.length; i++) {
+      if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+        return i;
+      }
+    }
+    throw new AssertionError(text + " not found");
+  }
+
+  private static void putStored(ZipOutputStream out, String name, byte[] content)
+      throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(content.length);
+    entry.setCompressedSize(content.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(content);
+    out.closeEntry();
+  }
+}